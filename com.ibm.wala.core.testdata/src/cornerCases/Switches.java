@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2009 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package cornerCases;
+
+public class Switches {
+
+  public static int dense(int x) {
+    switch (x) {
+    case 0:
+      return 10;
+    case 1:
+      x = x * 3;
+      break;
+    case 2:
+    case 3:
+      x++;
+      break;
+    default:
+      return -1;
+    }
+    return x;
+  }
+
+  public static int sparse(int x) {
+    switch (x) {
+    case -100:
+      return 1;
+    case 7:
+      return 2;
+    case 1000:
+      return 3;
+    default:
+      return x;
+    }
+  }
+
+  public static int parse(String s, Object o) {
+    int r;
+    try {
+      r = Integer.parseInt(s);
+    } catch (NumberFormatException e) {
+      r = e.getMessage().length();
+    }
+    switch (r) {
+    case 0:
+      if (o instanceof String) {
+        r += ((String) o).length();
+      }
+      break;
+    case 1:
+      r = o.hashCode();
+      break;
+    default:
+      r--;
+    }
+    return r;
+  }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.basic;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.dataflow.IFDS.CompactICFGSupergraph;
+import com.ibm.wala.dataflow.IFDS.ICFGSupergraph;
+import com.ibm.wala.dataflow.IFDS.ISupergraph;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.AllApplicationEntrypoints;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashSetFactory;
+
+/**
+ * Check that {@link CompactICFGSupergraph} has the same nodes and edges as {@link ICFGSupergraph}.
+ */
+public class CompactICFGSupergraphTest {
+
+  /**
+   * main classes of the programs to compare on; null stands for all application entrypoints
+   */
+  private static final String[] MAIN_CLASSES = { "Ldataflow/StaticDataflow", "Lrecurse/NList", "LcornerCases/Main", null };
+
+  @Test
+  public void testSameAsICFGSupergraph() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    for (String mainClass : MAIN_CLASSES) {
+      Iterable<Entrypoint> entrypoints = mainClass == null ? new AllApplicationEntrypoints(scope, cha) : Util
+          .makeMainEntrypoints(scope, cha, mainClass);
+      AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+      // share the exploded CFGs, so that the blocks of both supergraphs are equal
+      AnalysisCache cache = new AnalysisCache();
+      CallGraph cg = CallGraphTestUtil.buildZeroCFA(options, cache, cha, scope, false);
+      compare(ICFGSupergraph.make(cg, cache), CompactICFGSupergraph.make(cg, cache));
+    }
+  }
+
+  private static void compare(ISupergraph<BasicBlockInContext<IExplodedBasicBlock>, CGNode> expected,
+      ISupergraph<BasicBlockInContext<IExplodedBasicBlock>, CGNode> actual) {
+    Set<BasicBlockInContext<IExplodedBasicBlock>> nodes = toSet(expected.iterator());
+    Assert.assertEquals(nodes, toSet(actual.iterator()));
+    Assert.assertEquals(nodes.size(), actual.getNumberOfNodes());
+
+    int calls = 0;
+    int edges = 0;
+    for (BasicBlockInContext<IExplodedBasicBlock> n : nodes) {
+      String msg = n.toString();
+      Assert.assertTrue(msg, actual.containsNode(n));
+      Assert.assertEquals(msg, n, actual.getNode(actual.getNumber(n)));
+      Assert.assertEquals(msg, expected.getProcOf(n), actual.getProcOf(n));
+      Assert.assertEquals(msg, expected.isCall(n), actual.isCall(n));
+      Assert.assertEquals(msg, expected.isReturn(n), actual.isReturn(n));
+      Assert.assertEquals(msg, expected.isEntry(n), actual.isEntry(n));
+      Assert.assertEquals(msg, expected.isExit(n), actual.isExit(n));
+
+      Set<BasicBlockInContext<IExplodedBasicBlock>> succs = toSet(expected.getSuccNodes(n));
+      Assert.assertEquals(msg, succs, toSet(actual.getSuccNodes(n)));
+      Assert.assertEquals(msg, succs.size(), actual.getSuccNodeCount(n));
+      Assert.assertEquals(msg, toSet(expected.getPredNodes(n)), toSet(actual.getPredNodes(n)));
+      for (BasicBlockInContext<IExplodedBasicBlock> s : succs) {
+        Assert.assertEquals(msg + " -> " + s, expected.classifyEdge(n, s), actual.classifyEdge(n, s));
+        Assert.assertTrue(msg + " -> " + s, actual.hasEdge(n, s));
+        edges++;
+      }
+
+      if (expected.isCall(n)) {
+        calls++;
+        Set<BasicBlockInContext<IExplodedBasicBlock>> called = toSet(expected.getCalledNodes(n));
+        Assert.assertEquals(msg, called, toSet(actual.getCalledNodes(n)));
+        Set<CGNode> callees = HashSetFactory.make();
+        for (BasicBlockInContext<IExplodedBasicBlock> entry : called) {
+          callees.add(entry.getNode());
+        }
+        // no callee at all asks for call sites without targets
+        callees.add(null);
+        for (CGNode callee : callees) {
+          Set<BasicBlockInContext<IExplodedBasicBlock>> returns = toSet(expected.getReturnSites(n, callee));
+          Assert.assertEquals(msg, returns, toSet(actual.getReturnSites(n, callee)));
+          for (BasicBlockInContext<IExplodedBasicBlock> r : returns) {
+            Assert.assertEquals(msg + " returns to " + r, toSet(expected.getCallSites(r, callee)),
+                toSet(actual.getCallSites(r, callee)));
+          }
+        }
+      }
+    }
+    Assert.assertTrue(calls > 0);
+    Assert.assertTrue(edges > nodes.size());
+  }
+
+  private static Set<BasicBlockInContext<IExplodedBasicBlock>> toSet(Iterator<? extends BasicBlockInContext<IExplodedBasicBlock>> it) {
+    Set<BasicBlockInContext<IExplodedBasicBlock>> result = HashSetFactory.make();
+    while (it.hasNext()) {
+      result.add(it.next());
+    }
+    return result;
+  }
+}
@@ -10,6 +10,14 @@
  *******************************************************************************/
 package com.ibm.wala.core.tests.basic;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -19,12 +27,21 @@ import com.ibm.wala.dataflow.graph.BitVectorFilter;
 import com.ibm.wala.dataflow.graph.BitVectorFramework;
 import com.ibm.wala.dataflow.graph.BitVectorIdentity;
 import com.ibm.wala.dataflow.graph.BitVectorSolver;
+import com.ibm.wala.dataflow.graph.BitVectorSystemCapture;
 import com.ibm.wala.dataflow.graph.BitVectorUnion;
 import com.ibm.wala.dataflow.graph.BitVectorUnionConstant;
 import com.ibm.wala.dataflow.graph.ITransferFunctionProvider;
+import com.ibm.wala.fixedpoint.impl.CapturedSystem;
+import com.ibm.wala.fixedpoint.impl.CapturedSystemSolver;
+import com.ibm.wala.fixedpoint.impl.IFixedPointWorklist;
+import com.ibm.wala.fixedpoint.impl.LRFWorklist;
+import com.ibm.wala.fixedpoint.impl.WorklistBenchmark;
+import com.ibm.wala.fixedpoint.impl.WorklistStrategy;
+import com.ibm.wala.fixpoint.AbstractStatement;
 import com.ibm.wala.fixpoint.BitVectorVariable;
 import com.ibm.wala.fixpoint.UnaryOperator;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.Factory;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.graph.Graph;
 import com.ibm.wala.util.graph.impl.SlowSparseNumberedGraph;
@@ -122,11 +139,133 @@ public class GraphDataflowTest extends WalaTestCase {
     return G;
   }
 
+  /**
+   * Each work list strategy should reach the same solution.
+   */
+  @Test public void testWorklistStrategies() throws CancelException {
+    final Graph<String> G = buildGraph();
+    long[] evaluations = new long[WorklistStrategy.values().length];
+    for (WorklistStrategy strategy : WorklistStrategy.values()) {
+      BitVectorSolver<String> s = makeNodeOnlySolver(G);
+      s.setWorklistStrategy(strategy);
+      s.solve(null);
+      Assert.assertEquals(strategy.toString(), expectedStringNodeOnly(), result2String(s));
+      evaluations[strategy.ordinal()] = s.getEvaluationCount();
+      Assert.assertTrue(strategy.toString(), s.getEvaluationCount() > 0);
+    }
+
+    WorklistBenchmark benchmark = new WorklistBenchmark(new Factory<BitVectorSolver<String>>() {
+      @Override
+      public BitVectorSolver<String> make() {
+        // another solver that runs meanwhile must not count towards the benchmarked one
+        try {
+          makeNodeOnlySolver(G).solve(null);
+        } catch (CancelException e) {
+          Assert.fail(e.toString());
+        }
+        return makeNodeOnlySolver(G);
+      }
+    }, 0, 2);
+    List<WorklistBenchmark.Result> results = benchmark.run(Arrays.asList(WorklistStrategy.values()));
+    Assert.assertEquals(WorklistStrategy.values().length, results.size());
+    for (WorklistBenchmark.Result r : results) {
+      Assert.assertEquals(r.toString(), evaluations[r.getStrategy().ordinal()], r.getEvaluations());
+    }
+  }
+
+  /**
+   * Peeking at a work list should not change the order in which it hands out statements.
+   */
+  @Test public void testWorklistPeek() throws CancelException {
+    List<AbstractStatement<?, ?>> statements = statements();
+    for (WorklistStrategy strategy : WorklistStrategy.values()) {
+      IFixedPointWorklist peeked = strategy.make();
+      IFixedPointWorklist plain = strategy.make();
+      // two rounds, so that LRF has fire times to order by
+      for (int round = 0; round < 2; round++) {
+        for (AbstractStatement<?, ?> st : statements) {
+          peeked.insertStatement(st);
+          plain.insertStatement(st);
+        }
+        while (!plain.isEmpty()) {
+          Object next = peeked.peekStatement();
+          Assert.assertSame(strategy.toString(), next, peeked.peekStatement());
+          Assert.assertSame(strategy.toString(), next, peeked.takeStatement());
+          Assert.assertSame(strategy.toString(), next, plain.takeStatement());
+        }
+        Assert.assertTrue(strategy.toString(), peeked.isEmpty());
+      }
+    }
+  }
+
+  /**
+   * The LRF work list should not remember statements which have been removed from the system.
+   */
+  @Test public void testLRFWorklistForgetsRemovedStatements() throws CancelException {
+    List<AbstractStatement<?, ?>> statements = statements();
+    LRFWorklist w = new LRFWorklist();
+    for (int round = 0; round < 100; round++) {
+      for (AbstractStatement<?, ?> st : statements) {
+        w.insertStatement(st);
+      }
+      // forget half the statements while they are pending, and the other half once they are taken
+      for (int i = 0; i < statements.size(); i += 2) {
+        w.forgetStatement(statements.get(i));
+      }
+      int taken = 0;
+      while (!w.isEmpty()) {
+        w.takeStatement();
+        taken++;
+      }
+      Assert.assertEquals(statements.size(), taken);
+      Assert.assertEquals(statements.size() / 2, w.getNumberOfRememberedStatements());
+      for (int i = 1; i < statements.size(); i += 2) {
+        w.forgetStatement(statements.get(i));
+      }
+      Assert.assertEquals(0, w.getNumberOfRememberedStatements());
+    }
+  }
+
+  private static List<AbstractStatement<?, ?>> statements() throws CancelException {
+    BitVectorSolver<String> s = makeNodeOnlySolver(buildGraph());
+    s.solve(null);
+    List<AbstractStatement<?, ?>> result = new ArrayList<AbstractStatement<?, ?>>();
+    for (Iterator<?> it = s.getStatements(); it.hasNext();) {
+      result.add((AbstractStatement<?, ?>) it.next());
+    }
+    Assert.assertTrue(result.size() > 4);
+    return result;
+  }
+
+  /**
+   * A captured system should survive a round trip through its binary form, and re-solve to the original solution.
+   */
+  @Test public void testCaptureAndReplay() throws CancelException, IOException {
+    CapturedSystem captured = BitVectorSystemCapture.solveAndCapture(makeNodeOnlySolver(buildGraph()), nodes.length);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    captured.write(bytes);
+    CapturedSystem replayed = CapturedSystem.read(new ByteArrayInputStream(bytes.toByteArray()));
+    Assert.assertEquals(captured.getNumberOfVariables(), replayed.getNumberOfVariables());
+    Assert.assertEquals(captured.getNumberOfStatements(), replayed.getNumberOfStatements());
+    for (WorklistStrategy strategy : WorklistStrategy.values()) {
+      CapturedSystemSolver s = replayed.make();
+      s.setWorklistStrategy(strategy);
+      s.solve(null);
+      Assert.assertTrue(strategy.toString(), s.matchesSolution());
+    }
+  }
+
   /**
    * Solve the dataflow system and return the result as a string
    * @throws CancelException 
    */
   private static String solveNodeOnly(Graph<String> G) throws CancelException {
+    BitVectorSolver<String> s = makeNodeOnlySolver(G);
+    s.solve(null);
+    return result2String(s);
+  }
+
+  private static BitVectorSolver<String> makeNodeOnlySolver(Graph<String> G) {
     final OrdinalSetMapping<String> values = new MutableMapping<String>(nodes);
     ITransferFunctionProvider<String, BitVectorVariable> functions = new ITransferFunctionProvider<String, BitVectorVariable>() {
 
@@ -159,9 +298,7 @@ public class GraphDataflowTest extends WalaTestCase {
     };
 
     BitVectorFramework<String,String> F = new BitVectorFramework<String,String>(G, functions, values);
-    BitVectorSolver<String> s = new BitVectorSolver<String>(F);
-    s.solve(null);
-    return result2String(s);
+    return new BitVectorSolver<String>(F);
   }
 
   private static String solveNodeEdge(Graph<String> G) throws CancelException {
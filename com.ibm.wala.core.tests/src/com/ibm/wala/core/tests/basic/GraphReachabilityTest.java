@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.basic;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.Predicate;
+import com.ibm.wala.util.graph.GraphReachability;
+import com.ibm.wala.util.graph.NumberedGraph;
+import com.ibm.wala.util.graph.ReachabilityIndex;
+import com.ibm.wala.util.graph.impl.SlowSparseNumberedGraph;
+import com.ibm.wala.util.graph.traverse.DFS;
+import com.ibm.wala.util.intset.OrdinalSet;
+
+public class GraphReachabilityTest {
+
+  /**
+   * A -> B <-> C -> D, A -> E, with a cycle through F and G hanging off D
+   */
+  private static final String edges = "ABBCCBCDAEDFFGGF";
+
+  private static NumberedGraph<String> createGraph(String edges) {
+    NumberedGraph<String> g = SlowSparseNumberedGraph.make();
+    for (int i = 0; i < edges.length(); i += 2) {
+      String from = edges.substring(i, i + 1);
+      if (!g.containsNode(from)) {
+        g.addNode(from);
+      }
+      String to = edges.substring(i + 1, i + 2);
+      if (!g.containsNode(to)) {
+        g.addNode(to);
+      }
+      g.addEdge(from, to);
+    }
+    return g;
+  }
+
+  /**
+   * vowels and G are interesting
+   */
+  private static final Predicate<String> interesting = new Predicate<String>() {
+    @Override
+    public boolean test(String t) {
+      return "AEIOUG".contains(t);
+    }
+  };
+
+  private static void checkReachability(GraphReachability<String, String> r) {
+    Assert.assertEquals("[A, E, G]", toString(r.getReachableSet("A")));
+    Assert.assertEquals("[G]", toString(r.getReachableSet("B")));
+    Assert.assertEquals("[G]", toString(r.getReachableSet("C")));
+    Assert.assertEquals("[G]", toString(r.getReachableSet("D")));
+    Assert.assertEquals("[E]", toString(r.getReachableSet("E")));
+    Assert.assertEquals("[G]", toString(r.getReachableSet("F")));
+    try {
+      r.getReachableSet("Z");
+      Assert.fail("expected IllegalArgumentException for a node outside the graph");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  private static String toString(OrdinalSet<String> s) {
+    Set<String> result = new TreeSet<String>();
+    for (String x : s) {
+      result.add(x);
+    }
+    return result.toString();
+  }
+
+  @Test
+  public void testReachability() throws CancelException {
+    GraphReachability<String, String> r = new GraphReachability<String, String>(createGraph(edges), interesting);
+    Assert.assertTrue(r.solve(null));
+    checkReachability(r);
+  }
+
+  @Test
+  public void testParallelReachability() throws CancelException {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      GraphReachability<String, String> r = new GraphReachability<String, String>(createGraph(edges), interesting);
+      r.solve(null, executor);
+      checkReachability(r);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * a root over two wide layers, so that each height of the condensed graph has more components than are split across tasks
+   */
+  private static NumberedGraph<String> createWideGraph(int width) {
+    NumberedGraph<String> g = SlowSparseNumberedGraph.make();
+    g.addNode("r");
+    for (int i = 0; i < width; i++) {
+      g.addNode("m" + i);
+      g.addNode("l" + i);
+    }
+    for (int i = 0; i < width; i++) {
+      g.addEdge("r", "m" + i);
+      g.addEdge("m" + i, "l" + i);
+      g.addEdge("m" + i, "l" + ((i + 1) % width));
+    }
+    return g;
+  }
+
+  @Test
+  public void testParallelReachabilityOnWideGraph() throws CancelException {
+    NumberedGraph<String> g = createWideGraph(2000);
+    Predicate<String> someNodes = new Predicate<String>() {
+      @Override
+      public boolean test(String t) {
+        if (t.equals("r")) {
+          return false;
+        }
+        int i = Integer.parseInt(t.substring(1));
+        return (t.startsWith("l") && i % 7 == 0) || (t.startsWith("m") && i % 100 == 0);
+      }
+    };
+    GraphReachability<String, String> serial = new GraphReachability<String, String>(g, someNodes);
+    Assert.assertTrue(serial.solve(null));
+
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    final int[] tasks = new int[1];
+    try {
+      GraphReachability<String, String> parallel = new GraphReachability<String, String>(g, someNodes);
+      Assert.assertTrue(parallel.solve(null, new Executor() {
+        @Override
+        public void execute(Runnable command) {
+          synchronized (tasks) {
+            tasks[0]++;
+          }
+          executor.execute(command);
+        }
+      }));
+      Assert.assertTrue("the executor was not used", tasks[0] > 0);
+      for (String n : g) {
+        Assert.assertEquals(n, toString(serial.getReachableSet(n)), toString(parallel.getReachableSet(n)));
+      }
+      Assert.assertEquals("[l0, m0]", toString(parallel.getReachableSet("m0")));
+      Assert.assertEquals("[l1400, m1400]", toString(parallel.getReachableSet("m1400")));
+      Assert.assertEquals(2000 / 7 + 1 + 2000 / 100, parallel.getReachableSet("r").size());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testBoundedReachability() throws CancelException {
+    for (int n = 0; n < 3; n++) {
+      GraphReachability<String, String> r = new GraphReachability<String, String>(createGraph(edges), interesting);
+      r.setMaxCachedSets(n);
+      r.solve(null);
+      checkReachability(r);
+      checkReachability(r);
+    }
+  }
+
+  @Test
+  public void testNothingInteresting() throws CancelException {
+    GraphReachability<String, String> r = new GraphReachability<String, String>(createGraph(edges), new Predicate<String>() {
+      @Override
+      public boolean test(String t) {
+        return false;
+      }
+    });
+    Assert.assertFalse(r.solve(null));
+    Assert.assertEquals(0, r.getReachableSet("A").size());
+  }
+
+  @Test
+  public void testReachabilityIndex() {
+    NumberedGraph<String> g = createGraph(edges);
+    for (int k = 1; k <= 3; k++) {
+      ReachabilityIndex<String> index = new ReachabilityIndex<String>(g, k);
+      // {B, C} and {F, G} are the only non-trivial components
+      Assert.assertEquals(5, index.getNumberOfComponents());
+      for (String src : g) {
+        Set<String> reachable = DFS.getReachableNodes(g, Collections.singleton(src));
+        for (String dst : g) {
+          Assert.assertEquals(src + " -> " + dst, reachable.contains(dst), index.reaches(src, dst));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.basic;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.perf.Metrics;
+import com.ibm.wala.util.perf.MetricsSummary;
+
+/**
+ * Tests for {@link Metrics} and {@link MetricsSummary}
+ */
+public class MetricsSummaryTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(MetricsSummaryTest.class);
+  }
+
+  @Test
+  public void testSummary() {
+    MetricsSummary s = new MetricsSummary();
+    s.time("phase", 3000000);
+    s.time("phase", 5000000);
+    s.count("counter", 2);
+    s.count("counter", 40);
+    s.sample("quantity", 0);
+    s.sample("quantity", 1);
+    s.sample("quantity", 5);
+    s.sample("quantity", 6);
+    s.sample("a \"quoted\\\" name", Long.MAX_VALUE);
+
+    Assert.assertEquals(8, s.getTotalMillis("phase"));
+    Assert.assertEquals(0, s.getTotalMillis("other"));
+    Assert.assertEquals(42, s.getCount("counter"));
+    Assert.assertEquals(0, s.getCount("other"));
+    Assert.assertEquals(4, s.getSampleCount("quantity"));
+    Assert.assertEquals(0, s.getSampleCount("other"));
+
+    String expected = "{\n" //
+        + "  \"timers\": {\n" //
+        + "    \"phase\": { \"count\": 2, \"totalMillis\": 8, \"maxMillis\": 5 }\n" //
+        + "  },\n" //
+        + "  \"counters\": {\n" //
+        + "    \"counter\": 42\n" //
+        + "  },\n" //
+        + "  \"samples\": {\n" //
+        + "    \"a \\\"quoted\\\\\\\" name\": { \"count\": 1, \"min\": " + Long.MAX_VALUE + ", \"max\": " + Long.MAX_VALUE
+        + ", \"mean\": " + (double) Long.MAX_VALUE + ", \"histogram\": { \"4611686018427387904-\": 1 } },\n" //
+        + "    \"quantity\": { \"count\": 4, \"min\": 0, \"max\": 6, \"mean\": 3.0, \"histogram\": { \"0\": 1, \"1\": 1, \"4-7\": 2 } }\n" //
+        + "  }\n" //
+        + "}\n";
+    Assert.assertEquals(expected, s.toJSON());
+
+    s.clear();
+    Assert.assertEquals("{\n  \"timers\": {\n  },\n  \"counters\": {\n  },\n  \"samples\": {\n  }\n}\n", s.toJSON());
+  }
+
+  @Test
+  public void testListeners() throws IOException, ClassHierarchyException {
+    Assert.assertFalse(Metrics.isEnabled());
+    Assert.assertEquals(0, Metrics.start());
+    MetricsSummary s = new MetricsSummary();
+    Metrics.addListener(s);
+    try {
+      Assert.assertTrue(Metrics.isEnabled());
+      Metrics.count("c", 1);
+      Metrics.sample("q", 7);
+      Metrics.stop("p", Metrics.start());
+
+      AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+          CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+      ClassHierarchy.make(scope);
+    } finally {
+      Metrics.removeListener(s);
+    }
+    Assert.assertFalse(Metrics.isEnabled());
+    // nothing is reported once the listener is gone
+    Metrics.count("c", 1);
+
+    Assert.assertEquals(1, s.getCount("c"));
+    Assert.assertEquals(1, s.getSampleCount("q"));
+    Assert.assertTrue(s.toJSON().contains("\"p\": { \"count\": 1"));
+    Assert.assertTrue(s.toJSON().contains("\"cha.build\": { \"count\": 1"));
+    Assert.assertEquals(1, s.getSampleCount("cha.classes"));
+  }
+}
@@ -10,26 +10,36 @@
  *******************************************************************************/
 package com.ibm.wala.core.tests.callGraph;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.core.tests.demandpa.AbstractPtrTest;
 import com.ibm.wala.core.tests.util.TestConstants;
 import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.fixedpoint.impl.CapturedSystem;
+import com.ibm.wala.fixedpoint.impl.CapturedSystemSolver;
+import com.ibm.wala.fixedpoint.impl.WorklistStrategy;
 import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions.ReflectionOptions;
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
 import com.ibm.wala.ipa.callgraph.CallGraphStats;
+import com.ibm.wala.ipa.callgraph.Context;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.impl.AllApplicationEntrypoints;
 import com.ibm.wala.ipa.callgraph.impl.DefaultEntrypoint;
@@ -37,16 +47,24 @@ import com.ibm.wala.ipa.callgraph.impl.Util;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
 import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
 import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.propagation.PropagationSystemCapture;
 import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
 import com.ibm.wala.ipa.cfg.BasicBlockInContext;
 import com.ibm.wala.ipa.cfg.InterproceduralCFG;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.IRFactory;
 import com.ibm.wala.ssa.ISSABasicBlock;
+import com.ibm.wala.ssa.SSAOptions;
 import com.ibm.wala.types.Descriptor;
 import com.ibm.wala.types.MethodReference;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Iterator2Iterable;
 import com.ibm.wala.util.debug.Assertions;
@@ -261,6 +279,299 @@ public class CallGraphTest extends WalaTestCase {
     Assert.assertEquals(1, pointsToSet.size());
     
   }
+
+  @Test
+  public void testUnifyAssignmentCycles() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = new AllApplicationEntrypoints(scope, cha);
+
+    // unifying cycles should not change the solution
+    PropagationCallGraphBuilder unified = solveZeroOneCFA(scope, cha, entrypoints, true, false, false);
+    Assert.assertTrue("no assignment cycle was unified", countUnified(unified) > 0);
+    Assert.assertEquals(pointsToSets(solveZeroOneCFA(scope, cha, entrypoints, false, false, false)), pointsToSets(unified));
+  }
+
+  @Test
+  public void testUnifyPointerEquivalentVariables() throws IOException, ClassHierarchyException, IllegalArgumentException,
+      CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = new AllApplicationEntrypoints(scope, cha);
+
+    // unifying equivalent variables should not change the solution, alone or together with cycles
+    Map<String, Set<String>> expected = pointsToSets(solveZeroOneCFA(scope, cha, entrypoints, false, false, false));
+    PropagationCallGraphBuilder unified = solveZeroOneCFA(scope, cha, entrypoints, false, true, false);
+    Assert.assertTrue("no equivalent variables were unified", countUnified(unified) > 0);
+    Assert.assertEquals(expected, pointsToSets(unified));
+    Assert.assertEquals(expected, pointsToSets(solveZeroOneCFA(scope, cha, entrypoints, true, true, false)));
+  }
+
+  @Test
+  public void testDifferencePropagation() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = new AllApplicationEntrypoints(scope, cha);
+
+    // propagating differences through the assignment cycles and casts of the whole test program should not change the solution,
+    // also when sets are unified as we go
+    Map<String, Set<String>> expected = pointsToSets(solveZeroOneCFA(scope, cha, entrypoints, false, false, false));
+    Assert.assertEquals(expected, pointsToSets(solveZeroOneCFA(scope, cha, entrypoints, false, false, true)));
+    PropagationCallGraphBuilder unified = solveZeroOneCFA(scope, cha, entrypoints, true, true, true);
+    Assert.assertTrue("no variables were unified", countUnified(unified) > 0);
+    Assert.assertEquals(expected, pointsToSets(unified));
+  }
+
+  /**
+   * Build a 0-1-CFA call graph without reflection handling: the synthetic factory methods used for reflection number their
+   * allocation sites in the order they are discovered, which would make solutions from different solver orders hard to compare.
+   */
+  private static PropagationCallGraphBuilder solveZeroOneCFA(AnalysisScope scope, ClassHierarchy cha,
+      Iterable<Entrypoint> entrypoints, boolean unifyCycles, boolean unifyEquivalences, boolean differencePropagation)
+      throws IllegalArgumentException, CancelException {
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    options.setReflectionOptions(ReflectionOptions.NONE);
+    options.setUnifyAssignmentCycles(unifyCycles);
+    options.setUnifyPointerEquivalentVariables(unifyEquivalences);
+    options.setDifferencePropagation(differencePropagation);
+    PropagationCallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+    builder.makeCallGraph(options, null);
+    return builder;
+  }
+
+  /**
+   * @return the points-to set of each pointer key, by name
+   */
+  private static Map<String, Set<String>> pointsToSets(PropagationCallGraphBuilder builder) {
+    Map<String, Set<String>> sets = HashMapFactory.make();
+    PointerAnalysis<InstanceKey> pa = builder.getPointerAnalysis();
+    for (PointerKey k : pa.getPointerKeys()) {
+      Set<String> s = HashSetFactory.make();
+      for (InstanceKey ik : pa.getPointsToSet(k)) {
+        s.add(ik.toString());
+      }
+      sets.put(k.toString(), s);
+    }
+    return sets;
+  }
+
+  /**
+   * @return the number of pointer keys whose points-to set was unified with others
+   */
+  private static int countUnified(PropagationCallGraphBuilder builder) {
+    int count = 0;
+    for (PointerKey k : builder.getPointerAnalysis().getPointerKeys()) {
+      if (builder.getPropagationSystem().isUnified(k)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testCaptureAndReplay() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = new AllApplicationEntrypoints(scope, cha);
+
+    // a captured pointer analysis should re-solve to the same solution with every strategy, also when it was unified and solved
+    // by propagating differences
+    for (boolean optimized : new boolean[] { false, true }) {
+      AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+      options.setReflectionOptions(ReflectionOptions.NONE);
+      options.setUnifyAssignmentCycles(optimized);
+      options.setUnifyPointerEquivalentVariables(optimized);
+      options.setDifferencePropagation(optimized);
+      options.setRecordSeeds(true);
+      PropagationCallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+      builder.makeCallGraph(options, null);
+
+      CapturedSystem captured = PropagationSystemCapture.capture(builder.getPropagationSystem());
+      Assert.assertTrue(captured.getNumberOfStatements() > 0);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      captured.write(bytes);
+      CapturedSystem replayed = CapturedSystem.read(new ByteArrayInputStream(bytes.toByteArray()));
+      for (WorklistStrategy strategy : WorklistStrategy.values()) {
+        CapturedSystemSolver solver = replayed.make();
+        solver.setWorklistStrategy(strategy);
+        solver.solve(null);
+        Assert.assertTrue(strategy + (optimized ? " optimized" : ""), solver.matchesSolution());
+      }
+    }
+  }
+
+  @Test
+  public void testIRPrebuildThreads() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = new AllApplicationEntrypoints(scope, cha);
+
+    // building IR ahead on other threads should not change the call graph or the points-to sets
+    Set<String> sequentialThreads = HashSetFactory.make();
+    PropagationCallGraphBuilder sequential = solveZeroCFA(scope, cha, entrypoints, 1, sequentialThreads);
+    Set<String> parallelThreads = HashSetFactory.make();
+    PropagationCallGraphBuilder parallel = solveZeroCFA(scope, cha, entrypoints, 4, parallelThreads);
+    Assert.assertFalse(sequentialThreads.contains("WALA IR builder"));
+    Assert.assertTrue("no IR was prebuilt", parallelThreads.contains("WALA IR builder"));
+    Assert.assertEquals(callGraphShape(sequential.getCallGraph()), callGraphShape(parallel.getCallGraph()));
+    Assert.assertEquals(pointsToSets(sequential), pointsToSets(parallel));
+  }
+
+  @Test
+  public void testRTAPrebuildThreads() throws IOException, ClassHierarchyException, IllegalArgumentException, CancelException {
+    // scanning bytecode ahead on other threads should not change the nodes, their numbers, or the targets of any site; each
+    // build gets its own class hierarchy, since the methods keep what they were scanned for
+    Map<String, Set<String>> sequential = callGraphShape(solveRTA(1));
+    Map<String, Set<String>> parallel = callGraphShape(solveRTA(4));
+    Assert.assertTrue(sequential.size() > 100);
+    Assert.assertEquals(sequential, parallel);
+  }
+
+  private static CallGraph solveRTA(int nThreads) throws IOException, ClassHierarchyException, IllegalArgumentException,
+      CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, new AllApplicationEntrypoints(scope, cha));
+    options.setIRPrebuildThreads(nThreads);
+    return CallGraphTestUtil.buildRTA(options, new AnalysisCache(), cha, scope);
+  }
+
+  @Test
+  public void testCancelIRPrebuild() throws IOException, ClassHierarchyException, IllegalArgumentException, InterruptedException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = new AllApplicationEntrypoints(scope, cha);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    options.setReflectionOptions(ReflectionOptions.NONE);
+    options.setIRPrebuildThreads(4);
+
+    // cancel as soon as some IR is built ahead, while the rest of its batch is in flight
+    final CancelingMonitor monitor = new CancelingMonitor();
+    final Set<Thread> irBuilders = HashSetFactory.make();
+    final DefaultIRFactory factory = new DefaultIRFactory();
+    AnalysisCache cache = new AnalysisCache(new IRFactory<IMethod>() {
+      @Override
+      public IR makeIR(IMethod method, Context c, SSAOptions o) {
+        if (Thread.currentThread().getName().equals("WALA IR builder")) {
+          synchronized (irBuilders) {
+            irBuilders.add(Thread.currentThread());
+          }
+          monitor.cancel();
+        }
+        return factory.makeIR(method, c, o);
+      }
+
+      @Override
+      public boolean contextIsIrrelevant(IMethod method) {
+        return factory.contextIsIrrelevant(method);
+      }
+    });
+    PropagationCallGraphBuilder builder = Util.makeZeroCFABuilder(options, cache, cha, scope);
+    try {
+      builder.makeCallGraph(options, monitor);
+      Assert.fail("expected the call graph builder to be canceled");
+    } catch (CallGraphBuilderCancelException e) {
+      // expected
+    }
+    Assert.assertFalse("no IR was prebuilt", irBuilders.isEmpty());
+    synchronized (irBuilders) {
+      for (Thread t : irBuilders) {
+        t.join(10000);
+        Assert.assertFalse("IR builder thread still running", t.isAlive());
+      }
+    }
+  }
+
+  private static class CancelingMonitor implements IProgressMonitor {
+    private volatile boolean canceled;
+
+    @Override
+    public void beginTask(String task, int totalWork) {
+    }
+
+    @Override
+    public void subTask(String subTask) {
+    }
+
+    @Override
+    public void cancel() {
+      canceled = true;
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return canceled;
+    }
+
+    @Override
+    public void done() {
+    }
+
+    @Override
+    public void worked(int units) {
+    }
+
+    @Override
+    public String getCancelMessage() {
+      return "canceled";
+    }
+  }
+
+  /**
+   * Build a 0-CFA call graph without reflection handling, building IR with the given number of threads
+   * 
+   * @param threads receives the names of the threads that built IR
+   */
+  private static PropagationCallGraphBuilder solveZeroCFA(AnalysisScope scope, ClassHierarchy cha,
+      Iterable<Entrypoint> entrypoints, int nThreads, final Set<String> threads) throws IllegalArgumentException, CancelException {
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    options.setReflectionOptions(ReflectionOptions.NONE);
+    options.setIRPrebuildThreads(nThreads);
+    final DefaultIRFactory factory = new DefaultIRFactory();
+    AnalysisCache cache = new AnalysisCache(new IRFactory<IMethod>() {
+      @Override
+      public IR makeIR(IMethod method, Context c, SSAOptions o) {
+        synchronized (threads) {
+          threads.add(Thread.currentThread().getName());
+        }
+        return factory.makeIR(method, c, o);
+      }
+
+      @Override
+      public boolean contextIsIrrelevant(IMethod method) {
+        return factory.contextIsIrrelevant(method);
+      }
+    });
+    PropagationCallGraphBuilder builder = Util.makeZeroCFABuilder(options, cache, cha, scope);
+    builder.makeCallGraph(options, null);
+    return builder;
+  }
+
+  /**
+   * @return for each node, by number and name, the targets of each of its call sites
+   */
+  private static Map<String, Set<String>> callGraphShape(CallGraph cg) {
+    Map<String, Set<String>> shape = HashMapFactory.make();
+    for (CGNode n : cg) {
+      Set<String> targets = HashSetFactory.make();
+      for (Iterator<CallSiteReference> sites = n.iterateCallSites(); sites.hasNext();) {
+        CallSiteReference site = sites.next();
+        for (CGNode t : cg.getPossibleTargets(n, site)) {
+          targets.add(site + " -> " + t.getGraphNodeId() + " " + t);
+        }
+      }
+      shape.put(n.getGraphNodeId() + " " + n, targets);
+    }
+    return shape;
+  }
+
   /**
    * make main entrypoints, even in the primordial loader.
    */
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.cfg.exc.inter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.cfg.ControlFlowGraph;
+import com.ibm.wala.cfg.exc.ExceptionPruningAnalysis;
+import com.ibm.wala.cfg.exc.InterprocAnalysisResult;
+import com.ibm.wala.cfg.exc.NullPointerAnalysis;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.AllApplicationEntrypoints;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.WalaException;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.graph.GraphIntegrity.UnsoundGraphException;
+
+public class NullPointerExceptionInterTest {
+
+  @Test
+  public void testParallelAnalysisGivesSameResult() throws IOException, ClassHierarchyException, IllegalArgumentException,
+      CancelException, WalaException, UnsoundGraphException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = new AllApplicationEntrypoints(scope, cha);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    CallGraph cg = CallGraphTestUtil.buildZeroCFA(options, new AnalysisCache(), cha, scope, false);
+
+    Map<CGNode, String> expected = summarize(cg,
+        NullPointerAnalysis.computeInterprocAnalysis(NullPointerAnalysis.DEFAULT_IGNORE_EXCEPTIONS, cg, null, null, null));
+    Assert.assertFalse(expected.isEmpty());
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Map<CGNode, String> parallel = summarize(cg,
+          NullPointerAnalysis.computeInterprocAnalysis(NullPointerAnalysis.DEFAULT_IGNORE_EXCEPTIONS, cg, null, null, executor));
+      Assert.assertEquals(expected.keySet(), parallel.keySet());
+      for (CGNode n : expected.keySet()) {
+        Assert.assertEquals(n.toString(), expected.get(n), parallel.get(n));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * @return for each node with a result, whether it may throw, and the edges and null pointer state of each block of its pruned
+   *         CFG
+   */
+  private static Map<CGNode, String> summarize(CallGraph cg, InterprocAnalysisResult<SSAInstruction, IExplodedBasicBlock> result) {
+    Map<CGNode, String> summary = HashMapFactory.make();
+    for (CGNode n : cg) {
+      if (!result.containsResult(n)) {
+        continue;
+      }
+      ExceptionPruningAnalysis<SSAInstruction, IExplodedBasicBlock> analysis = result.getResult(n);
+      StringBuilder s = new StringBuilder();
+      s.append(analysis.hasExceptions()).append('\n');
+      ControlFlowGraph<SSAInstruction, IExplodedBasicBlock> cfg = analysis.getCFG();
+      if (cfg != null) {
+        for (IExplodedBasicBlock bb : cfg) {
+          s.append(bb.getNumber()).append(" ->");
+          for (Iterator<IExplodedBasicBlock> it = cfg.getSuccNodes(bb); it.hasNext();) {
+            s.append(' ').append(it.next().getNumber());
+          }
+          s.append(' ').append(analysis.getState(bb)).append('\n');
+        }
+      }
+      summary.put(n, s.toString());
+    }
+    return summary;
+  }
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.cha;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IField;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.ShrikeClass;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.shrikeCT.AnnotationsReader;
+import com.ibm.wala.shrikeCT.AnnotationsReader.AnnotationType;
+import com.ibm.wala.shrikeCT.ClassConstants;
+import com.ibm.wala.shrikeCT.ClassReader;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.annotations.Annotation;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.ref.ReferenceCleanser;
+
+/**
+ * Check that the members a {@link ShrikeClass} decodes on demand are those of its class file, read eagerly and independently
+ * of the class, including after its soft caches are cleared.
+ */
+public class LazyShrikeClassTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(LazyShrikeClassTest.class);
+  }
+
+  @Test
+  public void testMembersMatchClassFile() throws IOException, ClassHierarchyException, InvalidClassFileException {
+    ClassHierarchy cha = makeClassHierarchy();
+    Assert.assertTrue(checkApplicationClasses(cha) > 100);
+  }
+
+  @Test
+  public void testMembersAfterClearingSoftCaches() throws IOException, ClassHierarchyException, InvalidClassFileException {
+    ClassHierarchy cha = makeClassHierarchy();
+    ReferenceCleanser.registerClassHierarchy(cha);
+    ReferenceCleanser.clearSoftCaches();
+    // the cleanser only acts when the heap is full enough, so clear the classes directly as well
+    for (IClass c : cha) {
+      if (c instanceof ShrikeClass) {
+        ((ShrikeClass) c).clearSoftCaches();
+      }
+    }
+    Assert.assertTrue(checkApplicationClasses(cha) > 100);
+
+    // and once more, now that the members have been decoded
+    for (IClass c : cha) {
+      if (c instanceof ShrikeClass) {
+        ((ShrikeClass) c).clearSoftCaches();
+      }
+    }
+    Assert.assertTrue(checkApplicationClasses(cha) > 100);
+  }
+
+  private static ClassHierarchy makeClassHierarchy() throws IOException, ClassHierarchyException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    return ClassHierarchy.make(scope);
+  }
+
+  /**
+   * @return the number of application classes checked
+   */
+  private static int checkApplicationClasses(ClassHierarchy cha) throws IOException, InvalidClassFileException {
+    int count = 0;
+    for (IClass c : cha) {
+      if (c.getClassLoader().getReference().equals(ClassLoaderReference.Application) && c instanceof ShrikeClass) {
+        check((ShrikeClass) c);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static void check(ShrikeClass c) throws IOException, InvalidClassFileException {
+    ClassReader cr = new ClassReader(read(c.getModuleEntry().getInputStream()));
+    ClassLoaderReference loader = c.getClassLoader().getReference();
+    String name = c.getName().toString();
+
+    // a class file may declare two fields of one name with different types, so key fields by both
+    Map<String, IField> fields = HashMapFactory.make();
+    for (IField f : c.getDeclaredInstanceFields()) {
+      Assert.assertFalse(f.isStatic());
+      fields.put(f.getName() + " " + f.getFieldTypeReference().getName(), f);
+    }
+    for (IField f : c.getDeclaredStaticFields()) {
+      Assert.assertTrue(f.isStatic());
+      fields.put(f.getName() + " " + f.getFieldTypeReference().getName(), f);
+    }
+    Assert.assertEquals(name, cr.getFieldCount(), fields.size());
+    for (int i = 0; i < cr.getFieldCount(); i++) {
+      // type names drop the ';' that ends a class descriptor
+      IField f = fields.get(cr.getFieldName(i) + " " + cr.getFieldType(i).replace(";", ""));
+      Assert.assertNotNull(name + "." + cr.getFieldName(i), f);
+      Assert.assertEquals(f.toString(), (cr.getFieldAccessFlags(i) & ClassConstants.ACC_STATIC) != 0, f.isStatic());
+      Assert.assertEquals(f.toString(), (cr.getFieldAccessFlags(i) & ClassConstants.ACC_FINAL) != 0, f.isFinal());
+      Assert.assertEquals(f.toString(), (cr.getFieldAccessFlags(i) & ClassConstants.ACC_VOLATILE) != 0, f.isVolatile());
+      Collection<Annotation> expected = HashSetFactory.make();
+      expected.addAll(fieldAnnotations(cr, i, AnnotationType.RuntimeInvisibleAnnotations, loader));
+      expected.addAll(fieldAnnotations(cr, i, AnnotationType.RuntimeVisibleAnnotations, loader));
+      Collection<Annotation> actual = HashSetFactory.make();
+      if (f.getAnnotations() != null) {
+        actual.addAll(f.getAnnotations());
+      }
+      Assert.assertEquals(f.toString(), expected, actual);
+    }
+
+    Map<String, IMethod> methods = HashMapFactory.make();
+    for (IMethod m : c.getDeclaredMethods()) {
+      methods.put(m.getSelector().toString(), m);
+    }
+    Assert.assertEquals(name, cr.getMethodCount(), methods.size());
+    for (int i = 0; i < cr.getMethodCount(); i++) {
+      IMethod m = methods.get(cr.getMethodName(i) + cr.getMethodType(i));
+      Assert.assertNotNull(name + "." + cr.getMethodName(i) + cr.getMethodType(i), m);
+      Assert.assertEquals(m.toString(), (cr.getMethodAccessFlags(i) & ClassConstants.ACC_STATIC) != 0, m.isStatic());
+      Assert.assertEquals(m.toString(), (cr.getMethodAccessFlags(i) & ClassConstants.ACC_ABSTRACT) != 0, m.isAbstract());
+    }
+
+    ClassReader.AttrIterator attrs = new ClassReader.AttrIterator();
+    cr.initClassAttributeIterator(attrs);
+    Assert.assertEquals(name, Annotation.getAnnotationsFromReader(
+        AnnotationsReader.getReaderForAnnotation(AnnotationType.RuntimeVisibleAnnotations, attrs), loader),
+        c.getRuntimeVisibleAnnotations());
+    cr.initClassAttributeIterator(attrs);
+    Assert.assertEquals(name, Annotation.getAnnotationsFromReader(
+        AnnotationsReader.getReaderForAnnotation(AnnotationType.RuntimeInvisibleAnnotations, attrs), loader),
+        c.getRuntimeInvisibleAnnotations());
+  }
+
+  private static Collection<Annotation> fieldAnnotations(ClassReader cr, int i, AnnotationType type, ClassLoaderReference loader)
+      throws InvalidClassFileException {
+    ClassReader.AttrIterator attrs = new ClassReader.AttrIterator();
+    cr.initFieldAttributeIterator(i, attrs);
+    return Annotation.getAnnotationsFromReader(AnnotationsReader.getReaderForAnnotation(type, attrs), loader);
+  }
+
+  private static byte[] read(InputStream s) throws IOException {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      int n;
+      while ((n = s.read(buf)) > 0) {
+        out.write(buf, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      s.close();
+    }
+  }
+}
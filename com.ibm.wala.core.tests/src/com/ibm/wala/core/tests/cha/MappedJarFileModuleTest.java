@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.cha;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.JarFileModule;
+import com.ibm.wala.classLoader.MappedJarFileEntry;
+import com.ibm.wala.classLoader.MappedJarFileModule;
+import com.ibm.wala.classLoader.ModuleEntry;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.io.FileProvider;
+
+/**
+ * Check that a {@link MappedJarFileModule} has the entries, and gives the bytes, of a plain {@link JarFileModule}.
+ */
+public class MappedJarFileModuleTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(MappedJarFileModuleTest.class);
+  }
+
+  @Test
+  public void testTestdataJar() throws IOException {
+    File f = new FileProvider().getFile("com.ibm.wala.core.testdata_1.0.0.jar");
+    Assert.assertTrue(compare(f).size() > 100);
+  }
+
+  @Test
+  public void testStoredAndDeflated() throws IOException {
+    byte[] text = new byte[10000];
+    for (int i = 0; i < text.length; i++) {
+      text[i] = (byte) ("stored and deflated ".charAt(i % 20));
+    }
+    File f = File.createTempFile("mapped", ".jar");
+    try {
+      ZipOutputStream out = new ZipOutputStream(new FileOutputStream(f));
+      try {
+        ZipEntry stored = new ZipEntry("a/Stored.class");
+        stored.setMethod(ZipEntry.STORED);
+        stored.setSize(text.length);
+        CRC32 crc = new CRC32();
+        crc.update(text);
+        stored.setCrc(crc.getValue());
+        out.putNextEntry(stored);
+        out.write(text);
+        out.closeEntry();
+
+        ZipEntry deflated = new ZipEntry("a/Deflated.class");
+        deflated.setMethod(ZipEntry.DEFLATED);
+        out.putNextEntry(deflated);
+        out.write(text);
+        out.closeEntry();
+
+        out.putNextEntry(new ZipEntry("a/Empty.class"));
+        out.closeEntry();
+      } finally {
+        out.close();
+      }
+      Map<String, byte[]> mapped = compare(f);
+      Assert.assertEquals(3, mapped.size());
+      Assert.assertArrayEquals(text, mapped.get("a/Stored.class"));
+      Assert.assertArrayEquals(text, mapped.get("a/Deflated.class"));
+      Assert.assertEquals(0, mapped.get("a/Empty.class").length);
+    } finally {
+      f.delete();
+    }
+  }
+
+  /**
+   * a jar with 0xffff entries or more needs zip64 records, which the module does not read; it must fall back to the JarFile
+   */
+  @Test
+  public void testZip64Fallback() throws IOException {
+    File f = File.createTempFile("zip64", ".jar");
+    try {
+      ZipOutputStream out = new ZipOutputStream(new FileOutputStream(f));
+      try {
+        for (int i = 0; i < 0x10000; i++) {
+          out.putNextEntry(new ZipEntry("e" + i));
+          out.write(i & 0xff);
+          out.closeEntry();
+        }
+      } finally {
+        out.close();
+      }
+      MappedJarFileModule m = new MappedJarFileModule(new JarFile(f, false));
+      try {
+        Assert.assertFalse(m.isMapped("e0"));
+        int count = 0;
+        for (Iterator<ModuleEntry> it = m.getEntries(); it.hasNext();) {
+          ModuleEntry e = it.next();
+          Assert.assertFalse(e instanceof MappedJarFileEntry);
+          int i = Integer.parseInt(e.getName().substring(1));
+          byte[] bytes = read(e);
+          Assert.assertEquals(1, bytes.length);
+          Assert.assertEquals(i & 0xff, bytes[0] & 0xff);
+          count++;
+        }
+        Assert.assertEquals(0x10000, count);
+      } finally {
+        m.getJarFile().close();
+      }
+    } finally {
+      f.delete();
+    }
+  }
+
+  /**
+   * check that f read as a mapped module has the same entries and contents as f read as a plain one, and that all its entries
+   * are mapped
+   * 
+   * @return the contents of the mapped entries, by name
+   */
+  private static Map<String, byte[]> compare(File f) throws IOException {
+    JarFileModule plain = new JarFileModule(new JarFile(f, false));
+    MappedJarFileModule mapped = new MappedJarFileModule(new JarFile(f, false));
+    try {
+      Map<String, byte[]> expected = contents(plain.getEntries());
+      Map<String, byte[]> actual = contents(mapped.getEntries());
+      Assert.assertEquals(expected.keySet(), actual.keySet());
+      for (String name : expected.keySet()) {
+        Assert.assertTrue(name, mapped.isMapped(name));
+        Assert.assertArrayEquals(name, expected.get(name), actual.get(name));
+      }
+      return actual;
+    } finally {
+      plain.getJarFile().close();
+      mapped.getJarFile().close();
+    }
+  }
+
+  private static Map<String, byte[]> contents(Iterator<ModuleEntry> entries) throws IOException {
+    Map<String, byte[]> result = HashMapFactory.make();
+    while (entries.hasNext()) {
+      ModuleEntry e = entries.next();
+      result.put(e.getName(), read(e));
+    }
+    return result;
+  }
+
+  private static byte[] read(ModuleEntry e) throws IOException {
+    InputStream s = e.getInputStream();
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      int n;
+      while ((n = s.read(buf)) > 0) {
+        out.write(buf, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      s.close();
+    }
+  }
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.cfg.ControlFlowGraph;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ipa.cfg.ExplodedInterproceduralCFG;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.ISSABasicBlock;
+import com.ibm.wala.ssa.SSACache;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.ssa.analysis.ExplodedControlFlowGraph;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.graph.GraphIntegrity.UnsoundGraphException;
+
+/**
+ * Check the CFG views that {@link SSACache} derives from an IR and shares between analyses.
+ */
+public class CFGCacheTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(CFGCacheTest.class);
+  }
+
+  /**
+   * each view is built once per IR, and handed out again on later calls
+   */
+  @Test
+  public void testViewsAreShared() throws IOException, ClassHierarchyException, UnsoundGraphException, CancelException {
+    AnalysisCache cache = new AnalysisCache();
+    int count = 0;
+    for (IMethod m : applicationMethods()) {
+      IR ir = cache.getIR(m);
+      ExplodedControlFlowGraph exploded = cache.getExplodedCFG(ir);
+      ControlFlowGraph<SSAInstruction, ISSABasicBlock> pruned = cache.getExceptionPrunedCFG(ir);
+      ControlFlowGraph<SSAInstruction, IExplodedBasicBlock> nullPruned = cache.getNullPrunedCFG(ir, null);
+      Assert.assertSame(ir, exploded.getIR());
+      Assert.assertSame(m.toString(), exploded, cache.getExplodedCFG(ir));
+      Assert.assertSame(m.toString(), pruned, cache.getExceptionPrunedCFG(ir));
+      Assert.assertSame(m.toString(), nullPruned, cache.getNullPrunedCFG(ir, null));
+      Assert.assertSame(m.toString(), exploded, cache.getSSACache().findOrCreateExplodedCFG(ir, Everywhere.EVERYWHERE));
+      count++;
+    }
+    Assert.assertTrue(count > 100);
+  }
+
+  /**
+   * once an IR is rebuilt, the views cached for the old IR must not be handed out for the new one, nor the other way round
+   */
+  @Test
+  public void testStaleViewsAreRejected() throws IOException, ClassHierarchyException, UnsoundGraphException, CancelException {
+    AnalysisCache cache = new AnalysisCache();
+    SSACache ssaCache = cache.getSSACache();
+    SSAOptions options = new SSAOptions();
+    for (IMethod m : applicationMethods()) {
+      IR oldIR = ssaCache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+      ExplodedControlFlowGraph oldExploded = cache.getExplodedCFG(oldIR);
+      ControlFlowGraph<SSAInstruction, ISSABasicBlock> oldPruned = cache.getExceptionPrunedCFG(oldIR);
+      ControlFlowGraph<SSAInstruction, IExplodedBasicBlock> oldNullPruned = cache.getNullPrunedCFG(oldIR, null);
+
+      // drop only the IR, so the views stay cached next to the old IR
+      ssaCache.invalidateIR(m, Everywhere.EVERYWHERE);
+      IR newIR = ssaCache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+      Assert.assertNotSame(oldIR, newIR);
+
+      ExplodedControlFlowGraph newExploded = cache.getExplodedCFG(newIR);
+      Assert.assertNotSame(m.toString(), oldExploded, newExploded);
+      Assert.assertSame(newIR, newExploded.getIR());
+      Assert.assertNotSame(m.toString(), oldPruned, cache.getExceptionPrunedCFG(newIR));
+      Assert.assertNotSame(m.toString(), oldNullPruned, cache.getNullPrunedCFG(newIR, null));
+
+      // the cache now holds views of the new IR, which must not be handed out for the old one
+      ExplodedControlFlowGraph forOld = cache.getExplodedCFG(oldIR);
+      Assert.assertNotSame(m.toString(), newExploded, forOld);
+      Assert.assertSame(oldIR, forOld.getIR());
+    }
+  }
+
+  @Test
+  public void testInvalidateAndWipeDropViews() throws IOException, ClassHierarchyException, UnsoundGraphException,
+      CancelException {
+    AnalysisCache cache = new AnalysisCache();
+    SSACache ssaCache = cache.getSSACache();
+    Iterable<IMethod> methods = applicationMethods();
+    for (IMethod m : methods) {
+      IR ir = cache.getIR(m);
+      ExplodedControlFlowGraph exploded = cache.getExplodedCFG(ir);
+      ControlFlowGraph<SSAInstruction, ISSABasicBlock> pruned = cache.getExceptionPrunedCFG(ir);
+      ControlFlowGraph<SSAInstruction, IExplodedBasicBlock> nullPruned = cache.getNullPrunedCFG(ir, null);
+
+      ssaCache.invalidate(m, Everywhere.EVERYWHERE);
+      Assert.assertNotSame(m.toString(), exploded, cache.getExplodedCFG(ir));
+      Assert.assertNotSame(m.toString(), pruned, cache.getExceptionPrunedCFG(ir));
+      Assert.assertNotSame(m.toString(), nullPruned, cache.getNullPrunedCFG(ir, null));
+
+      exploded = cache.getExplodedCFG(ir);
+      pruned = cache.getExceptionPrunedCFG(ir);
+      nullPruned = cache.getNullPrunedCFG(ir, null);
+      ssaCache.invalidateCFGs(m, Everywhere.EVERYWHERE);
+      Assert.assertNotSame(m.toString(), exploded, cache.getExplodedCFG(ir));
+      Assert.assertNotSame(m.toString(), pruned, cache.getExceptionPrunedCFG(ir));
+      Assert.assertNotSame(m.toString(), nullPruned, cache.getNullPrunedCFG(ir, null));
+    }
+
+    IMethod m = methods.iterator().next();
+    IR ir = cache.getIR(m);
+    ExplodedControlFlowGraph exploded = cache.getExplodedCFG(ir);
+    ControlFlowGraph<SSAInstruction, ISSABasicBlock> pruned = cache.getExceptionPrunedCFG(ir);
+    ControlFlowGraph<SSAInstruction, IExplodedBasicBlock> nullPruned = cache.getNullPrunedCFG(ir, null);
+    ssaCache.wipe();
+    Assert.assertNotSame(exploded, cache.getExplodedCFG(ir));
+    Assert.assertNotSame(pruned, cache.getExceptionPrunedCFG(ir));
+    Assert.assertNotSame(nullPruned, cache.getNullPrunedCFG(ir, null));
+  }
+
+  /**
+   * an interprocedural CFG that takes its views from the cache should have the same nodes and edges as one that builds its own
+   */
+  @Test
+  public void testICFGWithCache() throws IOException, ClassHierarchyException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, TestConstants.SLICE1_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+    AnalysisCache cache = new AnalysisCache();
+    CallGraph cg = CallGraphTestUtil.buildZeroCFA(options, cache, cha, scope, false);
+
+    Map<String, Set<String>> withCache = shape(ExplodedInterproceduralCFG.make(cg, cache));
+    Assert.assertEquals(shape(ExplodedInterproceduralCFG.make(cg)), withCache);
+    Assert.assertTrue(withCache.size() > 1000);
+  }
+
+  private static Map<String, Set<String>> shape(ExplodedInterproceduralCFG icfg) {
+    Map<String, Set<String>> result = HashMapFactory.make();
+    for (BasicBlockInContext<IExplodedBasicBlock> b : icfg) {
+      Set<String> succs = HashSetFactory.make();
+      for (Iterator<BasicBlockInContext<IExplodedBasicBlock>> it = icfg.getSuccNodes(b); it.hasNext();) {
+        succs.add(name(it.next()));
+      }
+      result.put(name(b), succs);
+    }
+    return result;
+  }
+
+  private static String name(BasicBlockInContext<IExplodedBasicBlock> b) {
+    return b.getNode().getGraphNodeId() + ":" + b.getNumber();
+  }
+
+  private static Iterable<IMethod> applicationMethods() throws IOException, ClassHierarchyException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    Set<IMethod> result = HashSetFactory.make();
+    for (IClass c : cha) {
+      // CodeDeleted has a method without bytecodes
+      if (!c.getClassLoader().getReference().equals(ClassLoaderReference.Application)
+          || c.getName().toString().equals("LCodeDeleted")) {
+        continue;
+      }
+      for (IMethod m : c.getDeclaredMethods()) {
+        if (!m.isAbstract() && !m.isNative()) {
+          result.add(m);
+        }
+      }
+    }
+    return result;
+  }
+}
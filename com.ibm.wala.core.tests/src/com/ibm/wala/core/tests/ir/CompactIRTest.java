@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IBytecodeMethod;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.shrikeBT.IInstruction;
+import com.ibm.wala.shrikeBT.InvokeDynamicInstruction;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.ssa.CompactIR;
+import com.ibm.wala.ssa.DefUse;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.ISSABasicBlock;
+import com.ibm.wala.ssa.SSACache;
+import com.ibm.wala.ssa.SSACFG;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.ssa.SSASwitchInstruction;
+import com.ibm.wala.ssa.SymbolTable;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.Descriptor;
+import com.ibm.wala.types.Selector;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.strings.Atom;
+
+/**
+ * Check that IRs inflated from their {@link CompactIR} encodings are the same as the IRs they were made from.
+ */
+public class CompactIRTest extends WalaTestCase {
+
+  private static ClassHierarchy cha;
+
+  private static final DefaultIRFactory factory = new DefaultIRFactory();
+
+  public static void main(String[] args) {
+    justThisTest(CompactIRTest.class);
+  }
+
+  @BeforeClass
+  public static void beforeClass() throws IOException, ClassHierarchyException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    cha = ClassHierarchy.make(scope);
+  }
+
+  @Test
+  public void testSwitchesAndCatch() {
+    IClass klass = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Application, "LcornerCases/Switches"));
+    Assert.assertNotNull(klass);
+    for (IMethod m : klass.getDeclaredMethods()) {
+      checkRoundTrip(m, new SSAOptions());
+    }
+    IR ir = checkRoundTrip(method(klass, "parse", "(Ljava/lang/String;Ljava/lang/Object;)I"), new SSAOptions());
+    Assert.assertTrue(ir.iterateCatchInstructions().hasNext());
+    Assert.assertTrue(ir.iteratePhis().hasNext());
+    Assert.assertTrue(hasSwitch(ir));
+    Assert.assertTrue(hasSwitch(checkRoundTrip(method(klass, "dense", "(I)I"), new SSAOptions())));
+    Assert.assertTrue(hasSwitch(checkRoundTrip(method(klass, "sparse", "(I)I"), new SSAOptions())));
+  }
+
+  @Test
+  public void testPis() {
+    IClass klass = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Application, "LcornerCases/Switches"));
+    SSAOptions options = new SSAOptions();
+    options.setPiNodePolicy(SSAOptions.getAllBuiltInPiNodes());
+    IR ir = checkRoundTrip(method(klass, "parse", "(Ljava/lang/String;Ljava/lang/Object;)I"), options);
+    Assert.assertTrue(ir.iteratePis().hasNext());
+  }
+
+  @Test
+  public void testApplicationMethods() {
+    int methods = 0;
+    for (IClass c : cha) {
+      if (c.getClassLoader().getReference().equals(ClassLoaderReference.Application)) {
+        for (IMethod m : c.getDeclaredMethods()) {
+          if (!m.isAbstract() && !m.isNative() && !c.getName().toString().equals("LCodeDeleted")) {
+            checkRoundTrip(m, new SSAOptions());
+            methods++;
+          }
+        }
+      }
+    }
+    Assert.assertTrue(methods > 100);
+  }
+
+  /**
+   * IRs with invokedynamic are not encoded. The test data is Java 7 code without lambdas, so look for one in the library.
+   */
+  @Test
+  public void testInvokeDynamic() throws InvalidClassFileException {
+    IClass comparator = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Primordial, "Ljava/util/Comparator"));
+    Assert.assertNotNull(comparator);
+    IMethod m = comparator.getMethod(Selector.make("comparing(Ljava/util/function/Function;)Ljava/util/Comparator;"));
+    if (m == null) {
+      // a library older than Java 8 has no lambdas
+      return;
+    }
+    boolean invokeDynamic = false;
+    for (IInstruction s : ((IBytecodeMethod) m).getInstructions()) {
+      invokeDynamic |= s instanceof InvokeDynamicInstruction;
+    }
+    Assert.assertTrue(invokeDynamic);
+    Assert.assertNull(factory.compact(factory.makeIR(m, Everywhere.EVERYWHERE, new SSAOptions())));
+  }
+
+  /**
+   * The IR of a method wiped from an {@link SSACache} is inflated from its compact form
+   */
+  @Test
+  public void testSSACache() {
+    IClass klass = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Application, "LcornerCases/Switches"));
+    IMethod m = method(klass, "parse", "(Ljava/lang/String;Ljava/lang/Object;)I");
+    SSACache cache = new SSACache(factory, true);
+    SSAOptions options = new SSAOptions();
+    IR built = cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+    Assert.assertSame(built, cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options));
+    cache.wipe();
+    IR inflated = cache.findOrCreateIR(m, Everywhere.EVERYWHERE, options);
+    Assert.assertNotSame(built, inflated);
+    compare(built, inflated);
+
+    // different options must not be served from the compact form
+    SSAOptions pis = new SSAOptions();
+    pis.setPiNodePolicy(SSAOptions.getAllBuiltInPiNodes());
+    cache.wipe();
+    Assert.assertTrue(cache.findOrCreateIR(m, Everywhere.EVERYWHERE, pis).iteratePis().hasNext());
+  }
+
+  private static IMethod method(IClass klass, String name, String descriptor) {
+    IMethod m = klass.getMethod(new Selector(Atom.findOrCreateUnicodeAtom(name), Descriptor.findOrCreateUTF8(descriptor)));
+    Assert.assertNotNull(name, m);
+    return m;
+  }
+
+  private static boolean hasSwitch(IR ir) {
+    for (SSAInstruction s : ir.getInstructions()) {
+      if (s instanceof SSASwitchInstruction) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static IR checkRoundTrip(IMethod m, SSAOptions options) {
+    IR ir = factory.makeIR(m, Everywhere.EVERYWHERE, options);
+    CompactIR compact = factory.compact(ir);
+    Assert.assertNotNull(m.toString(), compact);
+    compare(ir, factory.inflate(compact));
+    return ir;
+  }
+
+  static void compare(IR expected, IR actual) {
+    String msg = expected.getMethod().toString();
+    Assert.assertEquals(msg, expected.getMethod(), actual.getMethod());
+
+    // instructions
+    SSAInstruction[] e = expected.getInstructions();
+    SSAInstruction[] a = actual.getInstructions();
+    Assert.assertEquals(msg, e.length, a.length);
+    for (int i = 0; i < e.length; i++) {
+      compare(msg + "@" + i, expected.getSymbolTable(), e[i], actual.getSymbolTable(), a[i]);
+    }
+
+    // phis, pis and catch instructions, block by block
+    SSACFG ecfg = expected.getControlFlowGraph();
+    SSACFG acfg = actual.getControlFlowGraph();
+    Assert.assertEquals(msg, ecfg.getNumberOfNodes(), acfg.getNumberOfNodes());
+    for (int b = 0; b < ecfg.getNumberOfNodes(); b++) {
+      ISSABasicBlock eb = ecfg.getNode(b);
+      ISSABasicBlock ab = acfg.getNode(b);
+      String bmsg = msg + " block " + b;
+      compare(bmsg, expected.getSymbolTable(), eb.iteratePhis(), actual.getSymbolTable(), ab.iteratePhis());
+      compare(bmsg, expected.getSymbolTable(), eb.iteratePis(), actual.getSymbolTable(), ab.iteratePis());
+      Assert.assertEquals(bmsg, eb.isCatchBlock(), ab.isCatchBlock());
+      if (eb.isCatchBlock()) {
+        compare(bmsg, expected.getSymbolTable(), ((SSACFG.ExceptionHandlerBasicBlock) eb).getCatchInstruction(),
+            actual.getSymbolTable(), ((SSACFG.ExceptionHandlerBasicBlock) ab).getCatchInstruction());
+      }
+    }
+
+    // symbol table
+    SymbolTable es = expected.getSymbolTable();
+    SymbolTable as = actual.getSymbolTable();
+    Assert.assertEquals(msg, es.getMaxValueNumber(), as.getMaxValueNumber());
+    Assert.assertArrayEquals(msg, es.getParameterValueNumbers(), as.getParameterValueNumbers());
+    for (int v = 1; v <= es.getMaxValueNumber(); v++) {
+      Assert.assertEquals(msg + " v" + v, es.getValueString(v), as.getValueString(v));
+      Assert.assertEquals(msg + " v" + v, es.isConstant(v), as.isConstant(v));
+    }
+
+    // def-use
+    DefUse edu = new DefUse(expected);
+    DefUse adu = new DefUse(actual);
+    for (int v = 1; v <= es.getMaxValueNumber(); v++) {
+      compare(msg + " def of v" + v, es, edu.getDef(v), as, adu.getDef(v));
+      Assert.assertEquals(msg + " uses of v" + v, edu.getNumberOfUses(v), adu.getNumberOfUses(v));
+      Assert.assertEquals(msg + " uses of v" + v, toStrings(es, edu.getUses(v)), toStrings(as, adu.getUses(v)));
+    }
+
+    // local names
+    for (int i = 0; i < e.length; i++) {
+      for (int v = 1; v <= es.getMaxValueNumber(); v++) {
+        Assert.assertArrayEquals(msg + "@" + i + " v" + v, expected.getLocalNames(i, v), actual.getLocalNames(i, v));
+      }
+    }
+  }
+
+  private static void compare(String msg, SymbolTable es, Iterator<? extends SSAInstruction> e, SymbolTable as,
+      Iterator<? extends SSAInstruction> a) {
+    Assert.assertEquals(msg, toStrings(es, e), toStrings(as, a));
+  }
+
+  private static void compare(String msg, SymbolTable es, SSAInstruction e, SymbolTable as, SSAInstruction a) {
+    if (e == null) {
+      Assert.assertNull(msg, a);
+    } else {
+      Assert.assertNotNull(msg, a);
+      Assert.assertEquals(msg, e.getClass(), a.getClass());
+      Assert.assertEquals(msg, e.iindex, a.iindex);
+      Assert.assertEquals(msg, e.toString(es), a.toString(as));
+      Assert.assertEquals(msg, e.getExceptionTypes(), a.getExceptionTypes());
+    }
+  }
+
+  private static List<String> toStrings(SymbolTable symbols, Iterator<? extends SSAInstruction> it) {
+    List<String> result = new ArrayList<String>();
+    while (it.hasNext()) {
+      SSAInstruction s = it.next();
+      result.add(s == null ? null : s.getClass().getName() + " " + s.toString(symbols));
+    }
+    return result;
+  }
+}
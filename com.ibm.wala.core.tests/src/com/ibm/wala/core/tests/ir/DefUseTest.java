@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.DefUse;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.types.ClassLoaderReference;
+
+/**
+ * Check {@link DefUse} against a scan of all the instructions of an IR, for every value number of the testdata methods.
+ */
+public class DefUseTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(DefUseTest.class);
+  }
+
+  @Test
+  public void testMatchesScan() throws IOException, ClassHierarchyException {
+    int methods = 0;
+    int usedTwice = 0;
+    for (IR ir : applicationIRs()) {
+      DefUse du = new DefUse(ir);
+      check(ir, du);
+      for (Iterator<SSAInstruction> it = ir.iterateAllInstructions(); it.hasNext();) {
+        SSAInstruction s = it.next();
+        for (int i = 0; i < s.getNumberOfUses(); i++) {
+          for (int j = 0; j < i; j++) {
+            if (s.getUse(i) != -1 && s.getUse(i) == s.getUse(j)) {
+              usedTwice++;
+            }
+          }
+        }
+      }
+      methods++;
+    }
+    Assert.assertTrue(methods > 100);
+    // an instruction that uses the same value twice is listed once among its uses
+    Assert.assertTrue(usedTwice > 0);
+  }
+
+  /**
+   * several threads ask a fresh DefUse at once, so they race to compute it
+   */
+  @Test
+  public void testConcurrentFirstQueries() throws Exception {
+    final int nThreads = 4;
+    ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+    try {
+      for (final IR ir : applicationIRs()) {
+        final DefUse du = new DefUse(ir);
+        final CountDownLatch start = new CountDownLatch(nThreads);
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (int t = 0; t < nThreads; t++) {
+          final int first = t;
+          results.add(pool.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+              start.countDown();
+              start.await();
+              // each thread makes its first query through a different method
+              switch (first) {
+              case 0:
+                du.getDef(1);
+                break;
+              case 1:
+                du.getUses(1);
+                break;
+              case 2:
+                du.getNumberOfUses(1);
+                break;
+              default:
+                break;
+              }
+              check(ir, du);
+              return null;
+            }
+          }));
+        }
+        for (Future<Void> f : results) {
+          f.get();
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static void check(IR ir, DefUse du) {
+    int max = ir.getSymbolTable().getMaxValueNumber();
+    SSAInstruction[] defs = new SSAInstruction[max + 1];
+    List<List<SSAInstruction>> uses = new ArrayList<List<SSAInstruction>>();
+    for (int v = 0; v <= max; v++) {
+      uses.add(new ArrayList<SSAInstruction>());
+    }
+    for (Iterator<SSAInstruction> it = ir.iterateAllInstructions(); it.hasNext();) {
+      SSAInstruction s = it.next();
+      for (int i = 0; i < s.getNumberOfDefs(); i++) {
+        defs[s.getDef(i)] = s;
+      }
+      for (int i = 0; i < s.getNumberOfUses(); i++) {
+        int v = s.getUse(i);
+        if (v != -1 && !uses.get(v).contains(s)) {
+          uses.get(v).add(s);
+        }
+      }
+    }
+
+    // up to and including the max value number
+    for (int v = 1; v <= max; v++) {
+      String msg = ir.getMethod() + " v" + v;
+      Assert.assertSame(msg, defs[v], du.getDef(v));
+      List<SSAInstruction> actual = new ArrayList<SSAInstruction>();
+      for (Iterator<SSAInstruction> it = du.getUses(v); it.hasNext();) {
+        actual.add(it.next());
+      }
+      Assert.assertEquals(msg, uses.get(v).size(), actual.size());
+      for (int i = 0; i < actual.size(); i++) {
+        Assert.assertSame(msg, uses.get(v).get(i), actual.get(i));
+      }
+      Assert.assertEquals(msg, uses.get(v).size(), du.getNumberOfUses(v));
+    }
+    Assert.assertNull(du.getDef(max + 1));
+  }
+
+  private static List<IR> applicationIRs() throws IOException, ClassHierarchyException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    AnalysisCache cache = new AnalysisCache();
+    List<IR> result = new ArrayList<IR>();
+    for (IClass c : cha) {
+      // CodeDeleted has a method without bytecodes
+      if (!c.getClassLoader().getReference().equals(ClassLoaderReference.Application)
+          || c.getName().toString().equals("LCodeDeleted")) {
+        continue;
+      }
+      for (IMethod m : c.getDeclaredMethods()) {
+        if (!m.isAbstract() && !m.isNative()) {
+          result.add(cache.getIR(m));
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,300 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.wala.cfg.ShrikeCFG;
+import com.ibm.wala.classLoader.IBytecodeMethod;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.PersistentIRCache;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.ssa.SymbolTable;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.Descriptor;
+import com.ibm.wala.types.Selector;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.strings.Atom;
+
+/**
+ * Check that {@link PersistentIRCache} gives back the IRs it saved, and nothing for files that are stale or corrupt.
+ */
+public class PersistentIRCacheTest extends WalaTestCase {
+
+  private static ClassHierarchy cha;
+
+  private static IBytecodeMethod parse;
+
+  private static IBytecodeMethod dense;
+
+  private File directory;
+
+  public static void main(String[] args) {
+    justThisTest(PersistentIRCacheTest.class);
+  }
+
+  @BeforeClass
+  public static void beforeClass() throws IOException, ClassHierarchyException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    cha = ClassHierarchy.make(scope);
+    IClass klass = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Application, "LcornerCases/Switches"));
+    parse = method(klass, "parse", "(Ljava/lang/String;Ljava/lang/Object;)I");
+    dense = method(klass, "dense", "(I)I");
+  }
+
+  @Before
+  public void makeDirectory() throws IOException {
+    directory = File.createTempFile("irs", "");
+    Assert.assertTrue(directory.delete());
+  }
+
+  @After
+  public void deleteDirectory() {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    IR built = saveIR(parse, new SSAOptions());
+
+    PersistentIRCache cache = new PersistentIRCache(directory);
+    Assert.assertNotNull(cache.find(parse, new SSAOptions(), ShrikeCFG.make(parse)));
+    IR read = new DefaultIRFactory(cache).makeIR(parse, Everywhere.EVERYWHERE, new SSAOptions());
+    Assert.assertNotSame(built, read);
+    CompactIRTest.compare(built, read);
+
+    // only methods that were stored are found
+    Assert.assertNull(cache.find(dense, new SSAOptions(), ShrikeCFG.make(dense)));
+  }
+
+  @Test
+  public void testOtherCFG() throws IOException {
+    saveIR(parse, new SSAOptions());
+    // an IR must not be inflated on a CFG with other edges, as it would be under another class hierarchy
+    Assert.assertNull(new PersistentIRCache(directory).find(parse, new SSAOptions(), ShrikeCFG.make(dense)));
+  }
+
+  @Test
+  public void testStaleChecksum() throws IOException {
+    saveIR(parse, new SSAOptions());
+    File f = theFile();
+    RandomAccessFile file = new RandomAccessFile(f, "rw");
+    try {
+      // magic, version, class name, then the class file checksum
+      file.seek(8);
+      file.seek(file.getFilePointer() + 2 + file.readUnsignedShort());
+      long checksum = file.readLong();
+      file.seek(file.getFilePointer() - 8);
+      file.writeLong(checksum ^ 1);
+    } finally {
+      file.close();
+    }
+    PersistentIRCache cache = new PersistentIRCache(directory);
+    Assert.assertNull(cache.find(parse, new SSAOptions(), ShrikeCFG.make(parse)));
+
+    // the stale file is replaced on the next save
+    IR built = new DefaultIRFactory(cache).makeIR(parse, Everywhere.EVERYWHERE, new SSAOptions());
+    cache.save();
+    Assert.assertNotNull(new PersistentIRCache(directory).find(parse, new SSAOptions(), ShrikeCFG.make(parse)));
+    CompactIRTest.compare(built, new DefaultIRFactory(new PersistentIRCache(directory)).makeIR(parse, Everywhere.EVERYWHERE,
+        new SSAOptions()));
+  }
+
+  @Test
+  public void testCorruptFile() throws IOException {
+    saveIR(parse, new SSAOptions());
+    File f = theFile();
+    long length = f.length();
+
+    // cut off in the middle of the IR
+    RandomAccessFile file = new RandomAccessFile(f, "rw");
+    try {
+      file.setLength(length - 10);
+    } finally {
+      file.close();
+    }
+    Assert.assertNull(new PersistentIRCache(directory).find(parse, new SSAOptions(), ShrikeCFG.make(parse)));
+
+    // garbage after the header
+    file = new RandomAccessFile(f, "rw");
+    try {
+      file.setLength(length);
+      file.seek(length / 2);
+      for (long i = length / 2; i < length; i++) {
+        file.write(0xff);
+      }
+    } finally {
+      file.close();
+    }
+    PersistentIRCache cache = new PersistentIRCache(directory);
+    Assert.assertNull(cache.find(parse, new SSAOptions(), ShrikeCFG.make(parse)));
+    Assert.assertNotNull(new DefaultIRFactory(cache).makeIR(parse, Everywhere.EVERYWHERE, new SSAOptions()));
+  }
+
+  /**
+   * a file damaged anywhere must give back the IR that was saved, or none, so that the IR is rebuilt
+   */
+  @Test
+  public void testDamagedBytes() throws IOException {
+    IR built = saveIR(parse, new SSAOptions());
+    byte[] saved = read(theFile());
+    for (int i = 0; i < saved.length; i++) {
+      for (int flip : new int[] { 0x01, 0xff }) {
+        byte[] damaged = saved.clone();
+        damaged[i] ^= flip;
+        write(theFile(), damaged);
+        CompactIRTest.compare(built, new DefaultIRFactory(new PersistentIRCache(directory)).makeIR(parse, Everywhere.EVERYWHERE,
+            new SSAOptions()));
+      }
+    }
+  }
+
+  /**
+   * an IR damaged in a way its checksum does not catch may decode to another IR, or be rejected as missing, but decoding it must
+   * not fail or exhaust memory
+   */
+  @Test
+  public void testDamagedUnderChecksum() throws IOException {
+    saveIR(parse, new SSAOptions());
+    byte[] saved = read(theFile());
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(saved));
+    // magic, version, class name, class file checksum and number of methods, then the one method: its selector, CFG digest and
+    // checksum, and the length of its IR
+    in.skipBytes(8);
+    in.readUTF();
+    in.skipBytes(12);
+    in.readUTF();
+    in.skipBytes(8);
+    int checksumAt = saved.length - in.available();
+    in.skipBytes(8);
+    int length = in.readInt();
+    int start = saved.length - in.available();
+    Assert.assertEquals(saved.length, start + length);
+
+    int decoded = 0;
+    for (int i = start; i < saved.length; i++) {
+      for (int flip : new int[] { 0x01, 0x80, 0xff }) {
+        byte[] damaged = saved.clone();
+        damaged[i] ^= flip;
+        CRC32 crc = new CRC32();
+        crc.update(damaged, start, length);
+        long checksum = crc.getValue();
+        for (int b = 0; b < 8; b++) {
+          damaged[checksumAt + b] = (byte) (checksum >>> (56 - 8 * b));
+        }
+        write(theFile(), damaged);
+        if (new PersistentIRCache(directory).find(parse, new SSAOptions(), ShrikeCFG.make(parse)) != null) {
+          decoded++;
+        }
+      }
+    }
+    // some damage, to a value number say, still decodes
+    Assert.assertTrue(decoded > 0);
+  }
+
+  @Test
+  public void testOptions() throws IOException {
+    SSAOptions pis = new SSAOptions();
+    pis.setPiNodePolicy(SSAOptions.getAllBuiltInPiNodes());
+    SSAOptions defaults = new SSAOptions();
+    defaults.setDefaultValues(new SSAOptions.DefaultValues() {
+      @Override
+      public int getDefaultValue(SymbolTable symtab, int valueNumber) {
+        return symtab.getConstant(0);
+      }
+    });
+
+    PersistentIRCache cache = new PersistentIRCache(directory);
+    DefaultIRFactory factory = new DefaultIRFactory(cache);
+    factory.makeIR(parse, Everywhere.EVERYWHERE, pis);
+    factory.makeIR(dense, Everywhere.EVERYWHERE, defaults);
+    cache.save();
+
+    cache = new PersistentIRCache(directory);
+    Assert.assertNull(cache.find(parse, pis, ShrikeCFG.make(parse)));
+    Assert.assertNull(cache.find(dense, defaults, ShrikeCFG.make(dense)));
+    Assert.assertNull(cache.find(parse, new SSAOptions(), ShrikeCFG.make(parse)));
+    Assert.assertNull(cache.find(dense, new SSAOptions(), ShrikeCFG.make(dense)));
+  }
+
+  /**
+   * build the IR of m through a fresh cache, and save it
+   */
+  private IR saveIR(IBytecodeMethod m, SSAOptions options) throws IOException {
+    PersistentIRCache cache = new PersistentIRCache(directory);
+    IR ir = new DefaultIRFactory(cache).makeIR(m, Everywhere.EVERYWHERE, options);
+    cache.save();
+    return ir;
+  }
+
+  private static byte[] read(File f) throws IOException {
+    byte[] result = new byte[(int) f.length()];
+    DataInputStream in = new DataInputStream(new FileInputStream(f));
+    try {
+      in.readFully(result);
+    } finally {
+      in.close();
+    }
+    return result;
+  }
+
+  private static void write(File f, byte[] bytes) throws IOException {
+    FileOutputStream out = new FileOutputStream(f);
+    try {
+      out.write(bytes);
+    } finally {
+      out.close();
+    }
+  }
+
+  private File theFile() {
+    File[] files = directory.listFiles();
+    Assert.assertNotNull(files);
+    Assert.assertEquals(1, files.length);
+    return files[0];
+  }
+
+  private static IBytecodeMethod method(IClass klass, String name, String descriptor) {
+    IBytecodeMethod m = (IBytecodeMethod) klass.getMethod(new Selector(Atom.findOrCreateUnicodeAtom(name), Descriptor
+        .findOrCreateUTF8(descriptor)));
+    Assert.assertNotNull(name, m);
+    return m;
+  }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.ir;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ssa.DefaultIRFactory;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.IRFactory;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.Pair;
+
+/**
+ * Check that the IRs built by {@link AnalysisCache#prebuildIRs(java.util.Collection, SSAOptions, java.util.concurrent.Executor,
+ * IProgressMonitor)} are cached, and are the IRs that would have been built on demand.
+ */
+public class PrebuildIRTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(PrebuildIRTest.class);
+  }
+
+  @Test
+  public void testPrebuiltIRsMatchOnDemand() throws IOException, ClassHierarchyException, CancelException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    List<Pair<IMethod, Context>> methods = applicationMethods(cha);
+
+    final Map<IMethod, Integer> built = HashMapFactory.make();
+    final DefaultIRFactory factory = new DefaultIRFactory();
+    AnalysisCache cache = new AnalysisCache(new IRFactory<IMethod>() {
+      @Override
+      public IR makeIR(IMethod method, Context c, SSAOptions options) {
+        synchronized (built) {
+          Integer n = built.get(method);
+          built.put(method, n == null ? 1 : n + 1);
+        }
+        return factory.makeIR(method, c, options);
+      }
+
+      @Override
+      public boolean contextIsIrrelevant(IMethod method) {
+        return factory.contextIsIrrelevant(method);
+      }
+    });
+    SSAOptions options = new SSAOptions();
+    CountingMonitor monitor = new CountingMonitor();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      cache.prebuildIRs(methods, options, executor, monitor);
+    } finally {
+      executor.shutdown();
+    }
+    Assert.assertEquals(methods.size(), monitor.worked);
+    Assert.assertTrue(monitor.done);
+
+    AnalysisCache onDemand = new AnalysisCache();
+    for (Pair<IMethod, Context> p : methods) {
+      Assert.assertEquals(p.fst.toString(), Integer.valueOf(1), built.get(p.fst));
+      IR prebuilt = cache.getSSACache().findOrCreateIR(p.fst, p.snd, options);
+      // the cached IR is returned, rather than a new one
+      Assert.assertEquals(p.fst.toString(), Integer.valueOf(1), built.get(p.fst));
+      Assert.assertSame(cache.getSSACache().findOrCreateDU(prebuilt, p.snd), cache.getSSACache().findOrCreateDU(p.fst, p.snd,
+          options));
+      CompactIRTest.compare(onDemand.getSSACache().findOrCreateIR(p.fst, p.snd, options), prebuilt);
+    }
+  }
+
+  @Test
+  public void testCancelPrebuild() throws IOException, ClassHierarchyException, InterruptedException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    List<Pair<IMethod, Context>> methods = applicationMethods(cha);
+
+    final AtomicInteger built = new AtomicInteger();
+    final DefaultIRFactory factory = new DefaultIRFactory();
+    AnalysisCache cache = new AnalysisCache(new IRFactory<IMethod>() {
+      @Override
+      public IR makeIR(IMethod method, Context c, SSAOptions options) {
+        built.incrementAndGet();
+        return factory.makeIR(method, c, options);
+      }
+
+      @Override
+      public boolean contextIsIrrelevant(IMethod method) {
+        return factory.contextIsIrrelevant(method);
+      }
+    });
+    // cancel once the first IR is done, while the others are queued or being built
+    CountingMonitor monitor = new CountingMonitor() {
+      @Override
+      public boolean isCanceled() {
+        return worked > 0;
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      cache.prebuildIRs(methods, new SSAOptions(), executor, monitor);
+      Assert.fail("expected prebuilding to be canceled");
+    } catch (CancelException e) {
+      // expected
+    } finally {
+      executor.shutdown();
+    }
+    // the queued builds were dropped, so the pool drains promptly
+    Assert.assertTrue("IR builders did not shut down", executor.awaitTermination(10, TimeUnit.SECONDS));
+    Assert.assertEquals(1, monitor.worked);
+    Assert.assertFalse(monitor.done);
+    Assert.assertTrue(built.get() < methods.size());
+  }
+
+  /**
+   * @return the application methods with bytecode, in the everywhere context
+   */
+  private static List<Pair<IMethod, Context>> applicationMethods(ClassHierarchy cha) {
+    List<Pair<IMethod, Context>> methods = new ArrayList<Pair<IMethod, Context>>();
+    for (IClass c : cha) {
+      // CodeDeleted has a method without bytecodes
+      if (!c.getClassLoader().getReference().equals(ClassLoaderReference.Application)
+          || c.getName().toString().equals("LCodeDeleted")) {
+        continue;
+      }
+      for (IMethod m : c.getDeclaredMethods()) {
+        if (!m.isAbstract() && !m.isNative()) {
+          methods.add(Pair.<IMethod, Context> make(m, Everywhere.EVERYWHERE));
+        }
+      }
+    }
+    Assert.assertTrue(methods.size() > 100);
+    return methods;
+  }
+
+  private static class CountingMonitor implements IProgressMonitor {
+    int worked;
+
+    boolean done;
+
+    @Override
+    public void beginTask(String task, int totalWork) {
+    }
+
+    @Override
+    public void subTask(String subTask) {
+    }
+
+    @Override
+    public void cancel() {
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return false;
+    }
+
+    @Override
+    public void done() {
+      done = true;
+    }
+
+    @Override
+    public void worked(int units) {
+      worked += units;
+    }
+
+    @Override
+    public String getCancelMessage() {
+      return null;
+    }
+  }
+}
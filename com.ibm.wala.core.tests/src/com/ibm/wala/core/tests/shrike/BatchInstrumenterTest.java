@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.shrike;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.shrikeBT.ConstantInstruction;
+import com.ibm.wala.shrikeBT.IInstruction;
+import com.ibm.wala.shrikeBT.IInvokeInstruction;
+import com.ibm.wala.shrikeBT.Instruction;
+import com.ibm.wala.shrikeBT.MethodEditor;
+import com.ibm.wala.shrikeBT.Util;
+import com.ibm.wala.shrikeBT.analysis.ClassHierarchyStore;
+import com.ibm.wala.shrikeBT.shrikeCT.BatchInstrumenter;
+import com.ibm.wala.shrikeBT.shrikeCT.CTUtils;
+import com.ibm.wala.shrikeBT.shrikeCT.ClassInstrumenter;
+import com.ibm.wala.shrikeBT.shrikeCT.OfflineInstrumenter;
+import com.ibm.wala.shrikeCT.ClassWriter;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.io.FileProvider;
+
+/**
+ * Check that a {@link BatchInstrumenter}, which reuses one {@link ClassWriter} per thread, writes the same classes as the
+ * classic loop over {@link OfflineInstrumenter#nextClass()} with a fresh writer per class.
+ */
+public class BatchInstrumenterTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(BatchInstrumenterTest.class);
+  }
+
+  static final Instruction callProbe = Util.makeInvoke(BatchInstrumenterTest.class, "probe", new Class<?>[] { int.class });
+
+  public static void probe(int site) {
+  }
+
+  /**
+   * precede every call site by a call to probe(site)
+   */
+  private static final BatchInstrumenter.MethodPatcher patcher = new BatchInstrumenter.MethodPatcher() {
+    @Override
+    public void patch(ClassInstrumenter ci, int m, MethodEditor me) {
+      IInstruction[] instr = me.getInstructions();
+      for (int i = 0; i < instr.length; i++) {
+        if (instr[i] instanceof IInvokeInstruction) {
+          final int site = i;
+          me.insertBefore(i, new MethodEditor.Patch() {
+            @Override
+            public void emitTo(MethodEditor.Output w) {
+              w.emit(ConstantInstruction.make(site));
+              w.emit(callProbe);
+            }
+          });
+        }
+      }
+    }
+  };
+
+  @Test
+  public void testSameOutputAsClassicLoop() throws Exception {
+    List<Pair<String, byte[]>> classic = rewrite(0, false);
+    Assert.assertTrue(classic.size() > 100);
+    assertSameEntries(classic, rewrite(1, false));
+    assertSameEntries(classic, rewrite(4, false));
+  }
+
+  /**
+   * compute new stack maps rather than reuse the old ones, so the workers share the type lattice of one class hierarchy
+   */
+  @Test
+  public void testSameOutputWithSharedHierarchy() throws Exception {
+    List<Pair<String, byte[]>> classic = rewrite(0, true);
+    Assert.assertTrue(classic.size() > 100);
+    assertSameEntries(classic, rewrite(1, true));
+    assertSameEntries(classic, rewrite(4, true));
+  }
+
+  /**
+   * a writer reset after emitting one class must emit the next as a fresh writer would
+   */
+  @Test
+  public void testResetWriter() throws Exception {
+    OfflineInstrumenter instrumenter = new OfflineInstrumenter(true);
+    instrumenter.addInputJar(testdata());
+    instrumenter.beginTraversal();
+    ClassWriter reused = new ClassWriter();
+    int count = 0;
+    ClassInstrumenter ci;
+    while ((ci = instrumenter.nextClass()) != null) {
+      byte[] bytes = ci.getReader().getBytes();
+      String name = ci.getReader().getName();
+
+      byte[] fromFresh = patch(new ClassInstrumenter(name, bytes, null, true)).emitClass(new ClassWriter()).makeBytes();
+      byte[] fromReused = patch(new ClassInstrumenter(name, bytes, null, true)).emitClass(reused).makeBytes();
+      Assert.assertArrayEquals(name, fromFresh, fromReused);
+      reused.reset();
+
+      // leave state behind that a fresh writer would not have, for the next class
+      reused.setForceAddCPEntries(true);
+      patch(new ClassInstrumenter(name, bytes, null, true)).emitClass(reused).makeBytes();
+      reused.reset();
+      count++;
+    }
+    instrumenter.close();
+    Assert.assertTrue(count > 100);
+  }
+
+  private static ClassInstrumenter patch(ClassInstrumenter ci) throws Exception {
+    BatchInstrumenter.patchMethods(patcher).transform(ci);
+    return ci;
+  }
+
+  /**
+   * rewrite the testdata jar with the given number of threads, or with the classic loop if 0
+   *
+   * @param withHierarchy compute stack maps over a class hierarchy of the jar, made afresh for this run
+
+   * @return the entries of the output jar, in order
+   */
+  private static List<Pair<String, byte[]>> rewrite(int threads, boolean withHierarchy) throws Exception {
+    File out = File.createTempFile("batch", ".jar");
+    try {
+      OfflineInstrumenter instrumenter = new OfflineInstrumenter(!withHierarchy);
+      instrumenter.addInputJar(testdata());
+      if (withHierarchy) {
+        instrumenter.setClassHierarchyProvider(hierarchy());
+      }
+      instrumenter.setOutputJar(out);
+      if (threads == 0) {
+        instrumenter.beginTraversal();
+        BatchInstrumenter.ClassTransformer t = BatchInstrumenter.patchMethods(patcher);
+        ClassInstrumenter ci;
+        while ((ci = instrumenter.nextClass()) != null) {
+          t.transform(ci);
+          if (ci.isChanged()) {
+            instrumenter.outputModifiedClass(ci);
+          }
+        }
+      } else {
+        new BatchInstrumenter(instrumenter, threads).run(BatchInstrumenter.patchMethods(patcher));
+      }
+      instrumenter.close();
+      return entries(out);
+    } finally {
+      out.delete();
+    }
+  }
+
+  private static ClassHierarchyStore hierarchy() throws Exception {
+    OfflineInstrumenter instrumenter = new OfflineInstrumenter(true);
+    instrumenter.addInputJar(testdata());
+    instrumenter.beginTraversal();
+    ClassHierarchyStore store = new ClassHierarchyStore();
+    ClassInstrumenter ci;
+    while ((ci = instrumenter.nextClass()) != null) {
+      CTUtils.addClassToHierarchy(store, ci.getReader());
+    }
+    instrumenter.close();
+    return store;
+  }
+
+  private static void assertSameEntries(List<Pair<String, byte[]>> expected, List<Pair<String, byte[]>> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.get(i).fst, actual.get(i).fst);
+      Assert.assertArrayEquals(expected.get(i).fst, expected.get(i).snd, actual.get(i).snd);
+    }
+  }
+
+  private static List<Pair<String, byte[]>> entries(File f) throws IOException {
+    List<Pair<String, byte[]>> result = new ArrayList<Pair<String, byte[]>>();
+    JarFile jar = new JarFile(f);
+    try {
+      for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements();) {
+        JarEntry entry = e.nextElement();
+        result.add(Pair.make(entry.getName(), read(jar.getInputStream(entry))));
+      }
+    } finally {
+      jar.close();
+    }
+    return result;
+  }
+
+  private static File testdata() throws IOException {
+    return new FileProvider().getFile("com.ibm.wala.core.testdata_1.0.0.jar");
+  }
+
+  private static byte[] read(InputStream s) throws IOException {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      int n;
+      while ((n = s.read(buf)) > 0) {
+        out.write(buf, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      s.close();
+    }
+  }
+}
@@ -0,0 +1,253 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.shrike;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.shrikeBT.ConstantInstruction;
+import com.ibm.wala.shrikeBT.MethodData;
+import com.ibm.wala.shrikeBT.MethodEditor;
+import com.ibm.wala.shrikeBT.PopInstruction;
+import com.ibm.wala.shrikeBT.shrikeCT.ClassInstrumenter;
+import com.ibm.wala.shrikeBT.shrikeCT.OfflineInstrumenter;
+import com.ibm.wala.shrikeCT.ClassReader;
+import com.ibm.wala.shrikeCT.ClassWriter;
+import com.ibm.wala.shrikeCT.ConstantPoolParser;
+import com.ibm.wala.util.io.FileProvider;
+
+/**
+ * Check that {@link ClassInstrumenter}, which copies runs of untouched members as single chunks, writes the same classes as a copy
+ * of one member at a time, and that {@link ClassWriter} sizes its output exactly.
+ */
+public class ClassWriterTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(ClassWriterTest.class);
+  }
+
+  /**
+   * a string that needs two and three bytes per character in modified UTF-8, and a NUL, which needs two
+   */
+  private static final String NON_ASCII = "h\u00e9llo w\u4e16rld \u0000 \ud83d\ude00";
+
+  /**
+   * a string of 30000 characters, most of them more than one byte long
+   */
+  private static final String LONG;
+  static {
+    StringBuilder b = new StringBuilder();
+    for (int i = 0; i < 30000; i++) {
+      b.append((char) (i % 3 == 0 ? 'a' + i % 26 : 0x100 + i % 0x700));
+    }
+    LONG = b.toString();
+  }
+
+  @Test
+  public void testDeletedMethodInRun() throws Exception {
+    int deleted = 0;
+    for (byte[] bytes : testdataClasses()) {
+      ClassReader cr = new ClassReader(bytes);
+      int middle = cr.getMethodCount() / 2;
+      ClassInstrumenter ci = new ClassInstrumenter("test", bytes, null, true);
+      if (cr.getMethodCount() >= 3) {
+        // the methods on either side are untouched, so it splits a run
+        ci.deleteMethod(middle);
+        deleted++;
+      } else {
+        middle = -1;
+      }
+      SizeRecordingWriter chunked = new SizeRecordingWriter();
+      byte[] out = ci.emitClass(chunked).makeBytes();
+      Assert.assertEquals(cr.getName(), chunked.size, out.length);
+
+      SizeRecordingWriter perElement = new SizeRecordingWriter();
+      copyPerElement(cr, perElement, middle);
+      Assert.assertArrayEquals(cr.getName(), perElement.makeBytes(), out);
+
+      ClassReader result = new ClassReader(out);
+      Assert.assertEquals(cr.getName(), cr.getMethodCount() - (middle == -1 ? 0 : 1), result.getMethodCount());
+    }
+    Assert.assertTrue(deleted > 20);
+  }
+
+  @Test
+  public void testNewConstants() throws Exception {
+    for (byte[] bytes : testdataClasses()) {
+      ClassReader cr = new ClassReader(bytes);
+      SizeRecordingWriter chunked = new SizeRecordingWriter();
+      new ClassInstrumenter("test", bytes, null, true).emitClass(chunked);
+      int[] indices = addConstants(chunked);
+      byte[] out = chunked.makeBytes();
+      Assert.assertEquals(cr.getName(), chunked.size, out.length);
+
+      SizeRecordingWriter perElement = new SizeRecordingWriter();
+      copyPerElement(cr, perElement, -1);
+      addConstants(perElement);
+      Assert.assertArrayEquals(cr.getName(), perElement.makeBytes(), out);
+
+      checkConstants(cr.getName(), new ClassReader(out).getCP(), indices);
+    }
+  }
+
+  /**
+   * the size of a class with forced entries is only estimated, but the class must still come out the same
+   */
+  @Test
+  public void testForcedConstants() throws Exception {
+    for (byte[] bytes : testdataClasses()) {
+      ClassReader cr = new ClassReader(bytes);
+      ClassWriter chunked = new ClassWriter();
+      new ClassInstrumenter("test", bytes, null, true).emitClass(chunked);
+      chunked.setForceAddCPEntries(true);
+      int[] indices = addConstants(chunked);
+      byte[] out = chunked.makeBytes();
+
+      ClassWriter perElement = new ClassWriter();
+      copyPerElement(cr, perElement, -1);
+      perElement.setForceAddCPEntries(true);
+      addConstants(perElement);
+      Assert.assertArrayEquals(cr.getName(), perElement.makeBytes(), out);
+
+      ConstantPoolParser cp = new ClassReader(out).getCP();
+      checkConstants(cr.getName(), cp, indices);
+      // each constant was added twice, and forced into a fresh entry each time
+      Assert.assertTrue(cr.getName(), indices[1] != indices[0]);
+
+      ClassWriter shared = new ClassWriter();
+      new ClassInstrumenter("test", bytes, null, true).emitClass(shared);
+      addConstants(shared);
+      Assert.assertTrue(cr.getName(), cp.getItemCount() > new ClassReader(shared.makeBytes()).getCP().getItemCount());
+    }
+  }
+
+  /**
+   * edited methods are compiled into the writer, and add constants of their own
+   */
+  @Test
+  public void testEditedMethods() throws Exception {
+    int edited = 0;
+    for (byte[] bytes : testdataClasses()) {
+      ClassReader cr = new ClassReader(bytes);
+      ClassInstrumenter ci = new ClassInstrumenter("test", bytes, null, true);
+      for (int i = 0; i < cr.getMethodCount(); i += 2) {
+        MethodData d = ci.visitMethod(i);
+        if (d != null) {
+          MethodEditor me = new MethodEditor(d);
+          me.beginPass();
+          me.insertAtStart(new MethodEditor.Patch() {
+            @Override
+            public void emitTo(MethodEditor.Output w) {
+              w.emit(ConstantInstruction.makeString(NON_ASCII));
+              w.emit(PopInstruction.make(1));
+            }
+          });
+          me.applyPatches();
+          me.endPass();
+          edited++;
+        }
+      }
+      if (cr.getMethodCount() >= 3) {
+        ci.deleteMethod(1);
+      }
+      SizeRecordingWriter w = new SizeRecordingWriter();
+      ci.emitClass(w);
+      addConstants(w);
+      byte[] out = w.makeBytes();
+      Assert.assertEquals(cr.getName(), w.size, out.length);
+      Assert.assertEquals(cr.getName(), cr.getMethodCount() - (cr.getMethodCount() >= 3 ? 1 : 0), new ClassReader(out)
+          .getMethodCount());
+    }
+    Assert.assertTrue(edited > 100);
+  }
+
+  /**
+   * add each constant twice
+   *
+   * @return the indices of the entries added
+   */
+  private static int[] addConstants(ClassWriter w) {
+    return new int[] { w.addCPString(NON_ASCII), w.addCPString(NON_ASCII), w.addCPUtf8(LONG), w.addCPUtf8(LONG),
+        w.addCPLong(Long.MIN_VALUE), w.addCPLong(Long.MIN_VALUE), w.addCPDouble(Math.PI), w.addCPDouble(Math.PI),
+        w.addCPFloat(-2.5f), w.addCPFloat(-2.5f), w.addCPMethodRef("foo/B\u00e4r", "m\u4e16", "()V"), w.addCPMethodRef("foo/B\u00e4r", "m\u4e16", "()V") };
+  }
+
+  private static void checkConstants(String name, ConstantPoolParser cp, int[] indices) throws Exception {
+    for (int i = 0; i < 2; i++) {
+      Assert.assertEquals(name, NON_ASCII, cp.getCPString(indices[i]));
+      Assert.assertEquals(name, LONG, cp.getCPUtf8(indices[2 + i]));
+      Assert.assertEquals(name, Long.MIN_VALUE, cp.getCPLong(indices[4 + i]));
+      Assert.assertEquals(name, Math.PI, cp.getCPDouble(indices[6 + i]), 0);
+      Assert.assertEquals(name, -2.5f, cp.getCPFloat(indices[8 + i]), 0);
+      Assert.assertEquals(name, "foo/B\u00e4r", cp.getCPRefClass(indices[10 + i]));
+      Assert.assertEquals(name, "m\u4e16", cp.getCPRefName(indices[10 + i]));
+    }
+  }
+
+  /**
+   * copy the class into w one field, method and attribute at a time, as ClassInstrumenter used to
+   *
+   * @param deleted the method to leave out, or -1
+   */
+  private static void copyPerElement(ClassReader cr, ClassWriter w, int deleted) throws Exception {
+    w.setMajorVersion(cr.getMajorVersion());
+    w.setMinorVersion(cr.getMinorVersion());
+    w.setRawCP(cr.getCP(), false);
+    w.setAccessFlags(cr.getAccessFlags());
+    w.setNameIndex(cr.getNameIndex());
+    w.setSuperNameIndex(cr.getSuperNameIndex());
+    w.setInterfaceNameIndices(cr.getInterfaceNameIndices());
+    for (int i = 0; i < cr.getFieldCount(); i++) {
+      w.addRawField(new ClassWriter.RawElement(cr.getBytes(), cr.getFieldRawOffset(i), cr.getFieldRawSize(i)));
+    }
+    for (int i = 0; i < cr.getMethodCount(); i++) {
+      if (i != deleted) {
+        w.addRawMethod(new ClassWriter.RawElement(cr.getBytes(), cr.getMethodRawOffset(i), cr.getMethodRawSize(i)));
+      }
+    }
+    ClassReader.AttrIterator iter = new ClassReader.AttrIterator();
+    for (cr.initClassAttributeIterator(iter); iter.isValid(); iter.advance()) {
+      w.addClassAttribute(new ClassWriter.RawElement(cr.getBytes(), iter.getRawOffset(), iter.getRawSize()));
+    }
+  }
+
+  private static List<byte[]> testdataClasses() throws Exception {
+    OfflineInstrumenter instrumenter = new OfflineInstrumenter(true);
+    instrumenter.addInputJar(new FileProvider().getFile("com.ibm.wala.core.testdata_1.0.0.jar"));
+    instrumenter.beginTraversal();
+    List<byte[]> result = new ArrayList<byte[]>();
+    ClassInstrumenter ci;
+    while ((ci = instrumenter.nextClass()) != null) {
+      result.add(ci.getReader().getBytes());
+    }
+    instrumenter.close();
+    Assert.assertTrue(result.size() > 100);
+    return result;
+  }
+
+  /**
+   * remembers the size makeBytes() computed for its buffer
+   */
+  private static class SizeRecordingWriter extends ClassWriter {
+    int size = -1;
+
+    @Override
+    protected int computeSize() {
+      Assert.assertEquals(-1, size);
+      size = super.computeSize();
+      return size;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.shrike;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.shrikeBT.ConstantInstruction;
+import com.ibm.wala.shrikeBT.IInstruction;
+import com.ibm.wala.shrikeBT.LoadInstruction;
+import com.ibm.wala.shrikeBT.MethodData;
+import com.ibm.wala.shrikeBT.MethodEditor;
+import com.ibm.wala.shrikeBT.PopInstruction;
+import com.ibm.wala.shrikeBT.ReturnInstruction;
+import com.ibm.wala.shrikeBT.StoreInstruction;
+import com.ibm.wala.shrikeBT.analysis.Verifier;
+import com.ibm.wala.shrikeBT.info.LocalAllocator;
+import com.ibm.wala.shrikeBT.shrikeCT.ClassInstrumenter;
+import com.ibm.wala.shrikeCT.ClassReader;
+
+/**
+ * Check that classes whose stack maps are reused when they are re-emitted still pass the JVM's verifier when patches use new
+ * locals.
+ */
+public class StackMapReuseTest {
+
+  /**
+   * testdata classes with branches and returns at branch targets, so they need frames
+   */
+  private static final String[] CLASSES = { "dataflow/StaticDataflow", "slice/TestCD5" };
+
+  @Test
+  public void testPatchWithNewLocal() throws Exception {
+    for (String c : CLASSES) {
+      byte[] bytes = instrument(readClass(c));
+      // the JVM checks the stack maps of classes with version 51 or more when it links the class
+      ClassLoader loader = new DefiningLoader(c.replace('/', '.'), bytes);
+      Class<?> k = Class.forName(c.replace('/', '.'), true, loader);
+      Assert.assertSame(c, loader, k.getClassLoader());
+    }
+  }
+
+  /**
+   * store a constant into a new local at the start of each method, and load it before each return
+   */
+  private static byte[] instrument(byte[] bytes) throws Exception {
+    ClassInstrumenter ci = new ClassInstrumenter("test", bytes, null, true);
+    Assert.assertTrue(new ClassReader(bytes).getMajorVersion() >= 51);
+    for (int i = 0; i < ci.getReader().getMethodCount(); i++) {
+      MethodData d = ci.visitMethod(i);
+      if (d == null) {
+        continue;
+      }
+      final int local = LocalAllocator.allocate(d, "I");
+      MethodEditor me = new MethodEditor(d);
+      me.beginPass();
+      me.insertAtStart(new MethodEditor.Patch() {
+        @Override
+        public void emitTo(MethodEditor.Output w) {
+          w.emit(ConstantInstruction.make(1));
+          w.emit(StoreInstruction.make("I", local));
+        }
+      });
+      IInstruction[] ins = d.getInstructions();
+      for (int k = 0; k < ins.length; k++) {
+        if (ins[k] instanceof ReturnInstruction) {
+          me.insertBefore(k, new MethodEditor.Patch() {
+            @Override
+            public void emitTo(MethodEditor.Output w) {
+              w.emit(LoadInstruction.make("I", local));
+              w.emit(PopInstruction.make(1));
+            }
+          });
+        }
+      }
+      me.applyPatches();
+      me.endPass();
+      new Verifier(d).verify();
+    }
+    Assert.assertTrue(ci.isChanged());
+    return ci.emitClass().makeBytes();
+  }
+
+  private static byte[] readClass(String name) throws IOException {
+    InputStream s = StackMapReuseTest.class.getClassLoader().getResourceAsStream(name + ".class");
+    Assert.assertNotNull("cannot find " + name, s);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      int n;
+      while ((n = s.read(buf)) > 0) {
+        out.write(buf, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      s.close();
+    }
+  }
+
+  /**
+   * defines one class from given bytes, and delegates everything else
+   */
+  private static class DefiningLoader extends ClassLoader {
+    private final String name;
+
+    private final byte[] bytes;
+
+    DefiningLoader(String name, byte[] bytes) {
+      super(StackMapReuseTest.class.getClassLoader());
+      this.name = name;
+      this.bytes = bytes;
+    }
+
+    @Override
+    protected synchronized Class<?> loadClass(String n, boolean resolve) throws ClassNotFoundException {
+      if (n.equals(name)) {
+        Class<?> c = findLoadedClass(n);
+        if (c == null) {
+          c = defineClass(n, bytes, 0, bytes.length);
+        }
+        if (resolve) {
+          resolveClass(c);
+        }
+        return c;
+      }
+      return super.loadClass(n, resolve);
+    }
+  }
+}
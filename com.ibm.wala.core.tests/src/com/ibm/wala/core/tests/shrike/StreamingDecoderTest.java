@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.shrike;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.classLoader.BytecodeLanguage;
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.CodeScanner;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.classLoader.ShrikeBTMethod;
+import com.ibm.wala.core.tests.callGraph.CallGraphTestUtil;
+import com.ibm.wala.core.tests.util.TestConstants;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.shrikeBT.Constants;
+import com.ibm.wala.shrikeBT.ConstantPoolReader;
+import com.ibm.wala.shrikeBT.Decoder.InvalidBytecodeException;
+import com.ibm.wala.shrikeBT.IArrayLoadInstruction;
+import com.ibm.wala.shrikeBT.IArrayStoreInstruction;
+import com.ibm.wala.shrikeBT.IGetInstruction;
+import com.ibm.wala.shrikeBT.IInstruction;
+import com.ibm.wala.shrikeBT.IInvokeInstruction;
+import com.ibm.wala.shrikeBT.IPutInstruction;
+import com.ibm.wala.shrikeBT.ITypeTestInstruction;
+import com.ibm.wala.shrikeBT.MonitorInstruction;
+import com.ibm.wala.shrikeBT.NewInstruction;
+import com.ibm.wala.shrikeBT.StreamingDecoder;
+import com.ibm.wala.shrikeBT.shrikeCT.CTDecoder;
+import com.ibm.wala.shrikeCT.ClassReader;
+import com.ibm.wala.shrikeCT.ClassWriter;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.shrike.ShrikeUtil;
+
+/**
+ * Check that the method summaries collected with the streaming decoder are the ones of the decoded instructions.
+ */
+public class StreamingDecoderTest {
+
+  @Test
+  public void testSummariesMatchDecoder() throws IOException, ClassHierarchyException, InvalidClassFileException {
+    AnalysisScope scope = CallGraphTestUtil.makeJ2SEAnalysisScope(TestConstants.WALA_TESTDATA,
+        CallGraphTestUtil.REGRESSION_EXCLUSIONS);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    int methods = 0;
+    for (IClass c : cha) {
+      if (!c.getClassLoader().getReference().equals(ClassLoaderReference.Application)) {
+        continue;
+      }
+      for (IMethod m : c.getDeclaredMethods()) {
+        if (m instanceof ShrikeBTMethod && !m.isAbstract() && !m.isNative()) {
+          check((ShrikeBTMethod) m);
+          methods++;
+        }
+      }
+    }
+    Assert.assertTrue(methods > 100);
+  }
+
+  /**
+   * a switch whose length is negative or runs past the end must be rejected, rather than scanned forever or backwards
+   */
+  @Test(timeout = 10000)
+  public void testBadSwitchLengths() throws InvalidClassFileException {
+    int max = Integer.MAX_VALUE;
+    int min = Integer.MIN_VALUE;
+    checkRejected(Constants.OP_tableswitch, 0, 0, -5);
+    checkRejected(Constants.OP_tableswitch, 0, 1, 0);
+    checkRejected(Constants.OP_tableswitch, 0, min, max);
+    checkRejected(Constants.OP_tableswitch, 0, 0, 0x40000000);
+    checkRejected(Constants.OP_lookupswitch, 0, -1);
+    checkRejected(Constants.OP_lookupswitch, 0, min);
+    checkRejected(Constants.OP_lookupswitch, 0, 0x10000000);
+    checkRejected(Constants.OP_lookupswitch, 0, max);
+  }
+
+  /**
+   * scan a method made of a switch with the given operands, after its padding, followed by a return
+   */
+  private static void checkRejected(int opcode, int... operands) throws InvalidClassFileException {
+    byte[] code = new byte[4 + operands.length * 4 + 1];
+    code[0] = (byte) opcode;
+    for (int i = 0; i < operands.length; i++) {
+      int v = operands[i];
+      int p = 4 + i * 4;
+      code[p] = (byte) (v >> 24);
+      code[p + 1] = (byte) (v >> 16);
+      code[p + 2] = (byte) (v >> 8);
+      code[p + 3] = (byte) v;
+    }
+    code[code.length - 1] = (byte) Constants.OP_return;
+    try {
+      new StreamingDecoder(code, emptyConstantPool()).scan(new StreamingDecoder.Visitor() {
+      });
+      Assert.fail("opcode " + opcode);
+    } catch (InvalidBytecodeException expected) {
+    }
+  }
+
+  private static ConstantPoolReader emptyConstantPool() throws InvalidClassFileException {
+    ClassWriter w = new ClassWriter();
+    w.setName("Empty");
+    w.setSuperName("java/lang/Object");
+    return CTDecoder.makeConstantPoolReader(new ClassReader(w.makeBytes()));
+  }
+
+  private static void check(ShrikeBTMethod m) throws InvalidClassFileException {
+    String msg = m.toString();
+    // summaries first, so that they come from the streaming decoder and not from cached instructions
+    Set<CallSiteReference> callSites;
+    try {
+      callSites = HashSetFactory.make(m.getCallSites());
+    } catch (InvalidClassFileException e) {
+      // a method without code, like in CodeDeleted, must be rejected by the decoder too
+      m.clearCaches();
+      try {
+        m.getInstructions();
+        Assert.fail(msg);
+      } catch (InvalidClassFileException expected) {
+      }
+      return;
+    }
+    Set<NewSiteReference> newSites = HashSetFactory.make(CodeScanner.getNewSites(m));
+    Set<FieldReference> fieldsRead = toSet(m.getFieldsRead());
+    Set<FieldReference> fieldsWritten = toSet(m.getFieldsWritten());
+    Set<TypeReference> arraysRead = toSet(m.getArraysRead());
+    Set<TypeReference> arraysWritten = toSet(m.getArraysWritten());
+    Set<TypeReference> castTypes = toSet(m.getCastTypes());
+    Set<TypeReference> implicitExceptions = HashSetFactory.make(m.getImplicitExceptionTypes());
+    boolean hasMonitorOp = m.hasMonitorOp();
+
+    // drop the summaries, so that the pc map is computed from a fresh decoder
+    m.clearCaches();
+    Decoded expected = new Decoded(m);
+    IInstruction[] instructions = m.getInstructions();
+    Assert.assertEquals(msg, instructions.length, m.getNumShrikeInstructions());
+    for (int i = 0; i < instructions.length; i++) {
+      expected.pc = m.getBytecodeIndex(i);
+      instructions[i].visit(expected);
+      if (instructions[i].isPEI()) {
+        Collection<TypeReference> t = expected.lang.getImplicitExceptionTypes(instructions[i]);
+        if (t != null) {
+          expected.implicitExceptions.addAll(t);
+        }
+      }
+    }
+
+    Assert.assertEquals(msg, expected.callSites, callSites);
+    Assert.assertEquals(msg, expected.newSites, newSites);
+    Assert.assertEquals(msg, expected.fieldsRead, fieldsRead);
+    Assert.assertEquals(msg, expected.fieldsWritten, fieldsWritten);
+    Assert.assertEquals(msg, expected.arraysRead, arraysRead);
+    Assert.assertEquals(msg, expected.arraysWritten, arraysWritten);
+    Assert.assertEquals(msg, expected.castTypes, castTypes);
+    Assert.assertEquals(msg, expected.implicitExceptions, implicitExceptions);
+    Assert.assertEquals(msg, expected.hasMonitorOp, hasMonitorOp);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Set<T> toSet(Iterator<?> it) {
+    Set<T> result = HashSetFactory.make();
+    while (it.hasNext()) {
+      result.add((T) it.next());
+    }
+    return result;
+  }
+
+  /**
+   * the summaries of the decoded instructions of a method
+   */
+  private static class Decoded extends IInstruction.Visitor {
+    private final ClassLoaderReference loader;
+
+    private final BytecodeLanguage lang;
+
+    int pc;
+
+    final Set<CallSiteReference> callSites = HashSetFactory.make();
+
+    final Set<NewSiteReference> newSites = HashSetFactory.make();
+
+    final Set<FieldReference> fieldsRead = HashSetFactory.make();
+
+    final Set<FieldReference> fieldsWritten = HashSetFactory.make();
+
+    final Set<TypeReference> arraysRead = HashSetFactory.make();
+
+    final Set<TypeReference> arraysWritten = HashSetFactory.make();
+
+    final Set<TypeReference> castTypes = HashSetFactory.make();
+
+    final Set<TypeReference> implicitExceptions = HashSetFactory.make();
+
+    boolean hasMonitorOp;
+
+    Decoded(IMethod m) {
+      loader = m.getDeclaringClass().getClassLoader().getReference();
+      lang = (BytecodeLanguage) m.getDeclaringClass().getClassLoader().getLanguage();
+    }
+
+    @Override
+    public void visitMonitor(MonitorInstruction instruction) {
+      hasMonitorOp = true;
+    }
+
+    @Override
+    public void visitNew(NewInstruction instruction) {
+      newSites.add(NewSiteReference.make(pc, ShrikeUtil.makeTypeReference(loader, instruction.getType())));
+    }
+
+    @Override
+    public void visitGet(IGetInstruction instruction) {
+      fieldsRead.add(FieldReference.findOrCreate(loader, instruction.getClassType(), instruction.getFieldName(), instruction
+          .getFieldType()));
+    }
+
+    @Override
+    public void visitPut(IPutInstruction instruction) {
+      fieldsWritten.add(FieldReference.findOrCreate(loader, instruction.getClassType(), instruction.getFieldName(), instruction
+          .getFieldType()));
+    }
+
+    @Override
+    public void visitInvoke(IInvokeInstruction instruction) {
+      MethodReference m = MethodReference.findOrCreate(lang, loader, instruction.getClassType(), instruction.getMethodName(),
+          instruction.getMethodSignature());
+      callSites.add(CallSiteReference.make(pc, m, instruction.getInvocationCode()));
+    }
+
+    @Override
+    public void visitArrayLoad(IArrayLoadInstruction instruction) {
+      arraysRead.add(ShrikeUtil.makeTypeReference(loader, instruction.getType()));
+    }
+
+    @Override
+    public void visitArrayStore(IArrayStoreInstruction instruction) {
+      arraysWritten.add(ShrikeUtil.makeTypeReference(loader, instruction.getType()));
+    }
+
+    @Override
+    public void visitCheckCast(ITypeTestInstruction instruction) {
+      for (String t : instruction.getTypes()) {
+        castTypes.add(ShrikeUtil.makeTypeReference(loader, t));
+      }
+    }
+  }
+}
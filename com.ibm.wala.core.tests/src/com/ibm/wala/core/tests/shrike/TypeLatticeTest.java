@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.shrike;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.ibm.wala.core.tests.util.WalaTestCase;
+import com.ibm.wala.shrikeBT.MethodData;
+import com.ibm.wala.shrikeBT.analysis.Analyzer.FailureException;
+import com.ibm.wala.shrikeBT.analysis.ClassHierarchyStore;
+import com.ibm.wala.shrikeBT.analysis.Verifier;
+import com.ibm.wala.shrikeBT.shrikeCT.CTUtils;
+import com.ibm.wala.shrikeBT.shrikeCT.ClassInstrumenter;
+import com.ibm.wala.shrikeBT.shrikeCT.OfflineInstrumenter;
+import com.ibm.wala.util.io.FileProvider;
+
+/**
+ * Check that the types the {@link Verifier} computes through the {@link ClassHierarchyStore}'s type lattice are those it
+ * computes by walking the hierarchy, for every method of the testdata jar.
+ */
+public class TypeLatticeTest extends WalaTestCase {
+
+  public static void main(String[] args) {
+    justThisTest(TypeLatticeTest.class);
+  }
+
+  @Test
+  public void testLatticeMatchesHierarchy() throws Exception {
+    OfflineInstrumenter instrumenter = new OfflineInstrumenter(true);
+    instrumenter.addInputJar(new FileProvider().getFile("com.ibm.wala.core.testdata_1.0.0.jar"));
+    instrumenter.beginTraversal();
+    ClassHierarchyStore store = new ClassHierarchyStore();
+    List<ClassInstrumenter> classes = new ArrayList<ClassInstrumenter>();
+    ClassInstrumenter ci;
+    while ((ci = instrumenter.nextClass()) != null) {
+      CTUtils.addClassToHierarchy(store, ci.getReader());
+      classes.add(ci);
+    }
+    instrumenter.close();
+
+    int methods = 0;
+    for (ClassInstrumenter c : classes) {
+      for (int i = 0; i < c.getReader().getMethodCount(); i++) {
+        MethodData d = c.visitMethod(i);
+        if (d != null) {
+          Verifier lattice = new Verifier(d);
+          Verifier walk = new Verifier(d);
+          walk.setUseTypeLattice(false);
+          String name = d.getClassType() + d.getName() + d.getSignature();
+          Assert.assertEquals(name, computeTypes(walk, d, store), computeTypes(lattice, d, store));
+          Assert.assertTrue(name, Arrays.deepEquals(walk.getLocalTypes(), lattice.getLocalTypes()));
+          Assert.assertTrue(name, Arrays.deepEquals(walk.getStackTypes(), lattice.getStackTypes()));
+          methods++;
+        }
+      }
+    }
+    Assert.assertTrue(methods > 400);
+  }
+
+  /**
+   * compute the types at every instruction
+   * 
+   * @return the message of the failure, if the method does not verify
+   */
+  private static String computeTypes(Verifier v, MethodData d, ClassHierarchyStore store) {
+    v.setClassHierarchy(store);
+    BitSet all = new BitSet();
+    all.set(0, d.getInstructions().length);
+    try {
+      v.computeTypes(null, all, false);
+      return null;
+    } catch (FailureException e) {
+      return e.getMessage();
+    }
+  }
+}
@@ -18,6 +18,7 @@ import java.io.PrintWriter;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.Set;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -35,11 +36,15 @@ import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.impl.PartialCallGraph;
 import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ipa.modref.ModRef;
 import com.ibm.wala.ipa.slicer.MethodEntryStatement;
 import com.ibm.wala.ipa.slicer.NormalStatement;
+import com.ibm.wala.ipa.slicer.PDG;
 import com.ibm.wala.ipa.slicer.SDG;
 import com.ibm.wala.ipa.slicer.Slicer;
 import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
@@ -59,6 +64,7 @@ import com.ibm.wala.ssa.SSAPutInstruction;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.Descriptor;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.graph.GraphIntegrity;
 import com.ibm.wala.util.graph.GraphIntegrity.UnsoundGraphException;
@@ -692,6 +698,50 @@ public class SlicerTest {
     GraphIntegrity.check(sdg);
   }
 
+  /**
+   * the PDGs of an SDG that takes its CFGs from the analysis cache should be those of an SDG built without it
+   */
+  @Test
+  public void testSDGWithCache() throws ClassHierarchyException, IllegalArgumentException, CancelException, IOException {
+    AnalysisScope scope = findOrCreateAnalysisScope();
+    IClassHierarchy cha = findOrCreateCHA(scope);
+    Iterable<Entrypoint> entrypoints = com.ibm.wala.ipa.callgraph.impl.Util.makeMainEntrypoints(scope, cha,
+        TestConstants.SLICE1_MAIN);
+    AnalysisOptions options = CallGraphTestUtil.makeAnalysisOptions(scope, entrypoints);
+
+    AnalysisCache cache = new AnalysisCache();
+    CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, cache, cha, scope);
+    CallGraph cg = builder.makeCallGraph(options, null);
+    PointerAnalysis<InstanceKey> pa = builder.getPointerAnalysis();
+
+    SDG plain = new SDG(cg, pa, ModRef.make(), DataDependenceOptions.FULL, ControlDependenceOptions.FULL, null);
+    SDG cached = new SDG(cg, pa, ModRef.make(), DataDependenceOptions.FULL, ControlDependenceOptions.FULL, null, cache);
+    int checked = 0;
+    for (CGNode n : cg) {
+      // the whole SDG takes minutes to build; the application PDGs cover the heap dependences the cached CFGs feed
+      if (!n.getMethod().getDeclaringClass().getClassLoader().getReference().equals(ClassLoaderReference.Application)) {
+        continue;
+      }
+      PDG expected = plain.getPDG(n);
+      PDG actual = cached.getPDG(n);
+      Assert.assertEquals(n.toString(), expected.getNumberOfNodes(), actual.getNumberOfNodes());
+      for (Statement st : expected) {
+        Assert.assertTrue(st.toString(), actual.containsNode(st));
+        Assert.assertEquals(st.toString(), succs(expected, st), succs(actual, st));
+      }
+      checked++;
+    }
+    Assert.assertTrue(checked > 1);
+  }
+
+  private static Set<Statement> succs(PDG pdg, Statement st) {
+    Set<Statement> result = HashSetFactory.make();
+    for (Iterator<Statement> it = pdg.getSuccNodes(st); it.hasNext();) {
+      result.add(it.next());
+    }
+    return result;
+  }
+
   public static int countAllocations(Collection<Statement> slice) {
     int count = 0;
     for (Statement s : slice) {
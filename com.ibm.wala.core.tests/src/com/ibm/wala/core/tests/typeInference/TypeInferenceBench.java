@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.core.tests.typeInference;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ibm.wala.analysis.typeInference.TypeAbstraction;
+import com.ibm.wala.analysis.typeInference.TypeInference;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.core.tests.typeInference.TypeInferenceTest.CapturingTypeInference;
+import com.ibm.wala.core.tests.typeInference.TypeInferenceTest.GenericSolver;
+import com.ibm.wala.dataflow.ssa.SSAInference;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+
+/**
+ * This is a benchmark for SSA type inference.
+ * 
+ * The IRs of all the methods of the input jar are built first. Then each pass runs {@link TypeInference} on every IR, once with the
+ * sparse solver of {@link SSAInference} and once with the same equations in a generic DefaultFixedPointSolver, which is how
+ * SSAInference solved them before. Both times include setting up the TypeInference; the generic time also includes building the
+ * sparse equations, which it does not use. Each pass is timed, and the types computed both ways are checked to be the same.
+ * 
+ * Run it like this: java com.ibm.wala.core.tests.typeInference.TypeInferenceBench tools.jar [-primitives] [-reps n] [-max n]
+ * 
+ * The jar is analyzed as an application, so it must not be one of the JDK's own, whose classes would be left to the primordial
+ * loader; -max bounds the number of methods, since all their IRs are kept in memory.
+ */
+public class TypeInferenceBench {
+
+  public static void main(String[] args) throws Exception {
+    int reps = 10;
+    int max = Integer.MAX_VALUE;
+    boolean doPrimitives = false;
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].equals("-reps") && i + 1 < args.length) {
+        reps = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-max") && i + 1 < args.length) {
+        max = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-primitives")) {
+        doPrimitives = true;
+      }
+    }
+
+    AnalysisScope scope = AnalysisScopeReader.makeJavaBinaryAnalysisScope(args[0], null);
+    ClassHierarchy cha = ClassHierarchy.make(scope);
+    AnalysisCache cache = new AnalysisCache();
+    AnalysisOptions options = new AnalysisOptions();
+    List<IR> irs = new ArrayList<IR>();
+    for (IClass c : cha) {
+      if (!c.getClassLoader().getReference().equals(ClassLoaderReference.Application)) {
+        continue;
+      }
+      for (IMethod m : c.getDeclaredMethods()) {
+        if (irs.size() < max && !m.isAbstract() && !m.isNative()) {
+          try {
+            IR ir = cache.getIRFactory().makeIR(m, Everywhere.EVERYWHERE, options.getSSAOptions());
+            if (ir != null) {
+              irs.add(ir);
+            }
+          } catch (RuntimeException e) {
+            // a method WALA can not build an IR for; leave it out
+          }
+        }
+      }
+    }
+
+    for (int rep = 0; rep < reps; rep++) {
+      long start = System.nanoTime();
+      TypeAbstraction[][] sparse = new TypeAbstraction[irs.size()][];
+      for (int i = 0; i < irs.size(); i++) {
+        sparse[i] = TypeInference.make(irs.get(i), doPrimitives).extractAllResults();
+      }
+      long sparseTime = (System.nanoTime() - start) / 1000000;
+
+      start = System.nanoTime();
+      TypeAbstraction[][] generic = new TypeAbstraction[irs.size()][];
+      for (int i = 0; i < irs.size(); i++) {
+        generic[i] = new GenericSolver(irs.get(i), new UnsolvedTypeInference(irs.get(i), doPrimitives)).solveAll();
+      }
+      long genericTime = (System.nanoTime() - start) / 1000000;
+
+      int differ = 0;
+      for (int i = 0; i < irs.size(); i++) {
+        for (int v = 1; v < sparse[i].length; v++) {
+          if (sparse[i][v] == null ? generic[i][v] != null : !sparse[i][v].equals(generic[i][v])) {
+            differ++;
+            break;
+          }
+        }
+      }
+
+      System.err.println(irs.size() + " methods, primitives " + doPrimitives + ": sparse " + sparseTime + "ms, generic " + genericTime
+          + "ms" + (differ == 0 ? "" : ", types differ for " + differ + " methods"));
+    }
+  }
+
+  /**
+   * type inference that is set up, but left for a generic solver to solve
+   */
+  private static class UnsolvedTypeInference extends CapturingTypeInference {
+    UnsolvedTypeInference(IR ir, boolean doPrimitives) {
+      super(ir, doPrimitives);
+    }
+
+    /**
+     * only give the variables their initial types, as solving would first
+     */
+    @Override
+    public boolean solve(IProgressMonitor monitor) {
+      initializeVariables();
+      return false;
+    }
+  }
+}
@@ -10,6 +10,11 @@
  *******************************************************************************/
 package com.ibm.wala.core.tests.typeInference;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -20,6 +25,8 @@ import com.ibm.wala.analysis.typeInference.TypeAbstraction;
 import com.ibm.wala.analysis.typeInference.TypeInference;
 import com.ibm.wala.classLoader.ClassLoaderFactory;
 import com.ibm.wala.classLoader.ClassLoaderFactoryImpl;
+import com.ibm.wala.analysis.typeInference.TypeVariable;
+import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.core.tests.util.TestConstants;
 import com.ibm.wala.core.tests.util.WalaTestCase;
@@ -28,9 +35,23 @@ import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.ipa.callgraph.impl.Everywhere;
 import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.dataflow.ssa.SSAInference;
+import com.ibm.wala.fixedpoint.impl.DefaultFixedPointSolver;
+import com.ibm.wala.fixedpoint.impl.NullaryOperator;
+import com.ibm.wala.fixpoint.AbstractOperator;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.shrikeCT.ClassConstants;
+import com.ibm.wala.shrikeCT.ClassWriter;
+import com.ibm.wala.shrikeCT.CodeWriter;
 import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAPhiInstruction;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.Descriptor;
 import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.Selector;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.config.AnalysisScopeReader;
 import com.ibm.wala.util.io.FileProvider;
 import com.ibm.wala.util.strings.Atom;
@@ -57,6 +78,11 @@ public class TypeInferenceTest extends WalaTestCase {
 
   private static AnalysisCache cache;
 
+  /**
+   * a class with phis that merge an int and a reference, which javac does not emit; see {@link #writeMixedPhis(File)}
+   */
+  private static File mixedPhis;
+
   public static void main(String[] args) {
     justThisTest(TypeInferenceTest.class);
   }
@@ -66,6 +92,10 @@ public class TypeInferenceTest extends WalaTestCase {
 
     scope = AnalysisScopeReader.readJavaScope(TestConstants.WALA_TESTDATA, (new FileProvider()).getFile("J2SEClassHierarchyExclusions.txt"), MY_CLASSLOADER);
 
+    mixedPhis = File.createTempFile("MixedPhis", ".class");
+    writeMixedPhis(mixedPhis);
+    scope.addClassFileToScope(ClassLoaderReference.Application, mixedPhis);
+
     options = new AnalysisOptions(scope, null);
     cache = new AnalysisCache();
     ClassLoaderFactory factory = new ClassLoaderFactoryImpl(scope.getExclusions());
@@ -80,6 +110,8 @@ public class TypeInferenceTest extends WalaTestCase {
   @AfterClass
   public static void afterClass() throws Exception {
     Warnings.clear();
+    mixedPhis.delete();
+    mixedPhis = null;
     scope = null;
     cha = null;
     options = null;
@@ -144,5 +176,236 @@ public class TypeInferenceTest extends WalaTestCase {
     Assert.assertTrue("inferred wrong type " + type, type instanceof ConeType && ((ConeType)type).getTypeReference().getName().toString().equals("Ljava/lang/String"));
   }
 
+  /**
+   * the sparse solver of {@link SSAInference} must reach the fixed point that the generic solver reaches on the same equations
+   */
+  @Test public void testSameResultsAsGenericSolver() {
+    int methods = 0;
+    for (IClass c : cha) {
+      // CodeDeleted has a method without bytecodes
+      if (!c.getClassLoader().getReference().equals(ClassLoaderReference.Application)
+          || c.getName().toString().equals("LCodeDeleted")) {
+        continue;
+      }
+      for (IMethod m : c.getDeclaredMethods()) {
+        if (m.isAbstract() || m.isNative()) {
+          continue;
+        }
+        IR ir = cache.getIRFactory().makeIR(m, Everywhere.EVERYWHERE, options.getSSAOptions());
+        if (ir != null) {
+          checkSameResults(ir, true);
+          checkSameResults(ir, false);
+          methods++;
+        }
+      }
+    }
+    Assert.assertTrue(methods > 100);
+  }
+
+  @Test public void testMixedPhis() {
+    IClass c = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Application, "LMixedPhis"));
+    Assert.assertNotNull("class not found", c);
+    for (String name : new String[] { "merge", "loop" }) {
+      IMethod m = c.getMethod(new Selector(Atom.findOrCreateUnicodeAtom(name), Descriptor
+          .findOrCreateUTF8("(ZLjava/lang/Object;)Ljava/lang/Object;")));
+      Assert.assertNotNull(name, m);
+      IR ir = cache.getIRFactory().makeIR(m, Everywhere.EVERYWHERE, options.getSSAOptions());
+      TypeAbstraction[] types = checkSameResults(ir, true);
+      checkSameResults(ir, false);
+
+      boolean mixed = false;
+      for (Iterator<? extends SSAInstruction> it = ir.iteratePhis(); it.hasNext();) {
+        SSAPhiInstruction phi = (SSAPhiInstruction) it.next();
+        boolean primitive = false;
+        boolean reference = false;
+        for (int i = 0; i < phi.getNumberOfUses(); i++) {
+          TypeAbstraction t = types[phi.getUse(i)];
+          primitive |= t.getTypeReference() != null && t.getTypeReference().isPrimitiveType();
+          reference |= t.getTypeReference() != null && t.getTypeReference().isReferenceType();
+        }
+        mixed |= primitive && reference;
+      }
+      Assert.assertTrue("no phi of an int and a reference in " + ir, mixed);
+    }
+  }
+
+  /**
+   * compare the results of type inference on ir with those of a generic solver over the same equations
+   * 
+   * @return the inferred types
+   */
+  private static TypeAbstraction[] checkSameResults(IR ir, boolean doPrimitives) {
+    CapturingTypeInference ti = new CapturingTypeInference(ir, doPrimitives);
+    TypeAbstraction[] actual = ti.extractAllResults();
+    TypeAbstraction[] expected = new GenericSolver(ir, ti).solveAll();
+    Assert.assertEquals(ir.getMethod().toString(), expected.length, actual.length);
+    for (int i = 1; i < expected.length; i++) {
+      Assert.assertEquals(ir.getMethod() + " v" + i + " primitives " + doPrimitives, expected[i], actual[i]);
+    }
+    return actual;
+  }
 
+  /**
+   * type inference that remembers its factories and the initial types of its variables, so that a generic solver can rebuild the
+   * same system
+   */
+  static class CapturingTypeInference extends TypeInference {
+    // set from the super constructor, so these fields must not have initializers
+    private SSAInference.VariableFactory varFactory;
+
+    private SSAInference.OperatorFactory<TypeVariable> opFactory;
+
+    private TypeAbstraction[] initialTypes;
+
+    CapturingTypeInference(IR ir, boolean doPrimitives) {
+      super(ir, doPrimitives);
+    }
+
+    @Override
+    protected void init(IR ir, SSAInference.VariableFactory varFactory, SSAInference.OperatorFactory<TypeVariable> opFactory) {
+      this.varFactory = varFactory;
+      this.opFactory = opFactory;
+      super.init(ir, varFactory, opFactory);
+    }
+
+    @Override
+    protected void initializeVariables() {
+      super.initializeVariables();
+      initialTypes = new TypeAbstraction[getIR().getSymbolTable().getMaxValueNumber() + 1];
+      for (int i = 1; i < initialTypes.length; i++) {
+        TypeVariable v = getVariable(i);
+        initialTypes[i] = v == null ? null : v.getType();
+      }
+    }
+
+    TypeVariable variable(int valueNumber) {
+      return getVariable(valueNumber);
+    }
+  }
+
+  /**
+   * the equations of {@link SSAInference}, held and solved by the general {@link DefaultFixedPointSolver} machinery. As in
+   * SSAInference before, the variables are those of the type inference, since some of its operators look up the types of other
+   * values there; solving starts them over from their initial types.
+   */
+  static class GenericSolver extends DefaultFixedPointSolver<TypeVariable> {
+    private final TypeVariable[] vars;
+
+    private final TypeAbstraction[] initialTypes;
+
+    GenericSolver(IR ir, CapturingTypeInference ti) {
+      initialTypes = ti.initialTypes;
+      vars = new TypeVariable[initialTypes.length];
+      for (int i = 1; i < vars.length; i++) {
+        vars[i] = ti.variable(i) != null ? ti.variable(i) : (TypeVariable) ti.varFactory.makeVariable(i);
+      }
+      for (SSAInstruction s : ir.getInstructions()) {
+        makeEquation(ti.opFactory, s);
+      }
+      for (Iterator<? extends SSAInstruction> it = ir.iteratePhis(); it.hasNext();) {
+        makeEquation(ti.opFactory, it.next());
+      }
+      for (Iterator<? extends SSAInstruction> it = ir.iteratePis(); it.hasNext();) {
+        makeEquation(ti.opFactory, it.next());
+      }
+      for (Iterator<? extends SSAInstruction> it = ir.iterateCatchInstructions(); it.hasNext();) {
+        makeEquation(ti.opFactory, it.next());
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void makeEquation(SSAInference.OperatorFactory<TypeVariable> opFactory, SSAInstruction s) {
+      if (s != null && s.hasDef()) {
+        AbstractOperator<TypeVariable> op = opFactory.get(s);
+        if (op != null) {
+          TypeVariable def = vars[s.getDef()];
+          if (op instanceof NullaryOperator) {
+            newStatement(def, (NullaryOperator<TypeVariable>) op, false, false);
+          } else {
+            TypeVariable[] uses = new TypeVariable[s.getNumberOfUses()];
+            for (int j = 0; j < uses.length; j++) {
+              if (s.getUse(j) > -1) {
+                uses[j] = vars[s.getUse(j)];
+              }
+            }
+            newStatement(def, op, uses, false, false);
+          }
+        }
+      }
+    }
+
+    TypeAbstraction[] solveAll() {
+      try {
+        solve(null);
+      } catch (CancelException e) {
+        Assert.fail(e.toString());
+      }
+      TypeAbstraction[] result = new TypeAbstraction[vars.length];
+      for (int i = 1; i < vars.length; i++) {
+        result[i] = vars[i] == null ? null : vars[i].getType();
+      }
+      return result;
+    }
+
+    @Override
+    protected void initializeVariables() {
+      for (int i = 1; i < vars.length; i++) {
+        if (initialTypes[i] != null) {
+          vars[i].setType(initialTypes[i]);
+        }
+      }
+    }
+
+    @Override
+    protected void initializeWorkList() {
+      addAllStatementsToWorkList();
+    }
+
+    @Override
+    protected TypeVariable[] makeStmtRHS(int size) {
+      return new TypeVariable[size];
+    }
+  }
+
+  /**
+   * write a class with two static methods (ZLjava/lang/Object;)Ljava/lang/Object; that store either the constant 1 or the
+   * reference parameter into local 2 and return local 2:
+   * <ul>
+   * <li>merge, where the two stores meet after an if
+   * <li>loop, where the int store flows around a back edge to the loop head
+   * </ul>
+   * The JVM would not verify these methods, but WALA builds their IRs.
+   */
+  private static void writeMixedPhis(File file) throws IOException {
+    ClassWriter w = new ClassWriter();
+    w.setMajorVersion(49);
+    w.setName("MixedPhis");
+    w.setSuperName("java/lang/Object");
+    w.setAccessFlags(ClassConstants.ACC_PUBLIC | ClassConstants.ACC_SUPER);
+    // iload_0; ifeq 9; iconst_1; istore_2; goto 11; 9: aload_1; astore_2; 11: aload_2; areturn
+    addStaticMethod(w, "merge", new int[] { 0x1a, 0x99, 0x00, 0x08, 0x04, 0x3d, 0xa7, 0x00, 0x05, 0x2b, 0x4d, 0x2c, 0xb0 });
+    // aload_1; astore_2; 2: iload_0; ifeq 13; iconst_1; istore_2; iconst_0; istore_0; goto 2; 13: aload_2; areturn
+    addStaticMethod(w, "loop", new int[] { 0x2b, 0x4d, 0x1a, 0x99, 0x00, 0x0a, 0x04, 0x3d, 0x03, 0x3b, 0xa7, 0xff, 0xf8, 0x2c,
+        0xb0 });
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(w.makeBytes());
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void addStaticMethod(ClassWriter w, String name, int[] code) {
+    byte[] bytes = new byte[code.length];
+    for (int i = 0; i < code.length; i++) {
+      bytes[i] = (byte) code[i];
+    }
+    CodeWriter c = new CodeWriter(w);
+    c.setCode(bytes);
+    c.setMaxLocals(3);
+    c.setMaxStack(1);
+    c.setRawHandlers(new int[0]);
+    w.addMethod(ClassConstants.ACC_PUBLIC | ClassConstants.ACC_STATIC, name, "(ZLjava/lang/Object;)Ljava/lang/Object;",
+        new ClassWriter.Element[] { c });
+  }
 }
@@ -12,6 +12,7 @@ package com.ibm.wala.analysis.typeInference;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
 
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
@@ -51,6 +52,8 @@ import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.CancelRuntimeException;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.debug.Assertions;
 
 /**
@@ -77,9 +80,14 @@ public class TypeInference extends SSAInference<TypeVariable> implements FixedPo
   final protected Language language;
 
   /**
-   * A singleton instance of the phi operator.
+   * The phi operator, which meets through {@link #meet(TypeAbstraction, TypeAbstraction)}
    */
-  private final static AbstractOperator<TypeVariable> phiOp = new PhiOperator();
+  private final AbstractOperator<TypeVariable> phiOp = this.new PhiOperator();
+
+  /**
+   * Meets of class-based type abstractions computed so far; each one otherwise walks the class hierarchy
+   */
+  private Map<Pair<TypeAbstraction, TypeAbstraction>, TypeAbstraction> meets;
 
   private final static AbstractOperator<TypeVariable> primitivePropagateOp = new PrimitivePropagateOperator();
 
@@ -201,7 +209,7 @@ public class TypeInference extends SSAInference<TypeVariable> implements FixedPo
           t = types.next();
           klass = cha.lookupClass(t);
           if (klass != null) {
-            v.setType(v.getType().meet(new PointType(klass)));
+            v.setType(meet(v.getType(), new PointType(klass)));
           }        
         }
 
@@ -221,7 +229,7 @@ public class TypeInference extends SSAInference<TypeVariable> implements FixedPo
               TypeReference tx = x[i];
               IClass tc = cha.lookupClass(tx);
               if (tc != null) {
-                v.setType(v.getType().meet(new ConeType(tc)));
+                v.setType(meet(v.getType(), new ConeType(tc)));
               }
             }
           }
@@ -287,7 +295,7 @@ public class TypeInference extends SSAInference<TypeVariable> implements FixedPo
     }
   }
 
-  private static final class PhiOperator extends AbstractOperator<TypeVariable> {
+  private final class PhiOperator extends AbstractOperator<TypeVariable> {
 
     private PhiOperator() {
     }
@@ -311,7 +319,7 @@ public class TypeInference extends SSAInference<TypeVariable> implements FixedPo
       for (int i = 0; i < rhs.length; i++) {
         if (rhs[i] != null && rhs[i].getType() != null) {
           TypeVariable r = rhs[i];
-          meet = meet.meet(r.getType());
+          meet = meet(meet, r.getType());
         }
       }
       if (lhsType.equals(meet)) {
@@ -606,7 +614,7 @@ public class TypeInference extends SSAInference<TypeVariable> implements FixedPo
             if (typeAbs == null) {
               typeAbs = x;
             } else {
-              typeAbs = typeAbs.meet(x);           
+              typeAbs = meet(typeAbs, x);           
             }
           }
         }
@@ -685,7 +693,7 @@ public class TypeInference extends SSAInference<TypeVariable> implements FixedPo
         if (tClass == null) {
           result = BOTTOM;
         } else {
-          result = result.meet(new ConeType(tClass));
+          result = meet(result, new ConeType(tClass));
         }
       }
       return result;
@@ -745,6 +753,27 @@ public class TypeInference extends SSAInference<TypeVariable> implements FixedPo
     return ir;
   }
 
+  /**
+   * Meet two type abstractions. Meets of two distinct class-based abstractions are memoized, since each one walks the class
+   * hierarchy, while the same few pairs (e.g. the exceptions thrown by calls) recur throughout a method.
+   */
+  protected TypeAbstraction meet(TypeAbstraction a, TypeAbstraction b) {
+    if (a == TypeAbstraction.TOP || b == TypeAbstraction.TOP || a == b || !(a instanceof ConeType || a instanceof PointType)
+        || !(b instanceof ConeType || b instanceof PointType)) {
+      return a.meet(b);
+    }
+    if (meets == null) {
+      meets = HashMapFactory.make();
+    }
+    Pair<TypeAbstraction, TypeAbstraction> key = Pair.make(a, b);
+    TypeAbstraction result = meets.get(key);
+    if (result == null) {
+      result = a.meet(b);
+      meets.put(key, result);
+    }
+    return result;
+  }
+
   /**
    * Return the type computed for a particular value number
    */
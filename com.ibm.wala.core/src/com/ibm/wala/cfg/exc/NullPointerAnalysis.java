@@ -11,6 +11,8 @@
 
 package com.ibm.wala.cfg.exc;
 
+import java.util.concurrent.Executor;
+
 import com.ibm.wala.cfg.exc.inter.InterprocNullPointerAnalysis;
 import com.ibm.wala.cfg.exc.intra.ExplodedCFGNullPointerAnalysis;
 import com.ibm.wala.cfg.exc.intra.MethodState;
@@ -86,8 +88,18 @@ public final class NullPointerAnalysis {
   computeInterprocAnalysis(final TypeReference[] ignoredExceptions, final CallGraph cg,
       final MethodState defaultExceptionMethodState, final IProgressMonitor progress)
       throws WalaException, UnsoundGraphException, CancelException {
+    return computeInterprocAnalysis(ignoredExceptions, cg, defaultExceptionMethodState, progress, null);
+  }
+
+  /**
+   * @param executor runs the analyses of independent methods in parallel; may be null
+   */
+  public static InterprocAnalysisResult<SSAInstruction, IExplodedBasicBlock>
+  computeInterprocAnalysis(final TypeReference[] ignoredExceptions, final CallGraph cg,
+      final MethodState defaultExceptionMethodState, final IProgressMonitor progress, final Executor executor)
+      throws WalaException, UnsoundGraphException, CancelException {
     final InterprocNullPointerAnalysis inpa = InterprocNullPointerAnalysis.compute(ignoredExceptions, cg,
-        defaultExceptionMethodState, progress);
+        defaultExceptionMethodState, progress, executor);
 
     return inpa.getResult();
   }
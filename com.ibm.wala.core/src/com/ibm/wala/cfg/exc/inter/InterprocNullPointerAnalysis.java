@@ -11,11 +11,23 @@
 
 package com.ibm.wala.cfg.exc.inter;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import com.ibm.wala.cfg.ControlFlowGraph;
 import com.ibm.wala.cfg.exc.ExceptionPruningAnalysis;
@@ -39,18 +51,27 @@ import com.ibm.wala.util.MonitorUtil;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
 import com.ibm.wala.util.WalaException;
 import com.ibm.wala.util.graph.GraphIntegrity.UnsoundGraphException;
+import com.ibm.wala.util.graph.traverse.SCCIterator;
 import com.ibm.wala.util.strings.Atom;
 
 /**
  * Interprocedural NullPointer Analysis.
  * 
  * The interprocedural NullPointer analysis builds an implicit ICFG, visits all
- * CFGs in reverse invocation order recursively and propagates all parameter
- * states.
+ * CFGs in reverse invocation order and propagates all parameter states. Given
+ * an {@link Executor}, methods that do not depend on each other are analyzed
+ * in parallel.
  * 
  * 1st run: collect and propagate all parameters on ENTRY nodes.
  * 2nd run: collect the results on the ENTRY nodes.
  * 
+ * The 1st run is a sequential depth first traversal, so each method gets the
+ * parameter states of the invoke it is first reached by. The 2nd run goes
+ * bottom-up over the strongly connected components of the call graph, and a
+ * method sees the result of every method it may call. When the 2nd run was
+ * done as each method finished the traversal, a callee which the traversal
+ * had not reached yet was assumed to throw.
+ * 
  * This class has been developed as part of a student project "Studienarbeit" by Markus Herhoffer.
  * It has been adapted and integrated into the WALA project by Juergen Graf.
  * 
@@ -68,8 +89,20 @@ public final class InterprocNullPointerAnalysis {
   public static InterprocNullPointerAnalysis compute(final TypeReference[] ignoredExceptions, final CallGraph cg,
       final MethodState defaultMethodState, final IProgressMonitor progress)
           throws WalaException, UnsoundGraphException, CancelException {
+    return compute(ignoredExceptions, cg, defaultMethodState, progress, null);
+  }
+
+  /**
+   * @param executor
+   *          runs the intraprocedural analyses of independent methods in
+   *          parallel; if <code>null</code>, all work is done in the calling
+   *          thread. The result does not depend on the executor.
+   */
+  public static InterprocNullPointerAnalysis compute(final TypeReference[] ignoredExceptions, final CallGraph cg,
+      final MethodState defaultMethodState, final IProgressMonitor progress, final Executor executor)
+          throws WalaException, UnsoundGraphException, CancelException {
     final InterprocNullPointerAnalysis inpa = new InterprocNullPointerAnalysis(ignoredExceptions, defaultMethodState);
-    inpa.run(cg, progress);
+    inpa.run(cg, progress, executor);
     
     return inpa;
   }
@@ -77,10 +110,24 @@ public final class InterprocNullPointerAnalysis {
   private InterprocNullPointerAnalysis(final TypeReference[] ignoredExceptions, final MethodState defaultMethodState) {
     this.ignoredExceptions = ignoredExceptions;
     this.defaultMethodState = defaultMethodState;
-    this.states = new HashMap<CGNode, IntraprocAnalysisState>();
+    // written by the worker threads
+    this.states = new ConcurrentHashMap<CGNode, IntraprocAnalysisState>();
   }
 
-  private void run(final CallGraph cg, final IProgressMonitor progress) throws WalaException, UnsoundGraphException, CancelException {
+  /**
+   * The 1st run visits the call graph depth first from the first node, one
+   * method at a time; a method gets the parameter states of the invoke it is
+   * first reached by.
+   * 
+   * The 2nd run visits the strongly connected components of the visited part of
+   * the call graph bottom-up. Components at the same height do not call each
+   * other and are analyzed in parallel; the methods inside one component are
+   * analyzed one after the other in the order the 1st run finished them, so
+   * each sees the same results of its callees as in a sequential depth first
+   * traversal.
+   */
+  private void run(final CallGraph cg, final IProgressMonitor progress, final Executor executor)
+      throws WalaException, UnsoundGraphException, CancelException {
     if (this.cgFiltered != null) {
       throw new IllegalStateException("This analysis has already been computed.");
     }
@@ -90,7 +137,25 @@ public final class InterprocNullPointerAnalysis {
 
     // we start with the first node
     final CGNode firstNode = cgFiltered.getNode(0);
-    findAndInjectInvokes(firstNode, new ParameterState(), new HashSet<CGNode>(), progress);
+    final Map<CGNode, ParameterState> finished = new LinkedHashMap<CGNode, ParameterState>();
+    findAndInjectInvokes(firstNode, new ParameterState(), new HashSet<CGNode>(), finished, progress);
+
+    for (final List<List<CGNode>> level : computeLevels(finished.keySet(), progress)) {
+      final List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(level.size());
+      for (final List<CGNode> scc : level) {
+        tasks.add(new Callable<Object>() {
+          @Override
+          public Object call() throws Exception {
+            for (final CGNode node : scc) {
+              MonitorUtil.throwExceptionIfCanceled(progress);
+              analysisSecondPass(node, finished.get(node), progress);
+            }
+            return null;
+          }
+        });
+      }
+      invokeAll(tasks, executor);
+    }
   }
 
   /**
@@ -102,12 +167,16 @@ public final class InterprocNullPointerAnalysis {
    * @param paramState
    *          The parameter states of the <code>startNode</code>. May be
    *          <code>null</code>
+   * @param finished
+   *          receives each visited node with its parameter states, in the order
+   *          the nodes are finished
    * @throws UnsoundGraphException
    * @throws CancelException
    * @throws WalaException
    */
   private void findAndInjectInvokes(final CGNode startNode, final ParameterState paramState, final Set<CGNode> visited,
-      final IProgressMonitor progress) throws UnsoundGraphException, CancelException, WalaException {
+      final Map<CGNode, ParameterState> finished, final IProgressMonitor progress)
+      throws UnsoundGraphException, CancelException, WalaException {
     assert paramState != null;
 
     if (visited.contains(startNode)) {
@@ -128,13 +197,138 @@ public final class InterprocNullPointerAnalysis {
       final Map<SSAAbstractInvokeInstruction, ParameterState> invokes = nodeEntry.getValue();
 
       for (final Entry<SSAAbstractInvokeInstruction, ParameterState> instructionEntry : invokes.entrySet()) {
-        findAndInjectInvokes(node, instructionEntry.getValue(), visited, progress);
+        findAndInjectInvokes(node, instructionEntry.getValue(), visited, finished, progress);
       }
     }
 
-    MonitorUtil.throwExceptionIfCanceled(progress);
-    
-    analysisSecondPass(startNode, paramState, progress);
+    finished.put(startNode, paramState);
+  }
+
+  /**
+   * Group the strongly connected components of the call graph restricted to
+   * <code>nodes</code> by their height above the leaves of the condensed graph.
+   * The nodes of each component are listed in the order of <code>nodes</code>.
+   */
+  private List<List<List<CGNode>>> computeLevels(final Set<CGNode> nodes, final IProgressMonitor progress)
+      throws CancelException {
+    final Map<CGNode, Integer> order = new HashMap<CGNode, Integer>();
+    for (final CGNode node : nodes) {
+      order.put(node, order.size());
+    }
+
+    // components come in topological order, callers first
+    final List<List<CGNode>> sccs = new ArrayList<List<CGNode>>();
+    final Map<CGNode, Integer> node2SCC = new HashMap<CGNode, Integer>();
+    for (final SCCIterator<CGNode> it = new SCCIterator<CGNode>(cgFiltered, nodes.iterator()); it.hasNext();) {
+      MonitorUtil.throwExceptionIfCanceled(progress);
+      final List<CGNode> scc = new ArrayList<CGNode>();
+      for (final CGNode node : it.next()) {
+        if (order.containsKey(node)) {
+          scc.add(node);
+        }
+      }
+      if (!scc.isEmpty()) {
+        Collections.sort(scc, new Comparator<CGNode>() {
+          @Override
+          public int compare(final CGNode a, final CGNode b) {
+            return order.get(a) - order.get(b);
+          }
+        });
+        for (final CGNode node : scc) {
+          node2SCC.put(node, sccs.size());
+        }
+        sccs.add(scc);
+      }
+    }
+
+    final int[] height = new int[sccs.size()];
+    int maxHeight = 0;
+    for (int c = sccs.size() - 1; c >= 0; c--) {
+      for (final CGNode node : sccs.get(c)) {
+        for (final Iterator<CGNode> succs = cgFiltered.getSuccNodes(node); succs.hasNext();) {
+          final Integer s = node2SCC.get(succs.next());
+          if (s != null && s != c) {
+            height[c] = Math.max(height[c], height[s] + 1);
+          }
+        }
+      }
+      maxHeight = Math.max(maxHeight, height[c]);
+    }
+
+    final List<List<List<CGNode>>> levels = new ArrayList<List<List<CGNode>>>(maxHeight + 1);
+    for (int h = 0; h <= maxHeight; h++) {
+      levels.add(new ArrayList<List<CGNode>>());
+    }
+    for (int c = 0; c < sccs.size(); c++) {
+      levels.get(height[c]).add(sccs.get(c));
+    }
+    return levels;
+  }
+
+  /**
+   * Run all tasks, on the executor if there is one, and return their results
+   * in order.
+   */
+  private static <T> List<T> invokeAll(final List<Callable<T>> tasks, final Executor executor)
+      throws WalaException, UnsoundGraphException, CancelException {
+    final List<T> result = new ArrayList<T>(tasks.size());
+    if (executor == null || tasks.size() < 2) {
+      try {
+        for (final Callable<T> task : tasks) {
+          result.add(task.call());
+        }
+      } catch (Exception e) {
+        rethrow(e);
+      }
+      return result;
+    }
+
+    final List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    boolean done = false;
+    try {
+      for (final Callable<T> task : tasks) {
+        final FutureTask<T> future = new FutureTask<T>(task);
+        futures.add(future);
+        executor.execute(future);
+      }
+      for (final Future<T> future : futures) {
+        result.add(future.get());
+      }
+      done = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancelException(e);
+    } catch (ExecutionException e) {
+      // rethrow whatever the analysis would have thrown in the calling thread
+      if (e.getCause() instanceof Exception) {
+        rethrow((Exception) e.getCause());
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      } else {
+        throw new CancelException(e);
+      }
+    } finally {
+      if (!done) {
+        for (final Future<T> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static void rethrow(final Exception e) throws WalaException, UnsoundGraphException, CancelException {
+    if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    } else if (e instanceof CancelException) {
+      throw (CancelException) e;
+    } else if (e instanceof UnsoundGraphException) {
+      throw (UnsoundGraphException) e;
+    } else if (e instanceof WalaException) {
+      throw (WalaException) e;
+    } else {
+      throw new CancelException(e);
+    }
   }
   
   private void analysisSecondPass(final CGNode startNode, final ParameterState paramState,
@@ -37,7 +37,7 @@ public class ArrayClassLoader {
    * @param delegator
    *          class loader to look up element type with
    */
-  public IClass lookupClass(TypeName className, IClassLoader delegator, IClassHierarchy cha) throws IllegalArgumentException {
+  public synchronized IClass lookupClass(TypeName className, IClassLoader delegator, IClassHierarchy cha) throws IllegalArgumentException {
     ArrayClass arrayClass;
     if (DEBUG) {
       assert className.toString().startsWith("[");
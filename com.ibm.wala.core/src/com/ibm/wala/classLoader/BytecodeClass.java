@@ -329,6 +329,7 @@ public abstract class BytecodeClass<T extends IClassLoader> implements IClass {
    */
   @Override
   public Collection<IField> getDeclaredInstanceFields() {
+    computeFieldsIfNeededOrDie();
     if (instanceFields == null) {
       return Collections.emptySet();
     } else {
@@ -341,6 +342,7 @@ public abstract class BytecodeClass<T extends IClassLoader> implements IClass {
    */
   @Override
   public Collection<IField> getDeclaredStaticFields() {
+    computeFieldsIfNeededOrDie();
     return Collections.unmodifiableList(Arrays.asList(staticFields));
   }
 
@@ -531,7 +533,9 @@ public abstract class BytecodeClass<T extends IClassLoader> implements IClass {
   protected List<IField> findDeclaredField(Atom name) {
     
     List<IField> result = new ArrayList<IField>(1);
-    
+
+    computeFieldsIfNeededOrDie();
+
     if (instanceFields != null) {
       for (int i = 0; i < instanceFields.length; i++) {
         if (instanceFields[i].getName() == name) {
@@ -565,6 +569,22 @@ public abstract class BytecodeClass<T extends IClassLoader> implements IClass {
     L.add(f);
   }
 
+  /**
+   * set up the instanceFields and staticFields arrays, if a subclass decodes them lazily. By default fields are populated when the
+   * class is constructed, so there is nothing to do.
+   */
+  protected void computeFieldsIfNeeded() throws InvalidClassFileException {
+  }
+
+  private void computeFieldsIfNeededOrDie() {
+    try {
+      computeFieldsIfNeeded();
+    } catch (InvalidClassFileException e) {
+      e.printStackTrace();
+      Assertions.UNREACHABLE();
+    }
+  }
+
   /**
    * set up the methodMap mapping
    */
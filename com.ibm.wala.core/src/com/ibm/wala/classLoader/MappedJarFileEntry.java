@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.classLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * An entry in a memory-mapped Jar file.
+ */
+public class MappedJarFileEntry extends JarFileEntry {
+
+  private final MappedJarFileModule module;
+
+  protected MappedJarFileEntry(String entryName, MappedJarFileModule module) {
+    super(entryName, module);
+    this.module = module;
+  }
+
+  /**
+   * @return the uncompressed contents of this entry, read from the mapped jar
+   */
+  public byte[] getContents() {
+    return module.getContents(getName());
+  }
+
+  /*
+   * @see com.ibm.wala.classLoader.ModuleEntry#getInputStream()
+   */
+  @Override
+  public InputStream getInputStream() {
+    return new ByteArrayInputStream(getContents());
+  }
+
+  @Override
+  public MappedJarFileModule getContainer() {
+    return module;
+  }
+}
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.classLoader;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.jar.JarFile;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.debug.Assertions;
+
+/**
+ * A {@link JarFileModule} which memory-maps the underlying jar file and indexes its central directory once, up front.
+ *
+ * Entry contents are then read straight out of the mapping: stored entries are a single bulk copy, and deflated entries are
+ * inflated directly into an array of the exact uncompressed size, reusing one {@link Inflater} and input buffer per module. This
+ * avoids creating an InflaterInputStream and a growing output buffer each time a class file is (re-)read, e.g. after
+ * {@link com.ibm.wala.util.ref.ReferenceCleanser} throws away a class reader.
+ *
+ * Like the mapping, the Inflater holds native memory until the module is garbage collected, as there is nothing to release it.
+ *
+ * If the jar cannot be mapped or indexed (e.g. it is larger than 2GB, or uses zip64 extensions), this module silently behaves
+ * like a plain {@link JarFileModule}.
+ */
+public class MappedJarFileModule extends JarFileModule {
+
+  private final static int LOCAL_HEADER_SIG = 0x04034b50;
+
+  private final static int CENTRAL_HEADER_SIG = 0x02014b50;
+
+  private final static int END_HEADER_SIG = 0x06054b50;
+
+  private final static int END_HEADER_SIZE = 22;
+
+  private final static int LOCAL_HEADER_SIZE = 30;
+
+  private final static int CENTRAL_HEADER_SIZE = 46;
+
+  private final static Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * the mapped jar file, or null if we could not map it
+   */
+  private final ByteBuffer mapped;
+
+  /**
+   * map from entry name to index in the central directory arrays below
+   */
+  private final HashMap<String, Integer> index = HashMapFactory.make();
+
+  private int[] method;
+
+  private int[] compressedSize;
+
+  private int[] size;
+
+  private int[] localHeaderOffset;
+
+  /**
+   * reused for all deflated entries; guarded by this.
+   * 
+   * It is never end()ed, since there is no point at which this module is done: neither {@link Module} nor {@link JarFileModule} has
+   * a close(), the mapping is only unmapped once the buffer is garbage collected, and the JarFile is never closed either. So its
+   * native zlib state (a few tens of KB) is freed by its finalizer when this module becomes unreachable, along with the mapping.
+   */
+  private Inflater inflater;
+
+  /**
+   * reused to hold the compressed bytes of deflated entries; guarded by this
+   */
+  private byte[] inputBuffer = new byte[4096];
+
+  public MappedJarFileModule(JarFile f) {
+    super(f);
+    ByteBuffer buffer = null;
+    try {
+      buffer = map(f.getName());
+      if (buffer != null && !readCentralDirectory(buffer)) {
+        index.clear();
+        buffer = null;
+      }
+    } catch (IOException e) {
+      index.clear();
+      buffer = null;
+    }
+    this.mapped = buffer;
+  }
+
+  private static ByteBuffer map(String fileName) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(fileName, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      long length = channel.size();
+      if (length > Integer.MAX_VALUE || length < END_HEADER_SIZE) {
+        return null;
+      }
+      // the mapping remains valid after the channel is closed
+      MappedByteBuffer result = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+      result.order(ByteOrder.LITTLE_ENDIAN);
+      return result;
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * populate the index from the central directory of the jar.
+   *
+   * @return true iff the central directory was understood
+   */
+  private boolean readCentralDirectory(ByteBuffer buffer) {
+    int end = findEndHeader(buffer);
+    if (end < 0) {
+      return false;
+    }
+    int count = buffer.getShort(end + 10) & 0xffff;
+    long cdOffset = buffer.getInt(end + 16) & 0xffffffffL;
+    if (count == 0xffff || cdOffset >= buffer.limit()) {
+      // zip64
+      return false;
+    }
+    method = new int[count];
+    compressedSize = new int[count];
+    size = new int[count];
+    localHeaderOffset = new int[count];
+
+    int p = (int) cdOffset;
+    for (int i = 0; i < count; i++) {
+      if (p + CENTRAL_HEADER_SIZE > buffer.limit() || buffer.getInt(p) != CENTRAL_HEADER_SIG) {
+        return false;
+      }
+      method[i] = buffer.getShort(p + 10) & 0xffff;
+      compressedSize[i] = buffer.getInt(p + 20);
+      size[i] = buffer.getInt(p + 24);
+      int nameLength = buffer.getShort(p + 28) & 0xffff;
+      int extraLength = buffer.getShort(p + 30) & 0xffff;
+      int commentLength = buffer.getShort(p + 32) & 0xffff;
+      localHeaderOffset[i] = buffer.getInt(p + 42);
+      if (compressedSize[i] < 0 || size[i] < 0 || localHeaderOffset[i] < 0) {
+        // zip64
+        return false;
+      }
+      byte[] name = new byte[nameLength];
+      ByteBuffer b = buffer.duplicate();
+      b.position(p + CENTRAL_HEADER_SIZE);
+      b.get(name);
+      index.put(new String(name, UTF8), i);
+      p += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+    return true;
+  }
+
+  /**
+   * @return the offset of the end of central directory record, or -1 if not found
+   */
+  private static int findEndHeader(ByteBuffer buffer) {
+    int last = buffer.limit() - END_HEADER_SIZE;
+    // the end record may be followed by a comment of at most 64k
+    int first = Math.max(0, last - 0xffff);
+    for (int p = last; p >= first; p--) {
+      if (buffer.getInt(p) == END_HEADER_SIG) {
+        return p;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return true iff the named entry can be read from the mapped jar
+   */
+  public boolean isMapped(String entryName) {
+    return mapped != null && index.containsKey(entryName);
+  }
+
+  @Override
+  protected ModuleEntry createEntry(ZipEntry z) {
+    if (isMapped(z.getName())) {
+      return new MappedJarFileEntry(z.getName(), this);
+    } else {
+      return super.createEntry(z);
+    }
+  }
+
+  @Override
+  public byte[] getContents(ZipEntry entry) {
+    if (isMapped(entry.getName())) {
+      return getContents(entry.getName());
+    } else {
+      return super.getContents(entry);
+    }
+  }
+
+  /**
+   * read the contents of an entry from the mapped jar
+   *
+   * @throws IllegalArgumentException if !isMapped(entryName)
+   */
+  public byte[] getContents(String entryName) {
+    if (!isMapped(entryName)) {
+      throw new IllegalArgumentException("not a mapped entry: " + entryName);
+    }
+    int i = index.get(entryName);
+    // note that duplicate() does not preserve the byte order
+    ByteBuffer b = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int p = localHeaderOffset[i];
+    if (b.getInt(p) != LOCAL_HEADER_SIG) {
+      Assertions.UNREACHABLE("bad local header for " + entryName + " in " + getAbsolutePath());
+    }
+    int nameLength = b.getShort(p + 26) & 0xffff;
+    int extraLength = b.getShort(p + 28) & 0xffff;
+    b.position(p + LOCAL_HEADER_SIZE + nameLength + extraLength);
+
+    byte[] result = new byte[size[i]];
+    switch (method[i]) {
+    case ZipEntry.STORED:
+      b.get(result);
+      return result;
+    case ZipEntry.DEFLATED:
+      inflate(b, compressedSize[i], result);
+      return result;
+    default:
+      Assertions.UNREACHABLE("unexpected compression method " + method[i] + " for " + entryName);
+      return null;
+    }
+  }
+
+  private synchronized void inflate(ByteBuffer b, int length, byte[] result) {
+    if (inputBuffer.length < length) {
+      inputBuffer = new byte[Math.max(length, 2 * inputBuffer.length)];
+    }
+    b.get(inputBuffer, 0, length);
+    if (inflater == null) {
+      inflater = new Inflater(true);
+    } else {
+      inflater.reset();
+    }
+    inflater.setInput(inputBuffer, 0, length);
+    try {
+      int n = 0;
+      while (n < result.length) {
+        int k = inflater.inflate(result, n, result.length - n);
+        if (k == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        n += k;
+      }
+      if (n != result.length) {
+        Assertions.UNREACHABLE("truncated entry in " + getAbsolutePath());
+      }
+    } catch (DataFormatException e) {
+      e.printStackTrace();
+      Assertions.UNREACHABLE();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MappedJarFileModule:" + getAbsolutePath();
+  }
+}
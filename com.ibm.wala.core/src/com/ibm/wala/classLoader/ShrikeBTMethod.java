@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Set;
 
 import com.ibm.wala.shrikeBT.BytecodeConstants;
+import com.ibm.wala.shrikeBT.ConstantPoolReader;
 import com.ibm.wala.shrikeBT.Constants;
 import com.ibm.wala.shrikeBT.Decoder;
 import com.ibm.wala.shrikeBT.ExceptionHandler;
@@ -32,6 +33,7 @@ import com.ibm.wala.shrikeBT.IPutInstruction;
 import com.ibm.wala.shrikeBT.ITypeTestInstruction;
 import com.ibm.wala.shrikeBT.MonitorInstruction;
 import com.ibm.wala.shrikeBT.NewInstruction;
+import com.ibm.wala.shrikeBT.StreamingDecoder;
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.types.Descriptor;
@@ -72,6 +74,10 @@ public abstract class ShrikeBTMethod implements IMethod, BytecodeConstants {
 
   // break these out to save some space; they're computed lazily.
   protected static class BytecodeInfo {
+    /**
+     * Decoded instructions; computed lazily by {@link ShrikeBTMethod#getDecoder()}, since the summaries below are normally collected
+     * straight from the bytecode.
+     */
     Decoder decoder;
 
     CallSiteReference[] callSites;
@@ -93,7 +99,7 @@ public abstract class ShrikeBTMethod implements IMethod, BytecodeConstants {
     boolean hasMonitorOp;
 
     /**
-     * Mapping from instruction index to program counter.
+     * Mapping from instruction index to program counter; computed along with the decoder.
      */
     private int[] pcMap;
 /** BEGIN Custom change: precise positions */
@@ -156,7 +162,7 @@ public abstract class ShrikeBTMethod implements IMethod, BytecodeConstants {
    * @throws InvalidClassFileException
    */
   public int getBytecodeIndex(int instructionIndex) throws InvalidClassFileException {
-    return getBCInfo().pcMap[instructionIndex];
+    return getPcMap()[instructionIndex];
   }
 
   /**
@@ -165,7 +171,7 @@ public abstract class ShrikeBTMethod implements IMethod, BytecodeConstants {
    * @throws InvalidClassFileException
    */
   public int getNumShrikeInstructions() throws InvalidClassFileException {
-    return getBCInfo().pcMap.length;
+    return getPcMap().length;
   }
 
   /**
@@ -422,6 +428,46 @@ public abstract class ShrikeBTMethod implements IMethod, BytecodeConstants {
    */
   protected abstract Decoder makeDecoder();
 
+  /**
+   * Subclasses that can read the constant pool directly return it here, so that the summary information (call sites, field
+   * accesses, allocation sites, ...) is collected with a {@link StreamingDecoder} instead of by decoding the method.
+   * 
+   * @return null if the summaries should be computed from the decoded instructions
+   */
+  protected ConstantPoolReader getConstantPoolReader() {
+    return null;
+  }
+
+  /**
+   * Find the decoded instructions for this method, decoding them on first use.
+   * 
+   * @return null if the method has no code.
+   */
+  protected synchronized Decoder getDecoder() throws InvalidClassFileException {
+    BytecodeInfo info = getBCInfo();
+    decode(info);
+    return info.decoder;
+  }
+
+  /**
+   * Read the program counters from the same {@link BytecodeInfo} that is decoded, since the soft reference to it may be cleared
+   * in between.
+   */
+  private synchronized int[] getPcMap() throws InvalidClassFileException {
+    BytecodeInfo info = getBCInfo();
+    decode(info);
+    return info.pcMap;
+  }
+
+  private void decode(BytecodeInfo info) {
+    if (info.decoder == null && info.pcMap == null) {
+      info.decoder = makeDecoder();
+      if (info.decoder != null) {
+        info.pcMap = info.decoder.getInstructionsToBytecodes();
+      }
+    }
+  }
+
   /**
    * Walk through the bytecodes and collect trivial information.
    * 
@@ -430,6 +476,13 @@ public abstract class ShrikeBTMethod implements IMethod, BytecodeConstants {
   protected abstract void processDebugInfo(BytecodeInfo bcInfo) throws InvalidClassFileException;
 
   private void processBytecodesWithShrikeBT(BytecodeInfo info) throws InvalidClassFileException {
+    ConstantPoolReader cp = getConstantPoolReader();
+    byte[] code = (cp == null) ? null : getBytecodes();
+    if (code != null) {
+      processBytecodesWithStreamingDecoder(info, code, cp);
+      return;
+    }
+
     info.decoder = makeDecoder();
     if (!isAbstract() && info.decoder == null) {
       throw new InvalidClassFileException(-1, "non-abstract method " + getReference() + " has no bytecodes");
@@ -461,6 +514,23 @@ public abstract class ShrikeBTMethod implements IMethod, BytecodeConstants {
     copyVisitorSetsToArrays(simpleVisitor, info);
   }
 
+  /**
+   * Collect the summary information in one pass over the bytecode, without decoding it.
+   */
+  private void processBytecodesWithStreamingDecoder(BytecodeInfo info, byte[] code, ConstantPoolReader cp)
+      throws InvalidClassFileException {
+    processDebugInfo(info);
+
+    SimpleVisitor simpleVisitor = new SimpleVisitor(info);
+    try {
+      new StreamingDecoder(code, cp).scan(new StreamingVisitor(simpleVisitor));
+    } catch (Decoder.InvalidBytecodeException e) {
+      throw new InvalidClassFileException(e.getIndex(), "bad bytecode in " + getReference() + ": " + e.getMessage());
+    }
+
+    copyVisitorSetsToArrays(simpleVisitor, info);
+  }
+
   private void copyVisitorSetsToArrays(SimpleVisitor simpleVisitor, BytecodeInfo info) {
     info.newSites = new NewSiteReference[simpleVisitor.newSites.size()];
     int i = 0;
@@ -684,21 +754,92 @@ public abstract class ShrikeBTMethod implements IMethod, BytecodeConstants {
     }
   }
 
+  /**
+   * A visitor used to collect the same information as {@link SimpleVisitor}, straight from the bytecode
+   */
+  private class StreamingVisitor extends StreamingDecoder.Visitor {
+
+    private final SimpleVisitor sets;
+
+    private final ClassLoaderReference loader = getDeclaringClass().getClassLoader().getReference();
+
+    private final BytecodeLanguage lang = (BytecodeLanguage) getDeclaringClass().getClassLoader().getLanguage();
+
+    StreamingVisitor(SimpleVisitor sets) {
+      this.sets = sets;
+    }
+
+    @Override
+    public void visitMonitor(StreamingDecoder.InstructionView instruction) {
+      sets.hasMonitorOp = true;
+    }
+
+    @Override
+    public void visitNew(StreamingDecoder.InstructionView instruction) {
+      TypeReference t = ShrikeUtil.makeTypeReference(loader, instruction.getType());
+      sets.newSites.add(NewSiteReference.make(instruction.getProgramCounter(), t));
+    }
+
+    @Override
+    public void visitGet(StreamingDecoder.InstructionView instruction) {
+      sets.fieldsRead.add(FieldReference.findOrCreate(loader, instruction.getClassType(), instruction.getFieldName(), instruction
+          .getFieldType()));
+    }
+
+    @Override
+    public void visitPut(StreamingDecoder.InstructionView instruction) {
+      sets.fieldsWritten.add(FieldReference.findOrCreate(loader, instruction.getClassType(), instruction.getFieldName(),
+          instruction.getFieldType()));
+    }
+
+    @Override
+    public void visitInvoke(StreamingDecoder.InstructionView instruction) {
+      MethodReference m = MethodReference.findOrCreate(lang, loader, instruction.getClassType(), instruction.getMethodName(),
+          instruction.getMethodSignature());
+      sets.callSites.add(CallSiteReference.make(instruction.getProgramCounter(), m, instruction.getInvocationCode()));
+    }
+
+    @Override
+    public void visitArrayLoad(StreamingDecoder.InstructionView instruction) {
+      sets.arraysRead.add(ShrikeUtil.makeTypeReference(loader, instruction.getType()));
+    }
+
+    @Override
+    public void visitArrayStore(StreamingDecoder.InstructionView instruction) {
+      sets.arraysWritten.add(ShrikeUtil.makeTypeReference(loader, instruction.getType()));
+    }
+
+    @Override
+    public void visitCheckCast(StreamingDecoder.InstructionView instruction) {
+      sets.castTypes.add(ShrikeUtil.makeTypeReference(loader, instruction.getType()));
+    }
+
+    @Override
+    public void visitPEI(StreamingDecoder.InstructionView instruction) {
+      Collection<TypeReference> t = lang.getImplicitExceptionTypes(instruction.getPrototype());
+      if (t != null) {
+        sets.implicitExceptions.addAll(t);
+      }
+    }
+  }
+
   /**
    */
   public IInstruction[] getInstructions() throws InvalidClassFileException {
-    if (getBCInfo().decoder == null) {
+    Decoder decoder = getDecoder();
+    if (decoder == null) {
       return null;
     } else {
-      return getBCInfo().decoder.getInstructions();
+      return decoder.getInstructions();
     }
   }
 
   public ExceptionHandler[][] getHandlers() throws InvalidClassFileException {
-    if (getBCInfo().decoder == null) {
+    Decoder decoder = getDecoder();
+    if (decoder == null) {
       return null;
     } else {
-      return getBCInfo().decoder.getHandlers();
+      return decoder.getHandlers();
     }
   }
 
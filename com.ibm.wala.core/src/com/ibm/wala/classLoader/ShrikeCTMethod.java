@@ -14,6 +14,7 @@ import java.io.IOException;
 import java.util.Collection;
 
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.shrikeBT.ConstantPoolReader;
 import com.ibm.wala.shrikeBT.Decoder;
 import com.ibm.wala.shrikeBT.IndirectionData;
 import com.ibm.wala.shrikeBT.shrikeCT.CTDecoder;
@@ -108,6 +109,11 @@ public final class ShrikeCTMethod extends ShrikeBTMethod implements IBytecodeMet
     return d;
   }
 
+  @Override
+  protected ConstantPoolReader getConstantPoolReader() {
+    return CTDecoder.makeConstantPoolReader(getClassReader());
+  }
+
   @Override
   public int getMaxLocals() {
     CodeReader reader = getCodeReader();
@@ -47,6 +47,12 @@ public final class ShrikeClass extends JVMClass<IClassLoader> {
    */
   private final ShrikeClassReaderHandle reader;
 
+  /**
+   * Have the declared fields been decoded from the class file? Fields (and their annotations) are decoded on first access, since
+   * most classes on a large classpath are never asked for them.
+   */
+  private volatile boolean fieldsComputed = false;
+
   /**
    * @throws IllegalArgumentException
    *           if reader is null
@@ -59,12 +65,30 @@ public final class ShrikeClass extends JVMClass<IClassLoader> {
     this.reader = reader;
     computeTypeReference();
     this.hashCode = 2161 * getReference().hashCode();
-    // as long as the reader is around, pull more data out
-    // of it before the soft reference to it disappears
+    // as long as the reader is around, pull the class header out
+    // of it before the soft reference to it disappears. The fields
+    // and methods are decoded on demand.
     computeSuperName();
     computeModifiers();
     computeInterfaceNames();
-    computeFields();
+  }
+
+  /**
+   * Compute the fields declared by this class, if we have not done so already
+   * 
+   * @throws InvalidClassFileException
+   *           iff Shrike fails to read the class file correctly
+   */
+  @Override
+  protected void computeFieldsIfNeeded() throws InvalidClassFileException {
+    if (!fieldsComputed) {
+      synchronized (this) {
+        if (!fieldsComputed) {
+          computeFields();
+          fieldsComputed = true;
+        }
+      }
+    }
   }
 
   /**
@@ -13,12 +13,16 @@ package com.ibm.wala.classLoader;
 import com.ibm.wala.cfg.ControlFlowGraph;
 import com.ibm.wala.cfg.ShrikeCFG;
 import com.ibm.wala.ipa.callgraph.Context;
+import com.ibm.wala.shrikeBT.InvokeDynamicInstruction;
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.ssa.CompactIR;
+import com.ibm.wala.ssa.CompactIRFactory;
 import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.IRFactory;
 import com.ibm.wala.ssa.SSABuilder;
 import com.ibm.wala.ssa.SSACFG;
 import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAInstructionFactory;
 import com.ibm.wala.ssa.SSAOptions;
 import com.ibm.wala.ssa.ShrikeIndirectionData;
 import com.ibm.wala.ssa.SymbolTable;
@@ -27,8 +31,10 @@ import com.ibm.wala.util.WalaRuntimeException;
 
 /**
  * An {@link IRFactory} that for methods that originate from Shrike.
+ * 
+ * The IRs it builds can be encoded as {@link CompactIR}s.
  */
-public class ShrikeIRFactory implements IRFactory<IBytecodeMethod> {
+public class ShrikeIRFactory implements CompactIRFactory<IBytecodeMethod> {
 
   public final static boolean buildLocalMap = true;
 
@@ -42,76 +48,95 @@ public class ShrikeIRFactory implements IRFactory<IBytecodeMethod> {
     if (method == null) {
       throw new IllegalArgumentException("null method");
     }
+    return makeIR(method, (ShrikeCFG) makeCFG(method, C), options);
+  }
+
+  /**
+   * @param shrikeCFG the CFG of method, as built by {@link #makeCFG(IBytecodeMethod, Context)}
+   */
+  public IR makeIR(final IBytecodeMethod method, final ShrikeCFG shrikeCFG, final SSAOptions options) {
+    if (method == null) {
+      throw new IllegalArgumentException("null method");
+    }
+    if (shrikeCFG == null) {
+      throw new IllegalArgumentException("null shrikeCFG");
+    }
     com.ibm.wala.shrikeBT.IInstruction[] shrikeInstructions = null;
     try {
       shrikeInstructions = method.getInstructions();
     } catch (InvalidClassFileException e) {
       throw new WalaRuntimeException("bad method bytecodes", e);
     }
-    final ShrikeCFG shrikeCFG = (ShrikeCFG) makeCFG(method, C);
 
     final SymbolTable symbolTable = new SymbolTable(method.getNumberOfParameters());
     final SSAInstruction[] newInstrs = new SSAInstruction[shrikeInstructions.length];
 
     final SSACFG newCfg = new SSACFG(method, shrikeCFG, newInstrs);
 
-    return new IR(method, newInstrs, symbolTable, newCfg, options) {
-      private final SSA2LocalMap localMap;
-
-      private final ShrikeIndirectionData indirectionData;
-      
-      /**
-       * Remove any phis that are dead assignments.
-       * 
-       * TODO: move this elsewhere?
-       */
-      private void eliminateDeadPhis() {
-        DeadAssignmentElimination.perform(this);
-      }
+    return new ShrikeIR(method, newInstrs, symbolTable, newCfg, shrikeCFG, options);
+  }
 
-      @Override
-      protected String instructionPosition(int instructionIndex) {
-        try {
-          int bcIndex = method.getBytecodeIndex(instructionIndex);
-          int lineNumber = method.getLineNumber(bcIndex);
-
-          if (lineNumber == -1) {
-            return "";
-          } else {
-            return "(line " + lineNumber + ")";
-          }
-        } catch (InvalidClassFileException e) {
-          return "";
-        }
-      }
+  /**
+   * @return a compact encoding of ir, or null if ir was not built by a ShrikeIRFactory, its method uses invokedynamic, or it can
+   *         not be encoded
+   */
+  @Override
+  public CompactIR compact(IR ir) {
+    if (ir == null) {
+      throw new IllegalArgumentException("null ir");
+    }
+    if (!(ir instanceof ShrikeIR)) {
+      return null;
+    }
+    // invokedynamic is built as an ordinary invoke of the bootstrap method's class; its bootstrap method is not kept
+    if (hasInvokeDynamic(((ShrikeIR) ir).method)) {
+      return null;
+    }
+    // the local map must not keep the ShrikeCFG, and with it the decoded bytecodes, alive
+    return CompactIR.make(ir, SSABuilder.detachLocalMap(((ShrikeIR) ir).localMap));
+  }
 
-      @Override
-      public SSA2LocalMap getLocalMap() {
-        return localMap;
+  private static boolean hasInvokeDynamic(IBytecodeMethod method) {
+    com.ibm.wala.shrikeBT.IInstruction[] shrikeInstructions;
+    try {
+      shrikeInstructions = method.getInstructions();
+    } catch (InvalidClassFileException e) {
+      throw new WalaRuntimeException("bad method bytecodes", e);
+    }
+    for (com.ibm.wala.shrikeBT.IInstruction instruction : shrikeInstructions) {
+      if (instruction instanceof InvokeDynamicInstruction) {
+        return true;
       }
+    }
+    return false;
+  }
 
-      {
-        SSABuilder builder = SSABuilder.make(method, newCfg, shrikeCFG, newInstrs, symbolTable, buildLocalMap, options
-            .getPiNodePolicy());
-        builder.build();
-        if (buildLocalMap)
-          localMap = builder.getLocalMap();
-        else
-          localMap = null;
-
-        indirectionData = builder.getIndirectionData();
-        
-        eliminateDeadPhis();
-
-        setupLocationMap();
-      }
+  @Override
+  public IR inflate(CompactIR compact) {
+    if (compact == null) {
+      throw new IllegalArgumentException("null compact");
+    }
+    return inflate(compact, ShrikeCFG.make((IBytecodeMethod) compact.getMethod()));
+  }
 
-      @SuppressWarnings("unchecked")
-      @Override
-      protected ShrikeIndirectionData getIndirectionData() {
-         return indirectionData;
-      }
-    };
+  /**
+   * @param shrikeCFG the CFG of the method of compact, with the same blocks and edges as the one its IR was built on
+   * @return an IR equivalent to the one compact was made from
+   */
+  public IR inflate(CompactIR compact, ShrikeCFG shrikeCFG) {
+    if (compact == null) {
+      throw new IllegalArgumentException("null compact");
+    }
+    if (shrikeCFG == null) {
+      throw new IllegalArgumentException("null shrikeCFG");
+    }
+    IBytecodeMethod method = (IBytecodeMethod) compact.getMethod();
+    SSAInstructionFactory insts = method.getDeclaringClass().getClassLoader().getInstructionFactory();
+    SSAInstruction[] instructions = compact.inflateInstructions(insts);
+    SSACFG cfg = new SSACFG(method, shrikeCFG, instructions);
+    SymbolTable symbolTable = compact.inflate(cfg, insts);
+    return new ShrikeIR(method, instructions, symbolTable, cfg, compact.getOptions(), SSABuilder.attachLocalMap(compact
+        .getLocalMap(), shrikeCFG), (ShrikeIndirectionData) compact.getIndirectionData());
   }
 
   @Override
@@ -119,4 +144,85 @@ public class ShrikeIRFactory implements IRFactory<IBytecodeMethod> {
     // this factory always returns the same IR for a method
     return true;
   }
+
+  /**
+   * An {@link IR} built from Shrike bytecodes by an {@link SSABuilder}
+   */
+  private static class ShrikeIR extends IR {
+    private final IBytecodeMethod method;
+
+    private final SSA2LocalMap localMap;
+
+    private final ShrikeIndirectionData indirectionData;
+
+    /**
+     * Build the IR from the bytecodes of method.
+     */
+    ShrikeIR(IBytecodeMethod method, SSAInstruction[] newInstrs, SymbolTable symbolTable, SSACFG newCfg, ShrikeCFG shrikeCFG,
+        SSAOptions options) {
+      super(method, newInstrs, symbolTable, newCfg, options);
+      this.method = method;
+      SSABuilder builder = SSABuilder.make(method, newCfg, shrikeCFG, newInstrs, symbolTable, buildLocalMap, options
+          .getPiNodePolicy());
+      builder.build();
+      if (buildLocalMap)
+        localMap = builder.getLocalMap();
+      else
+        localMap = null;
+
+      indirectionData = builder.getIndirectionData();
+
+      eliminateDeadPhis();
+
+      setupLocationMap();
+    }
+
+    /**
+     * Wrap the parts of an IR inflated from a {@link CompactIR}.
+     */
+    ShrikeIR(IBytecodeMethod method, SSAInstruction[] instructions, SymbolTable symbolTable, SSACFG cfg, SSAOptions options,
+        SSA2LocalMap localMap, ShrikeIndirectionData indirectionData) {
+      super(method, instructions, symbolTable, cfg, options);
+      this.method = method;
+      this.localMap = localMap;
+      this.indirectionData = indirectionData;
+      setupLocationMap();
+    }
+
+    /**
+     * Remove any phis that are dead assignments.
+     * 
+     * TODO: move this elsewhere?
+     */
+    private void eliminateDeadPhis() {
+      DeadAssignmentElimination.perform(this);
+    }
+
+    @Override
+    protected String instructionPosition(int instructionIndex) {
+      try {
+        int bcIndex = method.getBytecodeIndex(instructionIndex);
+        int lineNumber = method.getLineNumber(bcIndex);
+
+        if (lineNumber == -1) {
+          return "";
+        } else {
+          return "(line " + lineNumber + ")";
+        }
+      } catch (InvalidClassFileException e) {
+        return "";
+      }
+    }
+
+    @Override
+    public SSA2LocalMap getLocalMap() {
+      return localMap;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected ShrikeIndirectionData getIndirectionData() {
+      return indirectionData;
+    }
+  }
 }
@@ -0,0 +1,750 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.IFDS;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.ibm.wala.cfg.ControlFlowGraph;
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.analysis.ExplodedControlFlowGraph;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.util.Predicate;
+import com.ibm.wala.util.collections.EmptyIterator;
+import com.ibm.wala.util.collections.IndiscriminateFilter;
+import com.ibm.wala.util.graph.Graph;
+import com.ibm.wala.util.intset.BitVector;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+
+/**
+ * A forward supergraph over the exploded CFGs of a call graph, with the same nodes and edges as an {@link ICFGSupergraph}, but a
+ * much smaller footprint.
+ *
+ * The blocks of all procedures are numbered densely: the blocks of a procedure get a contiguous range of numbers, in the order in
+ * which the procedures are first reached. All edges of a procedure, intraprocedural, call-to-return, call and return edges alike,
+ * are stored in int arrays in compressed sparse row form; they are computed the first time a block of that procedure is asked for
+ * its successors or predecessors. {@link BasicBlockInContext} objects are not stored at all, but created on demand when a client
+ * asks for nodes rather than numbers.
+ *
+ * The exploded CFGs come from the {@link AnalysisCache}, so they are shared with other clients of the same IRs.
+ */
+public class CompactICFGSupergraph implements ISupergraph<BasicBlockInContext<IExplodedBasicBlock>, CGNode> {
+
+  /**
+   * procedure number of a call graph node which has not been looked at yet
+   */
+  private static final int UNKNOWN = -2;
+
+  /**
+   * procedure number of a call graph node which is not relevant, or has no CFG
+   */
+  private static final int NONE = -1;
+
+  private final CallGraph cg;
+
+  private final AnalysisCache cache;
+
+  private final Predicate<CGNode> relevant;
+
+  /**
+   * procedure number of each call graph node, indexed by call graph node number
+   */
+  private int[] procOf = new int[0];
+
+  /**
+   * number of procedures numbered so far
+   */
+  private int nProcs = 0;
+
+  /**
+   * number of the first block of each procedure; increasing
+   */
+  private int[] procStart = new int[16];
+
+  private CGNode[] procNode = new CGNode[16];
+
+  private ExplodedControlFlowGraph[] procCFG = new ExplodedControlFlowGraph[16];
+
+  /**
+   * for each procedure whose edges have been computed, the offset of the successors of each of its blocks in succs; null otherwise
+   */
+  private int[][] succOffsets = new int[16][];
+
+  private int[][] succs = new int[16][];
+
+  private int[][] predOffsets = new int[16][];
+
+  private int[][] preds = new int[16][];
+
+  /**
+   * the number the next procedure's first block will get
+   */
+  private int nextNumber = 0;
+
+  /**
+   * blocks that end in a call
+   */
+  private final BitVector callBlocks = new BitVector();
+
+  /**
+   * blocks that are the successor of a call
+   */
+  private final BitVector returnBlocks = new BitVector();
+
+  private boolean allNumbered = false;
+
+  protected CompactICFGSupergraph(CallGraph cg, AnalysisCache cache, Predicate<CGNode> relevant) {
+    if (cg == null) {
+      throw new IllegalArgumentException("null cg");
+    }
+    if (cache == null) {
+      throw new IllegalArgumentException("null cache");
+    }
+    if (relevant == null) {
+      throw new IllegalArgumentException("null relevant");
+    }
+    this.cg = cg;
+    this.cache = cache;
+    this.relevant = relevant;
+  }
+
+  public static CompactICFGSupergraph make(CallGraph cg, AnalysisCache cache) {
+    return new CompactICFGSupergraph(cg, cache, IndiscriminateFilter.<CGNode> singleton());
+  }
+
+  /**
+   * @param relevant accepts the call graph nodes which should be included; others are ignored
+   */
+  public static CompactICFGSupergraph make(CallGraph cg, AnalysisCache cache, Predicate<CGNode> relevant) {
+    return new CompactICFGSupergraph(cg, cache, relevant);
+  }
+
+  /**
+   * @return the CFG for n, or null if none found
+   */
+  protected ExplodedControlFlowGraph getCFG(CGNode n) {
+    IR ir = n.getIR();
+    return ir == null ? null : cache.getSSACache().findOrCreateExplodedCFG(ir, n.getContext());
+  }
+
+  public ControlFlowGraph<SSAInstruction, IExplodedBasicBlock> getCFG(BasicBlockInContext<IExplodedBasicBlock> node) {
+    if (node == null) {
+      throw new IllegalArgumentException("node is null");
+    }
+    int p = getProcNumber(node.getNode());
+    return p == NONE ? null : procCFG[p];
+  }
+
+  /**
+   * @return the procedure number of n, numbering it and its blocks if needed, or NONE if n is not in this supergraph
+   */
+  private int getProcNumber(CGNode n) {
+    int c = cg.getNumber(n);
+    if (c < 0) {
+      return NONE;
+    }
+    if (c >= procOf.length) {
+      int old = procOf.length;
+      procOf = Arrays.copyOf(procOf, Math.max(c + 1, Math.max(2 * old, cg.getMaxNumber() + 1)));
+      Arrays.fill(procOf, old, procOf.length, UNKNOWN);
+    }
+    if (procOf[c] == UNKNOWN) {
+      ExplodedControlFlowGraph cfg = relevant.test(n) ? getCFG(n) : null;
+      procOf[c] = cfg == null ? NONE : addProc(n, cfg);
+    }
+    return procOf[c];
+  }
+
+  private int addProc(CGNode n, ExplodedControlFlowGraph cfg) {
+    int p = nProcs++;
+    if (p == procStart.length) {
+      int size = 2 * p;
+      procStart = Arrays.copyOf(procStart, size);
+      procNode = Arrays.copyOf(procNode, size);
+      procCFG = Arrays.copyOf(procCFG, size);
+      succOffsets = Arrays.copyOf(succOffsets, size);
+      succs = Arrays.copyOf(succs, size);
+      predOffsets = Arrays.copyOf(predOffsets, size);
+      preds = Arrays.copyOf(preds, size);
+    }
+    int start = nextNumber;
+    procStart[p] = start;
+    procNode[p] = n;
+    procCFG[p] = cfg;
+    nextNumber += cfg.getMaxNumber() + 1;
+
+    SSAInstruction[] instructions = cfg.getInstructions();
+    for (int i = 0; i < instructions.length; i++) {
+      if (instructions[i] instanceof SSAAbstractInvokeInstruction) {
+        // the block of instruction i is numbered i + 1
+        IExplodedBasicBlock call = i + 1 < cfg.getMaxNumber() ? cfg.getNode(i + 1) : null;
+        if (call == null || call.getLastInstructionIndex() != i) {
+          continue;
+        }
+        callBlocks.set(start + i + 1);
+        for (Iterator<IExplodedBasicBlock> it = cfg.getSuccNodes(call); it.hasNext();) {
+          returnBlocks.set(start + it.next().getNumber());
+        }
+      }
+    }
+    return p;
+  }
+
+  /**
+   * @return the procedure holding block number x
+   */
+  private int procForNumber(int x) {
+    if (x < 0 || x >= nextNumber) {
+      throw new IllegalArgumentException("not a node number: " + x);
+    }
+    int p = Arrays.binarySearch(procStart, 0, nProcs, x);
+    return p >= 0 ? p : -p - 2;
+  }
+
+  private void numberAll() {
+    if (!allNumbered) {
+      for (CGNode n : cg) {
+        getProcNumber(n);
+      }
+      allNumbered = true;
+    }
+  }
+
+  /**
+   * compute the successor and predecessor edges of all blocks of procedure p
+   */
+  private void computeEdges(int p) {
+    if (succOffsets[p] != null) {
+      return;
+    }
+    CGNode node = procNode[p];
+    ExplodedControlFlowGraph cfg = procCFG[p];
+    int start = procStart[p];
+    int size = cfg.getMaxNumber() + 1;
+    MutableSparseIntSet[] s = new MutableSparseIntSet[size];
+    MutableSparseIntSet[] r = new MutableSparseIntSet[size];
+
+    // intraprocedural edges, including call-to-return edges
+    for (int b = 0; b < size; b++) {
+      IExplodedBasicBlock block = cfg.getNode(b);
+      if (block == null) {
+        continue;
+      }
+      for (Iterator<IExplodedBasicBlock> it = cfg.getSuccNodes(block); it.hasNext();) {
+        s[b] = add(s[b], start + it.next().getNumber());
+      }
+      for (Iterator<IExplodedBasicBlock> it = cfg.getPredNodes(block); it.hasNext();) {
+        r[b] = add(r[b], start + it.next().getNumber());
+      }
+    }
+
+    for (int b = 0; b < size; b++) {
+      if (callBlocks.get(start + b)) {
+        // call edges to the callee entries, and return edges from the callee exits to our return sites
+        for (CGNode target : cg.getPossibleTargets(node, getCallSite(cfg, b))) {
+          int q = getProcNumber(target);
+          if (q != NONE) {
+            s[b] = add(s[b], procStart[q]);
+            int exit = procStart[q] + procCFG[q].getMaxNumber();
+            for (Iterator<IExplodedBasicBlock> it = cfg.getSuccNodes(cfg.getNode(b)); it.hasNext();) {
+              int ret = it.next().getNumber();
+              r[ret] = add(r[ret], exit);
+            }
+          }
+        }
+      }
+    }
+
+    // call edges from, and return edges to, our callers
+    int entry = 0;
+    int exit = size - 1;
+    for (Iterator<CGNode> callers = cg.getPredNodes(node); callers.hasNext();) {
+      CGNode caller = callers.next();
+      int q = getProcNumber(caller);
+      if (q == NONE) {
+        continue;
+      }
+      ExplodedControlFlowGraph ccfg = procCFG[q];
+      // look at each call of the caller, as synthetic IRs do not map call sites to instructions
+      int calls = ccfg.getInstructions().length;
+      for (int call = callBlocks.nextSetBit(procStart[q]); call >= 0 && call <= procStart[q] + calls; call = callBlocks
+          .nextSetBit(call + 1)) {
+        int b = call - procStart[q];
+        if (!cg.getPossibleTargets(caller, getCallSite(ccfg, b)).contains(node)) {
+          continue;
+        }
+        r[entry] = add(r[entry], call);
+        for (Iterator<IExplodedBasicBlock> it = ccfg.getSuccNodes(ccfg.getNode(b)); it.hasNext();) {
+          s[exit] = add(s[exit], procStart[q] + it.next().getNumber());
+        }
+      }
+    }
+
+    int[] so = new int[size + 1];
+    int[] ro = new int[size + 1];
+    for (int b = 0; b < size; b++) {
+      so[b + 1] = so[b] + (s[b] == null ? 0 : s[b].size());
+      ro[b + 1] = ro[b] + (r[b] == null ? 0 : r[b].size());
+    }
+    succs[p] = toArray(s, so[size]);
+    preds[p] = toArray(r, ro[size]);
+    succOffsets[p] = so;
+    predOffsets[p] = ro;
+  }
+
+  private static MutableSparseIntSet add(MutableSparseIntSet set, int x) {
+    if (set == null) {
+      set = MutableSparseIntSet.makeEmpty();
+    }
+    set.add(x);
+    return set;
+  }
+
+  private static int[] toArray(MutableSparseIntSet[] sets, int total) {
+    int[] result = new int[total];
+    int i = 0;
+    for (MutableSparseIntSet set : sets) {
+      if (set != null) {
+        for (IntIterator it = set.intIterator(); it.hasNext();) {
+          result[i++] = it.next();
+        }
+      }
+    }
+    return result;
+  }
+
+  private static CallSiteReference getCallSite(ExplodedControlFlowGraph cfg, int block) {
+    return ((SSAAbstractInvokeInstruction) cfg.getNode(block).getInstruction()).getCallSite();
+  }
+
+  private BasicBlockInContext<IExplodedBasicBlock> makeNode(int p, int block) {
+    return new BasicBlockInContext<IExplodedBasicBlock>(procNode[p], procCFG[p].getNode(block));
+  }
+
+  /**
+   * @return an iterator over the nodes numbered data[from], ..., data[to - 1]
+   */
+  private Iterator<BasicBlockInContext<IExplodedBasicBlock>> iterateNumbers(final int[] data, final int from, final int to) {
+    return new Iterator<BasicBlockInContext<IExplodedBasicBlock>>() {
+      private int i = from;
+
+      @Override
+      public boolean hasNext() {
+        return i < to;
+      }
+
+      @Override
+      public BasicBlockInContext<IExplodedBasicBlock> next() {
+        if (i >= to) {
+          throw new NoSuchElementException();
+        }
+        return getNode(data[i++]);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  private static IntSet toIntSet(int[] data, int from, int to) {
+    MutableSparseIntSet result = MutableSparseIntSet.createMutableSparseIntSet(Math.max(1, to - from));
+    for (int i = from; i < to; i++) {
+      result.add(data[i]);
+    }
+    return result;
+  }
+
+  @Override
+  public Graph<? extends CGNode> getProcedureGraph() {
+    return cg;
+  }
+
+  @Override
+  public boolean isCall(BasicBlockInContext<IExplodedBasicBlock> n) {
+    int x = getNumber(n);
+    return x >= 0 && callBlocks.get(x);
+  }
+
+  @Override
+  public Iterator<? extends BasicBlockInContext<IExplodedBasicBlock>> getCalledNodes(BasicBlockInContext<IExplodedBasicBlock> call) {
+    int x = getNumber(call);
+    if (x < 0 || !callBlocks.get(x)) {
+      return EmptyIterator.instance();
+    }
+    int p = procForNumber(x);
+    computeEdges(p);
+    int b = x - procStart[p];
+    MutableSparseIntSet entries = MutableSparseIntSet.makeEmpty();
+    for (int i = succOffsets[p][b]; i < succOffsets[p][b + 1]; i++) {
+      int y = succs[p][i];
+      // no intraprocedural edge leads to an entry block
+      if (procStart[procForNumber(y)] == y) {
+        entries.add(y);
+      }
+    }
+    return iterateNodes(entries);
+  }
+
+  @Override
+  public Iterator<BasicBlockInContext<IExplodedBasicBlock>> getNormalSuccessors(BasicBlockInContext<IExplodedBasicBlock> call) {
+    return EmptyIterator.instance();
+  }
+
+  @Override
+  public Iterator<? extends BasicBlockInContext<IExplodedBasicBlock>> getReturnSites(BasicBlockInContext<IExplodedBasicBlock> call,
+      CGNode callee) {
+    if (call == null) {
+      throw new IllegalArgumentException("call is null");
+    }
+    int p = getProcNumber(call.getNode());
+    if (p == NONE) {
+      return EmptyIterator.instance();
+    }
+    ExplodedControlFlowGraph cfg = procCFG[p];
+    MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+    for (Iterator<IExplodedBasicBlock> it = cfg.getSuccNodes(call.getDelegate()); it.hasNext();) {
+      result.add(procStart[p] + it.next().getNumber());
+    }
+    return iterateNodes(result);
+  }
+
+  @Override
+  public Iterator<? extends BasicBlockInContext<IExplodedBasicBlock>> getCallSites(BasicBlockInContext<IExplodedBasicBlock> ret,
+      CGNode callee) {
+    if (ret == null) {
+      throw new IllegalArgumentException("ret is null");
+    }
+    int p = getProcNumber(ret.getNode());
+    if (p == NONE) {
+      return EmptyIterator.instance();
+    }
+    ExplodedControlFlowGraph cfg = procCFG[p];
+    MutableSparseIntSet result = MutableSparseIntSet.makeEmpty();
+    for (Iterator<IExplodedBasicBlock> it = cfg.getPredNodes(ret.getDelegate()); it.hasNext();) {
+      int b = it.next().getNumber();
+      if (callBlocks.get(procStart[p] + b)) {
+        Set<CGNode> targets = cg.getPossibleTargets(procNode[p], getCallSite(cfg, b));
+        if (callee == null ? targets.isEmpty() : targets.contains(callee)) {
+          result.add(procStart[p] + b);
+        }
+      }
+    }
+    return iterateNodes(result);
+  }
+
+  @Override
+  public boolean isExit(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return n.getDelegate().isExitBlock();
+  }
+
+  @Override
+  public CGNode getProcOf(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return n.getNode();
+  }
+
+  /**
+   * @return a one-element array holding n
+   */
+  @SuppressWarnings("unchecked")
+  private static BasicBlockInContext<IExplodedBasicBlock>[] singleton(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return (BasicBlockInContext<IExplodedBasicBlock>[]) new BasicBlockInContext<?>[] { n };
+  }
+
+  @Override
+  public BasicBlockInContext<IExplodedBasicBlock>[] getEntriesForProcedure(CGNode procedure) {
+    int p = getProcNumber(procedure);
+    return singleton(p == NONE ? null : makeNode(p, 0));
+  }
+
+  @Override
+  public BasicBlockInContext<IExplodedBasicBlock>[] getExitsForProcedure(CGNode procedure) {
+    int p = getProcNumber(procedure);
+    if (p == NONE) {
+      throw new IllegalArgumentException("not a procedure of this supergraph: " + procedure);
+    }
+    return singleton(makeNode(p, procCFG[p].getMaxNumber()));
+  }
+
+  @Override
+  public int getNumberOfBlocks(CGNode procedure) {
+    int p = getProcNumber(procedure);
+    return p == NONE ? 0 : procCFG[p].getMaxNumber() + 1;
+  }
+
+  @Override
+  public int getLocalBlockNumber(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return n.getDelegate().getNumber();
+  }
+
+  @Override
+  public BasicBlockInContext<IExplodedBasicBlock> getLocalBlock(CGNode procedure, int i) {
+    int p = getProcNumber(procedure);
+    if (p == NONE) {
+      throw new IllegalArgumentException("not a procedure of this supergraph: " + procedure);
+    }
+    return makeNode(p, i);
+  }
+
+  @Override
+  public boolean isReturn(BasicBlockInContext<IExplodedBasicBlock> n) {
+    int x = getNumber(n);
+    return x >= 0 && returnBlocks.get(x);
+  }
+
+  @Override
+  public boolean isEntry(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return n.getDelegate().isEntryBlock();
+  }
+
+  @Override
+  public byte classifyEdge(BasicBlockInContext<IExplodedBasicBlock> src, BasicBlockInContext<IExplodedBasicBlock> dest) {
+    if (isCall(src)) {
+      if (isEntry(dest)) {
+        return CALL_EDGE;
+      } else {
+        return CALL_TO_RETURN_EDGE;
+      }
+    } else if (isExit(src)) {
+      return RETURN_EDGE;
+    } else {
+      return OTHER;
+    }
+  }
+
+  @Override
+  public Iterator<BasicBlockInContext<IExplodedBasicBlock>> iterator() {
+    numberAll();
+    return new Iterator<BasicBlockInContext<IExplodedBasicBlock>>() {
+      private int next = 0;
+
+      @Override
+      public boolean hasNext() {
+        return next < nextNumber;
+      }
+
+      @Override
+      public BasicBlockInContext<IExplodedBasicBlock> next() {
+        if (next >= nextNumber) {
+          throw new NoSuchElementException();
+        }
+        return getNode(next++);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override
+  public int getNumberOfNodes() {
+    numberAll();
+    return nextNumber;
+  }
+
+  @Override
+  public boolean containsNode(BasicBlockInContext<IExplodedBasicBlock> n) {
+    return getNumber(n) >= 0;
+  }
+
+  @Override
+  public int getNumber(BasicBlockInContext<IExplodedBasicBlock> n) {
+    if (n == null) {
+      throw new IllegalArgumentException("n is null");
+    }
+    int p = getProcNumber(n.getNode());
+    if (p == NONE) {
+      return -1;
+    }
+    int b = n.getDelegate().getNumber();
+    return b <= procCFG[p].getMaxNumber() ? procStart[p] + b : -1;
+  }
+
+  @Override
+  public BasicBlockInContext<IExplodedBasicBlock> getNode(int number) {
+    int p = procForNumber(number);
+    return makeNode(p, number - procStart[p]);
+  }
+
+  @Override
+  public int getMaxNumber() {
+    numberAll();
+    return nextNumber - 1;
+  }
+
+  @Override
+  public Iterator<BasicBlockInContext<IExplodedBasicBlock>> iterateNodes(IntSet s) {
+    if (s == null) {
+      throw new IllegalArgumentException("s is null");
+    }
+    final IntIterator numbers = s.intIterator();
+    return new Iterator<BasicBlockInContext<IExplodedBasicBlock>>() {
+      @Override
+      public boolean hasNext() {
+        return numbers.hasNext();
+      }
+
+      @Override
+      public BasicBlockInContext<IExplodedBasicBlock> next() {
+        return getNode(numbers.next());
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  @Override
+  public Iterator<BasicBlockInContext<IExplodedBasicBlock>> getPredNodes(BasicBlockInContext<IExplodedBasicBlock> n) {
+    int x = getNumber(n);
+    if (x < 0) {
+      return EmptyIterator.instance();
+    }
+    int p = procForNumber(x);
+    computeEdges(p);
+    int b = x - procStart[p];
+    return iterateNumbers(preds[p], predOffsets[p][b], predOffsets[p][b + 1]);
+  }
+
+  @Override
+  public int getPredNodeCount(BasicBlockInContext<IExplodedBasicBlock> n) {
+    int x = getNumber(n);
+    if (x < 0) {
+      return 0;
+    }
+    int p = procForNumber(x);
+    computeEdges(p);
+    int b = x - procStart[p];
+    return predOffsets[p][b + 1] - predOffsets[p][b];
+  }
+
+  @Override
+  public IntSet getPredNodeNumbers(BasicBlockInContext<IExplodedBasicBlock> n) {
+    int x = getNumber(n);
+    if (x < 0) {
+      return MutableSparseIntSet.makeEmpty();
+    }
+    int p = procForNumber(x);
+    computeEdges(p);
+    int b = x - procStart[p];
+    return toIntSet(preds[p], predOffsets[p][b], predOffsets[p][b + 1]);
+  }
+
+  @Override
+  public Iterator<BasicBlockInContext<IExplodedBasicBlock>> getSuccNodes(BasicBlockInContext<IExplodedBasicBlock> n) {
+    int x = getNumber(n);
+    if (x < 0) {
+      return EmptyIterator.instance();
+    }
+    int p = procForNumber(x);
+    computeEdges(p);
+    int b = x - procStart[p];
+    return iterateNumbers(succs[p], succOffsets[p][b], succOffsets[p][b + 1]);
+  }
+
+  @Override
+  public int getSuccNodeCount(BasicBlockInContext<IExplodedBasicBlock> n) {
+    int x = getNumber(n);
+    if (x < 0) {
+      return 0;
+    }
+    int p = procForNumber(x);
+    computeEdges(p);
+    int b = x - procStart[p];
+    return succOffsets[p][b + 1] - succOffsets[p][b];
+  }
+
+  @Override
+  public IntSet getSuccNodeNumbers(BasicBlockInContext<IExplodedBasicBlock> n) {
+    int x = getNumber(n);
+    if (x < 0) {
+      return MutableSparseIntSet.makeEmpty();
+    }
+    int p = procForNumber(x);
+    computeEdges(p);
+    int b = x - procStart[p];
+    return toIntSet(succs[p], succOffsets[p][b], succOffsets[p][b + 1]);
+  }
+
+  @Override
+  public boolean hasEdge(BasicBlockInContext<IExplodedBasicBlock> src, BasicBlockInContext<IExplodedBasicBlock> dst) {
+    int x = getNumber(src);
+    int y = getNumber(dst);
+    if (x < 0 || y < 0) {
+      return false;
+    }
+    int p = procForNumber(x);
+    computeEdges(p);
+    int b = x - procStart[p];
+    return Arrays.binarySearch(succs[p], succOffsets[p][b], succOffsets[p][b + 1], y) >= 0;
+  }
+
+  @Override
+  public void addNode(BasicBlockInContext<IExplodedBasicBlock> n) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeNode(BasicBlockInContext<IExplodedBasicBlock> n) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeNodeAndEdges(BasicBlockInContext<IExplodedBasicBlock> n) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void addEdge(BasicBlockInContext<IExplodedBasicBlock> src, BasicBlockInContext<IExplodedBasicBlock> dst) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeEdge(BasicBlockInContext<IExplodedBasicBlock> src, BasicBlockInContext<IExplodedBasicBlock> dst) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeAllIncidentEdges(BasicBlockInContext<IExplodedBasicBlock> node) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeIncomingEdges(BasicBlockInContext<IExplodedBasicBlock> node) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void removeOutgoingEdges(BasicBlockInContext<IExplodedBasicBlock> node) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public String toString() {
+    return "CompactICFGSupergraph: " + nProcs + " procedures, " + nextNumber + " blocks";
+  }
+}
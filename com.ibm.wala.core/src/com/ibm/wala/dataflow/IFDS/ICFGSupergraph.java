@@ -66,7 +66,7 @@ public class ICFGSupergraph implements ISupergraph<BasicBlockInContext<IExploded
   }
 
   public static ICFGSupergraph make(CallGraph cg, AnalysisCache cache) {
-    ICFGSupergraph w = new ICFGSupergraph(ExplodedInterproceduralCFG.make(cg), cache);
+    ICFGSupergraph w = new ICFGSupergraph(ExplodedInterproceduralCFG.make(cg, cache), cache);
     return w;
   }
 
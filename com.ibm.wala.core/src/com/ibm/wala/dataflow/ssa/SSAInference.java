@@ -11,6 +11,7 @@
 
 package com.ibm.wala.dataflow.ssa;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 import com.ibm.wala.analysis.typeInference.TypeInference;
@@ -21,6 +22,10 @@ import com.ibm.wala.fixpoint.IVariable;
 import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.SSAInstruction;
 import com.ibm.wala.ssa.SymbolTable;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.perf.Metrics;
 
 /**
  * This class performs intra-procedural propagation over an SSA form.
@@ -29,6 +34,11 @@ import com.ibm.wala.ssa.SymbolTable;
  * numbers, and {@link AbstractOperator}s corresponding to SSA instructions. This class will set up a dataflow system induced by the
  * SSA def-use graph, and solve the system by iterating to a fixed point.
  * 
+ * The equations are kept in flat arrays indexed by equation number, and the solver revisits an equation only when one of the value
+ * numbers it uses has changed. The general machinery of {@link DefaultFixedPointSolver} is not used to hold the equations, so
+ * {@link #getFixedPointSystem()} returns an empty system: clients that walked its statements should use
+ * {@link #getNumberOfEquations()} and the results of the solver instead.
+ * 
  * @see TypeInference for the canonical client of this machinery.
  */
 public abstract class SSAInference<T extends IVariable<?>> extends DefaultFixedPointSolver<T> {
@@ -49,6 +59,63 @@ public abstract class SSAInference<T extends IVariable<?>> extends DefaultFixedP
    */
   private IVariable[] vars;
 
+  /**
+   * Number of dataflow equations, one for each instruction which defines a value and induces an operator
+   */
+  private int nEquations;
+
+  /**
+   * For each equation, the value number it defines
+   */
+  private int[] eqDef;
+
+  /**
+   * For each equation, its operator, or null once the equation has reached a fixed value
+   */
+  private AbstractOperator<T>[] eqOp;
+
+  /**
+   * The operands of equation i are the value numbers eqUses[eqUseStart[i]] .. eqUses[eqUseStart[i+1]-1]; -1 denotes a missing
+   * operand
+   */
+  private int[] eqUseStart;
+
+  private int[] eqUses;
+
+  /**
+   * The equations which use value number v are users[userStart[v]] .. users[userStart[v+1]-1], padded with -1
+   */
+  private int[] userStart;
+
+  private int[] users;
+
+  /**
+   * The position of each equation in evaluation order; null until the first solve
+   */
+  private int[] eqRank;
+
+  /**
+   * The equation at each position in evaluation order
+   */
+  private int[] eqAtRank;
+
+  /**
+   * The work list: a bit vector over positions in evaluation order, so the equation taken next is always the earliest pending one
+   */
+  private long[] pending;
+
+  /**
+   * No position below this one is pending
+   */
+  private int pendingMin;
+
+  private int nPending;
+
+  /**
+   * Reusable operand arrays, indexed by arity
+   */
+  private IVariable<?>[][] rhsScratch = new IVariable<?>[8][];
+
   public interface OperatorFactory<T extends IVariable> {
     /**
      * Get the dataflow operator induced by an instruction in SSA form.
@@ -82,6 +149,12 @@ public abstract class SSAInference<T extends IVariable<?>> extends DefaultFixedP
 
   private void createEquations(OperatorFactory<T> opFactory) {
     SSAInstruction[] instructions = ir.getInstructions();
+    // each equation defines a distinct value number
+    int n = vars.length;
+    eqDef = new int[n];
+    eqOp = makeOperators(n);
+    eqUseStart = new int[n + 1];
+    eqUses = new int[2 * n];
     for (int i = 0; i < instructions.length; i++) {
       SSAInstruction s = instructions[i];
       makeEquationForInstruction(opFactory, s);
@@ -98,6 +171,15 @@ public abstract class SSAInference<T extends IVariable<?>> extends DefaultFixedP
       SSAInstruction s = (SSAInstruction) it.next();
       makeEquationForInstruction(opFactory, s);
     }
+    indexUsers();
+  }
+
+  /**
+   * Java cannot create an array of a parameterized type; the array is only ever filled with operators over T
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static <T extends IVariable<?>> AbstractOperator<T>[] makeOperators(int size) {
+    return new AbstractOperator[size];
   }
 
   /**
@@ -107,24 +189,337 @@ public abstract class SSAInference<T extends IVariable<?>> extends DefaultFixedP
     if (s != null && s.hasDef()) {
       AbstractOperator<T> op = opFactory.get(s);
       if (op != null) {
-        T def = getVariable(s.getDef());
-        if (op instanceof NullaryOperator) {
-          newStatement(def, (NullaryOperator<T>) op, false, false);
+        int def = s.getDef();
+        if (op instanceof NullaryOperator && getVariable(def) == null) {
+          throw new IllegalArgumentException("lhs is null");
+        }
+        if (nEquations == eqDef.length) {
+          int size = 2 * eqDef.length;
+          eqDef = Arrays.copyOf(eqDef, size);
+          eqOp = Arrays.copyOf(eqOp, size);
+          eqUseStart = Arrays.copyOf(eqUseStart, size + 1);
+        }
+        int start = eqUseStart[nEquations];
+        int n = op instanceof NullaryOperator ? 0 : s.getNumberOfUses();
+        if (start + n > eqUses.length) {
+          eqUses = Arrays.copyOf(eqUses, Math.max(2 * eqUses.length, start + n));
+        }
+        for (int j = 0; j < n; j++) {
+          int use = s.getUse(j);
+          if (use > -1) {
+            assert getVariable(use) != null;
+            eqUses[start + j] = use;
+          } else {
+            eqUses[start + j] = -1;
+          }
+        }
+        eqDef[nEquations] = def;
+        eqOp[nEquations] = op;
+        eqUseStart[++nEquations] = start + n;
+      }
+    }
+  }
+
+  /**
+   * Build the inverse of the equation operands: for each value number, the equations that use it.
+   */
+  private void indexUsers() {
+    userStart = new int[vars.length + 1];
+    int nUses = eqUseStart[nEquations];
+    for (int k = 0; k < nUses; k++) {
+      if (eqUses[k] > -1) {
+        userStart[eqUses[k] + 1]++;
+      }
+    }
+    for (int v = 0; v < vars.length; v++) {
+      userStart[v + 1] += userStart[v];
+    }
+    users = new int[userStart[vars.length]];
+    int[] next = Arrays.copyOf(userStart, vars.length);
+    for (int i = 0; i < nEquations; i++) {
+      for (int k = eqUseStart[i]; k < eqUseStart[i + 1]; k++) {
+        int use = eqUses[k];
+        // an equation that uses the same value twice need only be notified once
+        if (use > -1 && (next[use] == userStart[use] || users[next[use] - 1] != i)) {
+          users[next[use]++] = i;
+        }
+      }
+    }
+    for (int v = 0; v < vars.length; v++) {
+      for (int k = next[v]; k < userStart[v + 1]; k++) {
+        users[k] = -1;
+      }
+    }
+  }
+
+  /**
+   * Solve the system with a sparse work list of equations, driven by the def-use chains of the SSA form: when the variable
+   * defined by an equation changes, only the equations which use that value number are revisited.
+   */
+  @Override
+  public boolean solve(IProgressMonitor monitor) throws CancelException {
+    if (eqRank == null) {
+      orderEquations();
+      pending = new long[(nEquations >> 6) + 1];
+      initializeVariables();
+      initializeWorkList();
+    }
+
+    final boolean metrics = Metrics.isEnabled();
+    long start = Metrics.start();
+    long evaluations = 0;
+    boolean globalChange = false;
+    while (nPending > 0) {
+      MonitorUtil.throwExceptionIfCanceled(monitor);
+      int i = takeEquation();
+      AbstractOperator<T> op = eqOp[i];
+      if (op == null) {
+        // the equation reached a fixed value
+        continue;
+      }
+      byte code = evaluate(i, op);
+      evaluations++;
+      if (DEBUG) {
+        System.err.println("evaluated " + op + " for v" + eqDef[i] + ": " + getVariable(eqDef[i]) + " " + isChanged(code));
+      }
+      if (isChanged(code)) {
+        globalChange = true;
+        int v = eqDef[i];
+        for (int k = userStart[v]; k < userStart[v + 1] && users[k] > -1; k++) {
+          addEquationToWorkList(users[k]);
+        }
+      }
+      if (isFixed(code)) {
+        eqOp[i] = null;
+      }
+    }
+    if (metrics) {
+      Metrics.count("ssa.inference.evaluations", evaluations);
+      Metrics.stop("ssa.inference.solve", start);
+    }
+    return globalChange;
+  }
+
+  // the scratch arrays come from makeStmtRHS, and every variable is made by the client's factory for T
+  @SuppressWarnings("unchecked")
+  private byte evaluate(int i, AbstractOperator<T> op) {
+    T lhs = getVariable(eqDef[i]);
+    if (op instanceof NullaryOperator) {
+      return ((NullaryOperator<T>) op).evaluate(lhs);
+    }
+    int start = eqUseStart[i];
+    int n = eqUseStart[i + 1] - start;
+    // operators do not retain their operands, so one scratch array of each size suffices
+    if (n >= rhsScratch.length) {
+      rhsScratch = Arrays.copyOf(rhsScratch, n + 1);
+    }
+    T[] rhs = (T[]) rhsScratch[n];
+    if (rhs == null) {
+      rhs = makeStmtRHS(n);
+      rhsScratch[n] = rhs;
+    }
+    for (int j = 0; j < n; j++) {
+      int use = eqUses[start + j];
+      rhs[j] = use > -1 ? (T) vars[use] : null;
+    }
+    return op.evaluate(lhs, rhs);
+  }
+
+  private void addEquationToWorkList(int i) {
+    int r = eqRank[i];
+    long bit = 1L << r;
+    if ((pending[r >> 6] & bit) == 0) {
+      pending[r >> 6] |= bit;
+      nPending++;
+      if (r < pendingMin) {
+        pendingMin = r;
+      }
+    }
+  }
+
+  private int takeEquation() {
+    int w = pendingMin >> 6;
+    long word = pending[w] & (-1L << pendingMin);
+    while (word == 0) {
+      word = pending[++w];
+    }
+    int r = (w << 6) + Long.numberOfTrailingZeros(word);
+    pending[w] &= ~(1L << r);
+    nPending--;
+    pendingMin = r + 1;
+    return eqAtRank[r];
+  }
+
+  /**
+   * Add every equation of the system to the work list.
+   */
+  @Override
+  public void addAllStatementsToWorkList() {
+    for (int i = 0; i < nEquations; i++) {
+      addEquationToWorkList(i);
+    }
+  }
+
+  /**
+   * Choose the evaluation order of the equations: a topological order over the strongly connected components of the graph
+   * whose nodes are the equations and the variables they define and use. The nodes are numbered as they are first seen (each
+   * equation, then its lhs, then its operands), and both depth-first searches of Kosaraju's algorithm take roots and neighbours
+   * in ascending node number, as {@link com.ibm.wala.util.graph.traverse.Topological#makeTopologicalIter} does over the graph of a
+   * {@link DefaultFixedPointSolver}. The two solvers hence take equations from their work lists in the same sequence, which
+   * matters for operators that are not monotone.
+   */
+  private void orderEquations() {
+    int nVars = vars.length;
+    int[] varNode = new int[nVars];
+    Arrays.fill(varNode, -1);
+    int[] eqNode = new int[nEquations];
+    // node n denotes equation nodeItem[n] if nodeItem[n] >= 0, value number -nodeItem[n]-1 otherwise
+    int[] nodeItem = new int[nEquations + nVars];
+    int nNodes = 0;
+    // the equation defining each value number
+    int[] defEq = new int[nVars];
+    Arrays.fill(defEq, -1);
+    for (int i = 0; i < nEquations; i++) {
+      eqNode[i] = nNodes;
+      nodeItem[nNodes++] = i;
+      int def = eqDef[i];
+      if (varNode[def] == -1) {
+        varNode[def] = nNodes;
+        nodeItem[nNodes++] = -def - 1;
+      }
+      defEq[def] = i;
+      for (int k = eqUseStart[i]; k < eqUseStart[i + 1]; k++) {
+        int use = eqUses[k];
+        if (use > -1 && varNode[use] == -1) {
+          varNode[use] = nNodes;
+          nodeItem[nNodes++] = -use - 1;
+        }
+      }
+    }
+
+    // the operand nodes of each equation in ascending order, duplicates replaced by -1
+    int[] operandNodes = new int[eqUseStart[nEquations]];
+    for (int i = 0; i < nEquations; i++) {
+      int from = eqUseStart[i];
+      int to = eqUseStart[i + 1];
+      for (int k = from; k < to; k++) {
+        operandNodes[k] = eqUses[k] > -1 ? varNode[eqUses[k]] : -1;
+      }
+      Arrays.sort(operandNodes, from, to);
+      for (int k = to - 1; k > from; k--) {
+        if (operandNodes[k] == operandNodes[k - 1]) {
+          operandNodes[k] = -1;
+        }
+      }
+    }
+
+    int[] finish = new int[nNodes];
+    int[] pos = new int[nNodes];
+    int[] stack = new int[nNodes];
+    // first search: roots in ascending order
+    depthFirst(false, null, finish, pos, stack, eqNode, varNode, nodeItem, defEq, operandNodes);
+    // second search, over the inverse graph: roots in order of decreasing finishing time
+    int[] roots = new int[nNodes];
+    for (int n = 0; n < nNodes; n++) {
+      roots[n] = finish[nNodes - 1 - n];
+    }
+    depthFirst(true, roots, finish, pos, stack, eqNode, varNode, nodeItem, defEq, operandNodes);
+
+    eqRank = new int[nEquations];
+    Arrays.fill(eqRank, -1);
+    eqAtRank = new int[nEquations];
+    int rank = 0;
+    for (int n = 0; n < nNodes; n++) {
+      int item = nodeItem[finish[n]];
+      if (item < 0 && defEq[-item - 1] != -1) {
+        eqRank[defEq[-item - 1]] = rank;
+        eqAtRank[rank++] = defEq[-item - 1];
+      }
+    }
+    // not in SSA form: a value number defined twice
+    for (int i = 0; i < nEquations; i++) {
+      if (eqRank[i] == -1) {
+        eqRank[i] = rank;
+        eqAtRank[rank++] = i;
+      }
+    }
+  }
+
+  /**
+   * Depth-first search over the graph of equations and variables, or over its inverse, recording nodes in order of finishing
+   * time.
+   * 
+   * @param roots the nodes to search from, in order; null for all nodes in ascending order
+   */
+  private void depthFirst(boolean inverse, int[] roots, int[] finish, int[] pos, int[] stack, int[] eqNode, int[] varNode,
+      int[] nodeItem, int[] defEq, int[] operandNodes) {
+    int nFinished = 0;
+    Arrays.fill(pos, -1);
+    for (int r = 0; r < pos.length; r++) {
+      int root = roots == null ? r : roots[r];
+      if (pos[root] != -1) {
+        continue;
+      }
+      int sp = 0;
+      stack[sp++] = root;
+      pos[root] = 0;
+      while (sp > 0) {
+        int n = stack[sp - 1];
+        int item = nodeItem[n];
+        int child = -1;
+        if (item >= 0) {
+          if (!inverse) {
+            // an equation flows to its lhs
+            if (pos[n] == 0) {
+              child = varNode[eqDef[item]];
+              pos[n]++;
+            }
+          } else {
+            // an equation is reached from its operands
+            int end = eqUseStart[item + 1];
+            for (int k = eqUseStart[item] + pos[n]; k < end; k++) {
+              pos[n]++;
+              if (operandNodes[k] != -1) {
+                child = operandNodes[k];
+                break;
+              }
+            }
+          }
         } else {
-          int n = s.getNumberOfUses();
-          T[] uses = makeStmtRHS(n);
-          for (int j = 0; j < n; j++) {
-            if (s.getUse(j) > -1) {
-              uses[j] = getVariable(s.getUse(j));
-              assert uses[j] != null;
+          int v = -item - 1;
+          if (!inverse) {
+            // a variable flows to the equations that use it
+            int k = userStart[v] + pos[n];
+            if (k < userStart[v + 1] && users[k] > -1) {
+              child = eqNode[users[k]];
+              pos[n]++;
+            }
+          } else {
+            // a variable is reached from the equation that defines it
+            if (pos[n] == 0 && defEq[v] != -1) {
+              child = eqNode[defEq[v]];
+              pos[n]++;
             }
           }
-          newStatement(def, op, uses, false, false);
+        }
+        if (child == -1) {
+          sp--;
+          finish[nFinished++] = n;
+        } else if (pos[child] == -1) {
+          pos[child] = 0;
+          stack[sp++] = child;
         }
       }
     }
   }
 
+  /**
+   * @return the number of equations in the system
+   */
+  public int getNumberOfEquations() {
+    return nEquations;
+  }
+
   /**
    * Create a dataflow variable for each value number
    */
@@ -10,14 +10,34 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.callgraph;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import com.ibm.wala.cfg.ControlFlowGraph;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.callgraph.impl.Everywhere;
 import com.ibm.wala.ssa.DefUse;
 import com.ibm.wala.ssa.DefaultIRFactory;
 import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.IRFactory;
+import com.ibm.wala.ssa.ISSABasicBlock;
 import com.ibm.wala.ssa.SSACache;
+import com.ibm.wala.ssa.SSAInstruction;
 import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.ssa.analysis.ExplodedControlFlowGraph;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.graph.GraphIntegrity.UnsoundGraphException;
 import com.ibm.wala.util.ref.ReferenceCleanser;
 
 /**
@@ -31,9 +51,17 @@ public class AnalysisCache {
   private final SSACache ssaCache;
 
   public AnalysisCache(IRFactory<IMethod> irFactory) {
+    this(irFactory, false);
+  }
+
+  /**
+   * @param compactIRs keep a compact encoding of every IR built, for the life of this cache; see
+   *          {@link SSACache#SSACache(IRFactory, boolean)}
+   */
+  public AnalysisCache(IRFactory<IMethod> irFactory, boolean compactIRs) {
     super();
     this.irFactory = irFactory;
-    this.ssaCache = new SSACache(irFactory);
+    this.ssaCache = new SSACache(irFactory, compactIRs);
     ReferenceCleanser.registerCache(this);
   }
 
@@ -73,4 +101,155 @@ public class AnalysisCache {
     }
     return ssaCache.findOrCreateDU(ir, Everywhere.EVERYWHERE);
   }
+
+  /**
+   * Find or create the {@link ExplodedControlFlowGraph} for the IR using the {@link Everywhere} context
+   */
+  public ExplodedControlFlowGraph getExplodedCFG(IR ir) {
+    if (ir == null) {
+      throw new IllegalArgumentException("ir is null");
+    }
+    return ssaCache.findOrCreateExplodedCFG(ir, Everywhere.EVERYWHERE);
+  }
+
+  /**
+   * Find or create the {@link ExplodedControlFlowGraph} for the IR of a call graph node
+   * 
+   * @return null if n has no IR
+   */
+  public ExplodedControlFlowGraph getExplodedCFG(CGNode n) {
+    if (n == null) {
+      throw new IllegalArgumentException("n is null");
+    }
+    IR ir = n.getIR();
+    return ir == null ? null : ssaCache.findOrCreateExplodedCFG(ir, n.getContext());
+  }
+
+  /**
+   * Find or create the control flow graph of the IR without exceptional edges, using the {@link Everywhere} context
+   */
+  public ControlFlowGraph<SSAInstruction, ISSABasicBlock> getExceptionPrunedCFG(IR ir) {
+    if (ir == null) {
+      throw new IllegalArgumentException("ir is null");
+    }
+    return ssaCache.findOrCreateExceptionPrunedCFG(ir, Everywhere.EVERYWHERE);
+  }
+
+  /**
+   * Find or create the control flow graph without exceptional edges for the IR of a call graph node
+   * 
+   * @return null if n has no IR
+   */
+  public ControlFlowGraph<SSAInstruction, ISSABasicBlock> getExceptionPrunedCFG(CGNode n) {
+    if (n == null) {
+      throw new IllegalArgumentException("n is null");
+    }
+    IR ir = n.getIR();
+    return ir == null ? null : ssaCache.findOrCreateExceptionPrunedCFG(ir, n.getContext());
+  }
+
+  /**
+   * Find or create the exploded control flow graph of the IR, pruned by the intraprocedural null pointer analysis, using the
+   * {@link Everywhere} context
+   */
+  public ControlFlowGraph<SSAInstruction, IExplodedBasicBlock> getNullPrunedCFG(IR ir, IProgressMonitor monitor)
+      throws UnsoundGraphException, CancelException {
+    if (ir == null) {
+      throw new IllegalArgumentException("ir is null");
+    }
+    return ssaCache.findOrCreateNullPrunedCFG(ir, Everywhere.EVERYWHERE, monitor);
+  }
+
+  /**
+   * Find or create the exploded control flow graph for the IR of a call graph node, pruned by the intraprocedural null pointer
+   * analysis
+   * 
+   * @return null if n has no IR
+   */
+  public ControlFlowGraph<SSAInstruction, IExplodedBasicBlock> getNullPrunedCFG(CGNode n, IProgressMonitor monitor)
+      throws UnsoundGraphException, CancelException {
+    if (n == null) {
+      throw new IllegalArgumentException("n is null");
+    }
+    IR ir = n.getIR();
+    return ir == null ? null : ssaCache.findOrCreateNullPrunedCFG(ir, n.getContext(), monitor);
+  }
+
+  /**
+   * Build the IR and {@link DefUse} for the given &lt;method,context&gt; pairs on the given executor, and cache them, so later
+   * phases that ask for them do not pay for IR construction. Abstract and native methods are skipped.
+   * 
+   * Note that the cache holds IRs softly, so IRs built here may be collected again under memory pressure.
+   * 
+   * @param monitor receives one unit of work per pair as it finishes, and may cancel the remaining work
+   * @throws CancelException if the monitor is canceled or the calling thread is interrupted
+   */
+  public void prebuildIRs(Collection<Pair<IMethod, Context>> methods, final SSAOptions options, Executor executor,
+      IProgressMonitor monitor) throws CancelException {
+    if (methods == null) {
+      throw new IllegalArgumentException("null methods");
+    }
+    if (options == null) {
+      throw new IllegalArgumentException("null options");
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("null executor");
+    }
+    MonitorUtil.beginTask(monitor, "build IR", methods.size());
+    CompletionService<DefUse> finished = new ExecutorCompletionService<DefUse>(executor);
+    List<Future<DefUse>> tasks = new ArrayList<Future<DefUse>>(methods.size());
+    boolean done = false;
+    try {
+      for (final Pair<IMethod, Context> p : methods) {
+        tasks.add(finished.submit(new Callable<DefUse>() {
+          @Override
+          public DefUse call() {
+            return ssaCache.findOrCreateDU(p.fst, p.snd, options);
+          }
+        }));
+      }
+      for (int i = 0; i < tasks.size(); i++) {
+        finished.take().get();
+        MonitorUtil.worked(monitor, 1);
+      }
+      done = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancelException(e);
+    } catch (ExecutionException e) {
+      // rethrow whatever IR construction would have thrown in the calling thread
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      } else {
+        throw new IllegalStateException("unexpected failure building an IR", e.getCause());
+      }
+    } finally {
+      if (!done) {
+        for (Future<DefUse> task : tasks) {
+          task.cancel(true);
+        }
+      }
+    }
+    MonitorUtil.done(monitor);
+  }
+
+  /**
+   * Build and cache the IR and {@link DefUse} for every node of a call graph; see
+   * {@link #prebuildIRs(Collection, SSAOptions, Executor, IProgressMonitor)}. Nodes for synthetic methods are skipped, since their
+   * IR usually comes from a context interpreter rather than from this cache.
+   */
+  public void prebuildIRs(CallGraph cg, SSAOptions options, Executor executor, IProgressMonitor monitor) throws CancelException {
+    if (cg == null) {
+      throw new IllegalArgumentException("null cg");
+    }
+    List<Pair<IMethod, Context>> methods = new ArrayList<Pair<IMethod, Context>>(cg.getNumberOfNodes());
+    for (CGNode n : cg) {
+      if (!n.getMethod().isSynthetic()) {
+        methods.add(Pair.make(n.getMethod(), n.getContext()));
+      }
+    }
+    prebuildIRs(methods, options, executor, monitor);
+  }
 }
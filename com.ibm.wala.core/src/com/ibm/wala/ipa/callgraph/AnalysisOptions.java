@@ -12,6 +12,7 @@ package com.ibm.wala.ipa.callgraph;
 
 import com.ibm.wala.analysis.reflection.ReflectionContextInterpreter;
 import com.ibm.wala.analysis.reflection.ReflectionContextSelector;
+import com.ibm.wala.fixedpoint.impl.WorklistStrategy;
 import com.ibm.wala.ipa.callgraph.impl.ExplicitCallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.ReflectionHandler;
 import com.ibm.wala.ssa.SSAOptions;
@@ -60,6 +61,40 @@ public class AnalysisOptions {
    */
   private int maxEvalBetweenTopo = 1000000000;
 
+  /**
+   * A tuning parameter: in what order should the pointer analysis solver evaluate the statements on its work list?
+   */
+  private WorklistStrategy worklistStrategy = WorklistStrategy.TOPOLOGICAL;
+
+  /**
+   * A tuning parameter: how many threads should build IR for a batch of newly discovered call graph nodes before constraints are
+   * generated from them? With 1 thread, IR is built on demand by the call graph builder.
+   */
+  private int irPrebuildThreads = 1;
+
+  /**
+   * Should the pointer analysis periodically find cycles of assignments between points-to sets, and unify each into a single
+   * set?
+   */
+  private boolean unifyAssignmentCycles = false;
+
+  /**
+   * Should the pointer analysis periodically find points-to sets which are defined only by assignments from equivalent sources,
+   * and unify each group into a single set?
+   */
+  private boolean unifyPointerEquivalentVariables = false;
+
+  /**
+   * Should the pointer analysis propagate only newly added instance keys along assignments and filters?
+   */
+  private boolean differencePropagation = false;
+
+  /**
+   * Should the pointer analysis remember the instance keys it adds directly to each points-to set, so that its constraint system
+   * can be captured for offline solver benchmarking?
+   */
+  private boolean recordSeeds = false;
+
   /**
    * options for handling reflection during call graph construction
    */
@@ -308,6 +343,98 @@ public class AnalysisOptions {
     topologicalGrowthFactor = d;
   }
 
+  /**
+   * @return the order in which the pointer analysis solver evaluates the statements on its work list
+   */
+  public WorklistStrategy getWorklistStrategy() {
+    return worklistStrategy;
+  }
+
+  /**
+   * @param strategy the order in which the pointer analysis solver should evaluate the statements on its work list
+   */
+  public void setWorklistStrategy(WorklistStrategy strategy) {
+    if (strategy == null) {
+      throw new IllegalArgumentException("null strategy");
+    }
+    worklistStrategy = strategy;
+  }
+
+  /**
+   * @return the number of threads used to build IR for newly discovered call graph nodes ahead of constraint generation
+   */
+  public int getIRPrebuildThreads() {
+    return irPrebuildThreads;
+  }
+
+  /**
+   * @param n the number of threads used to build IR for newly discovered call graph nodes ahead of constraint generation; 1 means
+   *          IR is built on demand by the call graph builder
+   */
+  public void setIRPrebuildThreads(int n) {
+    if (n < 1) {
+      throw new IllegalArgumentException("need at least one thread, got " + n);
+    }
+    irPrebuildThreads = n;
+  }
+
+  /**
+   * @return true iff the pointer analysis unifies points-to sets on cycles of assignments as it goes
+   */
+  public boolean getUnifyAssignmentCycles() {
+    return unifyAssignmentCycles;
+  }
+
+  /**
+   * @param b should the pointer analysis unify points-to sets on cycles of assignments as it goes?
+   */
+  public void setUnifyAssignmentCycles(boolean b) {
+    unifyAssignmentCycles = b;
+  }
+
+  /**
+   * @return true iff the pointer analysis unifies points-to sets which must be equal, as it goes
+   */
+  public boolean getUnifyPointerEquivalentVariables() {
+    return unifyPointerEquivalentVariables;
+  }
+
+  /**
+   * @param b should the pointer analysis unify points-to sets which must be equal, as it goes?
+   */
+  public void setUnifyPointerEquivalentVariables(boolean b) {
+    unifyPointerEquivalentVariables = b;
+  }
+
+  /**
+   * @return true iff the pointer analysis propagates only newly added instance keys along assignments and filters
+   */
+  public boolean getDifferencePropagation() {
+    return differencePropagation;
+  }
+
+  /**
+   * @param b should the pointer analysis propagate only newly added instance keys along assignments and filters?
+   */
+  public void setDifferencePropagation(boolean b) {
+    differencePropagation = b;
+  }
+
+  /**
+   * @return true iff the pointer analysis remembers the instance keys it adds directly to each points-to set
+   */
+  public boolean getRecordSeeds() {
+    return recordSeeds;
+  }
+
+  /**
+   * @param b should the pointer analysis remember the instance keys it adds directly to each points-to set, so that its constraint
+   *          system can be captured by a {@link com.ibm.wala.ipa.callgraph.propagation.PropagationSystemCapture}?
+   */
+  public void setRecordSeeds(boolean b) {
+    recordSeeds = b;
+  }
+
 
   /**
    * @return options governing SSA construction
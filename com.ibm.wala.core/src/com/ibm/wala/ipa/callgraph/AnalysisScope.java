@@ -31,6 +31,7 @@ import com.ibm.wala.classLoader.ClassFileModule;
 import com.ibm.wala.classLoader.IClassLoader;
 import com.ibm.wala.classLoader.JarFileModule;
 import com.ibm.wala.classLoader.Language;
+import com.ibm.wala.classLoader.MappedJarFileModule;
 import com.ibm.wala.classLoader.Module;
 import com.ibm.wala.classLoader.SourceDirectoryTreeModule;
 import com.ibm.wala.classLoader.SourceFileModule;
@@ -451,7 +452,10 @@ public class AnalysisScope {
       for (Module m : e.getValue()) {
         String moduleType;
         String modulePath;
-        if (m instanceof JarFileModule) {
+        if (m instanceof MappedJarFileModule) {
+          moduleType = "mappedJarFile";
+          modulePath = ((MappedJarFileModule) m).getAbsolutePath();
+        } else if (m instanceof JarFileModule) {
           moduleType = "jarFile";
           modulePath = ((JarFileModule) m).getAbsolutePath();
         } else if (m instanceof BinaryDirectoryTreeModule) {
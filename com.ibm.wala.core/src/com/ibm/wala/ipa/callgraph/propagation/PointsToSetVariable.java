@@ -12,6 +12,7 @@ package com.ibm.wala.ipa.callgraph.propagation;
 
 import com.ibm.wala.analysis.typeInference.TypeInference;
 import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.fixpoint.AbstractStatement;
 import com.ibm.wala.fixpoint.IntSetVariable;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
@@ -45,6 +46,22 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
 
   private PointerKey pointerKey;
 
+  /**
+   * values added to this variable since the delta was last cleared, kept as a variable of its own so that operators can be
+   * evaluated against it; null unless {@link #trackDelta(boolean)} has been called. It is cleared in place and reused.
+   */
+  private PointsToSetVariable delta;
+
+  /**
+   * adds values to {@link #delta}; allocated along with it
+   */
+  private DeltaRecorder deltaRecorder;
+
+  /**
+   * the statement which pushes {@link #delta} to the uses of this variable; made by the system the first time it is needed
+   */
+  private AbstractStatement<PointsToSetVariable, ?> deltaStatement;
+
   public PointsToSetVariable(PointerKey key) {
     super();
     if (key == null) {
@@ -82,6 +99,9 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
       m.add(b);
       checkTypes(m);
     }
+    if (delta != null && !contains(b)) {
+      delta.add(b);
+    }
     super.add(b);
     cryIfTooBig();
   }
@@ -91,11 +111,109 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
     if (PARANOID) {
       checkTypes(B);
     }
+    if (delta != null) {
+      recordDelta(B, null);
+    }
     boolean v = super.addAll(B);
     cryIfTooBig();
     return v;
   }
 
+  @Override
+  public boolean addAllInIntersection(PointsToSetVariable other, IntSet filter) {
+    if (delta != null) {
+      // go through addAllInIntersection(IntSet, IntSet), so the delta is recorded just once
+      return other.getValue() != null && addAllInIntersection(other.getValue(), filter);
+    }
+    return super.addAllInIntersection(other, filter);
+  }
+
+  @Override
+  public boolean addAllInIntersection(IntSet other, IntSet filter) {
+    if (delta != null) {
+      recordDelta(other, filter);
+    }
+    return super.addAllInIntersection(other, filter);
+  }
+
+  @Override
+  public void remove(int i) {
+    if (delta != null) {
+      delta.remove(i);
+    }
+    super.remove(i);
+  }
+
+  @Override
+  public void removeAll() {
+    clearDelta();
+    super.removeAll();
+  }
+
+  /**
+   * record the members of b (that are also in filter, if it is not null) which are not yet in this variable
+   */
+  private void recordDelta(IntSet b, IntSet filter) {
+    deltaRecorder.filter = filter;
+    if (getValue() == null) {
+      b.foreach(deltaRecorder);
+    } else {
+      b.foreachExcluding(getValue(), deltaRecorder);
+    }
+    deltaRecorder.filter = null;
+  }
+
+  private final class DeltaRecorder implements IntSetAction {
+    private IntSet filter;
+
+    @Override
+    public void act(int x) {
+      if (filter == null || filter.contains(x)) {
+        delta.add(x);
+      }
+    }
+  }
+
+  /**
+   * Start recording the values added to this variable; see {@link #getDelta()}.
+   * 
+   * @param all should the current value of this variable count as newly added?
+   */
+  void trackDelta(boolean all) {
+    if (delta == null) {
+      delta = new PointsToSetVariable(pointerKey);
+      deltaRecorder = new DeltaRecorder();
+    }
+    if (all && getValue() != null) {
+      delta.addAll(getValue());
+    }
+  }
+
+  /**
+   * @return the values added to this variable since the last call to {@link #clearDelta()}, or null if they are not being
+   *         recorded; see {@link #trackDelta(boolean)}. The result stays owned by this variable, and is changed as values are added.
+   */
+  PointsToSetVariable getDelta() {
+    return delta;
+  }
+
+  AbstractStatement<PointsToSetVariable, ?> getDeltaStatement() {
+    return deltaStatement;
+  }
+
+  void setDeltaStatement(AbstractStatement<PointsToSetVariable, ?> s) {
+    deltaStatement = s;
+  }
+
+  /**
+   * forget the values recorded as added, keeping the space used for them
+   */
+  void clearDelta() {
+    if (delta != null && delta.getValue() != null) {
+      delta.getValue().clear();
+    }
+  }
+
   /**
    * check that the types of all instance keys are assignable to declared type of pointer key
    */
@@ -143,6 +261,10 @@ public class PointsToSetVariable extends IntSetVariable<PointsToSetVariable> {
     if (PARANOID) {
       checkTypes(other.getValue());
     }
+    if (delta != null) {
+      // go through addAll(IntSet), so the delta is recorded just once
+      return other.getValue() != null && addAll(other.getValue());
+    }
     // TODO Auto-generated method stub
     boolean v = super.addAll(other);
     cryIfTooBig();
@@ -13,6 +13,9 @@ package com.ibm.wala.ipa.callgraph.propagation;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import com.ibm.wala.analysis.reflection.IllegalArgumentExceptionContext;
 import com.ibm.wala.classLoader.CallSiteReference;
@@ -22,6 +25,7 @@ import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.classLoader.Language;
 import com.ibm.wala.classLoader.NewSiteReference;
 import com.ibm.wala.classLoader.SyntheticClass;
+import com.ibm.wala.classLoader.SyntheticMethod;
 import com.ibm.wala.fixpoint.UnaryOperator;
 import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
@@ -34,19 +38,24 @@ import com.ibm.wala.ipa.callgraph.ContextSelector;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.impl.AbstractRootMethod;
 import com.ibm.wala.ipa.callgraph.impl.ExplicitCallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.cfa.ExceptionReturnValueKey;
 import com.ibm.wala.ipa.callgraph.propagation.rta.RTAContextInterpreter;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.DefUse;
 import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
+import com.ibm.wala.ssa.SSAPhiInstruction;
 import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.CancelRuntimeException;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.Predicate;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.IntSetAction;
 import com.ibm.wala.util.intset.IntSetUtil;
 import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.perf.Metrics;
 import com.ibm.wala.util.warnings.Warning;
 import com.ibm.wala.util.warnings.Warnings;
 
@@ -121,6 +130,13 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
    */
   protected PropagationSystem system;
 
+  /**
+   * threads that prepare new nodes ahead of constraint generation; created on demand, and shut down when makeCallGraph returns
+   * 
+   * @see #getPrebuildExecutor()
+   */
+  private ExecutorService prebuildExecutor;
+
   public PropagationSystem getSystem() {
     return system;
   }
@@ -170,6 +186,21 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
    */
   final private boolean rememberGetPutHistory = true;
 
+  /**
+   * Tuning parameter: by what fraction must the number of assignments grow before we look for new assignment cycles?
+   */
+  private final static double CYCLE_CHECK_GROWTH_FACTOR = 0.1;
+
+  /**
+   * number of assignments in the system when we last looked for assignment cycles
+   */
+  private int assignmentsAtLastCycleCheck = 0;
+
+  /**
+   * number of assignments in the system when we last looked for pointer-equivalent variables
+   */
+  private int assignmentsAtLastEquivalenceCheck = 0;
+
   /**
    * @param cha governing class hierarchy
    * @param options governing call graph construction options
@@ -239,6 +270,9 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
     system.setMinEquationsForTopSort(options.getMinEquationsForTopSort());
     system.setTopologicalGrowthFactor(options.getTopologicalGrowthFactor());
     system.setMaxEvalBetweenTopo(options.getMaxEvalBetweenTopo());
+    system.setDifferencePropagation(options.getDifferencePropagation());
+    system.setWorklistStrategy(options.getWorklistStrategy());
+    system.setRecordSeeds(options.getRecordSeeds());
 
     discoveredNodes = HashSetFactory.make();
     discoveredNodes.add(callGraph.getFakeRootNode());
@@ -279,8 +313,16 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
       CallGraphBuilderCancelException c = CallGraphBuilderCancelException.createCallGraphBuilderCancelException(e, callGraph,
           system.extractPointerAnalysis(this));
       throw c;
+    } finally {
+      if (prebuildExecutor != null) {
+        prebuildExecutor.shutdownNow();
+        prebuildExecutor = null;
+      }
     }
 
+    if (Metrics.isEnabled()) {
+      system.samplePointsToSetSizes();
+    }
     return callGraph;
   }
 
@@ -333,9 +375,10 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
   protected boolean addConstraintsFromNewNodes(IProgressMonitor monitor) throws CancelException {
     boolean result = false;
     while (!discoveredNodes.isEmpty()) {
-      Iterator<CGNode> it = discoveredNodes.iterator();
+      Set<CGNode> newNodes = discoveredNodes;
       discoveredNodes = HashSetFactory.make();
-      while (it.hasNext()) {
+      prepareToAddConstraintsFromNewNodes(newNodes, monitor);
+      for (Iterator<CGNode> it = newNodes.iterator(); it.hasNext();) {
         CGNode n = it.next();
         result |= addConstraintsFromNode(n, monitor);
       }
@@ -343,6 +386,38 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
     return result;
   }
 
+  /**
+   * Called with each batch of newly discovered nodes, before constraints are added for any of them. Subclasses may use this to
+   * compute information the nodes will need (e.g. IR) ahead of time. The default does nothing.
+   * 
+   * @throws CancelException
+   */
+  protected void prepareToAddConstraintsFromNewNodes(Set<CGNode> newNodes, IProgressMonitor monitor) throws CancelException {
+  }
+
+  /**
+   * Subclasses that prepare new nodes in parallel in {@link #prepareToAddConstraintsFromNewNodes(Set, IProgressMonitor)} should
+   * submit the work here. Constraint generation itself stays sequential and keeps its order, so the call graph is the same as
+   * when nothing is prepared ahead.
+   * 
+   * @return a pool of {@link AnalysisOptions#getIRPrebuildThreads()} daemon threads, created on first use and shut down when
+   *         {@link #makeCallGraph(AnalysisOptions, IProgressMonitor)} returns
+   */
+  protected ExecutorService getPrebuildExecutor() {
+    if (prebuildExecutor == null) {
+      prebuildExecutor = Executors.newFixedThreadPool(options.getIRPrebuildThreads(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "WALA IR builder");
+          // don't keep the VM alive if a client never finishes building the call graph
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return prebuildExecutor;
+  }
+
   /**
    * @return the PointerKey that acts as a representative for the class of pointers that includes the local variable identified by
    *         the value number parameter.
@@ -781,6 +856,96 @@ public abstract class PropagationCallGraphBuilder implements CallGraphBuilder {
     return instanceKeyFactory.getInstanceKeyForMetadataObject(obj, objType);
   }
 
+  /**
+   * If the system has grown enough since the last check, unify the points-to sets on each cycle of assignments.
+   * 
+   * @see AnalysisOptions#getUnifyAssignmentCycles()
+   */
+  protected void unifyAssignmentCycles() {
+    int assignments = system.getNumberOfAssignments();
+    if (assignments - assignmentsAtLastCycleCheck <= CYCLE_CHECK_GROWTH_FACTOR * assignmentsAtLastCycleCheck) {
+      return;
+    }
+    assignmentsAtLastCycleCheck = assignments;
+    long start = Metrics.start();
+    system.unifyAssignmentCycles(new Predicate<PointerKey>() {
+      @Override
+      public boolean test(PointerKey key) {
+        return mayUnify(key);
+      }
+    });
+    // unification only removes assignments
+    assignmentsAtLastCycleCheck = system.getNumberOfAssignments();
+    Metrics.stop("cycles.unify", start);
+  }
+
+  /**
+   * May the points-to set for a key be unified with others on an assignment cycle? The set must not carry a type filter, and must
+   * not acquire one later: this rules out parameters, which may be filtered for new call edges (see
+   * {@link SSAPropagationCallGraphBuilder#getTargetPointerKey(CGNode, int)}), and locals of nodes whose constraints may yet be
+   * (re-)generated.
+   */
+  protected boolean mayUnify(PointerKey key) {
+    if (key instanceof FilteredPointerKey) {
+      return false;
+    }
+    if (key instanceof LocalPointerKey) {
+      LocalPointerKey lpk = (LocalPointerKey) key;
+      CGNode node = lpk.getNode();
+      return !lpk.isParameter() && haveAlreadyVisited(node) && !(node.getMethod() instanceof SyntheticMethod);
+    }
+    return true;
+  }
+
+  /**
+   * If the system has grown enough since the last check, unify the points-to sets of variables which are defined only by
+   * assignments from equivalent sources.
+   * 
+   * @see AnalysisOptions#getUnifyPointerEquivalentVariables()
+   */
+  protected void unifyPointerEquivalentVariables() {
+    int assignments = system.getNumberOfAssignments();
+    if (assignments - assignmentsAtLastEquivalenceCheck <= CYCLE_CHECK_GROWTH_FACTOR * assignmentsAtLastEquivalenceCheck) {
+      return;
+    }
+    long start = Metrics.start();
+    system.unifyPointerEquivalentVariables(new Predicate<PointerKey>() {
+      @Override
+      public boolean test(PointerKey key) {
+        return mayUnify(key);
+      }
+    }, new Predicate<PointerKey>() {
+      @Override
+      public boolean test(PointerKey key) {
+        return hasFixedDefinitions(key);
+      }
+    });
+    // unification only removes assignments
+    assignmentsAtLastEquivalenceCheck = system.getNumberOfAssignments();
+    Metrics.stop("equivalences.unify", start);
+  }
+
+  /**
+   * Will the points-to set for a key never be defined by statements other than those already generated? This holds for phi
+   * locals and return values of nodes whose constraints have been generated, since those are defined only by constraints
+   * generated when visiting the node itself.
+   */
+  protected boolean hasFixedDefinitions(PointerKey key) {
+    if (!mayUnify(key)) {
+      return false;
+    }
+    if (key instanceof LocalPointerKey) {
+      LocalPointerKey lpk = (LocalPointerKey) key;
+      DefUse du = lpk.getNode().getDU();
+      return du != null && du.getDef(lpk.getValueNumber()) instanceof SSAPhiInstruction;
+    }
+    if (key instanceof ReturnValueKey && !(key instanceof ExceptionReturnValueKey)) {
+      CGNode node = ((ReturnValueKey) key).getNode();
+      return haveAlreadyVisited(node) && !(node.getMethod() instanceof SyntheticMethod);
+    }
+    return false;
+  }
+
   public boolean haveAlreadyVisited(CGNode node) {
     return alreadyVisited.contains(node);
   }
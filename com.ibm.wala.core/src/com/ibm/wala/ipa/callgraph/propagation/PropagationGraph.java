@@ -11,12 +11,15 @@
 package com.ibm.wala.ipa.callgraph.propagation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import com.ibm.wala.fixedpoint.impl.AbstractFixedPointSolver;
 import com.ibm.wala.fixedpoint.impl.GeneralStatement;
 import com.ibm.wala.fixpoint.AbstractOperator;
 import com.ibm.wala.fixpoint.AbstractStatement;
@@ -29,7 +32,10 @@ import com.ibm.wala.util.collections.CompoundIterator;
 import com.ibm.wala.util.collections.EmptyIterator;
 import com.ibm.wala.util.Predicate;
 import com.ibm.wala.util.collections.FilterIterator;
+import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.IntStack;
+import com.ibm.wala.util.collections.MapUtil;
 import com.ibm.wala.util.collections.SmallMap;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.debug.UnimplementedError;
@@ -48,6 +54,8 @@ import com.ibm.wala.util.intset.IBinaryNaturalRelation;
 import com.ibm.wala.util.intset.IntIterator;
 import com.ibm.wala.util.intset.IntPair;
 import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
 
 /**
  * A dataflow graph implementation specialized for propagation-based pointer analysis
@@ -227,7 +235,13 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
    */
   private boolean useImplicitRepresentation(IFixedPointStatement s) {
     AbstractStatement eq = (AbstractStatement) s;
-    AbstractOperator op = eq.getOperator();
+    return isImplicitOperator(eq.getOperator());
+  }
+
+  /**
+   * @return true iff statements with this operator are represented implicitly, as relations between variables
+   */
+  static boolean isImplicitOperator(AbstractOperator<?> op) {
     return (op instanceof AssignOperator || op instanceof PropagationCallGraphBuilder.FilterOperator);
   }
 
@@ -235,6 +249,8 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
     assert getNumberOfStatementsThatDef(p) == 0;
     assert getNumberOfStatementsThatUse(p) == 0;
     delegateGraph.removeNode(p);
+    // so that containsVariable(p) answers false, rather than complaining about a stale number
+    p.setGraphNodeId(-1);
   }
 
   private void addImplicitStatement(UnaryStatement<PointsToSetVariable> eq) {
@@ -689,6 +705,68 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
     return list.iterator();
   }
 
+  /**
+   * @return the statements which use v and are represented explicitly, i.e. not assignments or filters
+   */
+  @SuppressWarnings("unchecked")
+  Iterator<AbstractStatement<PointsToSetVariable, ?>> getExplicitStatementsThatUse(PointsToSetVariable v) {
+    if (v == null) {
+      throw new IllegalArgumentException("v is null");
+    }
+    if (v.getGraphNodeId() == -1) {
+      return EmptyIterator.instance();
+    }
+    List<AbstractStatement<PointsToSetVariable, ?>> list = new ArrayList<AbstractStatement<PointsToSetVariable, ?>>();
+    for (Iterator<INodeWithNumber> it = delegateGraph.getSuccNodes(v); it.hasNext();) {
+      list.add((AbstractStatement<PointsToSetVariable, ?>) it.next());
+    }
+    return list.iterator();
+  }
+
+  /**
+   * Evaluate each assignment and filter which uses v, against rhs instead of v, and add each left-hand side that changes to
+   * changed. No statements are made for the implicit edges.
+   */
+  void evaluateImplicitUses(PointsToSetVariable v, PointsToSetVariable rhs, List<PointsToSetVariable> changed) {
+    if (v == null) {
+      throw new IllegalArgumentException("v is null");
+    }
+    int number = v.getGraphNodeId();
+    if (number == -1) {
+      return;
+    }
+    for (int i = 0; i < invImplicitUnaryMap.size(); i++) {
+      UnaryOperator<PointsToSetVariable> op = invImplicitUnaryMap.getKey(i);
+      IBinaryNaturalRelation R = (IBinaryNaturalRelation) invImplicitUnaryMap.getValue(i);
+      IntSet s = R.getRelated(number);
+      if (s != null) {
+        for (IntIterator it = s.intIterator(); it.hasNext();) {
+          PointsToSetVariable lhs = (PointsToSetVariable) delegateGraph.getNode(it.next());
+          if (AbstractFixedPointSolver.isChanged(op.evaluate(lhs, rhs))) {
+            changed.add(lhs);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return true iff some assignment or filter uses v
+   */
+  boolean hasImplicitUses(PointsToSetVariable v) {
+    int number = v.getGraphNodeId();
+    if (number == -1) {
+      return false;
+    }
+    for (int i = 0; i < invImplicitUnaryMap.size(); i++) {
+      IBinaryNaturalRelation R = (IBinaryNaturalRelation) invImplicitUnaryMap.getValue(i);
+      if (R.anyRelated(number)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public Iterator<AbstractStatement> getStatementsThatDef(PointsToSetVariable v) {
@@ -776,6 +854,244 @@ public class PropagationGraph implements IFixedPointSystem<PointsToSetVariable>
     return it;
   }
 
+  /**
+   * @return the number of equations represented implicitly, i.e. assignments and filters
+   */
+  int getNumberOfImplicitStatements() {
+    return implicitUnaryCount;
+  }
+
+  /**
+   * Find the strongly connected components of the graph of plain (unfiltered) assignments, restricted to variables accepted by a
+   * predicate. Only components with more than one variable are returned.
+   * 
+   * This is Tarjan's algorithm, with an explicit stack since assignment chains can be very long.
+   * 
+   * @param candidate which variables may appear in a component
+   */
+  List<Set<PointsToSetVariable>> findAssignmentCycles(Predicate<PointsToSetVariable> candidate) {
+    List<Set<PointsToSetVariable>> result = new ArrayList<Set<PointsToSetVariable>>();
+    // (i,j) in uses iff there is an equation j := i
+    IBinaryNaturalRelation uses = invImplicitUnaryMap.get(PropagationCallGraphBuilder.assignOperator);
+    if (uses == null) {
+      return result;
+    }
+    int max = delegateGraph.getMaxNumber();
+    // dfs number + 1 of each visited variable; 0 means not yet visited
+    int[] index = new int[max + 1];
+    int[] low = new int[max + 1];
+    boolean[] onStack = new boolean[max + 1];
+    int[] stack = new int[max + 1];
+    int sp = 0;
+    int[] path = new int[max + 1];
+    IntIterator[] succs = new IntIterator[max + 1];
+    int pp = 0;
+    int nextIndex = 1;
+
+    int maxRoot = Math.min(max, uses.maxKeyValue());
+    for (int root = 0; root <= maxRoot; root++) {
+      if (index[root] != 0 || !uses.anyRelated(root) || !isCandidate(root, candidate)) {
+        continue;
+      }
+      index[root] = low[root] = nextIndex++;
+      stack[sp++] = root;
+      onStack[root] = true;
+      path[pp] = root;
+      succs[pp++] = uses.getRelated(root).intIterator();
+
+      while (pp > 0) {
+        int n = path[pp - 1];
+        IntIterator it = succs[pp - 1];
+        if (it != null && it.hasNext()) {
+          int m = it.next();
+          if (index[m] == 0) {
+            if (isCandidate(m, candidate)) {
+              index[m] = low[m] = nextIndex++;
+              stack[sp++] = m;
+              onStack[m] = true;
+              IntSet next = uses.getRelated(m);
+              path[pp] = m;
+              succs[pp++] = next == null ? null : next.intIterator();
+            }
+          } else if (onStack[m]) {
+            low[n] = Math.min(low[n], index[m]);
+          }
+        } else {
+          succs[--pp] = null;
+          if (low[n] == index[n]) {
+            if (stack[sp - 1] == n) {
+              // trivial component
+              onStack[stack[--sp]] = false;
+            } else {
+              Set<PointsToSetVariable> component = HashSetFactory.make();
+              int m;
+              do {
+                m = stack[--sp];
+                onStack[m] = false;
+                component.add((PointsToSetVariable) delegateGraph.getNode(m));
+              } while (m != n);
+              result.add(component);
+            }
+          }
+          if (pp > 0) {
+            int parent = path[pp - 1];
+            low[parent] = Math.min(low[parent], low[n]);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private boolean isCandidate(int number, Predicate<PointsToSetVariable> candidate) {
+    INodeWithNumber n = delegateGraph.getNode(number);
+    return n instanceof PointsToSetVariable && candidate.test((PointsToSetVariable) n);
+  }
+
+  /**
+   * Find groups of variables which must hold the same points-to set once the system is solved, in the style of offline
+   * hash-based value numbering over the graph of plain (unfiltered) assignments.
+   * 
+   * A variable is "closed" if it is accepted by the given predicate, is not on an assignment cycle, and every statement which
+   * defines it is a plain assignment; the predicate must guarantee that no other statement will ever define it and that it
+   * receives no contents other than by these assignments. A closed variable is labelled with the set of labels of its
+   * predecessors (or with that label, if there is just one); every other variable gets a label of its own. Variables with the
+   * same label then hold the same points-to set at the fixed point. Only groups with more than one variable are returned.
+   * 
+   * @param closed which variables have a final set of definitions
+   */
+  List<Set<PointsToSetVariable>> findPointerEquivalentVariables(Predicate<PointsToSetVariable> closed) {
+    List<Set<PointsToSetVariable>> result = new ArrayList<Set<PointsToSetVariable>>();
+    // (i,j) in defs iff there is an equation i := j
+    IBinaryNaturalRelation defs = implicitUnaryMap.get(PropagationCallGraphBuilder.assignOperator);
+    if (defs == null) {
+      return result;
+    }
+    int max = delegateGraph.getMaxNumber();
+    boolean[] onCycle = new boolean[max + 1];
+    for (Set<PointsToSetVariable> cycle : findAssignmentCycles(new Predicate<PointsToSetVariable>() {
+      @Override
+      public boolean test(PointsToSetVariable v) {
+        return true;
+      }
+    })) {
+      for (PointsToSetVariable v : cycle) {
+        onCycle[v.getGraphNodeId()] = true;
+      }
+    }
+
+    // label of each variable; 0 means not yet labelled
+    int[] label = new int[max + 1];
+    int nextLabel = 1;
+    Map<LabelSet, Integer> labelSets = HashMapFactory.make();
+    // a variable may be pushed more than once, before it is labelled
+    IntStack stack = new IntStack();
+    for (Iterator<PointsToSetVariable> vs = getVariables(); vs.hasNext();) {
+      int root = vs.next().getGraphNodeId();
+      if (label[root] != 0) {
+        continue;
+      }
+      stack.push(root);
+      while (!stack.isEmpty()) {
+        int n = stack.peek();
+        if (label[n] != 0) {
+          stack.pop();
+          continue;
+        }
+        IntSet preds = defs.getRelated(n);
+        PointsToSetVariable v = (PointsToSetVariable) delegateGraph.getNode(n);
+        if (onCycle[n] || preds == null || getNumberOfStatementsThatDef(v) != preds.size() || !closed.test(v)) {
+          label[n] = nextLabel++;
+          stack.pop();
+          continue;
+        }
+        // label the predecessors first; apart from self-assignments, which do not contribute, the closed variables are
+        // acyclic, so this terminates
+        boolean ready = true;
+        for (IntIterator it = preds.intIterator(); it.hasNext();) {
+          int m = it.next();
+          if (m != n && label[m] == 0) {
+            ready = false;
+            stack.push(m);
+          }
+        }
+        if (ready) {
+          stack.pop();
+          MutableIntSet predLabels = MutableSparseIntSet.makeEmpty();
+          for (IntIterator it = preds.intIterator(); it.hasNext();) {
+            int m = it.next();
+            if (m != n) {
+              predLabels.add(label[m]);
+            }
+          }
+          if (predLabels.size() == 1) {
+            label[n] = predLabels.max();
+          } else {
+            LabelSet key = new LabelSet(predLabels);
+            Integer l = labelSets.get(key);
+            if (l == null) {
+              l = nextLabel++;
+              labelSets.put(key, l);
+            }
+            label[n] = l;
+          }
+        }
+      }
+    }
+
+    Map<Integer, Set<PointsToSetVariable>> groups = HashMapFactory.make();
+    for (Iterator<PointsToSetVariable> vs = getVariables(); vs.hasNext();) {
+      PointsToSetVariable v = vs.next();
+      MapUtil.findOrCreateSet(groups, label[v.getGraphNodeId()]).add(v);
+    }
+    for (Set<PointsToSetVariable> group : groups.values()) {
+      if (group.size() > 1) {
+        result.add(group);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * a set of labels, used as a hash key in {@link PropagationGraph#findPointerEquivalentVariables}
+   */
+  private static final class LabelSet {
+    private final int[] labels;
+
+    LabelSet(IntSet s) {
+      labels = new int[s.size()];
+      int i = 0;
+      for (IntIterator it = s.intIterator(); it.hasNext();) {
+        labels[i++] = it.next();
+      }
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(labels);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof LabelSet && Arrays.equals(labels, ((LabelSet) obj).labels);
+    }
+  }
+
+  /**
+   * Rebuild the hash-based index of explicit statements from the graph. This is needed after
+   * {@link UnarySideEffect#replaceFixedSet}, which changes the hash codes of the statements that use the side effect, so that
+   * removing such a statement may have left a stale entry in the index.
+   */
+  void rehashStatements() {
+    delegateStatements.clear();
+    for (Iterator<INodeWithNumber> it = delegateGraph.iterator(); it.hasNext();) {
+      INodeWithNumber n = it.next();
+      if (n instanceof AbstractStatement) {
+        delegateStatements.add((AbstractStatement) n);
+      }
+    }
+  }
+
   /*
    * @see com.ibm.wala.util.debug.VerboseAction#performVerboseAction()
    */
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.callgraph.propagation;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -23,7 +24,7 @@ import java.util.Set;
 import com.ibm.wala.classLoader.ArrayClass;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.fixedpoint.impl.DefaultFixedPointSolver;
-import com.ibm.wala.fixedpoint.impl.Worklist;
+import com.ibm.wala.fixedpoint.impl.IFixedPointWorklist;
 import com.ibm.wala.fixpoint.AbstractOperator;
 import com.ibm.wala.fixpoint.AbstractStatement;
 import com.ibm.wala.fixpoint.IFixedPointSystem;
@@ -35,6 +36,7 @@ import com.ibm.wala.ipa.callgraph.propagation.PropagationCallGraphBuilder.Filter
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.ClassHierarchyWarning;
 import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.Predicate;
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Iterator2Collection;
@@ -50,6 +52,7 @@ import com.ibm.wala.util.intset.IntSetAction;
 import com.ibm.wala.util.intset.IntSetUtil;
 import com.ibm.wala.util.intset.MutableIntSet;
 import com.ibm.wala.util.intset.MutableMapping;
+import com.ibm.wala.util.perf.Metrics;
 import com.ibm.wala.util.ref.ReferenceCleanser;
 import com.ibm.wala.util.warnings.Warnings;
 
@@ -109,6 +112,12 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
    */
   final private Map<PointsToSetVariable, Set<UnarySideEffect>> fixedSetMap = HashMapFactory.make();
 
+  /**
+   * representatives (indices in the points-to map) of unified sets which may acquire definitions other than those of a single
+   * closed variable; see {@link #unifyPointerEquivalentVariables}
+   */
+  final private MutableIntSet openUnifiedSets = IntSetUtil.make();
+
   /**
    * Governing call graph;
    */
@@ -118,6 +127,23 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
 
   private int periodicMaintainInterval = DEFAULT_PERIODIC_MAINTENANCE_INTERVAL;
 
+  /**
+   * Algorithmic choice: should a change to a points-to set propagate only the newly added instance keys along assignments and
+   * filters, rather than the whole set?
+   */
+  private boolean differencePropagation = false;
+
+  /**
+   * scratch list of the variables changed by one {@link DeltaStatement}, reused across evaluations
+   */
+  private final List<PointsToSetVariable> deltaChanged = new ArrayList<PointsToSetVariable>();
+
+  /**
+   * if non-null, the instance keys added directly to each points-to set, by {@link #newConstraint(PointerKey, InstanceKey)}; these
+   * are the initial values of a captured system. See {@link PropagationSystemCapture}.
+   */
+  private Map<PointerKey, MutableIntSet> seeds = null;
+
   public PropagationSystem(CallGraph cg, PointerKeyFactory pointerKeyFactory, InstanceKeyFactory instanceKeyFactory) {
     if (cg == null) {
       throw new IllegalArgumentException("null cg");
@@ -359,8 +385,6 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("Add constraint A: " + lhs + " " + op + " " + rhs);
     }
-    assert !pointsToMap.isUnified(lhs);
-    assert !pointsToMap.isUnified(rhs);
     PointsToSetVariable L = findOrCreatePointsToSet(lhs);
     PointsToSetVariable R = findOrCreatePointsToSet(rhs);
     return newStatement(L, op, new PointsToSetVariable[] { R }, true, true);
@@ -382,9 +406,6 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("Add constraint A: " + lhs + " " + op + " " + rhs1 + ", " + rhs2);
     }
-    assert !pointsToMap.isUnified(lhs);
-    assert !pointsToMap.isUnified(rhs1);
-    assert !pointsToMap.isUnified(rhs2);
     PointsToSetVariable L = findOrCreatePointsToSet(lhs);
     PointsToSetVariable R1 = findOrCreatePointsToSet(rhs1);
     PointsToSetVariable R2 = findOrCreatePointsToSet(rhs2);
@@ -419,6 +440,14 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     // This works since the solver is monotonic with TOP = {}
     PointsToSetVariable L = findOrCreatePointsToSet(lhs);
     int index = findOrCreateIndexForInstanceKey(value);
+    if (seeds != null) {
+      MutableIntSet S = seeds.get(lhs);
+      if (S == null) {
+        S = IntSetUtil.make();
+        seeds.put(lhs, S);
+      }
+      S.add(index);
+    }
     if (L.contains(index)) {
       // a no-op
       return false;
@@ -569,7 +598,6 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("add constraint D: " + op + " " + arg0);
     }
-    assert !pointsToMap.isUnified(arg0);
     PointsToSetVariable v1 = findOrCreatePointsToSet(arg0);
     newStatement(null, op, v1, true, true);
   }
@@ -583,7 +611,6 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     }
     PointsToSetVariable[] vs = new PointsToSetVariable[ arg0.length ];
     for(int i = 0; i < arg0.length; i++) {
-      assert !pointsToMap.isUnified(arg0[i]);
       vs[i] = findOrCreatePointsToSet(arg0[i]);
     }
     newStatement(null, op, vs, true, true);
@@ -593,8 +620,6 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (DEBUG) {
       System.err.println("add constraint D: " + op + " " + arg0);
     }
-    assert !pointsToMap.isUnified(arg0);
-    assert !pointsToMap.isUnified(arg1);
     PointsToSetVariable v1 = findOrCreatePointsToSet(arg0);
     PointsToSetVariable v2 = findOrCreatePointsToSet(arg1);
     newStatement(null, op, v1, v2, true, true);
@@ -634,9 +659,9 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (getFixedPointSystem() instanceof VerboseAction) {
       ((VerboseAction) getFixedPointSystem()).performVerboseAction();
     }
-    AbstractStatement s = workList.takeStatement();
-    System.err.println(printRHSInstances(s));
-    workList.insertStatement(s);
+    if (!workList.isEmpty()) {
+      System.err.println(printRHSInstances(workList.peekStatement()));
+    }
     System.err.println("CGNodes: " + cg.getNumberOfNodes());
 
   }
@@ -682,6 +707,25 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     return pointsToMap.iterateKeys();
   }
 
+  /**
+   * report the size of each explicit points-to set to {@link Metrics}, counting unified sets once
+   */
+  public void samplePointsToSetSizes() {
+    for (Iterator<PointerKey> it = iteratePointerKeys(); it.hasNext();) {
+      PointerKey p = it.next();
+      if (pointsToMap.isImplicit(p)) {
+        continue;
+      }
+      int i = pointsToMap.getIndex(p);
+      if (pointsToMap.getRepresentative(i) == i) {
+        PointsToSetVariable v = pointsToMap.getPointsToSet(i);
+        if (v != null) {
+          Metrics.sample("pointsto.set.size", v.size());
+        }
+      }
+    }
+  }
+
   /**
    * warning: this is _real_ slow; don't use it anywhere performance critical
    */
@@ -692,7 +736,7 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
   /**
    * Use with care.
    */
-  Worklist getWorklist() {
+  IFixedPointWorklist getWorklist() {
     return workList;
   }
 
@@ -765,6 +809,145 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     this.periodicMaintainInterval = periodicMaintainInteval;
   }
 
+  /**
+   * Should a change to a points-to set propagate only the newly added instance keys along assignments and filters? Each
+   * variable used by an assignment or filter then records the instance keys added to it, and a change to it schedules a single
+   * {@link DeltaStatement} which pushes just those keys to all of its implicit uses, instead of re-evaluating each of them
+   * against the whole set. Statements which are represented explicitly, e.g. field reads and writes and dispatch, are scheduled as
+   * usual; they already remember which instances they have seen.
+   * 
+   * This must be set before any constraints are added.
+   */
+  public void setDifferencePropagation(boolean b) {
+    differencePropagation = b;
+  }
+
+  public boolean getDifferencePropagation() {
+    return differencePropagation;
+  }
+
+  /**
+   * Should this system remember the instance keys added directly to each points-to set, so that it can be captured by a
+   * {@link PropagationSystemCapture}? This must be set before any constraints are added.
+   */
+  public void setRecordSeeds(boolean b) {
+    if (b) {
+      if (seeds == null) {
+        seeds = HashMapFactory.make();
+      }
+    } else {
+      seeds = null;
+    }
+  }
+
+  public boolean getRecordSeeds() {
+    return seeds != null;
+  }
+
+  /**
+   * @return the instance keys added directly to each points-to set, or null if they are not recorded
+   */
+  Map<PointerKey, MutableIntSet> getSeeds() {
+    return seeds;
+  }
+
+  @Override
+  public boolean newStatement(PointsToSetVariable lhs, UnaryOperator<PointsToSetVariable> operator, PointsToSetVariable rhs,
+      boolean toWorkList, boolean eager) {
+    if (differencePropagation && rhs != null && PropagationGraph.isImplicitOperator(operator)) {
+      // the new statement itself sees the whole of rhs when it is first evaluated; after that, just what is added
+      rhs.trackDelta(false);
+    }
+    return super.newStatement(lhs, operator, rhs, toWorkList, eager);
+  }
+
+  @Override
+  public void changedVariable(PointsToSetVariable v) {
+    if (!differencePropagation) {
+      super.changedVariable(v);
+      return;
+    }
+    for (Iterator<AbstractStatement<PointsToSetVariable, ?>> it = flowGraph.getExplicitStatementsThatUse(v); it.hasNext();) {
+      addToWorkList(it.next());
+    }
+    if (flowGraph.hasImplicitUses(v)) {
+      AbstractStatement<PointsToSetVariable, ?> s = v.getDeltaStatement();
+      if (s == null) {
+        s = new DeltaStatement(v);
+        v.setDeltaStatement(s);
+      }
+      addToWorkList(s);
+    }
+  }
+
+  /**
+   * A pseudo-statement which pushes the instance keys newly added to a variable through all of the assignments and filters that
+   * use it. These operators distribute over union, so applying them to the delta is equivalent to applying them to the whole set.
+   * 
+   * Instances are equal iff they are for the same variable, so the work list holds at most one per variable. The variable is
+   * reported as the left-hand side so that this statement is ordered like the statements that define it; evaluation reports
+   * changes to the variables it defines itself.
+   */
+  private final class DeltaStatement extends AbstractStatement<PointsToSetVariable, AbstractOperator<PointsToSetVariable>> {
+
+    private final PointsToSetVariable v;
+
+    DeltaStatement(PointsToSetVariable v) {
+      this.v = v;
+    }
+
+    @Override
+    public byte evaluate() {
+      PointsToSetVariable delta = v.getDelta();
+      if (delta == null || delta.size() == 0) {
+        return NOT_CHANGED;
+      }
+      // the operators are applied to the delta in place; keys they add to v itself are already in v, so the delta is stable
+      deltaChanged.clear();
+      flowGraph.evaluateImplicitUses(v, delta, deltaChanged);
+      v.clearDelta();
+      for (PointsToSetVariable lhs : deltaChanged) {
+        changedVariable(lhs);
+      }
+      return NOT_CHANGED;
+    }
+
+    @Override
+    public PointsToSetVariable getLHS() {
+      return v;
+    }
+
+    @Override
+    public PointsToSetVariable[] getRHS() {
+      return new PointsToSetVariable[] { v };
+    }
+
+    @Override
+    public boolean hasVariable(PointsToSetVariable var) {
+      return v == var;
+    }
+
+    @Override
+    public AbstractOperator<PointsToSetVariable> getOperator() {
+      return null;
+    }
+
+    @Override
+    public int hashCode() {
+      return 7919 * v.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof DeltaStatement && ((DeltaStatement) o).v == v;
+    }
+
+    @Override
+    public String toString() {
+      return "Delta " + v.getPointerKey();
+    }
+  }
+
   /**
    * Unify the points-to-sets for the variables identified by the set s
    * 
@@ -775,6 +958,7 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     if (s == null) {
       throw new IllegalArgumentException("s is null");
     }
+    long start = Metrics.start();
     // cache the variables represented
     HashSet<PointsToSetVariable> cache = HashSetFactory.make(s.size());
     for (IntIterator it = s.intIterator(); it.hasNext();) {
@@ -785,12 +969,184 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     // unify the variables
     pointsToMap.unify(s);
     int rep = pointsToMap.getRepresentative(s.intIterator().next());
+    openUnifiedSets.add(rep);
 
     // clean up the equations
     updateEquationsForUnification(cache, rep);
 
     // special logic to clean up side effects
     updateSideEffectsForUnification(cache, rep);
+
+    if (differencePropagation) {
+      // uses of the other variables now use the representative, but have seen none of its contents
+      PointsToSetVariable repVar = pointsToMap.getPointsToSet(rep);
+      repVar.trackDelta(true);
+      changedVariable(repVar);
+    }
+    Metrics.stop("unify", start);
+  }
+
+  /**
+   * @return the number of assignment and filter equations in the system
+   */
+  public int getNumberOfAssignments() {
+    return flowGraph.getNumberOfImplicitStatements();
+  }
+
+  /**
+   * Collapse each cycle of plain assignments into a single points-to set, via {@link #unify(IntSet)}. All variables on such a cycle
+   * have the same value at the fixed point, so this does not change the solution; it just saves propagating the same values around
+   * the cycle again and again.
+   * 
+   * Filtering is a property of a points-to set, so a variable with a type filter must keep a set of its own. It is up to the
+   * caller to exclude such variables, as well as any variable which might acquire a filter later.
+   * 
+   * This may be called between evaluations; the work list is adjusted accordingly.
+   * 
+   * @param canUnify which pointer keys may have their points-to sets unified with others
+   * @return the number of variables eliminated
+   */
+  public int unifyAssignmentCycles(final Predicate<PointerKey> canUnify) {
+    if (canUnify == null) {
+      throw new IllegalArgumentException("null canUnify");
+    }
+    List<Set<PointsToSetVariable>> cycles = flowGraph.findAssignmentCycles(new Predicate<PointsToSetVariable>() {
+      @Override
+      public boolean test(PointsToSetVariable v) {
+        return canUnify.test(v.getPointerKey());
+      }
+    });
+    if (cycles.isEmpty()) {
+      return 0;
+    }
+    int eliminated = unifyAll(cycles, null);
+    Metrics.count("cycles.found", cycles.size());
+    Metrics.count("cycles.eliminated", eliminated);
+    return eliminated;
+  }
+
+  /**
+   * Unify variables which are known to hold the same points-to set at the fixed point, because they are defined only by
+   * assignments from equivalent sources; see {@link PropagationGraph#findPointerEquivalentVariables}. Solving may continue
+   * afterwards.
+   * 
+   * @param canUnify which pointer keys may be unified
+   * @param hasFixedDefs which pointer keys will never be defined by statements other than those already in the system
+   * @return the number of variables eliminated
+   */
+  public int unifyPointerEquivalentVariables(final Predicate<PointerKey> canUnify, final Predicate<PointerKey> hasFixedDefs) {
+    if (canUnify == null) {
+      throw new IllegalArgumentException("null canUnify");
+    }
+    if (hasFixedDefs == null) {
+      throw new IllegalArgumentException("null hasFixedDefs");
+    }
+    Predicate<PointsToSetVariable> closed = new Predicate<PointsToSetVariable>() {
+      @Override
+      public boolean test(PointsToSetVariable v) {
+        PointerKey key = v.getPointerKey();
+        if (openUnifiedSets.contains(pointsToMap.getRepresentative(pointsToMap.getIndex(key)))) {
+          // some unified variable may acquire definitions later
+          return false;
+        }
+        if (pointsToMap.isTransitiveRoot(key)) {
+          // has contents which do not flow from other variables
+          return false;
+        }
+        Set<UnarySideEffect> sideEffects = fixedSetMap.get(v);
+        if (sideEffects != null) {
+          for (UnarySideEffect e : sideEffects) {
+            if (e.isLoadOperator()) {
+              // defined by a load
+              return false;
+            }
+          }
+        }
+        return hasFixedDefs.test(key);
+      }
+    };
+    List<Set<PointsToSetVariable>> groups = flowGraph.findPointerEquivalentVariables(closed);
+    List<Set<PointsToSetVariable>> toUnify = new ArrayList<Set<PointsToSetVariable>>();
+    for (Set<PointsToSetVariable> group : groups) {
+      Set<PointsToSetVariable> s = HashSetFactory.make();
+      for (PointsToSetVariable v : group) {
+        if (canUnify.test(v.getPointerKey())) {
+          s.add(v);
+        }
+      }
+      if (s.size() > 1) {
+        toUnify.add(s);
+      }
+    }
+    if (toUnify.isEmpty()) {
+      return 0;
+    }
+    int eliminated = unifyAll(toUnify, closed);
+    Metrics.count("equivalences.found", toUnify.size());
+    Metrics.count("equivalences.eliminated", eliminated);
+    return eliminated;
+  }
+
+  /**
+   * Unify each of the given sets of variables, and repair the work list so that solving can continue afterwards.
+   * 
+   * @param closed which variables have a final set of definitions, or null if none should be considered to. A unified set is
+   *          still considered closed if all of its members were.
+   * @return the number of variables eliminated
+   */
+  @SuppressWarnings("unchecked")
+  private int unifyAll(Collection<Set<PointsToSetVariable>> sets, Predicate<PointsToSetVariable> closed) {
+    int eliminated = 0;
+    for (Set<PointsToSetVariable> set : sets) {
+      MutableIntSet s = IntSetUtil.make();
+      for (PointsToSetVariable v : set) {
+        s.add(pointsToMap.getIndex(v.getPointerKey()));
+      }
+      boolean allClosed = closed != null && allMatch(set, closed);
+      unify(s);
+      eliminated += set.size() - 1;
+
+      // the representative now holds the union of the set, which its uses may not have seen; and statements which defined
+      // the other variables have been replaced, so any pending evaluations of them are lost below.
+      PointsToSetVariable rep = pointsToMap.getPointsToSet(s.intIterator().next());
+      if (allClosed) {
+        openUnifiedSets.remove(pointsToMap.getRepresentative(s.intIterator().next()));
+      }
+      changedVariable(rep);
+      for (Iterator<?> it = getStatementsThatDef(rep); it.hasNext();) {
+        addToWorkList((AbstractStatement<?, ?>) it.next());
+      }
+    }
+    // side effects whose fixed sets were unified now hash differently
+    flowGraph.rehashStatements();
+
+    // drop pending statements that unification replaced
+    // every statement of this system is over points-to set variables
+    LinkedList<AbstractStatement<PointsToSetVariable, ?>> pending = new LinkedList<AbstractStatement<PointsToSetVariable, ?>>();
+    while (!workList.isEmpty()) {
+      pending.add((AbstractStatement<PointsToSetVariable, ?>) workList.takeStatement());
+    }
+    workList = getWorklistStrategy().make();
+    for (AbstractStatement<PointsToSetVariable, ?> st : pending) {
+      if (st instanceof DeltaStatement) {
+        PointsToSetVariable v = ((DeltaStatement) st).v;
+        if (pointsToMap.getPointsToSet(v.getPointerKey()) == v) {
+          workList.insertStatement(st);
+        }
+      } else if (flowGraph.containsStatement(st)) {
+        workList.insertStatement(st);
+      }
+    }
+    return eliminated;
+  }
+
+  private static boolean allMatch(Set<PointsToSetVariable> set, Predicate<PointsToSetVariable> p) {
+    for (PointsToSetVariable v : set) {
+      if (!p.test(v)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -803,7 +1159,9 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     PointsToSetVariable pRef = pointsToMap.getPointsToSet(rep);
     for (Iterator<PointsToSetVariable> it = s.iterator(); it.hasNext();) {
       PointsToSetVariable p = it.next();
-      updateSideEffects(p, pRef);
+      if (p != pRef) {
+        updateSideEffects(p, pRef);
+      }
     }
   }
 
@@ -830,7 +1188,7 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
             PointsToSetVariable rhs = assign.getRightHandSide();
             int rhsRep = pointsToMap.getRepresentative(pointsToMap.getIndex(rhs.getPointerKey()));
             if (rhsRep == rep) {
-              flowGraph.removeStatement(as);
+              removeStatement(as);
             } else {
               replaceLHS(pRef, p, as);
             }
@@ -846,7 +1204,7 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
             PointsToSetVariable lhs = assign.getLHS();
             int lhsRep = pointsToMap.getRepresentative(pointsToMap.getIndex(lhs.getPointerKey()));
             if (lhsRep == rep) {
-              flowGraph.removeStatement(as);
+              removeStatement(as);
             } else {
               replaceRHS(pRef, p, as);
             }
@@ -883,7 +1241,7 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
       }
       newStatement(as.getLHS(), as.getOperator(), newRHS, false, false);
     }
-    flowGraph.removeStatement(as);
+    removeStatement(as);
   }
 
   /**
@@ -900,7 +1258,7 @@ public class PropagationSystem extends DefaultFixedPointSolver<PointsToSetVariab
     } else {
       newStatement(pRef, as.getOperator(), as.getRHS(), false, false);
     }
-    flowGraph.removeStatement(as);
+    removeStatement(as);
   }
 
   public boolean isUnified(PointerKey result) {
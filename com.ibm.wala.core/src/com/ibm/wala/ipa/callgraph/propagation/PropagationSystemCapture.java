@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ipa.callgraph.propagation;
+
+import java.util.Map;
+
+import com.ibm.wala.fixedpoint.impl.CapturedSystem;
+import com.ibm.wala.fixedpoint.impl.FixedPointSystemCapture;
+import com.ibm.wala.fixpoint.AbstractOperator;
+import com.ibm.wala.fixpoint.UnaryOperator;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetUtil;
+import com.ibm.wala.util.intset.MutableIntSet;
+
+/**
+ * Captures the assignments and filters of a {@link PropagationSystem}, so that pointer analysis solving can be replayed without
+ * re-running call graph construction.
+ * 
+ * Field accesses, dispatch and other operators with side effects are not captured; instead, capture a solved system, which holds
+ * all the assignments those operators generated. The initial value of each points-to set is the set of instance keys added to it
+ * directly, so the system must record them; see {@link PropagationSystem#setRecordSeeds(boolean)}. Replaying the captured system
+ * then reproduces the solution exactly.
+ * 
+ * The capture is taken over representative points-to sets, so it may be taken whether or not the system unified variables or
+ * propagated differences; replay, however, uses neither; see {@link com.ibm.wala.fixedpoint.impl.CapturedSystemSolver}.
+ */
+public class PropagationSystemCapture extends FixedPointSystemCapture<PointsToSetVariable> {
+
+  private final PropagationSystem system;
+
+  /**
+   * the instance keys added directly to each representative points-to set
+   */
+  private final Map<PointsToSetVariable, MutableIntSet> initialValues = HashMapFactory.make();
+
+  /**
+   * @throws IllegalArgumentException if the system did not record its seeds
+   */
+  public PropagationSystemCapture(PropagationSystem system) {
+    if (system == null) {
+      throw new IllegalArgumentException("null system");
+    }
+    if (system.getSeeds() == null) {
+      throw new IllegalArgumentException("system must record its seeds to be captured");
+    }
+    this.system = system;
+    for (Map.Entry<PointerKey, MutableIntSet> e : system.getSeeds().entrySet()) {
+      PointsToSetVariable v = system.pointsToMap.getPointsToSet(e.getKey());
+      MutableIntSet S = initialValues.get(v);
+      if (S == null) {
+        initialValues.put(v, IntSetUtil.makeMutableCopy(e.getValue()));
+      } else {
+        S.addAll(e.getValue());
+      }
+    }
+  }
+
+  /**
+   * Capture a system, along with its current solution
+   */
+  public static CapturedSystem capture(PropagationSystem system) {
+    return new PropagationSystemCapture(system).capture(system.getFixedPointSystem(), true);
+  }
+
+  @Override
+  protected IntSet getValue(PointsToSetVariable v) {
+    return v.getValue();
+  }
+
+  @Override
+  protected IntSet getInitialValue(PointsToSetVariable v) {
+    return initialValues.get(v);
+  }
+
+  @Override
+  protected PointsToSetVariable makeScratchVariable(PointsToSetVariable v) {
+    return new PointsToSetVariable(v.getPointerKey());
+  }
+
+  @Override
+  protected void addAll(PointsToSetVariable v, IntSet s) {
+    for (IntIterator it = s.intIterator(); it.hasNext();) {
+      v.add(it.next());
+    }
+  }
+
+  @Override
+  protected int getUniverseSize() {
+    return system.instanceKeys.getMaximumIndex() + 1;
+  }
+
+  @Override
+  protected boolean isUnion(AbstractOperator<PointsToSetVariable> op) {
+    return op instanceof AssignOperator;
+  }
+
+  @Override
+  protected boolean isElementwise(UnaryOperator<PointsToSetVariable> op) {
+    return op instanceof PropagationCallGraphBuilder.FilterOperator;
+  }
+
+  /**
+   * a filter takes its type from the left-hand side
+   */
+  @Override
+  protected Object getTransferKey(PointsToSetVariable lhs) {
+    PointerKey pk = lhs.getPointerKey();
+    return pk instanceof FilteredPointerKey ? ((FilteredPointerKey) pk).getTypeFilter() : pk;
+  }
+}
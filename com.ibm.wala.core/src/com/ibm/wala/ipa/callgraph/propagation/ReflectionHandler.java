@@ -33,6 +33,7 @@ import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
 import com.ibm.wala.util.Predicate;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.perf.Metrics;
 
 /**
  * A helper class which can modify a {@link PropagationCallGraphBuilder} to deal with reflective factory methods.
@@ -56,6 +57,7 @@ public class ReflectionHandler {
    */
   protected boolean updateForReflection(IProgressMonitor monitor) throws IllegalArgumentException, CancelException {
 
+    long start = Metrics.start();
     Collection<Statement> returnStatements = computeFactoryReturnStatements();
     Set<CGNode> changedNodes = HashSetFactory.make();
     for (Statement st : returnStatements) {
@@ -85,6 +87,7 @@ public class ReflectionHandler {
     for (Iterator<CGNode> it = changedNodes.iterator(); it.hasNext();) {
       builder.addConstraintsFromChangedNode(it.next(), monitor);
     }
+    Metrics.stop("reflection", start);
     return changedNodes.size() > 0;
 
   }
@@ -25,6 +25,7 @@ import com.ibm.wala.cfg.IBasicBlock;
 import com.ibm.wala.classLoader.ArrayClass;
 import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IBytecodeMethod;
 import com.ibm.wala.classLoader.IField;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.classLoader.NewSiteReference;
@@ -32,10 +33,12 @@ import com.ibm.wala.classLoader.ProgramCounter;
 import com.ibm.wala.fixpoint.AbstractOperator;
 import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.Context;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.ContextKey;
 import com.ibm.wala.ipa.callgraph.ContextSelector;
 import com.ibm.wala.ipa.callgraph.impl.AbstractRootMethod;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
 import com.ibm.wala.ipa.callgraph.impl.ExplicitCallGraph;
 import com.ibm.wala.ipa.callgraph.impl.FakeRootMethod;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
@@ -75,6 +78,7 @@ import com.ibm.wala.util.CancelRuntimeException;
 import com.ibm.wala.util.MonitorUtil;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.functions.VoidFunction;
 import com.ibm.wala.util.intset.IntIterator;
@@ -82,6 +86,7 @@ import com.ibm.wala.util.intset.IntSet;
 import com.ibm.wala.util.intset.IntSetAction;
 import com.ibm.wala.util.intset.IntSetUtil;
 import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.perf.Metrics;
 import com.ibm.wala.util.ref.ReferenceCleanser;
 import com.ibm.wala.util.warnings.Warning;
 import com.ibm.wala.util.warnings.Warnings;
@@ -178,6 +183,75 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
     return ikFactory.getInstanceKeyForPEI(node, x, type);
   }
 
+  /**
+   * Build the IR and {@link DefUse} for a batch of new nodes in parallel, so that they are already cached when constraints are
+   * generated from the nodes.
+   * 
+   * Only bytecode methods whose IR does not depend on the context are built here, since those are cached under
+   * {@link Everywhere#EVERYWHERE} no matter which context interpreter later asks for them.
+   * 
+   * @see AnalysisOptions#getIRPrebuildThreads()
+   */
+  @Override
+  protected void prepareToAddConstraintsFromNewNodes(Set<CGNode> newNodes, IProgressMonitor monitor) throws CancelException {
+    int nThreads = options.getIRPrebuildThreads();
+    if (nThreads <= 1 || newNodes.size() < 2) {
+      return;
+    }
+    List<Pair<IMethod, Context>> methods = new ArrayList<Pair<IMethod, Context>>(newNodes.size());
+    for (CGNode n : newNodes) {
+      IMethod m = n.getMethod();
+      if (haveAlreadyVisited(n) || !(m instanceof IBytecodeMethod) || m.isSynthetic() || m.isAbstract() || m.isNative()
+          || !getAnalysisCache().getIRFactory().contextIsIrrelevant(m)) {
+        continue;
+      }
+      methods.add(Pair.<IMethod, Context> make(m, Everywhere.EVERYWHERE));
+    }
+    // pass along only the cancellation of the monitor; its progress belongs to the solver
+    getAnalysisCache().prebuildIRs(methods, options.getSSAOptions(), getPrebuildExecutor(), cancelOnly(monitor));
+  }
+
+  /**
+   * @return a monitor that is canceled when monitor is, and ignores any progress reported to it
+   */
+  private static IProgressMonitor cancelOnly(final IProgressMonitor monitor) {
+    if (monitor == null) {
+      return null;
+    }
+    return new IProgressMonitor() {
+      @Override
+      public void beginTask(String task, int totalWork) {
+      }
+
+      @Override
+      public void subTask(String subTask) {
+      }
+
+      @Override
+      public void cancel() {
+        monitor.cancel();
+      }
+
+      @Override
+      public boolean isCanceled() {
+        return monitor.isCanceled();
+      }
+
+      @Override
+      public void done() {
+      }
+
+      @Override
+      public void worked(int units) {
+      }
+
+      @Override
+      public String getCancelMessage() {
+        return monitor.getCancelMessage();
+      }
+    };
+  }
+
   /**
    * Visit all instructions in a node, and add dataflow constraints induced by each statement in the SSA form.
    * @throws CancelException 
@@ -226,10 +300,12 @@ public abstract class SSAPropagationCallGraphBuilder extends PropagationCallGrap
       return false;
     }
 
+    long start = Metrics.start();
     addNodeInstructionConstraints(node, monitor);
 
     DefUse du = getCFAContextInterpreter().getDU(node);
     addNodePassthruExceptionConstraints(node, ir, du);
+    Metrics.stop("constraints.generate", start);
     // conservatively assume something changed
     return true;
   }
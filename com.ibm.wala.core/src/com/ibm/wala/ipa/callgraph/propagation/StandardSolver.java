@@ -71,6 +71,13 @@ public class StandardSolver extends AbstractPointsToSolver {
       }
       getBuilder().addConstraintsFromNewNodes(monitor);
 
+      if (getBuilder().getOptions().getUnifyAssignmentCycles()) {
+        getBuilder().unifyAssignmentCycles();
+      }
+      if (getBuilder().getOptions().getUnifyPointerEquivalentVariables()) {
+        getBuilder().unifyPointerEquivalentVariables();
+      }
+
       if (monitor != null) { monitor.worked(i); }
       // Note that we may have added stuff to the
       // worklist; so,
@@ -10,12 +10,20 @@
  *******************************************************************************/
 package com.ibm.wala.ipa.callgraph.propagation.rta;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.ibm.wala.analysis.reflection.ReflectionContextInterpreter;
 import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.CodeScanner;
+import com.ibm.wala.classLoader.IBytecodeMethod;
 import com.ibm.wala.classLoader.IClass;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.classLoader.NewSiteReference;
@@ -45,6 +53,7 @@ import com.ibm.wala.ipa.callgraph.propagation.cfa.DefaultSSAInterpreter;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.DelegatingSSAContextInterpreter;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.shrikeBT.IInvokeInstruction;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
 import com.ibm.wala.ssa.SSAInvokeInstruction;
 import com.ibm.wala.ssa.SSANewInstruction;
 import com.ibm.wala.types.ClassLoaderReference;
@@ -52,6 +61,7 @@ import com.ibm.wala.types.FieldReference;
 import com.ibm.wala.types.MethodReference;
 import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
 import com.ibm.wala.util.collections.HashSetFactory;
 
@@ -109,6 +119,68 @@ public abstract class AbstractRTABuilder extends PropagationCallGraphBuilder {
     return getContextInterpreter();
   }
 
+  /**
+   * Scan the bytecode of a batch of new nodes in parallel, so that the allocation sites, call sites and field accesses of each
+   * method are already cached when constraints are generated from the nodes.
+   * 
+   * Only bytecode methods are scanned here; what {@link CodeScanner} finds for them does not depend on the context.
+   * 
+   * @see AnalysisOptions#getIRPrebuildThreads()
+   */
+  @Override
+  protected void prepareToAddConstraintsFromNewNodes(Set<CGNode> newNodes, IProgressMonitor monitor) throws CancelException {
+    int nThreads = options.getIRPrebuildThreads();
+    if (nThreads <= 1 || newNodes.size() < 2) {
+      return;
+    }
+    ExecutorService scanners = getPrebuildExecutor();
+    List<Future<?>> tasks = new ArrayList<Future<?>>(newNodes.size());
+    boolean done = false;
+    try {
+      for (CGNode n : newNodes) {
+        final IMethod m = n.getMethod();
+        if (haveAlreadyVisited(n) || !(m instanceof IBytecodeMethod) || m.isSynthetic() || m.isAbstract() || m.isNative()) {
+          continue;
+        }
+        tasks.add(scanners.submit(new Callable<Object>() {
+          @Override
+          public Object call() {
+            try {
+              // the method caches everything it finds in one scan
+              CodeScanner.getCallSites(m);
+            } catch (InvalidClassFileException e) {
+              // leave it for the context interpreter to report
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<?> task : tasks) {
+        MonitorUtil.throwExceptionIfCanceled(monitor);
+        task.get();
+      }
+      done = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancelException(e);
+    } catch (ExecutionException e) {
+      // rethrow whatever scanning would have thrown in the calling thread
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      } else if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      } else {
+        throw new IllegalStateException("unexpected failure scanning a method", e.getCause());
+      }
+    } finally {
+      if (!done) {
+        for (Future<?> task : tasks) {
+          task.cancel(true);
+        }
+      }
+    }
+  }
+
   /**
    * Visit all instructions in a node, and add dataflow constraints induced by each statement relevat to RTA
    */
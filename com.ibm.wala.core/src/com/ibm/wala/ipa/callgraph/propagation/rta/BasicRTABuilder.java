@@ -106,9 +106,16 @@ public class BasicRTABuilder extends AbstractRTABuilder {
 
     private final ExplicitCallGraph.ExplicitNode caller;
 
+    /**
+     * The class declaring the target of the site, or null if it is not in the class hierarchy. Looked up once, since the operator is
+     * evaluated each time new receivers reach the site.
+     */
+    private final IClass recvClass;
+
     DispatchOperator(CallSiteReference site, ExplicitNode caller) {
       this.site = site;
       this.caller = caller;
+      this.recvClass = getClassHierarchy().lookupClass(site.getDeclaredTarget().getDeclaringClass());
     }
 
     /**
@@ -139,8 +146,6 @@ public class BasicRTABuilder extends AbstractRTABuilder {
           System.err.println(("receivers: " + value));
         }
       }
-      // TODO: cache this!!!
-      IClass recvClass = getClassHierarchy().lookupClass(site.getDeclaredTarget().getDeclaringClass());
       if (recvClass == null) {
         return NOT_CHANGED;
       }
@@ -13,6 +13,7 @@ package com.ibm.wala.ipa.cfg;
 import java.util.Map;
 
 import com.ibm.wala.cfg.ControlFlowGraph;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ssa.IR;
@@ -32,16 +33,35 @@ public class ExplodedInterproceduralCFG extends AbstractInterproceduralCFG<IExpl
    */
   private Map<CGNode, ExplodedControlFlowGraph> cfgMap;
 
+  /**
+   * If non-null, CFGs are shared through this cache with other clients of the same IRs
+   */
+  private final AnalysisCache cache;
+
   public static ExplodedInterproceduralCFG make(CallGraph cg) {
     return new ExplodedInterproceduralCFG(cg);
   }
 
+  public static ExplodedInterproceduralCFG make(CallGraph cg, AnalysisCache cache) {
+    return new ExplodedInterproceduralCFG(cg, cache);
+  }
+
   protected ExplodedInterproceduralCFG(CallGraph cg) {
+    this(cg, (AnalysisCache) null);
+  }
+
+  protected ExplodedInterproceduralCFG(CallGraph cg, AnalysisCache cache) {
     super(cg);
+    this.cache = cache;
   }
   
   public ExplodedInterproceduralCFG(CallGraph cg, Predicate<CGNode> filter) {
+    this(cg, filter, null);
+  }
+
+  public ExplodedInterproceduralCFG(CallGraph cg, Predicate<CGNode> filter, AnalysisCache cache) {
     super(cg, filter);
+    this.cache = cache;
   }
 
   /**
@@ -63,7 +83,7 @@ public class ExplodedInterproceduralCFG extends AbstractInterproceduralCFG<IExpl
       if (ir == null) {
         return null;
       }
-      result = ExplodedControlFlowGraph.make(ir);
+      result = cache == null ? ExplodedControlFlowGraph.make(ir) : cache.getSSACache().findOrCreateExplodedCFG(ir, n.getContext());
       cfgMap.put(n, result);
     }
     return result;
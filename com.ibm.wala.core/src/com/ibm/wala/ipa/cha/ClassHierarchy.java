@@ -45,6 +45,7 @@ import com.ibm.wala.util.collections.MapUtil;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.debug.UnimplementedError;
 import com.ibm.wala.util.functions.Function;
+import com.ibm.wala.util.perf.Metrics;
 import com.ibm.wala.util.ref.CacheReference;
 import com.ibm.wala.util.ref.ReferenceCleanser;
 import com.ibm.wala.util.strings.Atom;
@@ -189,6 +190,7 @@ public class ClassHierarchy implements IClassHierarchy {
     if (scope.getLanguages().size() == 0) {
       throw new IllegalArgumentException("AnalysisScope must contain at least 1 language");
     }
+    long start = Metrics.start();
     this.scope = scope;
     this.factory = factory;
     Set<Atom> langNames = HashSetFactory.make();
@@ -263,6 +265,9 @@ public class ClassHierarchy implements IClassHierarchy {
     // perform numbering for subclass tests.
     numberTree();
     ReferenceCleanser.registerClassHierarchy(this);
+
+    Metrics.stop("cha.build", start);
+    Metrics.sample("cha.classes", getNumberOfClasses());
   }
 
   /**
@@ -838,7 +843,9 @@ public class ClassHierarchy implements IClassHierarchy {
     final IClass cls = lookupClassRecursive(a);
     
     if (cls == null) {
-      unresolved.add(a);
+      synchronized (unresolved) {
+        unresolved.add(a);
+      }
     }
     
     return cls;
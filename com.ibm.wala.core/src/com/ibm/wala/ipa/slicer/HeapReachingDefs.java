@@ -26,6 +26,7 @@ import com.ibm.wala.dataflow.graph.BitVectorUnionVector;
 import com.ibm.wala.dataflow.graph.ITransferFunctionProvider;
 import com.ibm.wala.fixpoint.BitVectorVariable;
 import com.ibm.wala.fixpoint.UnaryOperator;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
@@ -75,10 +76,20 @@ public class HeapReachingDefs {
   private final ModRef modRef;
 
   private final ExtendedHeapModel heapModel;
+
+  /**
+   * if non-null, the exploded CFGs are shared through this cache
+   */
+  private final AnalysisCache cache;
   
   public HeapReachingDefs(ModRef modRef, ExtendedHeapModel heapModel) {
+    this(modRef, heapModel, null);
+  }
+
+  public HeapReachingDefs(ModRef modRef, ExtendedHeapModel heapModel, AnalysisCache cache) {
     this.modRef = modRef;
     this.heapModel = heapModel;
+    this.cache = cache;
   }
 
   /**
@@ -115,7 +126,8 @@ public class HeapReachingDefs {
     }
 
     // create a control flow graph with one instruction per basic block.
-    ExplodedControlFlowGraph cfg = ExplodedControlFlowGraph.make(ir);
+    ExplodedControlFlowGraph cfg = cache == null ? ExplodedControlFlowGraph.make(ir) : cache.getSSACache().findOrCreateExplodedCFG(ir,
+        node.getContext());
 
     // create a mapping between statements and integers, used in bit vectors
     // shortly
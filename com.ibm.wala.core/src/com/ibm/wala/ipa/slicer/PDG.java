@@ -22,6 +22,7 @@ import com.ibm.wala.analysis.stackMachine.AbstractIntStackMachine;
 import com.ibm.wala.cfg.ControlFlowGraph;
 import com.ibm.wala.cfg.cdg.ControlDependenceGraph;
 import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
@@ -122,6 +123,11 @@ public class PDG implements NumberedGraph<Statement> {
 
   private final boolean ignoreAllocHeapDefs;
 
+  /**
+   * if non-null, the source of derived CFGs for the IR of node
+   */
+  private final AnalysisCache cache;
+
   private boolean isPopulated = false;
 
   /**
@@ -145,6 +151,19 @@ public class PDG implements NumberedGraph<Statement> {
   public PDG(final CGNode node, PointerAnalysis<InstanceKey> pa, Map<CGNode, OrdinalSet<PointerKey>> mod,
       Map<CGNode, OrdinalSet<PointerKey>> ref, DataDependenceOptions dOptions, ControlDependenceOptions cOptions,
       HeapExclusions exclusions, CallGraph cg, ModRef modRef, boolean ignoreAllocHeapDefs) {
+    this(node, pa, mod, ref, dOptions, cOptions, exclusions, cg, modRef, ignoreAllocHeapDefs, null);
+  }
+
+  /**
+   * @param mod the set of heap locations which may be written (transitively) by this node. These are logically return values in the
+   *          SDG.
+   * @param ref the set of heap locations which may be read (transitively) by this node. These are logically parameters in the SDG.
+   * @param cache if non-null, the derived CFGs of the node's IR are taken from this cache
+   * @throws IllegalArgumentException if node is null
+   */
+  public PDG(final CGNode node, PointerAnalysis<InstanceKey> pa, Map<CGNode, OrdinalSet<PointerKey>> mod,
+      Map<CGNode, OrdinalSet<PointerKey>> ref, DataDependenceOptions dOptions, ControlDependenceOptions cOptions,
+      HeapExclusions exclusions, CallGraph cg, ModRef modRef, boolean ignoreAllocHeapDefs, AnalysisCache cache) {
 
     super();
     if (node == null) {
@@ -161,6 +180,7 @@ public class PDG implements NumberedGraph<Statement> {
     this.modRef = modRef;
     this.ref = ref;
     this.ignoreAllocHeapDefs = ignoreAllocHeapDefs;
+    this.cache = cache;
   }
 
   /**
@@ -233,7 +253,8 @@ public class PDG implements NumberedGraph<Statement> {
     }
     ControlFlowGraph<SSAInstruction, ISSABasicBlock> controlFlowGraph = ir.getControlFlowGraph();
     if (cOptions.equals(ControlDependenceOptions.NO_EXCEPTIONAL_EDGES)) {
-      controlFlowGraph = ExceptionPrunedCFG.make(controlFlowGraph);
+      controlFlowGraph = cache == null ? ExceptionPrunedCFG.make(controlFlowGraph) : cache.getSSACache()
+          .findOrCreateExceptionPrunedCFG(ir, node.getContext());
       // In case the CFG has no nodes left because the only control dependencies
       // were
       // exceptional, simply return because at this point there are no nodes.
@@ -686,7 +707,7 @@ public class PDG implements NumberedGraph<Statement> {
     };
     Collection<Statement> relevantStatements = Iterator2Collection.toSet(new FilterIterator<Statement>(iterator(), f));
 
-    Map<Statement, OrdinalSet<Statement>> heapReachingDefs = new HeapReachingDefs(modRef, heapModel).computeReachingDefs(node, ir, pa, mod,
+    Map<Statement, OrdinalSet<Statement>> heapReachingDefs = new HeapReachingDefs(modRef, heapModel, cache).computeReachingDefs(node, ir, pa, mod,
         relevantStatements, new HeapExclusions(SetComplement.complement(new SingletonSet(t))), cg);
 
     for (Statement st : heapReachingDefs.keySet()) {
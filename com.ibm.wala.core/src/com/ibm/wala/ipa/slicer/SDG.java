@@ -16,6 +16,7 @@ import java.util.Iterator;
 import java.util.Map;
 
 import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
@@ -117,6 +118,11 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
 
   private final ModRef modRef;
 
+  /**
+   * If non-null, shared by the PDGs for derived CFGs
+   */
+  private final AnalysisCache cache;
+
   /**
    * Have we eagerly populated all nodes of this SDG?
    */
@@ -133,6 +139,14 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
 
   public SDG(CallGraph cg, PointerAnalysis<InstanceKey> pa, ModRef modRef, DataDependenceOptions dOptions, ControlDependenceOptions cOptions,
       HeapExclusions heapExclude) throws IllegalArgumentException {
+    this(cg, pa, modRef, dOptions, cOptions, heapExclude, null);
+  }
+
+  /**
+   * @param cache if non-null, the PDGs take the derived CFGs of each IR from this cache, instead of building their own
+   */
+  public SDG(CallGraph cg, PointerAnalysis<InstanceKey> pa, ModRef modRef, DataDependenceOptions dOptions, ControlDependenceOptions cOptions,
+      HeapExclusions heapExclude, AnalysisCache cache) throws IllegalArgumentException {
     super();
     if (dOptions == null) {
       throw new IllegalArgumentException("dOptions must not be null");
@@ -145,6 +159,7 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
     this.dOptions = dOptions;
     this.cOptions = cOptions;
     this.heapExclude = heapExclude;
+    this.cache = cache;
   }
 
   /**
@@ -792,7 +807,7 @@ public class SDG extends AbstractNumberedGraph<Statement> implements ISDG {
   public PDG getPDG(CGNode node) {
     PDG result = pdgMap.get(node);
     if (result == null) {
-      result = new PDG(node, pa, mod, ref, dOptions, cOptions, heapExclude, cg, modRef);
+      result = new PDG(node, pa, mod, ref, dOptions, cOptions, heapExclude, cg, modRef, false, cache);
       pdgMap.put(node, result);
       // Let's not eagerly add nodes, shall we?
       // for (Iterator<? extends Statement> it = result.iterator(); it.hasNext();) {
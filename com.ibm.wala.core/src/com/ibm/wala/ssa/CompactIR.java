@@ -0,0 +1,1458 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ssa;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.NewSiteReference;
+import com.ibm.wala.shrikeBT.IBinaryOpInstruction;
+import com.ibm.wala.shrikeBT.IComparisonInstruction;
+import com.ibm.wala.shrikeBT.IConditionalBranchInstruction;
+import com.ibm.wala.shrikeBT.IInvokeInstruction;
+import com.ibm.wala.shrikeBT.IShiftInstruction;
+import com.ibm.wala.shrikeBT.IUnaryOpInstruction;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.FieldReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.Selector;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.strings.Atom;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.debug.Assertions;
+
+/**
+ * A compact, array-based encoding of an {@link IR}, for clients that keep the IRs of many methods resident.
+ * 
+ * All instructions of the IR (normal instructions, phis, pis and catch instructions) are flattened into a single int array of
+ * opcodes and operands. The objects the instructions refer to (types, fields, call and allocation sites, operators, switch tables
+ * ...) are kept in a side table; these are shared with the original IR, not copied. The control flow graph is not stored at all,
+ * since it can be rebuilt cheaply from the bytecode.
+ * 
+ * A {@link CompactIRFactory} inflates the encoding into an IR again: the instructions are re-created through the
+ * {@link SSAInstructionFactory} of the method's language, so the result has the same instruction classes, instruction indices,
+ * value numbers and symbol table as the original.
+ */
+public final class CompactIR {
+
+  /*
+   * instruction kinds. Each instruction is encoded as its kind, its instruction index, and then operands as listed below; "ref"
+   * operands are indices into refs.
+   */
+  private final static int NULL = 0; // (no index, no operands)
+
+  private final static int ARRAY_LENGTH = 1; // def, arrayref
+
+  private final static int ARRAY_LOAD = 2; // def, arrayref, index, ref elementType
+
+  private final static int ARRAY_STORE = 3; // arrayref, index, value, ref elementType
+
+  private final static int BINARY_OP = 4; // ref operator, def, val1, val2, mayBeInteger
+
+  private final static int CHECK_CAST = 5; // def, val, ref types, isPEI
+
+  private final static int COMPARISON = 6; // ref operator, def, val1, val2
+
+  private final static int CONDITIONAL_BRANCH = 7; // ref operator, ref type, val1, val2, target
+
+  private final static int CONVERSION = 8; // def, val, ref fromType, ref toType
+
+  private final static int GET_STATIC = 9; // def, ref field
+
+  private final static int GET = 10; // def, ref, ref field
+
+  private final static int GOTO = 11; // target
+
+  private final static int INSTANCEOF = 12; // def, ref, ref checkedType
+
+  private final static int INVOKE = 13; // ref site, exception, def or -1, #params, params
+
+  private final static int INVOKE_VOID = 14; // ref site, exception, #params, params
+
+  private final static int LOAD_METADATA = 15; // def, ref entityType, ref token
+
+  private final static int MONITOR = 16; // ref, isEnter
+
+  private final static int NEW = 17; // def, ref site
+
+  private final static int NEW_ARRAY = 18; // def, ref site, #params, params
+
+  private final static int PUT_STATIC = 19; // value, ref field
+
+  private final static int PUT = 20; // ref, value, ref field
+
+  private final static int RETURN_VOID = 21; // (no operands)
+
+  private final static int RETURN = 22; // result, isPrimitive
+
+  private final static int SWITCH = 23; // val, default, ref casesAndLabels
+
+  private final static int THROW = 24; // exception
+
+  private final static int UNARY_OP = 25; // ref operator, def, val
+
+  private final IMethod method;
+
+  private final SSAOptions options;
+
+  /**
+   * The encoded instructions. Layout:
+   * 
+   * <pre>
+   * #instructions, instruction*
+   * #phis, (iindex, def, #uses, uses)*
+   * #blocks, (stackSlotPhis, localPhis, catch, #pis, (iindex, def, val, piBlock, successor, index of cause)*)*
+   * #phis in the symbol table, (value number, phi)*
+   * </pre>
+   * 
+   * where the phi arrays of a block are encoded as their length (-1 for a null array) and a phi number (-1 for a null entry) per
+   * slot, and the catch instruction as 0 if absent and 1, its instruction index and exception value otherwise.
+   */
+  private final int[] code;
+
+  /**
+   * The objects referred to from {@link #code}
+   */
+  private final Object[] refs;
+
+  /**
+   * The symbol table of the IR, without its phi values
+   */
+  private final SymbolTable symbolTable;
+
+  private final IR.SSA2LocalMap localMap;
+
+  private final SSAIndirectionData<?> indirectionData;
+
+  private CompactIR(IMethod method, SSAOptions options, int[] code, Object[] refs, SymbolTable symbolTable,
+      IR.SSA2LocalMap localMap, SSAIndirectionData<?> indirectionData) {
+    this.method = method;
+    this.options = options;
+    this.code = code;
+    this.refs = refs;
+    this.symbolTable = symbolTable;
+    this.localMap = localMap;
+    this.indirectionData = indirectionData;
+  }
+
+  /**
+   * @param ir an IR built from bytecode, whose instructions were created by the instruction factory of its method's language
+   * @param localMap the local map to keep with the encoding, which should not refer to the control flow graph of ir; may be null
+   * @return the encoding of ir, or null if ir contains instructions this encoding does not support
+   * @throws IllegalArgumentException if ir is null
+   */
+  public static CompactIR make(IR ir, IR.SSA2LocalMap localMap) {
+    if (ir == null) {
+      throw new IllegalArgumentException("null ir");
+    }
+    Encoder e = new Encoder(ir);
+    if (!e.encode()) {
+      return null;
+    }
+    SSAIndirectionData<?> indirectionData = ir.getIndirectionData();
+    return new CompactIR(ir.getMethod(), ir.getOptions(), e.getCode(), e.getRefs(), ir.getSymbolTable().copyWithoutPhiValues(),
+        localMap, indirectionData);
+  }
+
+  public IMethod getMethod() {
+    return method;
+  }
+
+  public SSAOptions getOptions() {
+    return options;
+  }
+
+  public IR.SSA2LocalMap getLocalMap() {
+    return localMap;
+  }
+
+  public SSAIndirectionData<?> getIndirectionData() {
+    return indirectionData;
+  }
+
+  /**
+   * @return the number of ints and references this encoding holds, a rough measure of its size
+   */
+  public int size() {
+    return code.length + refs.length;
+  }
+
+  /*
+   * tags for the references written by write()
+   */
+  private final static byte REF_NULL = 0;
+
+  private final static byte REF_TYPE = 1;
+
+  private final static byte REF_TYPES = 2;
+
+  private final static byte REF_FIELD = 3;
+
+  private final static byte REF_CALL_SITE = 4;
+
+  private final static byte REF_NEW_SITE = 5;
+
+  private final static byte REF_INTS = 6;
+
+  private final static byte REF_BINARY_OPERATOR = 7;
+
+  private final static byte REF_SHIFT_OPERATOR = 8;
+
+  private final static byte REF_UNARY_OPERATOR = 9;
+
+  private final static byte REF_COMPARISON_OPERATOR = 10;
+
+  private final static byte REF_BRANCH_OPERATOR = 11;
+
+  /*
+   * class loaders of the types written by write()
+   */
+  private final static byte LOADER_OWN = 0;
+
+  private final static byte LOADER_PRIMORDIAL = 1;
+
+  private final static byte LOADER_EXTENSION = 2;
+
+  private final static byte LOADER_APPLICATION = 3;
+
+  /**
+   * Write this encoding, so that {@link #read(DataInput, int, IMethod, SSAOptions)} can restore it, possibly in another run. The
+   * references are written symbolically, by name.
+   * 
+   * @throws IOException if this encoding refers to something that can not be written, or on an I/O error
+   */
+  public void write(DataOutput out) throws IOException {
+    if (out == null) {
+      throw new IllegalArgumentException("null out");
+    }
+    if (indirectionData != null && !indirectionData.getNames().isEmpty()) {
+      throw new IOException("can not write indirection data");
+    }
+    ClassLoaderReference loader = method.getDeclaringClass().getClassLoader().getReference();
+    out.writeInt(refs.length);
+    for (Object ref : refs) {
+      writeRef(out, ref, loader);
+    }
+    out.writeInt(code.length);
+    for (int x : code) {
+      writeVarInt(out, x);
+    }
+    symbolTable.write(out);
+    out.writeBoolean(localMap != null);
+    if (localMap != null) {
+      SSABuilder.writeLocalMap(localMap, out);
+    }
+    out.writeBoolean(indirectionData != null);
+  }
+
+  /**
+   * Read an encoding written by {@link #write(DataOutput)}. The encoding is checked to be well formed, so that its tables can
+   * be indexed safely when it is inflated; it is not checked to describe the IR of method.
+   * 
+   * @param length the number of bytes the encoding was written in; no table read has more entries than that
+   * @param method the method whose IR was written
+   * @param options the options the IR was built with
+   * @throws IOException if the encoding is malformed, or on an I/O error
+   */
+  public static CompactIR read(DataInput in, int length, IMethod method, SSAOptions options) throws IOException {
+    if (in == null) {
+      throw new IllegalArgumentException("null in");
+    }
+    if (method == null) {
+      throw new IllegalArgumentException("null method");
+    }
+    ClassLoaderReference loader = method.getDeclaringClass().getClassLoader().getReference();
+    Object[] refs = new Object[readCount(in, length)];
+    for (int i = 0; i < refs.length; i++) {
+      refs[i] = readRef(in, length, loader);
+    }
+    int[] code = new int[readCount(in, length)];
+    for (int i = 0; i < code.length; i++) {
+      code[i] = readVarInt(in);
+    }
+    new Checker(code, refs).checkLayout();
+    SymbolTable symbolTable = SymbolTable.read(in, length);
+    IR.SSA2LocalMap localMap = in.readBoolean() ? SSABuilder.readLocalMap(in, length) : null;
+    SSAIndirectionData<?> indirectionData = in.readBoolean() ? new ShrikeIndirectionData(code[0]) : null;
+    return new CompactIR(method, options, code, refs, symbolTable, localMap, indirectionData);
+  }
+
+  /**
+   * @return a count or table size, which must be between 0 and limit
+   */
+  static int readCount(DataInput in, int limit) throws IOException {
+    int n = in.readInt();
+    if (n < 0 || n > limit) {
+      throw new IOException("bad count " + n);
+    }
+    return n;
+  }
+
+  private static <E extends Enum<E>> E readOrdinal(DataInput in, E[] values) throws IOException {
+    byte b = in.readByte();
+    if (b < 0 || b >= values.length) {
+      throw new IOException("bad ordinal " + b + " of " + values[0].getDeclaringClass());
+    }
+    return values[b];
+  }
+
+  /**
+   * write x in a variable number of bytes, favoring small magnitudes
+   */
+  private static void writeVarInt(DataOutput out, int x) throws IOException {
+    // zig-zag, so that -1 is small too
+    int v = (x << 1) ^ (x >> 31);
+    while ((v & ~0x7f) != 0) {
+      out.writeByte((v & 0x7f) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte(v);
+  }
+
+  private static int readVarInt(DataInput in) throws IOException {
+    int v = 0;
+    for (int shift = 0;; shift += 7) {
+      int b = in.readByte();
+      v |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        break;
+      }
+    }
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  private static void writeRef(DataOutput out, Object ref, ClassLoaderReference loader) throws IOException {
+    if (ref == null) {
+      out.writeByte(REF_NULL);
+    } else if (ref instanceof TypeReference) {
+      out.writeByte(REF_TYPE);
+      writeType(out, (TypeReference) ref, loader);
+    } else if (ref instanceof TypeReference[]) {
+      TypeReference[] types = (TypeReference[]) ref;
+      out.writeByte(REF_TYPES);
+      out.writeInt(types.length);
+      for (TypeReference t : types) {
+        writeType(out, t, loader);
+      }
+    } else if (ref instanceof FieldReference) {
+      FieldReference f = (FieldReference) ref;
+      out.writeByte(REF_FIELD);
+      writeType(out, f.getDeclaringClass(), loader);
+      out.writeUTF(f.getName().toString());
+      writeType(out, f.getFieldType(), loader);
+    } else if (ref instanceof CallSiteReference) {
+      CallSiteReference site = (CallSiteReference) ref;
+      if (!(site.getInvocationCode() instanceof IInvokeInstruction.Dispatch)) {
+        throw new IOException("can not write invocation code " + site.getInvocationCode());
+      }
+      out.writeByte(REF_CALL_SITE);
+      out.writeInt(site.getProgramCounter());
+      writeType(out, site.getDeclaredTarget().getDeclaringClass(), loader);
+      out.writeUTF(site.getDeclaredTarget().getSelector().toString());
+      out.writeByte(((IInvokeInstruction.Dispatch) site.getInvocationCode()).ordinal());
+    } else if (ref instanceof NewSiteReference) {
+      NewSiteReference site = (NewSiteReference) ref;
+      out.writeByte(REF_NEW_SITE);
+      out.writeInt(site.getProgramCounter());
+      writeType(out, site.getDeclaredType(), loader);
+    } else if (ref instanceof int[]) {
+      int[] ints = (int[]) ref;
+      out.writeByte(REF_INTS);
+      out.writeInt(ints.length);
+      for (int x : ints) {
+        out.writeInt(x);
+      }
+    } else if (ref instanceof IBinaryOpInstruction.Operator) {
+      out.writeByte(REF_BINARY_OPERATOR);
+      out.writeByte(((IBinaryOpInstruction.Operator) ref).ordinal());
+    } else if (ref instanceof IShiftInstruction.Operator) {
+      out.writeByte(REF_SHIFT_OPERATOR);
+      out.writeByte(((IShiftInstruction.Operator) ref).ordinal());
+    } else if (ref instanceof IUnaryOpInstruction.Operator) {
+      out.writeByte(REF_UNARY_OPERATOR);
+      out.writeByte(((IUnaryOpInstruction.Operator) ref).ordinal());
+    } else if (ref instanceof IComparisonInstruction.Operator) {
+      out.writeByte(REF_COMPARISON_OPERATOR);
+      out.writeByte(((IComparisonInstruction.Operator) ref).ordinal());
+    } else if (ref instanceof IConditionalBranchInstruction.Operator) {
+      out.writeByte(REF_BRANCH_OPERATOR);
+      out.writeByte(((IConditionalBranchInstruction.Operator) ref).ordinal());
+    } else {
+      throw new IOException("can not write " + ref + " of " + ref.getClass());
+    }
+  }
+
+  private static Object readRef(DataInput in, int length, ClassLoaderReference loader) throws IOException {
+    byte tag = in.readByte();
+    switch (tag) {
+    case REF_NULL:
+      return null;
+    case REF_TYPE:
+      return readType(in, loader);
+    case REF_TYPES: {
+      TypeReference[] types = new TypeReference[readCount(in, length)];
+      for (int i = 0; i < types.length; i++) {
+        types[i] = readType(in, loader);
+      }
+      return types;
+    }
+    case REF_FIELD: {
+      TypeReference declaringClass = readType(in, loader);
+      Atom name = Atom.findOrCreateUnicodeAtom(in.readUTF());
+      return FieldReference.findOrCreate(declaringClass, name, readType(in, loader));
+    }
+    case REF_CALL_SITE: {
+      int pc = in.readInt();
+      TypeReference declaringClass = readType(in, loader);
+      MethodReference target = MethodReference.findOrCreate(declaringClass, Selector.make(checkSelector(in.readUTF())));
+      return CallSiteReference.make(pc, target, readOrdinal(in, IInvokeInstruction.Dispatch.values()));
+    }
+    case REF_NEW_SITE: {
+      int pc = in.readInt();
+      return NewSiteReference.make(pc, readType(in, loader));
+    }
+    case REF_INTS: {
+      int[] ints = new int[readCount(in, length)];
+      for (int i = 0; i < ints.length; i++) {
+        ints[i] = in.readInt();
+      }
+      return ints;
+    }
+    case REF_BINARY_OPERATOR:
+      return readOrdinal(in, IBinaryOpInstruction.Operator.values());
+    case REF_SHIFT_OPERATOR:
+      return readOrdinal(in, IShiftInstruction.Operator.values());
+    case REF_UNARY_OPERATOR:
+      return readOrdinal(in, IUnaryOpInstruction.Operator.values());
+    case REF_COMPARISON_OPERATOR:
+      return readOrdinal(in, IComparisonInstruction.Operator.values());
+    case REF_BRANCH_OPERATOR:
+      return readOrdinal(in, IConditionalBranchInstruction.Operator.values());
+    default:
+      throw new IOException("unexpected reference tag " + tag);
+    }
+  }
+
+  private static void writeType(DataOutput out, TypeReference t, ClassLoaderReference loader) throws IOException {
+    ClassLoaderReference l = t.getClassLoader();
+    if (l.equals(loader)) {
+      out.writeByte(LOADER_OWN);
+    } else if (l.equals(ClassLoaderReference.Primordial)) {
+      out.writeByte(LOADER_PRIMORDIAL);
+    } else if (l.equals(ClassLoaderReference.Extension)) {
+      out.writeByte(LOADER_EXTENSION);
+    } else if (l.equals(ClassLoaderReference.Application)) {
+      out.writeByte(LOADER_APPLICATION);
+    } else {
+      throw new IOException("can not write class loader " + l);
+    }
+    out.writeUTF(t.getName().toString());
+  }
+
+  private static TypeReference readType(DataInput in, ClassLoaderReference loader) throws IOException {
+    byte l = in.readByte();
+    String name = checkTypeName(in.readUTF());
+    switch (l) {
+    case LOADER_OWN:
+      return TypeReference.findOrCreate(loader, name);
+    case LOADER_PRIMORDIAL:
+      return TypeReference.findOrCreate(ClassLoaderReference.Primordial, name);
+    case LOADER_EXTENSION:
+      return TypeReference.findOrCreate(ClassLoaderReference.Extension, name);
+    case LOADER_APPLICATION:
+      return TypeReference.findOrCreate(ClassLoaderReference.Application, name);
+    default:
+      throw new IOException("unexpected class loader tag " + l);
+    }
+  }
+
+  /**
+   * @return name, if it is a type name as {@link TypeReference#getName()} gives it: array dimensions, then a primitive type code or
+   *         L and a class name
+   */
+  private static String checkTypeName(String name) throws IOException {
+    int i = 0;
+    while (i < name.length() && name.charAt(i) == '[') {
+      i++;
+    }
+    if (i < name.length() && name.charAt(i) == 'L' ? i + 1 < name.length() && name.indexOf(';', i) == -1 : i + 1 == name.length()
+        && PRIMITIVE_TYPE_CODES.indexOf(name.charAt(i)) != -1) {
+      return name;
+    }
+    throw new IOException("bad type name " + name);
+  }
+
+  private final static String PRIMITIVE_TYPE_CODES = "BCDFIJSVZ";
+
+  /**
+   * @return selector, if it is a method name followed by a method descriptor
+   */
+  private static String checkSelector(String selector) throws IOException {
+    int i = selector.indexOf('(');
+    if (i > 0) {
+      i++;
+      while (i < selector.length() && selector.charAt(i) != ')') {
+        i = skipDescriptorType(selector, i);
+      }
+      if (i < selector.length() && skipDescriptorType(selector, i + 1) == selector.length()) {
+        return selector;
+      }
+    }
+    throw new IOException("bad selector " + selector);
+  }
+
+  /**
+   * @return the position after the type in a descriptor starting at i
+   */
+  private static int skipDescriptorType(String descriptor, int i) throws IOException {
+    while (i < descriptor.length() && descriptor.charAt(i) == '[') {
+      i++;
+    }
+    if (i < descriptor.length()) {
+      if (descriptor.charAt(i) == 'L') {
+        int end = descriptor.indexOf(';', i);
+        if (end > i + 1) {
+          return end + 1;
+        }
+      } else if (PRIMITIVE_TYPE_CODES.indexOf(descriptor.charAt(i)) != -1) {
+        return i + 1;
+      }
+    }
+    throw new IOException("bad descriptor " + descriptor);
+  }
+
+  /**
+   * Re-create the normal instructions of the IR.
+   * 
+   * @param insts the instruction factory the original instructions were created with
+   */
+  public SSAInstruction[] inflateInstructions(SSAInstructionFactory insts) {
+    if (insts == null) {
+      throw new IllegalArgumentException("null insts");
+    }
+    int pos = 0;
+    SSAInstruction[] result = new SSAInstruction[code[pos++]];
+    for (int i = 0; i < result.length; i++) {
+      int kind = code[pos++];
+      if (kind == NULL) {
+        continue;
+      }
+      int iindex = code[pos++];
+      switch (kind) {
+      case ARRAY_LENGTH:
+        result[i] = insts.ArrayLengthInstruction(iindex, code[pos], code[pos + 1]);
+        pos += 2;
+        break;
+      case ARRAY_LOAD:
+        result[i] = insts.ArrayLoadInstruction(iindex, code[pos], code[pos + 1], code[pos + 2], (TypeReference) refs[code[pos + 3]]);
+        pos += 4;
+        break;
+      case ARRAY_STORE:
+        result[i] = insts.ArrayStoreInstruction(iindex, code[pos], code[pos + 1], code[pos + 2], (TypeReference) refs[code[pos + 3]]);
+        pos += 4;
+        break;
+      case BINARY_OP:
+        result[i] = insts.BinaryOpInstruction(iindex, (IBinaryOpInstruction.IOperator) refs[code[pos]], false, false, code[pos + 1],
+            code[pos + 2], code[pos + 3], code[pos + 4] != 0);
+        pos += 5;
+        break;
+      case CHECK_CAST:
+        result[i] = insts.CheckCastInstruction(iindex, code[pos], code[pos + 1], (TypeReference[]) refs[code[pos + 2]],
+            code[pos + 3] != 0);
+        pos += 4;
+        break;
+      case COMPARISON:
+        result[i] = insts.ComparisonInstruction(iindex, (IComparisonInstruction.Operator) refs[code[pos]], code[pos + 1],
+            code[pos + 2], code[pos + 3]);
+        pos += 4;
+        break;
+      case CONDITIONAL_BRANCH:
+        result[i] = insts.ConditionalBranchInstruction(iindex, (IConditionalBranchInstruction.IOperator) refs[code[pos]],
+            (TypeReference) refs[code[pos + 1]], code[pos + 2], code[pos + 3], code[pos + 4]);
+        pos += 5;
+        break;
+      case CONVERSION:
+        result[i] = insts.ConversionInstruction(iindex, code[pos], code[pos + 1], (TypeReference) refs[code[pos + 2]],
+            (TypeReference) refs[code[pos + 3]], false);
+        pos += 4;
+        break;
+      case GET_STATIC:
+        result[i] = insts.GetInstruction(iindex, code[pos], (FieldReference) refs[code[pos + 1]]);
+        pos += 2;
+        break;
+      case GET:
+        result[i] = insts.GetInstruction(iindex, code[pos], code[pos + 1], (FieldReference) refs[code[pos + 2]]);
+        pos += 3;
+        break;
+      case GOTO:
+        result[i] = insts.GotoInstruction(iindex, code[pos]);
+        pos += 1;
+        break;
+      case INSTANCEOF:
+        result[i] = insts.InstanceofInstruction(iindex, code[pos], code[pos + 1], (TypeReference) refs[code[pos + 2]]);
+        pos += 3;
+        break;
+      case INVOKE: {
+        CallSiteReference site = (CallSiteReference) refs[code[pos]];
+        int exception = code[pos + 1];
+        int def = code[pos + 2];
+        int[] params = new int[code[pos + 3]];
+        pos += 4;
+        System.arraycopy(code, pos, params, 0, params.length);
+        pos += params.length;
+        result[i] = insts.InvokeInstruction(iindex, def, params, exception, site);
+        break;
+      }
+      case INVOKE_VOID: {
+        CallSiteReference site = (CallSiteReference) refs[code[pos]];
+        int exception = code[pos + 1];
+        int[] params = new int[code[pos + 2]];
+        pos += 3;
+        System.arraycopy(code, pos, params, 0, params.length);
+        pos += params.length;
+        result[i] = insts.InvokeInstruction(iindex, params, exception, site);
+        break;
+      }
+      case LOAD_METADATA:
+        result[i] = insts.LoadMetadataInstruction(iindex, code[pos], (TypeReference) refs[code[pos + 1]], refs[code[pos + 2]]);
+        pos += 3;
+        break;
+      case MONITOR:
+        result[i] = insts.MonitorInstruction(iindex, code[pos], code[pos + 1] != 0);
+        pos += 2;
+        break;
+      case NEW:
+        result[i] = insts.NewInstruction(iindex, code[pos], (NewSiteReference) refs[code[pos + 1]]);
+        pos += 2;
+        break;
+      case NEW_ARRAY: {
+        int def = code[pos];
+        NewSiteReference site = (NewSiteReference) refs[code[pos + 1]];
+        int[] params = new int[code[pos + 2]];
+        pos += 3;
+        System.arraycopy(code, pos, params, 0, params.length);
+        pos += params.length;
+        result[i] = insts.NewInstruction(iindex, def, site, params);
+        break;
+      }
+      case PUT_STATIC:
+        result[i] = insts.PutInstruction(iindex, code[pos], (FieldReference) refs[code[pos + 1]]);
+        pos += 2;
+        break;
+      case PUT:
+        result[i] = insts.PutInstruction(iindex, code[pos], code[pos + 1], (FieldReference) refs[code[pos + 2]]);
+        pos += 3;
+        break;
+      case RETURN_VOID:
+        result[i] = insts.ReturnInstruction(iindex);
+        break;
+      case RETURN:
+        result[i] = insts.ReturnInstruction(iindex, code[pos], code[pos + 1] != 0);
+        pos += 2;
+        break;
+      case SWITCH:
+        result[i] = insts.SwitchInstruction(iindex, code[pos], code[pos + 1], (int[]) refs[code[pos + 2]]);
+        pos += 3;
+        break;
+      case THROW:
+        result[i] = insts.ThrowInstruction(iindex, code[pos]);
+        pos += 1;
+        break;
+      case UNARY_OP:
+        result[i] = insts.UnaryOpInstruction(iindex, (IUnaryOpInstruction.IOperator) refs[code[pos]], code[pos + 1], code[pos + 2]);
+        pos += 3;
+        break;
+      default:
+        Assertions.UNREACHABLE("unexpected kind " + kind);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Restore the phis, pis and catch instructions of the IR into a fresh control flow graph.
+   * 
+   * @param cfg a control flow graph for the method, built over the instructions returned by
+   *          {@link #inflateInstructions(SSAInstructionFactory)}, which has not been populated by an {@link SSABuilder}
+   * @param insts the instruction factory the original instructions were created with
+   * @return a symbol table for the inflated IR
+   */
+  public SymbolTable inflate(SSACFG cfg, SSAInstructionFactory insts) {
+    if (cfg == null) {
+      throw new IllegalArgumentException("null cfg");
+    }
+    if (insts == null) {
+      throw new IllegalArgumentException("null insts");
+    }
+    // skip the normal instructions
+    int pos = 0;
+    int nInstructions = code[pos++];
+    for (int i = 0; i < nInstructions; i++) {
+      pos = skipInstruction(pos);
+    }
+
+    SSAPhiInstruction[] phis = new SSAPhiInstruction[code[pos++]];
+    for (int i = 0; i < phis.length; i++) {
+      int iindex = code[pos];
+      int def = code[pos + 1];
+      int[] uses = new int[code[pos + 2]];
+      pos += 3;
+      System.arraycopy(code, pos, uses, 0, uses.length);
+      pos += uses.length;
+      phis[i] = new SSAPhiInstruction(iindex, def, uses);
+    }
+
+    SSAInstruction[] instructions = cfg.getInstructions();
+    int nBlocks = code[pos++];
+    if (nBlocks != cfg.getNumberOfNodes()) {
+      throw new IllegalArgumentException("encoding has " + nBlocks + " blocks, cfg has " + cfg.getNumberOfNodes());
+    }
+    for (int b = 0; b < nBlocks; b++) {
+      SSACFG.BasicBlock bb = cfg.getNode(b);
+      SSAPhiInstruction[] stackSlotPhis = null;
+      int length = code[pos++];
+      if (length >= 0) {
+        stackSlotPhis = new SSAPhiInstruction[length];
+        for (int i = 0; i < length; i++) {
+          int phi = code[pos++];
+          stackSlotPhis[i] = phi == -1 ? null : phis[phi];
+        }
+      }
+      SSAPhiInstruction[] localPhis = null;
+      length = code[pos++];
+      if (length >= 0) {
+        localPhis = new SSAPhiInstruction[length];
+        for (int i = 0; i < length; i++) {
+          int phi = code[pos++];
+          localPhis[i] = phi == -1 ? null : phis[phi];
+        }
+      }
+      bb.setPhis(stackSlotPhis, localPhis);
+
+      if (code[pos++] != 0) {
+        ((SSACFG.ExceptionHandlerBasicBlock) bb).setCatchInstruction(insts.GetCaughtExceptionInstruction(code[pos], b,
+            code[pos + 1]));
+        pos += 2;
+      }
+
+      int nPis = code[pos++];
+      for (int i = 0; i < nPis; i++) {
+        int iindex = code[pos];
+        int def = code[pos + 1];
+        int val = code[pos + 2];
+        int piBlock = code[pos + 3];
+        int successor = code[pos + 4];
+        SSAInstruction cause = instructions[code[pos + 5]];
+        pos += 6;
+        bb.addPiForRefAndPath(val, cfg.delegate.getNode(successor),
+            insts.PiInstruction(iindex, def, val, piBlock, successor, cause));
+      }
+    }
+
+    SymbolTable result = symbolTable.copyWithoutPhiValues();
+    int nPhiValues = code[pos++];
+    for (int i = 0; i < nPhiValues; i++) {
+      result.setPhiValue(code[pos], phis[code[pos + 1]]);
+      pos += 2;
+    }
+    assert pos == code.length;
+    return result;
+  }
+
+  /**
+   * @return the position after the instruction encoded at pos
+   */
+  private int skipInstruction(int pos) {
+    int kind = code[pos++];
+    switch (kind) {
+    case NULL:
+      return pos;
+    case RETURN_VOID:
+      return pos + 1;
+    case GOTO:
+    case THROW:
+      return pos + 2;
+    case ARRAY_LENGTH:
+    case GET_STATIC:
+    case MONITOR:
+    case NEW:
+    case PUT_STATIC:
+    case RETURN:
+      return pos + 3;
+    case GET:
+    case INSTANCEOF:
+    case LOAD_METADATA:
+    case PUT:
+    case SWITCH:
+    case UNARY_OP:
+      return pos + 4;
+    case ARRAY_LOAD:
+    case ARRAY_STORE:
+    case CHECK_CAST:
+    case COMPARISON:
+    case CONVERSION:
+      return pos + 5;
+    case BINARY_OP:
+    case CONDITIONAL_BRANCH:
+      return pos + 6;
+    case INVOKE:
+      return pos + 5 + code[pos + 4];
+    case INVOKE_VOID:
+      return pos + 4 + code[pos + 3];
+    case NEW_ARRAY:
+      return pos + 4 + code[pos + 3];
+    default:
+      Assertions.UNREACHABLE("unexpected kind " + kind);
+      return -1;
+    }
+  }
+
+  /**
+   * Walks encoded instructions as {@link CompactIR#inflateInstructions} and {@link CompactIR#inflate} do, checking that every
+   * operand is within the code, every reference is in range and of the type it is cast to, and every count fits in what is left
+   */
+  private static class Checker {
+    private final int[] code;
+
+    private final Object[] refs;
+
+    private int pos = 0;
+
+    Checker(int[] code, Object[] refs) {
+      this.code = code;
+      this.refs = refs;
+    }
+
+    void checkLayout() throws IOException {
+      int nInstructions = count();
+      for (int i = 0; i < nInstructions; i++) {
+        checkInstruction();
+      }
+      int nPhis = count();
+      for (int i = 0; i < nPhis; i++) {
+        skip(2);
+        skip(count());
+      }
+      int nBlocks = count();
+      for (int b = 0; b < nBlocks; b++) {
+        for (int phiArrays = 0; phiArrays < 2; phiArrays++) {
+          int length = next();
+          if (length != -1) {
+            checkCount(length);
+            for (int i = 0; i < length; i++) {
+              index(-1, nPhis);
+            }
+          }
+        }
+        if (index(0, 2) != 0) {
+          skip(2);
+        }
+        int nPis = count();
+        for (int i = 0; i < nPis; i++) {
+          skip(5);
+          index(0, nInstructions);
+        }
+      }
+      int nPhiValues = count();
+      for (int i = 0; i < nPhiValues; i++) {
+        skip(1);
+        index(0, nPhis);
+      }
+      if (pos != code.length) {
+        throw new IOException("unused code at " + pos);
+      }
+    }
+
+    private void checkInstruction() throws IOException {
+      int kind = next();
+      if (kind == NULL) {
+        return;
+      }
+      skip(1);
+      switch (kind) {
+      case ARRAY_LENGTH:
+      case MONITOR:
+      case RETURN:
+        skip(2);
+        break;
+      case ARRAY_LOAD:
+      case ARRAY_STORE:
+        skip(3);
+        ref(TypeReference.class);
+        break;
+      case BINARY_OP:
+        ref(IBinaryOpInstruction.IOperator.class);
+        skip(4);
+        break;
+      case CHECK_CAST:
+        skip(2);
+        ref(TypeReference[].class);
+        skip(1);
+        break;
+      case COMPARISON:
+        ref(IComparisonInstruction.Operator.class);
+        skip(3);
+        break;
+      case CONDITIONAL_BRANCH:
+        ref(IConditionalBranchInstruction.IOperator.class);
+        ref(TypeReference.class);
+        skip(3);
+        break;
+      case CONVERSION:
+        skip(2);
+        ref(TypeReference.class);
+        ref(TypeReference.class);
+        break;
+      case GET_STATIC:
+      case PUT_STATIC:
+        skip(1);
+        ref(FieldReference.class);
+        break;
+      case GET:
+      case PUT:
+        skip(2);
+        ref(FieldReference.class);
+        break;
+      case GOTO:
+      case THROW:
+        skip(1);
+        break;
+      case INSTANCEOF:
+        skip(2);
+        ref(TypeReference.class);
+        break;
+      case INVOKE:
+        ref(CallSiteReference.class);
+        skip(2);
+        skip(count());
+        break;
+      case INVOKE_VOID:
+        ref(CallSiteReference.class);
+        skip(1);
+        skip(count());
+        break;
+      case LOAD_METADATA:
+        skip(1);
+        ref(TypeReference.class);
+        ref(Object.class);
+        break;
+      case NEW:
+        skip(1);
+        ref(NewSiteReference.class);
+        break;
+      case NEW_ARRAY:
+        skip(1);
+        ref(NewSiteReference.class);
+        skip(count());
+        break;
+      case RETURN_VOID:
+        break;
+      case SWITCH:
+        skip(2);
+        ref(int[].class);
+        break;
+      case UNARY_OP:
+        ref(IUnaryOpInstruction.IOperator.class);
+        skip(2);
+        break;
+      default:
+        throw new IOException("unexpected kind " + kind + " at " + (pos - 2));
+      }
+    }
+
+    private int next() throws IOException {
+      if (pos >= code.length) {
+        throw new IOException("code ends at " + pos);
+      }
+      return code[pos++];
+    }
+
+    private void skip(int n) throws IOException {
+      if (n > code.length - pos) {
+        throw new IOException("code ends at " + code.length);
+      }
+      pos += n;
+    }
+
+    /**
+     * a count of things that each take at least one more int of code
+     */
+    private int count() throws IOException {
+      return checkCount(next());
+    }
+
+    private int checkCount(int n) throws IOException {
+      if (n < 0 || n > code.length - pos) {
+        throw new IOException("bad count " + n + " at " + (pos - 1));
+      }
+      return n;
+    }
+
+    /**
+     * @return the next int, which must be at least low and less than high
+     */
+    private int index(int low, int high) throws IOException {
+      int i = next();
+      if (i < low || i >= high) {
+        throw new IOException("bad index " + i + " at " + (pos - 1));
+      }
+      return i;
+    }
+
+    private void ref(Class<?> type) throws IOException {
+      Object ref = refs[index(0, refs.length)];
+      if (ref != null && !type.isInstance(ref)) {
+        throw new IOException("reference " + ref + " at " + (pos - 1) + " is not a " + type.getName());
+      }
+    }
+  }
+
+  /**
+   * Builds the encoding of an IR
+   */
+  private static class Encoder extends SSAInstruction.Visitor implements IVisitorWithAddresses {
+
+    private final IR ir;
+
+    private int[] code = new int[64];
+
+    private int size = 0;
+
+    private final ArrayList<Object> refs = new ArrayList<Object>();
+
+    private final Map<Object, Integer> refIndices = HashMapFactory.make();
+
+    /**
+     * number the phis; SSAInstruction.equals() compares instruction indices only, so phis must be identified by identity
+     */
+    private final IdentityHashMap<SSAPhiInstruction, Integer> phiNumbers = new IdentityHashMap<SSAPhiInstruction, Integer>();
+
+    private final ArrayList<SSAPhiInstruction> phis = new ArrayList<SSAPhiInstruction>();
+
+    /**
+     * set if the current instruction can not be encoded
+     */
+    private boolean unsupported;
+
+    Encoder(IR ir) {
+      this.ir = ir;
+    }
+
+    int[] getCode() {
+      int[] result = new int[size];
+      System.arraycopy(code, 0, result, 0, size);
+      return result;
+    }
+
+    Object[] getRefs() {
+      return refs.toArray();
+    }
+
+    private void add(int x) {
+      if (size == code.length) {
+        int[] old = code;
+        code = new int[2 * old.length];
+        System.arraycopy(old, 0, code, 0, old.length);
+      }
+      code[size++] = x;
+    }
+
+    private void add(boolean b) {
+      add(b ? 1 : 0);
+    }
+
+    private void addRef(Object o) {
+      Integer i = refIndices.get(o);
+      if (i == null) {
+        i = refs.size();
+        refs.add(o);
+        refIndices.put(o, i);
+      }
+      add(i);
+    }
+
+    private void addUses(SSAInstruction s) {
+      add(s.getNumberOfUses());
+      for (int i = 0; i < s.getNumberOfUses(); i++) {
+        add(s.getUse(i));
+      }
+    }
+
+    private int phiNumber(SSAPhiInstruction phi) {
+      Integer n = phiNumbers.get(phi);
+      if (n == null) {
+        n = phis.size();
+        phis.add(phi);
+        phiNumbers.put(phi, n);
+      }
+      return n;
+    }
+
+    /**
+     * @return false if the IR can not be encoded
+     */
+    boolean encode() {
+      SSAInstruction[] instructions = ir.getInstructions();
+      add(instructions.length);
+      for (SSAInstruction s : instructions) {
+        if (s == null) {
+          add(NULL);
+        } else {
+          int start = size;
+          add(-1);
+          add(s.iindex);
+          s.visit(this);
+          if (unsupported || code[start] == -1) {
+            return false;
+          }
+        }
+      }
+
+      // the block structure refers to phis by number; number them all up front
+      SSACFG cfg = ir.getControlFlowGraph();
+      int nBlocks = cfg.getNumberOfNodes();
+      for (int b = 0; b < nBlocks; b++) {
+        SSACFG.BasicBlock bb = cfg.getNode(b);
+        numberPhis(bb.getStackSlotPhis());
+        numberPhis(bb.getLocalPhis());
+      }
+      SymbolTable symtab = ir.getSymbolTable();
+      for (int vn = 1; vn <= symtab.getMaxValueNumber(); vn++) {
+        if (symtab.getValue(vn) instanceof PhiValue) {
+          phiNumber(symtab.getPhiValue(vn).getPhiInstruction());
+        }
+      }
+
+      add(phis.size());
+      for (SSAPhiInstruction phi : phis) {
+        if (phi.getClass() != SSAPhiInstruction.class) {
+          return false;
+        }
+        add(phi.iindex);
+        add(phi.getDef());
+        addUses(phi);
+      }
+
+      add(nBlocks);
+      for (int b = 0; b < nBlocks; b++) {
+        SSACFG.BasicBlock bb = cfg.getNode(b);
+        addPhis(bb.getStackSlotPhis());
+        addPhis(bb.getLocalPhis());
+        SSAGetCaughtExceptionInstruction catchInstruction = bb instanceof SSACFG.ExceptionHandlerBasicBlock ? ((SSACFG.ExceptionHandlerBasicBlock) bb)
+            .getCatchInstruction() : null;
+        if (catchInstruction == null) {
+          add(0);
+        } else {
+          if (catchInstruction.getBasicBlockNumber() != b) {
+            return false;
+          }
+          add(1);
+          add(catchInstruction.iindex);
+          add(catchInstruction.getException());
+        }
+        int piCountPos = size;
+        add(0);
+        int nPis = 0;
+        for (Iterator<SSAPiInstruction> it = bb.iteratePis(); it.hasNext();) {
+          SSAPiInstruction pi = it.next();
+          SSAInstruction cause = pi.getCause();
+          if (cause == null || cause.iindex < 0 || cause.iindex >= instructions.length || instructions[cause.iindex] != cause) {
+            return false;
+          }
+          add(pi.iindex);
+          add(pi.getDef());
+          add(pi.getVal());
+          add(pi.getPiBlock());
+          add(pi.getSuccessor());
+          add(cause.iindex);
+          nPis++;
+        }
+        code[piCountPos] = nPis;
+      }
+
+      int phiValueCountPos = size;
+      add(0);
+      int nPhiValues = 0;
+      for (int vn = 1; vn <= symtab.getMaxValueNumber(); vn++) {
+        if (symtab.getValue(vn) instanceof PhiValue) {
+          add(vn);
+          add(phiNumbers.get(symtab.getPhiValue(vn).getPhiInstruction()));
+          nPhiValues++;
+        }
+      }
+      code[phiValueCountPos] = nPhiValues;
+      return true;
+    }
+
+    private void numberPhis(SSAPhiInstruction[] blockPhis) {
+      if (blockPhis != null) {
+        for (SSAPhiInstruction phi : blockPhis) {
+          if (phi != null) {
+            phiNumber(phi);
+          }
+        }
+      }
+    }
+
+    private void addPhis(SSAPhiInstruction[] blockPhis) {
+      if (blockPhis == null) {
+        add(-1);
+      } else {
+        add(blockPhis.length);
+        for (SSAPhiInstruction phi : blockPhis) {
+          add(phi == null ? -1 : phiNumbers.get(phi));
+        }
+      }
+    }
+
+    /**
+     * record the kind of the current instruction, which has been reserved just before its index
+     */
+    private void kind(int kind) {
+      code[size - 2] = kind;
+    }
+
+    @Override
+    public void visitGoto(SSAGotoInstruction instruction) {
+      kind(GOTO);
+      add(instruction.getTarget());
+    }
+
+    @Override
+    public void visitArrayLoad(SSAArrayLoadInstruction instruction) {
+      kind(ARRAY_LOAD);
+      add(instruction.getDef());
+      add(instruction.getArrayRef());
+      add(instruction.getIndex());
+      addRef(instruction.getElementType());
+    }
+
+    @Override
+    public void visitArrayStore(SSAArrayStoreInstruction instruction) {
+      kind(ARRAY_STORE);
+      add(instruction.getArrayRef());
+      add(instruction.getIndex());
+      add(instruction.getValue());
+      addRef(instruction.getElementType());
+    }
+
+    @Override
+    public void visitBinaryOp(SSABinaryOpInstruction instruction) {
+      kind(BINARY_OP);
+      addRef(instruction.getOperator());
+      add(instruction.getDef());
+      add(instruction.getUse(0));
+      add(instruction.getUse(1));
+      add(instruction.mayBeIntegerOp());
+    }
+
+    @Override
+    public void visitUnaryOp(SSAUnaryOpInstruction instruction) {
+      kind(UNARY_OP);
+      addRef(instruction.getOpcode());
+      add(instruction.getDef());
+      add(instruction.getUse(0));
+    }
+
+    @Override
+    public void visitConversion(SSAConversionInstruction instruction) {
+      kind(CONVERSION);
+      add(instruction.getDef());
+      add(instruction.getUse(0));
+      addRef(instruction.getFromType());
+      addRef(instruction.getToType());
+    }
+
+    @Override
+    public void visitComparison(SSAComparisonInstruction instruction) {
+      kind(COMPARISON);
+      addRef(instruction.getOperator());
+      add(instruction.getDef());
+      add(instruction.getUse(0));
+      add(instruction.getUse(1));
+    }
+
+    @Override
+    public void visitConditionalBranch(SSAConditionalBranchInstruction instruction) {
+      kind(CONDITIONAL_BRANCH);
+      addRef(instruction.getOperator());
+      addRef(instruction.getType());
+      add(instruction.getUse(0));
+      add(instruction.getUse(1));
+      add(instruction.getTarget());
+    }
+
+    @Override
+    public void visitSwitch(SSASwitchInstruction instruction) {
+      kind(SWITCH);
+      add(instruction.getUse(0));
+      add(instruction.getDefault());
+      // the table is not copied by the instruction factory, so sharing it is safe
+      addRef(instruction.getCasesAndLabels());
+    }
+
+    @Override
+    public void visitReturn(SSAReturnInstruction instruction) {
+      if (instruction.returnsVoid()) {
+        kind(RETURN_VOID);
+      } else {
+        kind(RETURN);
+        add(instruction.getResult());
+        add(instruction.returnsPrimitiveType());
+      }
+    }
+
+    @Override
+    public void visitGet(SSAGetInstruction instruction) {
+      if (instruction.isStatic()) {
+        kind(GET_STATIC);
+        add(instruction.getDef());
+      } else {
+        kind(GET);
+        add(instruction.getDef());
+        add(instruction.getRef());
+      }
+      addRef(instruction.getDeclaredField());
+    }
+
+    @Override
+    public void visitPut(SSAPutInstruction instruction) {
+      if (instruction.isStatic()) {
+        kind(PUT_STATIC);
+      } else {
+        kind(PUT);
+        add(instruction.getRef());
+      }
+      add(instruction.getVal());
+      addRef(instruction.getDeclaredField());
+    }
+
+    @Override
+    public void visitInvoke(SSAInvokeInstruction instruction) {
+      if (instruction instanceof SSAInvokeDynamicInstruction) {
+        unsupported = true;
+        return;
+      }
+      if (instruction.getNumberOfReturnValues() > 0) {
+        kind(INVOKE);
+        addRef(instruction.getCallSite());
+        add(instruction.getException());
+        add(instruction.getReturnValue(0));
+      } else {
+        kind(INVOKE_VOID);
+        addRef(instruction.getCallSite());
+        add(instruction.getException());
+      }
+      addUses(instruction);
+    }
+
+    @Override
+    public void visitNew(SSANewInstruction instruction) {
+      if (instruction.getNumberOfUses() > 0) {
+        kind(NEW_ARRAY);
+        add(instruction.getDef());
+        addRef(instruction.getNewSite());
+        addUses(instruction);
+      } else {
+        kind(NEW);
+        add(instruction.getDef());
+        addRef(instruction.getNewSite());
+      }
+    }
+
+    @Override
+    public void visitArrayLength(SSAArrayLengthInstruction instruction) {
+      kind(ARRAY_LENGTH);
+      add(instruction.getDef());
+      add(instruction.getArrayRef());
+    }
+
+    @Override
+    public void visitThrow(SSAThrowInstruction instruction) {
+      kind(THROW);
+      add(instruction.getException());
+    }
+
+    @Override
+    public void visitMonitor(SSAMonitorInstruction instruction) {
+      kind(MONITOR);
+      add(instruction.getRef());
+      add(instruction.isMonitorEnter());
+    }
+
+    @Override
+    public void visitCheckCast(SSACheckCastInstruction instruction) {
+      if (instruction.getDeclaredResultTypes() == null) {
+        unsupported = true;
+        return;
+      }
+      kind(CHECK_CAST);
+      add(instruction.getDef());
+      add(instruction.getUse(0));
+      addRef(instruction.getDeclaredResultTypes());
+      add(instruction.isPEI());
+    }
+
+    @Override
+    public void visitInstanceof(SSAInstanceofInstruction instruction) {
+      kind(INSTANCEOF);
+      add(instruction.getDef());
+      add(instruction.getRef());
+      addRef(instruction.getCheckedType());
+    }
+
+    @Override
+    public void visitLoadMetadata(SSALoadMetadataInstruction instruction) {
+      kind(LOAD_METADATA);
+      add(instruction.getDef());
+      addRef(instruction.getType());
+      addRef(instruction.getToken());
+    }
+
+    @Override
+    public void visitPhi(SSAPhiInstruction instruction) {
+      // phis live in the basic blocks, not in the instruction array
+      unsupported = true;
+    }
+
+    @Override
+    public void visitPi(SSAPiInstruction instruction) {
+      unsupported = true;
+    }
+
+    @Override
+    public void visitGetCaughtException(SSAGetCaughtExceptionInstruction instruction) {
+      unsupported = true;
+    }
+
+    @Override
+    public void visitAddressOf(SSAAddressOfInstruction instruction) {
+      unsupported = true;
+    }
+
+    @Override
+    public void visitLoadIndirect(SSALoadIndirectInstruction instruction) {
+      unsupported = true;
+    }
+
+    @Override
+    public void visitStoreIndirect(SSAStoreIndirectInstruction instruction) {
+      unsupported = true;
+    }
+  }
+}
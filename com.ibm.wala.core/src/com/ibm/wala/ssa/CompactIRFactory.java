@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ssa;
+
+import com.ibm.wala.classLoader.IMethod;
+
+/**
+ * An {@link IRFactory} that can also encode the {@link IR}s it builds as {@link CompactIR}s, and inflate them again. Used by
+ * {@link SSACache} to keep many IRs resident in little memory.
+ */
+public interface CompactIRFactory<T extends IMethod> extends IRFactory<T> {
+
+  /**
+   * @param ir an IR built by this factory
+   * @return a compact encoding of ir, or null if ir can not be encoded
+   */
+  CompactIR compact(IR ir);
+
+  /**
+   * @param compact an encoding returned by {@link #compact(IR)}
+   * @return an IR equivalent to the one compact was made from
+   */
+  IR inflate(CompactIR compact);
+
+}
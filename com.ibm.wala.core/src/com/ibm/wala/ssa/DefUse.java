@@ -11,17 +11,19 @@
 package com.ibm.wala.ssa;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import com.ibm.wala.util.collections.EmptyIterator;
 import com.ibm.wala.util.debug.Assertions;
-import com.ibm.wala.util.intset.IntIterator;
-import com.ibm.wala.util.intset.IntSet;
-import com.ibm.wala.util.intset.IntSetUtil;
-import com.ibm.wala.util.intset.MutableIntSet;
 
 /**
  * An object which represent Def-Use information for an SSA {@link IR}
+ * 
+ * The information is computed on the first query, so that a {@link DefUse} which is created (or cached) but never asked costs
+ * nothing. The uses are held in compressed sparse row form: for each value number, a range of an int array of instruction
+ * numbers.
  */
 public class DefUse {
   static final boolean DEBUG = false;
@@ -29,15 +31,19 @@ public class DefUse {
   /**
    * A mapping from integer (value number) -> {@link SSAInstruction} that defines the value
    */
-  final private SSAInstruction[] defs;
+  private SSAInstruction[] defs;
 
   /**
-   * A mapping from integer (value number) -> bit vector holding integers representing instructions that use the value number
+   * The instructions which use value number v are numbered useIndex[useStart[v]] .. useIndex[useStart[v+1]-1], in ascending order.
+   * Null until the information is first computed; written last, so a non-null value means the other fields are ready.
    */
-  final private MutableIntSet[] uses;
+  private volatile int[] useStart;
+
+  private int[] useIndex;
 
   /**
-   * A Mapping from integer -> Instruction
+   * A Mapping from integer -> Instruction. It stays empty until the first query computes the information; subclasses that read
+   * it directly must make a query first.
    */
   final protected ArrayList<SSAInstruction> allInstructions = new ArrayList<SSAInstruction>();
 
@@ -55,17 +61,34 @@ public class DefUse {
       throw new IllegalArgumentException("ir is null");
     }
     this.ir = ir;
+  }
+
+  private void ensureComputed() {
+    if (useStart == null) {
+      compute();
+    }
+  }
+
+  private synchronized void compute() {
+    if (useStart != null) {
+      return;
+    }
 
     // set up mapping from integer -> instruction
     initAllInstructions();
-    defs = new SSAInstruction[getMaxValueNumber() + 1];
-    uses = new MutableIntSet[getMaxValueNumber() + 1];
+    allInstructions.trimToSize();
+    int nValues = getMaxValueNumber() + 1;
+    defs = new SSAInstruction[nValues];
     if (DEBUG) {
       System.err.println(("DefUse: defs.length " + defs.length));
     }
-    Iterator it = allInstructions.iterator();
+
+    // count the distinct using instructions of each value number ...
+    int[] start = new int[nValues + 1];
+    int[] lastUser = new int[nValues];
+    Arrays.fill(lastUser, -1);
     for (int i = 0; i < allInstructions.size(); i++) {
-      SSAInstruction s = (SSAInstruction) it.next();
+      SSAInstruction s = allInstructions.get(i);
       if (s == null) {
         continue;
       }
@@ -75,17 +98,38 @@ public class DefUse {
       for (int j = 0; j < getNumberOfUses(s); j++) {
         int use = getUse(s, j);
         try {
-          if (use != -1) {
-            if (uses[use] == null) {
-              uses[use] = IntSetUtil.make();
-            }
-            uses[use].add(i);
+          if (use != -1 && lastUser[use] != i) {
+            lastUser[use] = i;
+            start[use + 1]++;
           }
         } catch (ArrayIndexOutOfBoundsException e) {
           throw new InternalError("unexpected value number " + use);
         }
       }
     }
+    for (int v = 0; v < nValues; v++) {
+      start[v + 1] += start[v];
+    }
+
+    // ... then record them
+    int[] index = new int[start[nValues]];
+    int[] next = Arrays.copyOf(start, nValues);
+    Arrays.fill(lastUser, -1);
+    for (int i = 0; i < allInstructions.size(); i++) {
+      SSAInstruction s = allInstructions.get(i);
+      if (s == null) {
+        continue;
+      }
+      for (int j = 0; j < getNumberOfUses(s); j++) {
+        int use = getUse(s, j);
+        if (use != -1 && lastUser[use] != i) {
+          lastUser[use] = i;
+          index[next[use]++] = i;
+        }
+      }
+    }
+    useIndex = index;
+    useStart = start;
   }
 
   /**
@@ -136,6 +180,7 @@ public class DefUse {
    * @return the {@link SSAInstruction} that defines the variable with value number v.
    */
   public SSAInstruction getDef(int v) {
+    ensureComputed();
     return (v < defs.length) ? defs[v] : null;
   }
 
@@ -143,34 +188,40 @@ public class DefUse {
    * Return all uses of the variable with the given value number
    */
   public Iterator<SSAInstruction> getUses(int v) {
-    if (uses[v] == null) {
+    ensureComputed();
+    int from = useStart[v];
+    int to = useStart[v + 1];
+    if (from == to) {
       return EmptyIterator.instance();
     } else {
-      return new UseIterator(uses[v]);
+      return new UseIterator(from, to);
     }
   }
 
   /**
-   * return an {@link Iterator} of all instructions that use any of a set of variables
+   * return an {@link Iterator} of the instructions numbered in a range of useIndex
    */
   private class UseIterator implements Iterator<SSAInstruction> {
-    final IntIterator it;
+    private int next;
 
-    /**
-     * @param uses the set of value numbers whose uses this object iterates over
-     */
-    UseIterator(IntSet uses) {
-      it = uses.intIterator();
+    private final int end;
+
+    UseIterator(int from, int to) {
+      this.next = from;
+      this.end = to;
     }
 
     @Override
     public boolean hasNext() {
-      return it.hasNext();
+      return next < end;
     }
 
     @Override
     public SSAInstruction next() {
-      return allInstructions.get(it.next());
+      if (next >= end) {
+        throw new NoSuchElementException();
+      }
+      return allInstructions.get(useIndex[next++]);
     }
 
     @Override
@@ -184,6 +235,7 @@ public class DefUse {
    * @return the number of uses of the variable with the given value number
    */
   public int getNumberOfUses(int v) {
-    return uses[v] == null ? 0 : uses[v].size();
+    ensureComputed();
+    return useStart[v + 1] - useStart[v];
   }
 }
@@ -11,6 +11,7 @@
 package com.ibm.wala.ssa;
 
 import com.ibm.wala.cfg.ControlFlowGraph;
+import com.ibm.wala.cfg.ShrikeCFG;
 import com.ibm.wala.classLoader.IBytecodeMethod;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.classLoader.ShrikeCTMethod;
@@ -19,18 +20,37 @@ import com.ibm.wala.classLoader.SyntheticMethod;
 import com.ibm.wala.ipa.callgraph.Context;
 import com.ibm.wala.ipa.summaries.SyntheticIRFactory;
 import com.ibm.wala.util.debug.Assertions;
+import com.ibm.wala.util.perf.Metrics;
 
 /**
  * Default implementation of {@link IRFactory}.
  * 
- * This creates {@link IR} objects from Shrike methods, and directly from synthetic methods.
+ * This creates {@link IR} objects from Shrike methods, and directly from synthetic methods. The IRs of Shrike methods can be
+ * encoded as {@link CompactIR}s.
  */
-public class DefaultIRFactory implements IRFactory<IMethod> {
+public class DefaultIRFactory implements CompactIRFactory<IMethod> {
 
   private final ShrikeIRFactory shrikeFactory = new ShrikeIRFactory();
 
   private final SyntheticIRFactory syntheticFactory = new SyntheticIRFactory();
 
+  /**
+   * if non-null, IRs of Shrike methods are looked up here before being built, and stored here after
+   */
+  private final PersistentIRCache persistentCache;
+
+  public DefaultIRFactory() {
+    this(null);
+  }
+
+  /**
+   * @param persistentCache a store of IRs from previous runs, consulted before building the IR of a Shrike method, and to which
+   *          newly built IRs are added; the caller is responsible for {@link PersistentIRCache#save() saving} it
+   */
+  public DefaultIRFactory(PersistentIRCache persistentCache) {
+    this.persistentCache = persistentCache;
+  }
+
   /*
    * @see com.ibm.wala.ssa.IRFactory#makeCFG(com.ibm.wala.classLoader.IMethod, com.ibm.wala.ipa.callgraph.Context,
    * com.ibm.wala.ipa.cha.IClassHierarchy, com.ibm.wala.util.warnings.WarningSet)
@@ -61,6 +81,9 @@ public class DefaultIRFactory implements IRFactory<IMethod> {
     if (method.isSynthetic()) {
       return syntheticFactory.makeIR((SyntheticMethod) method, c, options);
     } else if (method instanceof IBytecodeMethod) {
+      if (persistentCache != null) {
+        return makeIRWithPersistentCache((IBytecodeMethod) method, c, options);
+      }
       return shrikeFactory.makeIR((IBytecodeMethod) method, c, options);
     } else {
       Assertions.UNREACHABLE();
@@ -68,6 +91,43 @@ public class DefaultIRFactory implements IRFactory<IMethod> {
     }
   }
 
+  private IR makeIRWithPersistentCache(IBytecodeMethod method, Context c, SSAOptions options) {
+    // the stored IR is only good for the CFG of the current class hierarchy
+    ShrikeCFG cfg = ShrikeCFG.make(method);
+    CompactIR stored = persistentCache.find(method, options, cfg);
+    if (stored != null) {
+      try {
+        return shrikeFactory.inflate(stored, cfg);
+      } catch (RuntimeException e) {
+        // a damaged entry that decoded anyway; rebuilding the IR replaces it
+        Metrics.count("ir.disk.corrupt", 1);
+      }
+    }
+    IR ir = shrikeFactory.makeIR(method, cfg, options);
+    CompactIR compact = shrikeFactory.compact(ir);
+    if (compact != null) {
+      persistentCache.store(method, options, compact, ir.getControlFlowGraph());
+    }
+    return ir;
+  }
+
+  @Override
+  public CompactIR compact(IR ir) {
+    if (ir == null) {
+      throw new IllegalArgumentException("null ir");
+    }
+    // only IRs built by the shrike factory can be encoded
+    return shrikeFactory.compact(ir);
+  }
+
+  @Override
+  public IR inflate(CompactIR compact) {
+    if (compact == null) {
+      throw new IllegalArgumentException("null compact");
+    }
+    return shrikeFactory.inflate(compact);
+  }
+
   /**
    * Is the {@link Context} irrelevant as to structure of the {@link IR} for a particular {@link IMethod}? 
    */
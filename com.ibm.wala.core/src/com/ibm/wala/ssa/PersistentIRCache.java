@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.ssa;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.ibm.wala.cfg.ControlFlowGraph;
+import com.ibm.wala.cfg.IBasicBlock;
+import com.ibm.wala.classLoader.IBytecodeMethod;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.ShrikeClass;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.perf.Metrics;
+
+/**
+ * A store of {@link CompactIR}s on disk, so that the IRs of methods whose bytecode does not change (library code, say) need not be
+ * rebuilt in every analysis run.
+ * 
+ * The store is a directory holding one file per class. A file is valid only for the exact class file it was made from: it records
+ * a checksum of the class file bytes, and is ignored (and eventually overwritten) if the class has changed. The exceptional edges
+ * of a method's CFG also depend on the class hierarchy, so each IR is stored with a digest of the CFG it was built on, and is
+ * only used with a CFG that has the same digest. Only IRs built with {@link SSAOptions} that have neither a pi node policy nor
+ * default values are stored.
+ * 
+ * The store is never trusted to be intact: each IR is stored with a checksum of its bytes, and an IR that does not match its
+ * checksum, or can not be decoded, is treated as missing, so that it is rebuilt and replaced.
+ * 
+ * IRs added with {@link #store(IBytecodeMethod, SSAOptions, CompactIR, ControlFlowGraph)} are written when {@link #save()} is
+ * called.
+ * 
+ * @see DefaultIRFactory#DefaultIRFactory(PersistentIRCache)
+ */
+public class PersistentIRCache {
+
+  private final static int MAGIC = 0x57414952;
+
+  /**
+   * bump whenever the format written by {@link CompactIR#write} changes
+   */
+  private final static int VERSION = 3;
+
+  private final File directory;
+
+  /**
+   * the stored IRs of each class looked at so far
+   */
+  private final Map<IClass, ClassEntry> classes = HashMapFactory.make();
+
+  /**
+   * The IRs stored for one class
+   */
+  private static class ClassEntry {
+    private final File file;
+
+    private final String className;
+
+    private final long checksum;
+
+    /**
+     * the encoded IR of each method, by selector
+     */
+    private final Map<String, byte[]> methods = HashMapFactory.make();
+
+    /**
+     * the {@link PersistentIRCache#digest(ControlFlowGraph) digest} of the CFG each IR was built on, by selector
+     */
+    private final Map<String, Long> cfgDigests = HashMapFactory.make();
+
+    /**
+     * the CRC32 of the encoded IR of each method, by selector
+     */
+    private final Map<String, Long> checksums = HashMapFactory.make();
+
+    /**
+     * have IRs been added since the file was read?
+     */
+    private boolean dirty = false;
+
+    ClassEntry(File file, String className, long checksum) {
+      this.file = file;
+      this.className = className;
+      this.checksum = checksum;
+    }
+  }
+
+  /**
+   * @param directory the directory holding the store; created if it does not exist
+   */
+  public PersistentIRCache(File directory) {
+    if (directory == null) {
+      throw new IllegalArgumentException("null directory");
+    }
+    this.directory = directory;
+  }
+
+  /**
+   * @param cfg the CFG of m the IR will be inflated on
+   * @return the stored IR of m built with options on a CFG like cfg, or null if none
+   */
+  public CompactIR find(IBytecodeMethod m, SSAOptions options, ControlFlowGraph<?, ?> cfg) {
+    if (m == null) {
+      throw new IllegalArgumentException("null m");
+    }
+    if (cfg == null) {
+      throw new IllegalArgumentException("null cfg");
+    }
+    if (!canStore(options)) {
+      return null;
+    }
+    byte[] bytes;
+    Long cfgDigest;
+    Long checksum;
+    synchronized (this) {
+      ClassEntry entry = findOrCreateEntry(m.getDeclaringClass());
+      String selector = m.getSelector().toString();
+      bytes = entry == null ? null : entry.methods.get(selector);
+      cfgDigest = entry == null ? null : entry.cfgDigests.get(selector);
+      checksum = entry == null ? null : entry.checksums.get(selector);
+    }
+    if (bytes == null) {
+      Metrics.count("ir.disk.miss", 1);
+      return null;
+    }
+    if (cfgDigest.longValue() != digest(cfg)) {
+      // built with a different class hierarchy
+      Metrics.count("ir.disk.stale", 1);
+      return null;
+    }
+    // check and decode without holding the lock, so that IRs of different methods can be read concurrently
+    if (checksum.longValue() != crc(bytes)) {
+      Metrics.count("ir.disk.corrupt", 1);
+      return null;
+    }
+    try {
+      CompactIR result = CompactIR.read(new DataInputStream(new ByteArrayInputStream(bytes)), bytes.length, m, options);
+      Metrics.count("ir.disk.hit", 1);
+      return result;
+    } catch (IOException e) {
+      // a corrupt entry; let the caller rebuild the IR
+      Metrics.count("ir.disk.corrupt", 1);
+      return null;
+    } catch (RuntimeException e) {
+      // a well-formed entry naming something that can not exist, say a malformed type name
+      Metrics.count("ir.disk.corrupt", 1);
+      return null;
+    }
+  }
+
+  /**
+   * Add the IR of m, built with options on cfg, to the store. Nothing happens if the IR can not be stored.
+   */
+  public synchronized void store(IBytecodeMethod m, SSAOptions options, CompactIR ir, ControlFlowGraph<?, ?> cfg) {
+    if (m == null) {
+      throw new IllegalArgumentException("null m");
+    }
+    if (ir == null) {
+      throw new IllegalArgumentException("null ir");
+    }
+    if (cfg == null) {
+      throw new IllegalArgumentException("null cfg");
+    }
+    if (!canStore(options)) {
+      return;
+    }
+    ClassEntry entry = findOrCreateEntry(m.getDeclaringClass());
+    if (entry == null) {
+      return;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      DataOutputStream out = new DataOutputStream(bytes);
+      ir.write(out);
+      out.flush();
+    } catch (IOException e) {
+      // ir refers to something we can not write
+      return;
+    }
+    byte[] encoded = bytes.toByteArray();
+    entry.methods.put(m.getSelector().toString(), encoded);
+    entry.cfgDigests.put(m.getSelector().toString(), digest(cfg));
+    entry.checksums.put(m.getSelector().toString(), crc(encoded));
+    entry.dirty = true;
+  }
+
+  /**
+   * Write the files of all classes to which IRs have been added since they were read.
+   */
+  public synchronized void save() throws IOException {
+    if (!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("could not create " + directory);
+    }
+    for (ClassEntry entry : classes.values()) {
+      if (entry != null && entry.dirty) {
+        write(entry);
+        entry.dirty = false;
+      }
+    }
+  }
+
+  /**
+   * Default values are code supplied by the client, which the stored IR can not be checked against.
+   */
+  private static boolean canStore(SSAOptions options) {
+    return options != null && options.getPiNodePolicy() == null && options.getDefaultValues() == null;
+  }
+
+  private static long crc(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return crc.getValue();
+  }
+
+  /**
+   * @return a checksum of the normal and exceptional successors of each block of cfg
+   */
+  private static <I, T extends IBasicBlock<I>> long digest(ControlFlowGraph<I, T> cfg) {
+    CRC32 crc = new CRC32();
+    for (int i = 0; i <= cfg.getMaxNumber(); i++) {
+      T b = cfg.getNode(i);
+      update(crc, i);
+      update(crc, successorNumbers(cfg, cfg.getNormalSuccessors(b)));
+      update(crc, successorNumbers(cfg, cfg.getExceptionalSuccessors(b)));
+    }
+    return (crc.getValue() << 32) | cfg.getNumberOfNodes();
+  }
+
+  private static <I, T extends IBasicBlock<I>> int[] successorNumbers(ControlFlowGraph<I, T> cfg, Collection<T> succs) {
+    int[] result = new int[succs.size()];
+    int i = 0;
+    for (T s : succs) {
+      result[i++] = cfg.getNumber(s);
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
+  private static void update(CRC32 crc, int[] xs) {
+    update(crc, xs.length);
+    for (int x : xs) {
+      update(crc, x);
+    }
+  }
+
+  private static void update(CRC32 crc, int x) {
+    crc.update(x >>> 24);
+    crc.update(x >>> 16);
+    crc.update(x >>> 8);
+    crc.update(x);
+  }
+
+  /**
+   * @return the entry for klass, reading its file if need be; null if IRs of klass can not be stored
+   */
+  private ClassEntry findOrCreateEntry(IClass klass) {
+    if (classes.containsKey(klass)) {
+      return classes.get(klass);
+    }
+    ClassEntry entry = null;
+    if (klass instanceof ShrikeClass) {
+      CRC32 crc = new CRC32();
+      byte[] classBytes = ((ShrikeClass) klass).getReader().getBytes();
+      crc.update(classBytes);
+      String name = klass.getClassLoader().getName() + "-" + klass.getName().toString().substring(1).replace('/', '.') + ".ir";
+      entry = new ClassEntry(new File(directory, name), klass.getName().toString(), (crc.getValue() << 32) | classBytes.length);
+      if (entry.file.exists()) {
+        try {
+          read(entry);
+        } catch (IOException e) {
+          // unreadable; start over
+          entry.methods.clear();
+          entry.cfgDigests.clear();
+          entry.checksums.clear();
+        }
+      }
+    }
+    classes.put(klass, entry);
+    return entry;
+  }
+
+  private static void read(ClassEntry entry) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry.file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(entry.className) || in.readLong() != entry.checksum) {
+        // stale or foreign file
+        return;
+      }
+      int nMethods = in.readInt();
+      for (int i = 0; i < nMethods; i++) {
+        String selector = in.readUTF();
+        long cfgDigest = in.readLong();
+        long checksum = in.readLong();
+        int length = in.readInt();
+        if (length < 0 || length > entry.file.length()) {
+          throw new IOException("bad length " + length + " for " + selector);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        entry.methods.put(selector, bytes);
+        entry.cfgDigests.put(selector, cfgDigest);
+        entry.checksums.put(selector, checksum);
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void write(ClassEntry entry) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(entry.file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(entry.className);
+      out.writeLong(entry.checksum);
+      out.writeInt(entry.methods.size());
+      for (Map.Entry<String, byte[]> e : entry.methods.entrySet()) {
+        out.writeUTF(e.getKey());
+        out.writeLong(entry.cfgDigests.get(e.getKey()));
+        out.writeLong(entry.checksums.get(e.getKey()));
+        out.writeInt(e.getValue().length);
+        out.write(e.getValue());
+      }
+    } finally {
+      out.close();
+    }
+  }
+}
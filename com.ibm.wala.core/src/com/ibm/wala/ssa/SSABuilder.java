@@ -10,6 +10,9 @@
  *******************************************************************************/
 package com.ibm.wala.ssa;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Iterator;
 
 import com.ibm.wala.analysis.stackMachine.AbstractIntStackMachine;
@@ -912,7 +915,74 @@ public class SSABuilder extends AbstractIntStackMachine {
   public ShrikeIndirectionData getIndirectionData() {
     return ssaIndirections;
   }
+
+  /**
+   * @return a copy of a local map built by an SSABuilder that no longer refers to the {@link ShrikeCFG} it was built from, so that
+   *         it can be kept along with a {@link CompactIR}; null if localMap is null
+   * @throws IllegalArgumentException if localMap was not built by an SSABuilder
+   */
+  public static IR.SSA2LocalMap detachLocalMap(IR.SSA2LocalMap localMap) {
+    return attachLocalMap(localMap, null);
+  }
+
+  /**
+   * @return a copy of a local map built by an SSABuilder, for the given {@link ShrikeCFG} of the same method; null if localMap is
+   *         null
+   * @throws IllegalArgumentException if localMap was not built by an SSABuilder
+   */
+  public static IR.SSA2LocalMap attachLocalMap(IR.SSA2LocalMap localMap, ShrikeCFG shrikeCFG) {
+    if (localMap == null) {
+      return null;
+    }
+    if (!(localMap instanceof SSA2LocalMap)) {
+      throw new IllegalArgumentException("not built by an SSABuilder: " + localMap.getClass());
+    }
+    return new SSA2LocalMap(shrikeCFG, (SSA2LocalMap) localMap);
+  }
   
+  /**
+   * Write a local map built by an SSABuilder, for {@link CompactIR#write}
+   * 
+   * @throws IOException if localMap was not built by an SSABuilder
+   */
+  static void writeLocalMap(IR.SSA2LocalMap localMap, DataOutput out) throws IOException {
+    if (!(localMap instanceof SSA2LocalMap)) {
+      throw new IOException("not built by an SSABuilder: " + localMap.getClass());
+    }
+    ((SSA2LocalMap) localMap).write(out);
+  }
+
+  /**
+   * Read a local map written by {@link #writeLocalMap(IR.SSA2LocalMap, DataOutput)}; the result is detached, as by
+   * {@link #detachLocalMap(IR.SSA2LocalMap)}
+   * 
+   * @param limit the number of bytes the map was written in, or more; bounds the size of each of its tables
+   * @throws IOException if the map is malformed, or on an I/O error
+   */
+  static IR.SSA2LocalMap readLocalMap(DataInput in, int limit) throws IOException {
+    IntPair[] localStoreMap = new IntPair[CompactIR.readCount(in, limit)];
+    for (int i = 0; i < localStoreMap.length; i++) {
+      if (in.readBoolean()) {
+        localStoreMap[i] = new IntPair(in.readInt(), in.readInt());
+      }
+    }
+    int[][] block2LocalState = new int[CompactIR.readCount(in, limit)][];
+    for (int i = 0; i < block2LocalState.length; i++) {
+      // -1 for a block without a state
+      int length = in.readInt();
+      if (length < -1 || length > limit) {
+        throw new IOException("bad length " + length + " of the state of block " + i);
+      }
+      if (length >= 0) {
+        block2LocalState[i] = new int[length];
+        for (int j = 0; j < length; j++) {
+          block2LocalState[i][j] = in.readInt();
+        }
+      }
+    }
+    return new SSA2LocalMap(localStoreMap, block2LocalState);
+  }
+
   /**
    * A logical mapping from <pc, valueNumber> -> local number Note: make sure this class remains static: this persists as part of
    * the IR!!
@@ -942,6 +1012,46 @@ public class SSABuilder extends AbstractIntStackMachine {
       block2LocalState = new int[nBlocks][];
     }
 
+    /**
+     * share the (finished) maps of other, for a different copy of its ShrikeCFG
+     */
+    SSA2LocalMap(ShrikeCFG shrikeCfg, SSA2LocalMap other) {
+      shrikeCFG = shrikeCfg;
+      localStoreMap = other.localStoreMap;
+      block2LocalState = other.block2LocalState;
+    }
+
+    /**
+     * a detached map with the given contents
+     */
+    private SSA2LocalMap(IntPair[] localStoreMap, int[][] block2LocalState) {
+      this.shrikeCFG = null;
+      this.localStoreMap = localStoreMap;
+      this.block2LocalState = block2LocalState;
+    }
+
+    private void write(DataOutput out) throws IOException {
+      out.writeInt(localStoreMap.length);
+      for (IntPair p : localStoreMap) {
+        out.writeBoolean(p != null);
+        if (p != null) {
+          out.writeInt(p.getX());
+          out.writeInt(p.getY());
+        }
+      }
+      out.writeInt(block2LocalState.length);
+      for (int[] locals : block2LocalState) {
+        if (locals == null) {
+          out.writeInt(-1);
+        } else {
+          out.writeInt(locals.length);
+          for (int l : locals) {
+            out.writeInt(l);
+          }
+        }
+      }
+    }
+
     /**
      * Record the beginning of a new range, starting at the given program counter, in which a particular value number corresponds to
      * a particular local number
@@ -1027,6 +1137,10 @@ public class SSABuilder extends AbstractIntStackMachine {
       // walk forward from the first instruction to reconstruct the
       // state of the locals at this pc
       int[] locals = block2LocalState[bb.getNumber()];
+      if (locals != null) {
+        // setLocal writes into the array, which must keep the state at the start of the block for later queries
+        locals = locals.clone();
+      }
       for (int i = firstInstruction; i <= pc; i++) {
         if (localStoreMap[i] != null) {
           IntPair p = localStoreMap[i];
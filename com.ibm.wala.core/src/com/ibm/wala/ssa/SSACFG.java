@@ -449,6 +449,28 @@ public class SSACFG implements ControlFlowGraph<SSAInstruction, ISSABasicBlock>
       }
     }
 
+    /**
+     * @return the phis of this block indexed by stack slot, as recorded by {@link #addPhiForStackSlot}; may contain nulls
+     */
+    SSAPhiInstruction[] getStackSlotPhis() {
+      return stackSlotPhis;
+    }
+
+    /**
+     * @return the phis of this block indexed by local, as recorded by {@link #addPhiForLocal}; may contain nulls
+     */
+    SSAPhiInstruction[] getLocalPhis() {
+      return localPhis;
+    }
+
+    /**
+     * restore the phis of this block, as returned by {@link #getStackSlotPhis()} and {@link #getLocalPhis()}
+     */
+    void setPhis(SSAPhiInstruction[] stackSlotPhis, SSAPhiInstruction[] localPhis) {
+      this.stackSlotPhis = stackSlotPhis;
+      this.localPhis = localPhis;
+    }
+
     public SSAPiInstruction getPiForRefAndPath(int n, Object path) {
       return piInstructions.get(new RefPathKey(n, this, path));
     }
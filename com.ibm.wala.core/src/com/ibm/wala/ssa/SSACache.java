@@ -10,9 +10,23 @@
  *******************************************************************************/
 package com.ibm.wala.ssa;
 
+import java.util.Map;
+
+import com.ibm.wala.cfg.ControlFlowGraph;
+import com.ibm.wala.cfg.exc.ExceptionPruningAnalysis;
+import com.ibm.wala.cfg.exc.NullPointerAnalysis;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.callgraph.Context;
 import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.cfg.ExceptionPrunedCFG;
+import com.ibm.wala.ssa.analysis.ExplodedControlFlowGraph;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.graph.GraphIntegrity.UnsoundGraphException;
+import com.ibm.wala.util.perf.Metrics;
 
 /**
  * A mapping from IMethod -> SSAOptions -> SoftReference -> Something
@@ -31,6 +45,13 @@ public class SSACache {
    */
   private final IRFactory<IMethod> factory;
 
+  /**
+   * If non-null, the {@link CompactIR}s of the IRs built so far; these are held strongly, and an IR whose soft reference in
+   * {@link #irCache} has been cleared is inflated from here rather than rebuilt from scratch. Unlike the other caches, this one
+   * is not bounded, and {@link #wipe()} keeps it.
+   */
+  final private Map<Pair<IMethod, Context>, CompactIR> compactIRs;
+
   /**
    * A cache of SSA IRs
    */
@@ -41,11 +62,43 @@ public class SSACache {
    */
   final private AuxiliaryCache duCache = new AuxiliaryCache();
 
+  /**
+   * A cache of {@link ExplodedControlFlowGraph}s
+   */
+  final private AuxiliaryCache explodedCFGCache = new AuxiliaryCache();
+
+  /**
+   * A cache of CFGs without exceptional edges
+   */
+  final private AuxiliaryCache exceptionPrunedCFGCache = new AuxiliaryCache();
+
+  /**
+   * A cache of exploded CFGs pruned by the intraprocedural {@link NullPointerAnalysis}
+   */
+  final private AuxiliaryCache nullPrunedCFGCache = new AuxiliaryCache();
+
   /**
    * @param factory a factory for creating IRs
    */
   public SSACache(IRFactory<IMethod> factory) {
+    this(factory, false);
+  }
+
+  /**
+   * A {@link CompactIR} is kept for every &lt;method, context&gt; whose IR is built, for as long as this cache lives: nothing
+   * evicts them, so they grow with the number of methods analyzed. A long-running client that analyzes an open-ended stream of
+   * methods should call {@link #wipeCompactIRs()} from time to time, or not keep them at all.
+   * 
+   * An IR is inflated whole from its encoding; its instructions are not decoded lazily as they are asked for.
+   * 
+   * @param factory a factory for creating IRs
+   * @param compactIRs if true and factory is a {@link CompactIRFactory}, keep a {@link CompactIR} of every IR built, so IRs evicted
+   *          from the cache can be inflated cheaply instead of being rebuilt
+   */
+  public SSACache(IRFactory<IMethod> factory, boolean compactIRs) {
     this.factory = factory;
+    this.compactIRs = compactIRs && factory instanceof CompactIRFactory ? HashMapFactory.<Pair<IMethod, Context>, CompactIR> make()
+        : null;
   }
 
   /**
@@ -54,7 +107,7 @@ public class SSACache {
    * @return an IR for m, built according to the specified options. null if m is abstract or native.
    * @throws IllegalArgumentException if m is null
    */
-  public synchronized IR findOrCreateIR(final IMethod m, Context c, final SSAOptions options) {
+  public IR findOrCreateIR(final IMethod m, Context c, final SSAOptions options) {
 
     if (m == null) {
       throw new IllegalArgumentException("m is null");
@@ -73,19 +126,55 @@ public class SSACache {
 
     IR ir = (IR) irCache.find(m, c, options);
     if (ir == null) {
-      ir = factory.makeIR(m, c, options);
-      irCache.cache(m, c, options, ir);
+      Metrics.count("ir.cache.miss", 1);
+      CompactIR compact = findCompactIR(m, c, options);
+      if (compact != null) {
+        Metrics.count("ir.compact.hit", 1);
+        long start = Metrics.start();
+        IR inflated = ((CompactIRFactory<IMethod>) factory).inflate(compact);
+        Metrics.stop("ir.inflate", start);
+        return (IR) cacheIfAbsent(irCache, m, c, options, inflated);
+      }
+      long start = Metrics.start();
+      // build the IR without holding any lock, so that IRs for different methods can be built concurrently.
+      IR built = factory.makeIR(m, c, options);
+      Metrics.stop("ir.build", start);
+      ir = (IR) cacheIfAbsent(irCache, m, c, options, built);
+      if (compactIRs != null && ir == built) {
+        compact = ((CompactIRFactory<IMethod>) factory).compact(built);
+        if (compact != null) {
+          synchronized (compactIRs) {
+            compactIRs.put(Pair.make(m, c), compact);
+          }
+        }
+      }
+    } else {
+      Metrics.count("ir.cache.hit", 1);
     }
     return ir;
   }
 
+  /**
+   * @return the {@link CompactIR} kept for m in c, if it was built with options
+   */
+  private CompactIR findCompactIR(IMethod m, Context c, SSAOptions options) {
+    if (compactIRs == null) {
+      return null;
+    }
+    CompactIR compact;
+    synchronized (compactIRs) {
+      compact = compactIRs.get(Pair.make(m, c));
+    }
+    return compact != null && compact.getOptions().equals(options) ? compact : null;
+  }
+
   /**
    * @param m a method
    * @param options options governing ssa construction
    * @return DefUse information for m, built according to the specified options. null if unavailable
    * @throws IllegalArgumentException if m is null
    */
-  public synchronized DefUse findOrCreateDU(IMethod m, Context c, SSAOptions options) {
+  public DefUse findOrCreateDU(IMethod m, Context c, SSAOptions options) {
     if (m == null) {
       throw new IllegalArgumentException("m is null");
     }
@@ -99,8 +188,7 @@ public class SSACache {
     DefUse du = (DefUse) duCache.find(m, c, options);
     if (du == null) {
       IR ir = findOrCreateIR(m, c, options);
-      du = new DefUse(ir);
-      duCache.cache(m, c, options, du);
+      du = (DefUse) cacheIfAbsent(duCache, m, c, options, new DefUse(ir));
     }
     return du;
   }
@@ -109,30 +197,148 @@ public class SSACache {
    * @return {@link DefUse} information for m, built according to the specified options. null if unavailable
    * @throws IllegalArgumentException if ir is null
    */
-  public synchronized DefUse findOrCreateDU(IR ir, Context C) {
+  public DefUse findOrCreateDU(IR ir, Context C) {
     if (ir == null) {
       throw new IllegalArgumentException("ir is null");
     }
     DefUse du = (DefUse) duCache.find(ir.getMethod(), C, ir.getOptions());
     if (du == null) {
-      du = new DefUse(ir);
-      duCache.cache(ir.getMethod(), C, ir.getOptions(), du);
+      du = (DefUse) cacheIfAbsent(duCache, ir.getMethod(), C, ir.getOptions(), new DefUse(ir));
     }
     return du;
   }
 
+  /**
+   * @return the {@link ExplodedControlFlowGraph} for ir
+   * @throws IllegalArgumentException if ir is null
+   */
+  public ExplodedControlFlowGraph findOrCreateExplodedCFG(IR ir, Context c) {
+    if (ir == null) {
+      throw new IllegalArgumentException("ir is null");
+    }
+    ExplodedControlFlowGraph cfg = (ExplodedControlFlowGraph) findView(explodedCFGCache, ir, c);
+    if (cfg == null) {
+      cfg = (ExplodedControlFlowGraph) cacheViewIfAbsent(explodedCFGCache, ir, c, ExplodedControlFlowGraph.make(ir));
+    }
+    return cfg;
+  }
+
+  /**
+   * @return the control flow graph of ir, without exceptional edges
+   * @throws IllegalArgumentException if ir is null
+   */
+  @SuppressWarnings("unchecked")
+  public ControlFlowGraph<SSAInstruction, ISSABasicBlock> findOrCreateExceptionPrunedCFG(IR ir, Context c) {
+    if (ir == null) {
+      throw new IllegalArgumentException("ir is null");
+    }
+    ControlFlowGraph<SSAInstruction, ISSABasicBlock> cfg = (ControlFlowGraph<SSAInstruction, ISSABasicBlock>) findView(
+        exceptionPrunedCFGCache, ir, c);
+    if (cfg == null) {
+      cfg = (ControlFlowGraph<SSAInstruction, ISSABasicBlock>) cacheViewIfAbsent(exceptionPrunedCFGCache, ir, c,
+          ExceptionPrunedCFG.make(ir.getControlFlowGraph()));
+    }
+    return cfg;
+  }
+
+  /**
+   * @return the exploded control flow graph of ir, without the exceptional edges the intraprocedural {@link NullPointerAnalysis}
+   *         proves infeasible, using the default ignored exceptions and no knowledge about parameters or callees
+   * @throws IllegalArgumentException if ir is null
+   */
+  @SuppressWarnings("unchecked")
+  public ControlFlowGraph<SSAInstruction, IExplodedBasicBlock> findOrCreateNullPrunedCFG(IR ir, Context c,
+      IProgressMonitor monitor) throws UnsoundGraphException, CancelException {
+    if (ir == null) {
+      throw new IllegalArgumentException("ir is null");
+    }
+    ControlFlowGraph<SSAInstruction, IExplodedBasicBlock> cfg = (ControlFlowGraph<SSAInstruction, IExplodedBasicBlock>) findView(
+        nullPrunedCFGCache, ir, c);
+    if (cfg == null) {
+      ExceptionPruningAnalysis<SSAInstruction, IExplodedBasicBlock> npa = NullPointerAnalysis
+          .createIntraproceduralExplodedCFGAnalysis(ir);
+      npa.compute(monitor);
+      cfg = (ControlFlowGraph<SSAInstruction, IExplodedBasicBlock>) cacheViewIfAbsent(nullPrunedCFGCache, ir, c, npa.getCFG());
+    }
+    return cfg;
+  }
+
+  /**
+   * Views are cached along with the IR they were built from; if that IR has been rebuilt in the meantime, the cached view is stale.
+   * 
+   * @return the view of ir cached in cache, or null if none found
+   */
+  private static Object findView(AuxiliaryCache cache, IR ir, Context c) {
+    Pair<?, ?> p = (Pair<?, ?>) cache.find(ir.getMethod(), c, ir.getOptions());
+    if (p == null || p.fst != ir) {
+      Metrics.count("cfg.cache.miss", 1);
+      return null;
+    } else {
+      Metrics.count("cfg.cache.hit", 1);
+      return p.snd;
+    }
+  }
+
+  private static Object cacheViewIfAbsent(AuxiliaryCache cache, IR ir, Context c, Object view) {
+    synchronized (cache) {
+      Pair<?, ?> old = (Pair<?, ?>) cache.find(ir.getMethod(), c, ir.getOptions());
+      if (old != null && old.fst == ir) {
+        return old.snd;
+      }
+      cache.cache(ir.getMethod(), c, ir.getOptions(), Pair.make(ir, view));
+      return view;
+    }
+  }
+
+  /**
+   * Cache a newly built object, unless another thread has cached one for the same key in the meantime; in that case, return the
+   * one already cached so all clients see the same object.
+   */
+  private static Object cacheIfAbsent(AuxiliaryCache cache, IMethod m, Context c, SSAOptions options, Object aux) {
+    synchronized (cache) {
+      Object old = cache.find(m, c, options);
+      if (old != null) {
+        return old;
+      }
+      cache.cache(m, c, options, aux);
+      return aux;
+    }
+  }
+
   /**
    * The existence of this is unfortunate.
+   * 
+   * {@link CompactIR}s are kept, since they are what makes getting an IR back cheap after the other caches have been cleared; see
+   * {@link #wipeCompactIRs()}.
    */
   public void wipe() {
     irCache.wipe();
     duCache.wipe();
+    explodedCFGCache.wipe();
+    exceptionPrunedCFGCache.wipe();
+    nullPrunedCFGCache.wipe();
+  }
+
+  /**
+   * Drop all {@link CompactIR}s kept so far
+   */
+  public void wipeCompactIRs() {
+    if (compactIRs != null) {
+      synchronized (compactIRs) {
+        compactIRs.clear();
+      }
+    }
   }
 
   /**
    * Invalidate the cached IR for a <method,context> pair
    */
   public void invalidateIR(IMethod method, Context c) {
+    if (compactIRs != null) {
+      synchronized (compactIRs) {
+        compactIRs.remove(Pair.make(method, c));
+      }
+    }
     irCache.invalidate(method, c);
   }
 
@@ -143,11 +349,21 @@ public class SSACache {
     duCache.invalidate(method, c);
   }
 
+  /**
+   * Invalidate the cached CFG views for a <method,context> pair
+   */
+  public void invalidateCFGs(IMethod method, Context c) {
+    explodedCFGCache.invalidate(method, c);
+    exceptionPrunedCFGCache.invalidate(method, c);
+    nullPrunedCFGCache.invalidate(method, c);
+  }
+
   /**
    * Invalidate all cached information for a <method,context> pair
    */
   public void invalidate(IMethod method, Context c) {
     invalidateIR(method, c);
     invalidateDU(method, c);
+    invalidateCFGs(method, c);
   }
 }
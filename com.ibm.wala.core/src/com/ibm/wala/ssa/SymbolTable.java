@@ -10,7 +10,11 @@
  *******************************************************************************/
 package com.ibm.wala.ssa;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.Map;
 
 import com.ibm.wala.util.collections.HashMapFactory;
 import com.ibm.wala.util.debug.Assertions;
@@ -441,6 +445,173 @@ public class SymbolTable implements Cloneable {
     return valueNumber <= getNumberOfParameters();
   }
   
+  /**
+   * @return a copy of this table in which the {@link PhiValue}s, which would keep the phi instructions alive, are left out; used
+   *         by {@link CompactIR}, which restores them with {@link #setPhiValue(int, SSAPhiInstruction)}
+   */
+  SymbolTable copyWithoutPhiValues() {
+    try {
+      SymbolTable nt = (SymbolTable) clone();
+      nt.values = this.values.clone();
+      for (int i = 0; i < nt.values.length; i++) {
+        if (nt.values[i] instanceof PhiValue) {
+          nt.values[i] = null;
+        }
+      }
+      if (this.defaultValues != null) {
+        nt.defaultValues = this.defaultValues.clone();
+      }
+      nt.constants = HashMapFactory.make(this.constants);
+      return nt;
+    } catch (CloneNotSupportedException e) {
+      Assertions.UNREACHABLE();
+      return null;
+    }
+  }
+
+  void setPhiValue(int valueNumber, SSAPhiInstruction phi) {
+    assert valueNumber < nextFreeValueNumber;
+    values[valueNumber] = new PhiValue(phi);
+  }
+
+  /**
+   * Write this table, for {@link CompactIR#write}. Only tables that hold nothing but parameters and constants of primitive or
+   * String type can be written.
+   * 
+   * @throws IOException if this table can not be written
+   */
+  void write(DataOutput out) throws IOException {
+    if (defaultValues != null) {
+      throw new IOException("can not write default values");
+    }
+    for (int i = 0; i < parameters.length; i++) {
+      if (parameters[i] != i + 1) {
+        throw new IOException("unexpected parameter value number " + parameters[i]);
+      }
+    }
+    out.writeInt(parameters.length);
+    out.writeInt(nextFreeValueNumber);
+    out.writeInt(values.length);
+    out.writeBoolean(copy);
+    int nValues = 0;
+    for (int vn = 0; vn < values.length; vn++) {
+      if (values[vn] != null) {
+        nValues++;
+      }
+    }
+    out.writeInt(nValues);
+    for (int vn = 0; vn < values.length; vn++) {
+      if (values[vn] != null) {
+        if (!(values[vn] instanceof ConstantValue)) {
+          throw new IOException("can not write value " + values[vn]);
+        }
+        out.writeInt(vn);
+        writeConstant(out, ((ConstantValue) values[vn]).getValue());
+      }
+    }
+    out.writeInt(constants.size());
+    for (Map.Entry<ConstantValue, Integer> e : constants.entrySet()) {
+      int vn = e.getValue();
+      if (!e.getKey().equals(values[vn])) {
+        throw new IOException("constant " + e.getKey() + " is not the value of " + vn);
+      }
+      out.writeInt(vn);
+    }
+  }
+
+  private static void writeConstant(DataOutput out, Object o) throws IOException {
+    if (o == null) {
+      out.writeByte(0);
+    } else if (o instanceof String) {
+      out.writeByte(1);
+      out.writeUTF((String) o);
+    } else if (o instanceof Integer) {
+      out.writeByte(2);
+      out.writeInt((Integer) o);
+    } else if (o instanceof Long) {
+      out.writeByte(3);
+      out.writeLong((Long) o);
+    } else if (o instanceof Float) {
+      out.writeByte(4);
+      out.writeFloat((Float) o);
+    } else if (o instanceof Double) {
+      out.writeByte(5);
+      out.writeDouble((Double) o);
+    } else if (o instanceof Boolean) {
+      out.writeByte(6);
+      out.writeBoolean((Boolean) o);
+    } else {
+      throw new IOException("can not write constant " + o + " of " + o.getClass());
+    }
+  }
+
+  private static Object readConstant(DataInput in) throws IOException {
+    byte tag = in.readByte();
+    switch (tag) {
+    case 0:
+      return null;
+    case 1:
+      return in.readUTF();
+    case 2:
+      return in.readInt();
+    case 3:
+      return in.readLong();
+    case 4:
+      return in.readFloat();
+    case 5:
+      return in.readDouble();
+    case 6:
+      return in.readBoolean();
+    default:
+      throw new IOException("unexpected constant tag " + tag);
+    }
+  }
+
+  /**
+   * Read a table written by {@link #write(DataOutput)}
+   * 
+   * @param limit the number of bytes the table was written in, or more; bounds the number of parameters and constants, and of
+   *          value numbers past the parameters, which each come from an instruction or constant encoded in at least one byte
+   * @throws IOException if the table is malformed, or on an I/O error
+   */
+  static SymbolTable read(DataInput in, int limit) throws IOException {
+    SymbolTable result = new SymbolTable(CompactIR.readCount(in, limit));
+    int nextFree = in.readInt();
+    if (nextFree <= result.parameters.length || nextFree - result.parameters.length > limit) {
+      throw new IOException("bad next value number " + nextFree);
+    }
+    result.nextFreeValueNumber = nextFree;
+    // the table doubles as it grows, so it is never much more than twice as long as needed
+    int length = in.readInt();
+    if (length <= nextFree || length > 2 * nextFree + 5) {
+      throw new IOException("bad table length " + length);
+    }
+    result.values = new Value[length];
+    result.copy = in.readBoolean();
+    int nValues = CompactIR.readCount(in, limit);
+    for (int i = 0; i < nValues; i++) {
+      int vn = readValueNumber(in, length);
+      result.values[vn] = new ConstantValue(readConstant(in));
+    }
+    int nConstants = CompactIR.readCount(in, limit);
+    for (int i = 0; i < nConstants; i++) {
+      int vn = readValueNumber(in, length);
+      if (!(result.values[vn] instanceof ConstantValue)) {
+        throw new IOException("constant " + vn + " has no value");
+      }
+      result.constants.put((ConstantValue) result.values[vn], vn);
+    }
+    return result;
+  }
+
+  private static int readValueNumber(DataInput in, int length) throws IOException {
+    int vn = in.readInt();
+    if (vn < 0 || vn >= length) {
+      throw new IOException("bad value number " + vn);
+    }
+    return vn;
+  }
+
   public SymbolTable copy() {
     try {
       SymbolTable nt = (SymbolTable) clone();
@@ -21,6 +21,7 @@ import java.util.jar.JarFile;
 import java.net.URI;
 
 import com.ibm.wala.classLoader.BinaryDirectoryTreeModule;
+import com.ibm.wala.classLoader.MappedJarFileModule;
 import com.ibm.wala.classLoader.Module;
 import com.ibm.wala.classLoader.SourceDirectoryTreeModule;
 import com.ibm.wala.ipa.callgraph.AnalysisScope;
@@ -172,6 +173,9 @@ public class AnalysisScopeReader {
     } else if ("jarFile".equals(entryType)) {
       Module M = fp.getJarFileModule(entryPathname, javaLoader);
       scope.addToScope(walaLoader, M);
+    } else if ("mappedJarFile".equals(entryType)) {
+      File jf = fp.getFile(entryPathname, javaLoader);
+      scope.addToScope(walaLoader, new MappedJarFileModule(new JarFile(jf, false)));
     } else if ("loaderImpl".equals(entryType)) {
       scope.setLoaderImpl(walaLoader, entryPathname);
     } else if ("stdlib".equals(entryType)) {
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2002,2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.shrike.bench;
+
+import com.ibm.wala.shrikeBT.ConstantInstruction;
+import com.ibm.wala.shrikeBT.IInstruction;
+import com.ibm.wala.shrikeBT.IInvokeInstruction;
+import com.ibm.wala.shrikeBT.Instruction;
+import com.ibm.wala.shrikeBT.MethodEditor;
+import com.ibm.wala.shrikeBT.Util;
+import com.ibm.wala.shrikeBT.shrikeCT.BatchInstrumenter;
+import com.ibm.wala.shrikeBT.shrikeCT.ClassInstrumenter;
+import com.ibm.wala.shrikeBT.shrikeCT.OfflineInstrumenter;
+
+/**
+ * This is a benchmark for whole-jar rewriting.
+ *
+ * Every call site in the input is preceded by a call to BatchBench.probe(site), where site is the index of the call instruction
+ * in its method. The classes are rewritten either by the classic loop over OfflineInstrumenter.nextClass(), with a fresh
+ * ClassWriter per class, or by a {@link BatchInstrumenter} with the given number of threads. Each run is repeated and timed.
+ *
+ * Run it like this: java com.ibm.wala.shrike.bench.BatchBench rt.jar -o output.jar [-threads n] [-classic] [-reps n]
+ */
+public class BatchBench {
+  static final Instruction callProbe = Util.makeInvoke(BatchBench.class, "probe", new Class<?>[] { int.class });
+
+  public static void probe(int site) {
+  }
+
+  private static final BatchInstrumenter.MethodPatcher patcher = new BatchInstrumenter.MethodPatcher() {
+    @Override
+    public void patch(ClassInstrumenter ci, int m, MethodEditor me) {
+      IInstruction[] instr = me.getInstructions();
+      for (int i = 0; i < instr.length; i++) {
+        if (instr[i] instanceof IInvokeInstruction) {
+          final int site = i;
+          me.insertBefore(i, new MethodEditor.Patch() {
+            @Override
+            public void emitTo(MethodEditor.Output w) {
+              w.emit(ConstantInstruction.make(site));
+              w.emit(callProbe);
+            }
+          });
+        }
+      }
+    }
+  };
+
+  public static void main(String[] args) throws Exception {
+    int threads = Runtime.getRuntime().availableProcessors();
+    int reps = 3;
+    boolean classic = false;
+
+    for (int rep = 0; rep < reps; rep++) {
+      OfflineInstrumenter instrumenter = new OfflineInstrumenter(true);
+      String[] leftover = instrumenter.parseStandardArgs(args);
+      for (int i = 0; i < leftover.length; i++) {
+        if (leftover[i].equals("-threads") && i + 1 < leftover.length) {
+          threads = Integer.parseInt(leftover[++i]);
+        } else if (leftover[i].equals("-reps") && i + 1 < leftover.length) {
+          reps = Integer.parseInt(leftover[++i]);
+        } else if (leftover[i].equals("-classic")) {
+          classic = true;
+        }
+      }
+
+      long start = System.currentTimeMillis();
+      int written = 0;
+      if (classic) {
+        instrumenter.beginTraversal();
+        BatchInstrumenter.ClassTransformer t = BatchInstrumenter.patchMethods(patcher);
+        ClassInstrumenter ci;
+        while ((ci = instrumenter.nextClass()) != null) {
+          t.transform(ci);
+          if (ci.isChanged()) {
+            instrumenter.outputModifiedClass(ci);
+            written++;
+          }
+        }
+      } else {
+        written = new BatchInstrumenter(instrumenter, threads).run(BatchInstrumenter.patchMethods(patcher));
+      }
+      instrumenter.close();
+      long time = System.currentTimeMillis() - start;
+
+      System.err.println((classic ? "classic" : ("batch, " + threads + " threads")) + ": " + written + " of "
+          + instrumenter.getNumInputClasses() + " inputs rewritten in " + time + "ms");
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2002,2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.shrike.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.ibm.wala.shrikeBT.MethodData;
+import com.ibm.wala.shrikeBT.analysis.Analyzer.FailureException;
+import com.ibm.wala.shrikeBT.analysis.ClassHierarchyStore;
+import com.ibm.wala.shrikeBT.analysis.TypeLattice;
+import com.ibm.wala.shrikeBT.analysis.Verifier;
+import com.ibm.wala.shrikeBT.shrikeCT.CTUtils;
+import com.ibm.wala.shrikeBT.shrikeCT.ClassInstrumenter;
+import com.ibm.wala.shrikeBT.shrikeCT.OfflineInstrumenter;
+
+/**
+ * This is a benchmark for the type questions the verifier asks of the class hierarchy.
+ *
+ * All the input classes go into one ClassHierarchyStore, and then every method is run through the Verifier, once answering type
+ * questions through the store's {@link TypeLattice} and once by walking the hierarchy. Each run is repeated and timed, and the
+ * types computed both ways are checked to be the same.
+ *
+ * Run it like this: java com.ibm.wala.shrike.bench.LatticeBench rt.jar [-reps n]
+ */
+public class LatticeBench {
+
+  public static void main(String[] args) throws Exception {
+    int reps = 3;
+
+    OfflineInstrumenter instrumenter = new OfflineInstrumenter(true);
+    String[] leftover = instrumenter.parseStandardArgs(args);
+    for (int i = 0; i < leftover.length; i++) {
+      if (leftover[i].equals("-reps") && i + 1 < leftover.length) {
+        reps = Integer.parseInt(leftover[++i]);
+      }
+    }
+
+    ClassHierarchyStore store = new ClassHierarchyStore();
+    ArrayList<MethodData> methods = new ArrayList<MethodData>();
+    instrumenter.beginTraversal();
+    ClassInstrumenter ci;
+    while ((ci = instrumenter.nextClass()) != null) {
+      CTUtils.addClassToHierarchy(store, ci.getReader());
+      for (int i = 0; i < ci.getReader().getMethodCount(); i++) {
+        MethodData d = ci.visitMethod(i);
+        if (d != null) {
+          methods.add(d);
+        }
+      }
+    }
+    instrumenter.close();
+
+    for (int rep = 0; rep < reps; rep++) {
+      int latticeHash = 0;
+      int walkHash = 0;
+      for (boolean useTypeLattice : new boolean[] { true, false }) {
+        long start = System.currentTimeMillis();
+        int hash = 0;
+        int failed = 0;
+        for (MethodData d : methods) {
+          Verifier v = new Verifier(d);
+          v.setClassHierarchy(store);
+          v.setUseTypeLattice(useTypeLattice);
+          try {
+            v.computeTypes();
+          } catch (FailureException e) {
+            failed++;
+          }
+          hash = 31 * hash + Arrays.deepHashCode(v.getLocalTypes());
+          hash = 31 * hash + Arrays.deepHashCode(v.getStackTypes());
+        }
+        long time = System.currentTimeMillis() - start;
+        if (useTypeLattice) {
+          latticeHash = hash;
+        } else {
+          walkHash = hash;
+        }
+
+        System.err.println((useTypeLattice ? "lattice" : "hierarchy walk") + ": " + methods.size() + " methods (" + failed
+            + " failed) in " + time + "ms");
+      }
+
+      if (latticeHash != walkHash) {
+        System.err.println("types differ between the lattice and the hierarchy walk");
+        System.exit(1);
+      }
+    }
+  }
+}
@@ -458,20 +458,23 @@ public abstract class Compiler implements Constants {
     return true;
   }
 
-  private static byte[] cachedBuf;
+  /**
+   * one scratch code buffer per thread, so that methods compiled concurrently don't each allocate a fresh 64K buffer
+   */
+  private static final ThreadLocal<byte[]> cachedBuf = new ThreadLocal<byte[]>();
 
-  private static synchronized byte[] makeCodeBuf() {
-    if (cachedBuf != null) {
-      byte[] result = cachedBuf;
-      cachedBuf = null;
+  private static byte[] makeCodeBuf() {
+    byte[] result = cachedBuf.get();
+    if (result != null) {
+      cachedBuf.set(null);
       return result;
     } else {
       return new byte[65535];
     }
   }
 
-  private static synchronized void releaseCodeBuf(byte[] buf) {
-    cachedBuf = buf;
+  private static void releaseCodeBuf(byte[] buf) {
+    cachedBuf.set(buf);
   }
 
   private boolean outputInstructions(int startInstruction, int endInstruction, int startOffset, boolean farBranches,
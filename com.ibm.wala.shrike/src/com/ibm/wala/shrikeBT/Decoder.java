@@ -50,6 +50,14 @@ public abstract class Decoder implements Constants {
   /** This holds predecoded instructions for the single-byte instructions. */
   private final static Instruction[] simpleInstructions = makeSimpleInstructions();
 
+  /**
+   * @return the shared instruction that decodes the single-byte instruction with the given opcode, or null if the opcode takes
+   *         operands or depends on the stack
+   */
+  static Instruction getSimpleInstruction(int opcode) {
+    return simpleInstructions[opcode];
+  }
+
   private static Instruction[] makeSimpleInstructions() {
     Instruction[] table = new Instruction[256];
 
@@ -0,0 +1,496 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.shrikeBT;
+
+import com.ibm.wala.shrikeBT.Decoder.InvalidBytecodeException;
+import com.ibm.wala.shrikeBT.IInvokeInstruction.Dispatch;
+
+/**
+ * A StreamingDecoder walks a method's Java bytecode in a single linear pass and reports the interesting instructions to a
+ * {@link Visitor}, without building Instruction objects, handler arrays or instruction-to-bytecode maps.
+ *
+ * It is meant for analysis-only clients that just want to collect, say, the call sites, field accesses and allocation sites of a
+ * method. Each callback receives the same {@link InstructionView}, which describes the current instruction only until the callback
+ * returns; operands are read out of the bytecode and constant pool on demand.
+ *
+ * Unlike the {@link Decoder}, this class does not follow control flow, so it does not inline subroutines, and it also reports
+ * instructions in unreachable code. It performs only the checks needed to find instruction boundaries.
+ *
+ * Normal usage of this class looks like this:
+ *
+ * <pre>
+ *
+ *    StreamingDecoder d = new StreamingDecoder(bytecode, constantPool);
+ *    try {
+ *      d.scan(myVisitor);
+ *    } catch (Decoder.InvalidBytecodeException ex) {
+ *      ...
+ *    }
+ *
+ * </pre>
+ */
+public final class StreamingDecoder implements Constants {
+
+  /**
+   * length of each fixed-length instruction, indexed by opcode; 0 for the variable-length and unknown ones
+   */
+  private final static byte[] lengths = makeLengths();
+
+  /**
+   * array types allocated by newarray, indexed by the T_ code of the element type
+   */
+  private final static String[] newarrayTypes = makeNewarrayTypes();
+
+  /**
+   * an instruction with the same opcode as each kind of PEI, indexed by opcode
+   */
+  private final static Instruction[] prototypes = makePrototypes();
+
+  private final static Instruction classConstantPrototype = ConstantInstruction.makeClass(TYPE_Object);
+
+  private static byte[] makeLengths() {
+    byte[] table = new byte[256];
+    for (int i = OP_nop; i <= OP_jsr_w; i++) {
+      table[i] = 1;
+    }
+    table[OP_bipush] = 2;
+    table[OP_ldc] = 2;
+    table[OP_sipush] = 3;
+    table[OP_ldc_w] = 3;
+    table[OP_ldc2_w] = 3;
+    for (int i = OP_iload; i <= OP_aload; i++) {
+      table[i] = 2;
+    }
+    for (int i = OP_istore; i <= OP_astore; i++) {
+      table[i] = 2;
+    }
+    table[OP_iinc] = 3;
+    for (int i = OP_ifeq; i <= OP_jsr; i++) {
+      table[i] = 3;
+    }
+    table[OP_ret] = 2;
+    table[OP_tableswitch] = 0;
+    table[OP_lookupswitch] = 0;
+    for (int i = OP_getstatic; i <= OP_invokestatic; i++) {
+      table[i] = 3;
+    }
+    table[OP_invokeinterface] = 5;
+    table[OP_invokedynamic] = 5;
+    table[OP_new] = 3;
+    table[OP_newarray] = 2;
+    table[OP_anewarray] = 3;
+    table[OP_checkcast] = 3;
+    table[OP_instanceof] = 3;
+    table[OP_wide] = 0;
+    table[OP_multianewarray] = 4;
+    table[OP_ifnull] = 3;
+    table[OP_ifnonnull] = 3;
+    table[OP_goto_w] = 5;
+    table[OP_jsr_w] = 5;
+    return table;
+  }
+
+  private static String[] makeNewarrayTypes() {
+    String[] table = new String[T_LONG + 1];
+    for (int i = 0; i < indexedTypes_T.length; i++) {
+      if (indexedTypes_T[i] != 0) {
+        table[indexedTypes_T[i]] = Util.makeArray(indexedTypes[i]);
+      }
+    }
+    return table;
+  }
+
+  private static Instruction[] makePrototypes() {
+    Instruction[] table = new Instruction[256];
+    for (int i = 0; i < table.length; i++) {
+      Instruction s = Decoder.getSimpleInstruction(i);
+      if (s != null && s.isPEI()) {
+        table[i] = s;
+      }
+    }
+    table[OP_getfield] = GetInstruction.make(TYPE_int, TYPE_Object, "prototype", false);
+    table[OP_putfield] = PutInstruction.make(TYPE_int, TYPE_Object, "prototype", false);
+    table[OP_invokevirtual] = InvokeInstruction.make("()V", TYPE_Object, "prototype", Dispatch.VIRTUAL);
+    table[OP_invokespecial] = InvokeInstruction.make("()V", TYPE_Object, "prototype", Dispatch.SPECIAL);
+    table[OP_invokestatic] = InvokeInstruction.make("()V", TYPE_Object, "prototype", Dispatch.STATIC);
+    table[OP_invokeinterface] = InvokeInstruction.make("()V", TYPE_Object, "prototype", Dispatch.INTERFACE);
+    table[OP_invokedynamic] = new InvokeDynamicInstruction(OP_invokedynamic, null, "prototype", "()V");
+    table[OP_new] = NewInstruction.make(TYPE_Object, 0);
+    table[OP_newarray] = NewInstruction.make(Util.makeArray(TYPE_int), 1);
+    table[OP_anewarray] = NewInstruction.make(Util.makeArray(TYPE_Object), 1);
+    table[OP_multianewarray] = NewInstruction.make(Util.makeArray(Util.makeArray(TYPE_Object)), 2);
+    table[OP_checkcast] = CheckCastInstruction.make(TYPE_Object);
+    return table;
+  }
+
+  /**
+   * Clients override the callbacks for the kinds of instructions they care about. The view passed to a callback is only valid until
+   * the callback returns.
+   */
+  public static abstract class Visitor {
+    public void visitInvoke(InstructionView instruction) {
+    }
+
+    public void visitGet(InstructionView instruction) {
+    }
+
+    public void visitPut(InstructionView instruction) {
+    }
+
+    public void visitNew(InstructionView instruction) {
+    }
+
+    public void visitArrayLoad(InstructionView instruction) {
+    }
+
+    public void visitArrayStore(InstructionView instruction) {
+    }
+
+    public void visitCheckCast(InstructionView instruction) {
+    }
+
+    public void visitMonitor(InstructionView instruction) {
+    }
+
+    /**
+     * Called for every instruction that may throw an exception, after the callback for its kind (if any).
+     */
+    public void visitPEI(InstructionView instruction) {
+    }
+  }
+
+  /**
+   * A flyweight describing the instruction currently being visited. The accessors mirror the ones of the corresponding Instruction
+   * classes; each one is only meaningful for the kinds of instructions noted.
+   */
+  public final class InstructionView {
+    private int pc;
+
+    private int opcode;
+
+    private InstructionView() {
+    }
+
+    /**
+     * @return the bytecode offset of this instruction (of the wide prefix, if any)
+     */
+    public int getProgramCounter() {
+      return pc;
+    }
+
+    /**
+     * @return the JVM opcode of this instruction; note that this is OP_wide for a wide instruction
+     */
+    public int getOpcode() {
+      return opcode;
+    }
+
+    private int getCPIndex() {
+      return decodeUShort(pc + 1);
+    }
+
+    public boolean isPEI() {
+      switch (opcode) {
+      case OP_ldc:
+        return constantPool.getConstantPoolItemType(code[pc + 1] & 0xFF) == CONSTANT_Class;
+      case OP_ldc_w:
+        return constantPool.getConstantPoolItemType(getCPIndex()) == CONSTANT_Class;
+      default:
+        return prototypes[opcode] != null;
+      }
+    }
+
+    /**
+     * Valid for PEIs only.
+     *
+     * @return a shared instruction with the same opcode, for clients that classify PEIs by opcode (e.g., to find the implicit
+     *         exception types). Its operands have nothing to do with those of this instruction.
+     */
+    public IInstruction getPrototype() {
+      if (opcode == OP_ldc || opcode == OP_ldc_w) {
+        return classConstantPrototype;
+      } else {
+        return prototypes[opcode];
+      }
+    }
+
+    /**
+     * Valid for invokes and field accesses.
+     */
+    public String getClassType() {
+      if (opcode == OP_invokedynamic) {
+        return constantPool.getConstantPoolDynamicBootstrap(getCPIndex()).methodClass();
+      } else {
+        return constantPool.getConstantPoolMemberClassType(getCPIndex());
+      }
+    }
+
+    /**
+     * Valid for invokes.
+     */
+    public String getMethodName() {
+      if (opcode == OP_invokedynamic) {
+        return constantPool.getConstantPoolDynamicName(getCPIndex());
+      } else {
+        return constantPool.getConstantPoolMemberName(getCPIndex());
+      }
+    }
+
+    /**
+     * Valid for invokes.
+     */
+    public String getMethodSignature() {
+      if (opcode == OP_invokedynamic) {
+        return constantPool.getConstantPoolDynamicType(getCPIndex());
+      } else {
+        return constantPool.getConstantPoolMemberType(getCPIndex());
+      }
+    }
+
+    /**
+     * Valid for invokes.
+     */
+    public Dispatch getInvocationCode() {
+      switch (opcode) {
+      case OP_invokevirtual:
+        return Dispatch.VIRTUAL;
+      case OP_invokespecial:
+        return Dispatch.SPECIAL;
+      case OP_invokestatic:
+        return Dispatch.STATIC;
+      case OP_invokeinterface:
+        return Dispatch.INTERFACE;
+      default:
+        int invokeType = constantPool.getConstantPoolDynamicBootstrap(getCPIndex()).invokeType();
+        switch (invokeType) {
+        case 5:
+          return Dispatch.VIRTUAL;
+        case 6:
+          return Dispatch.STATIC;
+        case 7:
+          return Dispatch.SPECIAL;
+        case 9:
+          return Dispatch.INTERFACE;
+        default:
+          throw new Error("unexpected dynamic invoke type " + invokeType);
+        }
+      }
+    }
+
+    /**
+     * Valid for field accesses.
+     */
+    public String getFieldName() {
+      return constantPool.getConstantPoolMemberName(getCPIndex());
+    }
+
+    /**
+     * Valid for field accesses.
+     */
+    public String getFieldType() {
+      return constantPool.getConstantPoolMemberType(getCPIndex());
+    }
+
+    /**
+     * Valid for field accesses.
+     */
+    public boolean isStatic() {
+      return opcode == OP_getstatic || opcode == OP_putstatic;
+    }
+
+    /**
+     * Valid for allocations, array accesses and casts.
+     *
+     * @return the allocated type, the array element type or the type cast to, respectively
+     */
+    public String getType() {
+      switch (opcode) {
+      case OP_new:
+      case OP_checkcast:
+      case OP_multianewarray:
+        return constantPool.getConstantPoolClassType(getCPIndex());
+      case OP_newarray:
+        return newarrayTypes[code[pc + 1]];
+      case OP_anewarray:
+        return Util.makeArray(constantPool.getConstantPoolClassType(getCPIndex()));
+      default:
+        if (opcode >= OP_iaload && opcode <= OP_saload) {
+          return indexedTypes[opcode - OP_iaload];
+        } else {
+          return indexedTypes[opcode - OP_iastore];
+        }
+      }
+    }
+
+    /**
+     * Valid for allocations.
+     */
+    public int getArrayBoundsCount() {
+      switch (opcode) {
+      case OP_new:
+        return 0;
+      case OP_multianewarray:
+        return code[pc + 3] & 0xFF;
+      default:
+        return 1;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Instruction " + getOpcode() + " at " + pc;
+    }
+  }
+
+  private final byte[] code;
+
+  private final ConstantPoolReader constantPool;
+
+  private final InstructionView view = new InstructionView();
+
+  /**
+   * @param code the bytecode of the method
+   * @param constantPool the constant pool of the method's class
+   * @throws IllegalArgumentException if code or constantPool is null
+   */
+  public StreamingDecoder(byte[] code, ConstantPoolReader constantPool) throws IllegalArgumentException {
+    if (code == null) {
+      throw new IllegalArgumentException("null code");
+    }
+    if (constantPool == null) {
+      throw new IllegalArgumentException("null constantPool");
+    }
+    this.code = code;
+    this.constantPool = constantPool;
+  }
+
+  private int decodeUShort(int index) {
+    return ((code[index] & 0xFF) << 8) | (code[index + 1] & 0xFF);
+  }
+
+  private int decodeInt(int index) {
+    return (code[index] << 24) | ((code[index + 1] & 0xFF) << 16) | ((code[index + 2] & 0xFF) << 8) | (code[index + 3] & 0xFF);
+  }
+
+  /**
+   * Visit each instruction of the method, in bytecode order.
+   *
+   * @throws InvalidBytecodeException if the bytecode cannot be split into instructions
+   * @throws IllegalArgumentException if v is null
+   */
+  public void scan(Visitor v) throws InvalidBytecodeException {
+    if (v == null) {
+      throw new IllegalArgumentException("null v");
+    }
+    int index = 0;
+    while (index < code.length) {
+      int opcode = code[index] & 0xFF;
+      int next = index + nextInstructionOffset(index, opcode);
+      if (next > code.length) {
+        throw new InvalidBytecodeException(index, "Fell off end of bytecode array");
+      }
+      view.pc = index;
+      view.opcode = opcode;
+      switch (opcode) {
+      case OP_getstatic:
+      case OP_getfield:
+        v.visitGet(view);
+        break;
+      case OP_putstatic:
+      case OP_putfield:
+        v.visitPut(view);
+        break;
+      case OP_invokevirtual:
+      case OP_invokespecial:
+      case OP_invokestatic:
+      case OP_invokeinterface:
+      case OP_invokedynamic:
+        v.visitInvoke(view);
+        break;
+      case OP_new:
+      case OP_newarray:
+      case OP_anewarray:
+      case OP_multianewarray:
+        v.visitNew(view);
+        break;
+      case OP_checkcast:
+        v.visitCheckCast(view);
+        break;
+      case OP_monitorenter:
+      case OP_monitorexit:
+        v.visitMonitor(view);
+        break;
+      default:
+        if (opcode >= OP_iaload && opcode <= OP_saload) {
+          v.visitArrayLoad(view);
+        } else if (opcode >= OP_iastore && opcode <= OP_sastore) {
+          v.visitArrayStore(view);
+        }
+      }
+      if (view.isPEI()) {
+        v.visitPEI(view);
+      }
+      index = next;
+    }
+  }
+
+  /**
+   * @return the length of the instruction at index
+   */
+  private int nextInstructionOffset(int index, int opcode) throws InvalidBytecodeException {
+    int length = lengths[opcode];
+    if (length != 0) {
+      return length;
+    }
+    switch (opcode) {
+    case OP_wide:
+      if (index + 1 >= code.length) {
+        throw new InvalidBytecodeException(index, "Fell off end of bytecode array");
+      }
+      return (code[index + 1] & 0xFF) == OP_iinc ? 6 : 4;
+    case OP_tableswitch: {
+      int p = (index + 4) & ~3;
+      if (p + 12 > code.length) {
+        throw new InvalidBytecodeException(index, "Fell off end of bytecode array");
+      }
+      int low = decodeInt(p + 4);
+      int high = decodeInt(p + 8);
+      if (high < low) {
+        throw new InvalidBytecodeException(index, "Bad tableswitch range " + low + ".." + high);
+      }
+      return switchLength(index, p - index + 12 + ((long) high - low + 1) * 4);
+    }
+    case OP_lookupswitch: {
+      int p = (index + 4) & ~3;
+      if (p + 8 > code.length) {
+        throw new InvalidBytecodeException(index, "Fell off end of bytecode array");
+      }
+      int n = decodeInt(p + 4);
+      if (n < 0) {
+        throw new InvalidBytecodeException(index, "Bad lookupswitch pair count " + n);
+      }
+      return switchLength(index, p - index + 8 + (long) n * 8);
+    }
+    default:
+      throw new InvalidBytecodeException(index, "Unknown opcode " + opcode);
+    }
+  }
+
+  /**
+   * @return the length of the switch at index, if it ends within the bytecode
+   */
+  private int switchLength(int index, long length) throws InvalidBytecodeException {
+    if (index + length > code.length) {
+      throw new InvalidBytecodeException(index, "Fell off end of bytecode array");
+    }
+    return (int) length;
+  }
+}
@@ -56,6 +56,10 @@ public class Analyzer {
 
   protected ClassHierarchyProvider hierarchy;
 
+  private TypeLattice lattice;
+
+  private boolean useTypeLattice = true;
+
   // working
   protected int maxStack;
 
@@ -109,6 +113,14 @@ public class Analyzer {
     this.hierarchy = h;
   }
 
+  /**
+   * Answer type questions through a {@link TypeLattice} (the default), or by walking the class hierarchy every time. Both give the
+   * same answers; walking the hierarchy is slower, and is kept to check and measure the lattice against.
+   */
+  final public void setUseTypeLattice(boolean use) {
+    this.useTypeLattice = use;
+  }
+
   private void addBackEdge(int from, int to) {
     int[] oldEdges = backEdges[from];
     if (oldEdges == null) {
@@ -194,8 +206,25 @@ public class Analyzer {
     }
   }
   
+  /**
+   * @return the lattice used to answer type questions about the current hierarchy; a {@link ClassHierarchyStore} shares its
+   *         lattice among all analyzers using it
+   */
+  private TypeLattice getTypeLattice() {
+    if (hierarchy instanceof ClassHierarchyStore) {
+      return ((ClassHierarchyStore) hierarchy).getTypeLattice();
+    }
+    if (lattice == null || lattice.getHierarchy() != hierarchy) {
+      lattice = new TypeLattice(hierarchy);
+    }
+    return lattice;
+  }
+
   final public boolean isSubtypeOf(String t1, String t2) {
-    return ClassHierarchy.isSubtypeOf(hierarchy, patchType(t1), patchType(t2)) != ClassHierarchy.NO;
+    if (!useTypeLattice) {
+      return ClassHierarchy.isSubtypeOf(hierarchy, patchType(t1), patchType(t2)) != ClassHierarchy.NO;
+    }
+    return getTypeLattice().isSubtypeOf(patchType(t1), patchType(t2)) != ClassHierarchy.NO;
   }
 
   private boolean isPrimitive(String type) {
@@ -224,7 +253,8 @@ public class Analyzer {
       return topType;
     }
     
-    String x = ClassHierarchy.findCommonSupertype(hierarchy, patchType(t1), patchType(t2));
+    String x = useTypeLattice ? getTypeLattice().findCommonSupertype(patchType(t1), patchType(t2)) : ClassHierarchy
+        .findCommonSupertype(hierarchy, patchType(t1), patchType(t2));
 
     if (String.valueOf(t1).contains("groovy/lang/GroovyObject") || String.valueOf(t2).contains("groovy/lang/GroovyObject")) {
       System.err.println(t1 + " -- " + t2 + " --> " + x); 
@@ -41,6 +41,12 @@ public final class ClassHierarchyStore implements ClassHierarchyProvider {
 
   final private HashMap<String, ClassInfo> contents = new HashMap<String, ClassInfo>();
 
+  /**
+   * cached type operations over the current contents; discarded whenever the contents change. Analyzers in several threads may
+   * ask for it at once, so it is published through a volatile field.
+   */
+  private volatile TypeLattice lattice;
+
   /**
    * Create an empty store.
    */
@@ -62,6 +68,7 @@ public final class ClassHierarchyStore implements ClassHierarchyProvider {
       throw new IllegalArgumentException("Class " + cl + " cannot be its own superclass");
     }
     contents.put(cl, new ClassInfo(isInterface, isFinal, superClass, superInterfaces));
+    lattice = null;
   }
 
   /**
@@ -69,6 +76,24 @@ public final class ClassHierarchyStore implements ClassHierarchyProvider {
    */
   public void removeClassInfo(String cl) {
     contents.remove(cl);
+    lattice = null;
+  }
+
+  /**
+   * Get the lattice caching type operations over this store. The same lattice is returned until class information is next added
+   * or removed.
+   */
+  public TypeLattice getTypeLattice() {
+    TypeLattice l = lattice;
+    if (l == null) {
+      synchronized (this) {
+        l = lattice;
+        if (l == null) {
+          lattice = l = new TypeLattice(this);
+        }
+      }
+    }
+    return l;
   }
 
   /**
@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.shrikeBT.analysis;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.wala.shrikeBT.Constants;
+
+/**
+ * This class memoizes the type operations of {@link ClassHierarchy} for a single class hierarchy.
+ * 
+ * Types are interned to dense integer ids the first time they are seen, and the answers to subtype checks and common supertype
+ * computations are kept in tables indexed by pairs of ids. A verifier merges the same few pairs of types over and over, so after
+ * warming up almost every merge is a table lookup instead of a walk over the hierarchy.
+ * 
+ * The cached answers are only valid while the hierarchy does not change. {@link ClassHierarchyStore} therefore drops its lattice
+ * whenever class information is added or removed; other providers should get a fresh lattice if their information changes.
+ * 
+ * A lattice may be shared by analyzers running in different threads. The type ids are shared by all threads, and only allocating
+ * the id of a new type takes a lock; each thread keeps its own tables of answers, so lookups never wait for another thread.
+ */
+public final class TypeLattice {
+  /**
+   * The id returned by {@link #findCommonSupertype(int, int)} when the types have no common supertype
+   */
+  public static final int NO_TYPE = -1;
+
+  private static final int MISSING = Integer.MIN_VALUE;
+
+  final private ClassHierarchyProvider hierarchy;
+
+  final private ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+  /**
+   * the type of each id; a new type is stored before its id is published in ids
+   */
+  private volatile String[] types = new String[64];
+
+  /**
+   * guarded by this
+   */
+  private int typeCount = 0;
+
+  final private ThreadLocal<PairTable> subtypes = new ThreadLocal<PairTable>() {
+    @Override
+    protected PairTable initialValue() {
+      return new PairTable();
+    }
+  };
+
+  final private ThreadLocal<PairTable> supertypes = new ThreadLocal<PairTable>() {
+    @Override
+    protected PairTable initialValue() {
+      return new PairTable();
+    }
+  };
+
+  /**
+   * @param hierarchy the hierarchy information to use, or null to answer only the questions that need no hierarchy
+   */
+  public TypeLattice(ClassHierarchyProvider hierarchy) {
+    this.hierarchy = hierarchy;
+  }
+
+  /**
+   * @return the hierarchy whose answers this lattice caches
+   */
+  public ClassHierarchyProvider getHierarchy() {
+    return hierarchy;
+  }
+
+  /**
+   * @return the dense id of the given JVM type, allocating one if the type has not been seen before
+   */
+  public int getTypeId(String type) {
+    if (type == null) {
+      throw new IllegalArgumentException("null type");
+    }
+    Integer id = ids.get(type);
+    if (id != null) {
+      return id.intValue();
+    }
+    return allocateTypeId(type);
+  }
+
+  private synchronized int allocateTypeId(String type) {
+    Integer id = ids.get(type);
+    if (id != null) {
+      return id.intValue();
+    }
+    String[] t = types;
+    if (typeCount == t.length) {
+      t = Arrays.copyOf(t, 2 * t.length);
+    }
+    t[typeCount] = type;
+    types = t;
+    ids.put(type, typeCount);
+    return typeCount++;
+  }
+
+  /**
+   * @return the JVM type with the given id
+   */
+  public String getType(int id) {
+    String[] t = types;
+    if (id < 0 || id >= t.length || t[id] == null) {
+      throw new IllegalArgumentException("bad type id " + id);
+    }
+    return t[id];
+  }
+
+  /**
+   * Perform subtype check on interned types.
+   * 
+   * @return whether the type t1 is a subtype of the type t2 (YES, NO, MAYBE)
+   * @see ClassHierarchy#isSubtypeOf(ClassHierarchyProvider, String, String)
+   */
+  public int isSubtypeOf(int t1, int t2) {
+    if (t1 == t2) {
+      return Constants.YES;
+    }
+    PairTable table = subtypes.get();
+    long key = key(t1, t2);
+    int r = table.get(key);
+    if (r == MISSING) {
+      r = ClassHierarchy.isSubtypeOf(hierarchy, getType(t1), getType(t2));
+      table.put(key, r);
+    }
+    return r;
+  }
+
+  /**
+   * Compute the most specific common supertype of interned types.
+   * 
+   * @return the id of the most specific common supertype of t1 and t2, or NO_TYPE if there is none
+   * @see ClassHierarchy#findCommonSupertype(ClassHierarchyProvider, String, String)
+   */
+  public int findCommonSupertype(int t1, int t2) {
+    if (t1 == t2) {
+      return t1;
+    }
+    PairTable table = supertypes.get();
+    long key = key(t1, t2);
+    int r = table.get(key);
+    if (r == MISSING) {
+      String s = ClassHierarchy.findCommonSupertype(hierarchy, getType(t1), getType(t2));
+      r = s == null ? NO_TYPE : getTypeId(s);
+      table.put(key, r);
+    }
+    return r;
+  }
+
+  /**
+   * Perform subtype check; this answers exactly as {@link ClassHierarchy#isSubtypeOf(ClassHierarchyProvider, String, String)}.
+   * 
+   * @param t1 a type in JVM format
+   * @param t2 a type in JVM format
+   * @return whether t1 is a subtype of t2 (YES, NO, MAYBE)
+   */
+  public int isSubtypeOf(String t1, String t2) {
+    if (t1 == null || t2 == null) {
+      return Constants.NO;
+    } else if (t1.equals(t2)) {
+      return Constants.YES;
+    } else {
+      return isSubtypeOf(getTypeId(t1), getTypeId(t2));
+    }
+  }
+
+  /**
+   * Compute the most specific common supertype; this answers exactly as
+   * {@link ClassHierarchy#findCommonSupertype(ClassHierarchyProvider, String, String)}. When the answer is one of the arguments, that
+   * argument itself is returned.
+   * 
+   * @param t1 a type in JVM format
+   * @param t2 a type in JVM format
+   * @return the most specific common supertype of t1 and t2, or TYPE_unknown if it cannot be determined or cannot be represented as
+   *         a Java type, or null if there is no common supertype
+   */
+  public String findCommonSupertype(String t1, String t2) {
+    if (t1 == null || t2 == null) {
+      return null;
+    } else if (t1.equals(t2)) {
+      return t1;
+    }
+    int r = findCommonSupertype(getTypeId(t1), getTypeId(t2));
+    if (r == NO_TYPE) {
+      return null;
+    }
+    String s = getType(r);
+    if (s.equals(t1)) {
+      return t1;
+    } else if (s.equals(t2)) {
+      return t2;
+    } else {
+      return s;
+    }
+  }
+
+  private static long key(int t1, int t2) {
+    return ((long) t1 << 32) | (t2 & 0xffffffffL);
+  }
+
+  /**
+   * An open-addressing map from pairs of type ids to ints. Keys are never negative, so -1 marks an empty slot.
+   */
+  private static final class PairTable {
+    private long[] keys;
+
+    private int[] values;
+
+    private int size = 0;
+
+    PairTable() {
+      keys = new long[256];
+      values = new int[256];
+      Arrays.fill(keys, -1L);
+    }
+
+    private static int slot(long key, int mask) {
+      long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h >>> 32) & mask;
+    }
+
+    int get(long key) {
+      int mask = keys.length - 1;
+      for (int i = slot(key, mask);; i = (i + 1) & mask) {
+        long k = keys[i];
+        if (k == key) {
+          return values[i];
+        } else if (k == -1L) {
+          return MISSING;
+        }
+      }
+    }
+
+    void put(long key, int value) {
+      if (2 * (size + 1) > keys.length) {
+        grow();
+      }
+      int mask = keys.length - 1;
+      for (int i = slot(key, mask);; i = (i + 1) & mask) {
+        long k = keys[i];
+        if (k == key) {
+          values[i] = value;
+          return;
+        } else if (k == -1L) {
+          keys[i] = key;
+          values[i] = value;
+          size++;
+          return;
+        }
+      }
+    }
+
+    private void grow() {
+      long[] oldKeys = keys;
+      int[] oldValues = values;
+      keys = new long[2 * oldKeys.length];
+      values = new int[2 * oldValues.length];
+      Arrays.fill(keys, -1L);
+      size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != -1L) {
+          put(oldKeys[i], oldValues[i]);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2002,2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.shrikeBT.shrikeCT;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.ibm.wala.shrikeBT.MethodData;
+import com.ibm.wala.shrikeBT.MethodEditor;
+import com.ibm.wala.shrikeCT.ClassWriter;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+
+/**
+ * This class rewrites every class of an {@link OfflineInstrumenter} in parallel. It is meant for whole-jar transforms, such as
+ * inserting a probe at every call site, where writing each class out again costs as much as the rewriting itself.
+ *
+ * Classes are read from the instrumenter in batches by the calling thread, transformed and compiled by a pool of worker threads,
+ * and written to the output jar by the calling thread in the order they were read. Each worker keeps one ClassWriter, which is
+ * reset rather than recreated between classes, so its constant pool table and member lists are only grown for the first few
+ * classes.
+ *
+ * Transforms are called concurrently, but each class is handed to exactly one worker; transforms must not share mutable state
+ * without synchronizing it. The ClassHierarchyProvider given to the instrumenter is shared by all workers, so it should not be
+ * changed while a batch runs. When it is a ClassHierarchyStore, the workers also share its TypeLattice, whose answers each worker
+ * caches in tables of its own.
+ */
+public final class BatchInstrumenter {
+  /**
+   * Implement this interface to rewrite whole classes; see {@link ClassInstrumenter#visitMethod(int)} and {@link MethodEditor}.
+   */
+  public static interface ClassTransformer {
+    /**
+     * Rewrite the methods of ci. The class is written to the output only if some method was changed.
+     */
+    public void transform(ClassInstrumenter ci) throws InvalidClassFileException;
+  }
+
+  /**
+   * Implement this interface to patch methods one at a time; see {@link #patchMethods(MethodPatcher)}.
+   */
+  public static interface MethodPatcher {
+    /**
+     * Insert patches into method m of ci. This is called during a pass of me; the patches are applied after it returns.
+     */
+    public void patch(ClassInstrumenter ci, int m, MethodEditor me) throws InvalidClassFileException;
+  }
+
+  /**
+   * number of classes read before their results are written out
+   */
+  private static final int CLASSES_PER_WORKER = 64;
+
+  private final OfflineInstrumenter instrumenter;
+
+  private final int nThreads;
+
+  /**
+   * one writer per worker thread, reset between classes
+   */
+  private final ThreadLocal<ClassWriter> writers = new ThreadLocal<ClassWriter>() {
+    @Override
+    protected ClassWriter initialValue() {
+      return new ClassWriter();
+    }
+  };
+
+  /**
+   * @param instrumenter the classes to rewrite, and where to write them
+   * @param nThreads the number of worker threads; with 1, everything is done in the calling thread
+   * @throws IllegalArgumentException if instrumenter is null
+   */
+  public BatchInstrumenter(OfflineInstrumenter instrumenter, int nThreads) {
+    if (instrumenter == null) {
+      throw new IllegalArgumentException("instrumenter is null");
+    }
+    if (nThreads < 1) {
+      throw new IllegalArgumentException("invalid number of threads: " + nThreads);
+    }
+    this.instrumenter = instrumenter;
+    this.nThreads = nThreads;
+  }
+
+  /**
+   * Make a ClassTransformer which runs one MethodEditor pass over every method with code, letting p insert patches.
+   *
+   * @throws IllegalArgumentException if p is null
+   */
+  public static ClassTransformer patchMethods(final MethodPatcher p) {
+    if (p == null) {
+      throw new IllegalArgumentException("p is null");
+    }
+    return new ClassTransformer() {
+      @Override
+      public void transform(ClassInstrumenter ci) throws InvalidClassFileException {
+        int count = ci.getReader().getMethodCount();
+        for (int m = 0; m < count; m++) {
+          MethodData d = ci.visitMethod(m);
+          // d is null for abstract and native methods
+          if (d != null) {
+            MethodEditor me = new MethodEditor(d);
+            me.beginPass();
+            p.patch(ci, m, me);
+            me.applyPatches();
+            me.endPass();
+          }
+        }
+      }
+    };
+  }
+
+  /**
+   * Rewrite every class of the instrumenter, from the beginning of its class list, and write the changed classes to its output
+   * jar. The instrumenter is not closed.
+   *
+   * @return the number of classes written
+   * @throws IllegalArgumentException if t is null
+   */
+  public int run(final ClassTransformer t) throws IOException {
+    if (t == null) {
+      throw new IllegalArgumentException("t is null");
+    }
+    instrumenter.beginTraversal();
+    if (nThreads == 1) {
+      int written = 0;
+      ClassInstrumenter ci;
+      while ((ci = instrumenter.nextClass()) != null) {
+        byte[] bytes;
+        try {
+          bytes = rewrite(ci, t);
+        } catch (InvalidClassFileException e) {
+          throw new IOException("Class is invalid: " + e.getMessage());
+        }
+        if (bytes != null) {
+          instrumenter.outputModifiedClass(ci, bytes);
+          written++;
+        }
+      }
+      return written;
+    }
+
+    ExecutorService workers = Executors.newFixedThreadPool(nThreads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "Shrike batch instrumenter");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      int written = 0;
+      ArrayList<ClassInstrumenter> batch = new ArrayList<ClassInstrumenter>();
+      ArrayList<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+      boolean more = true;
+      while (more) {
+        batch.clear();
+        results.clear();
+        while (batch.size() < nThreads * CLASSES_PER_WORKER) {
+          final ClassInstrumenter ci = instrumenter.nextClass();
+          if (ci == null) {
+            more = false;
+            break;
+          }
+          batch.add(ci);
+          results.add(workers.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws InvalidClassFileException {
+              return rewrite(ci, t);
+            }
+          }));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+          byte[] bytes = getResult(results.get(i));
+          if (bytes != null) {
+            instrumenter.outputModifiedClass(batch.get(i), bytes);
+            written++;
+          }
+        }
+      }
+      return written;
+    } finally {
+      workers.shutdownNow();
+    }
+  }
+
+  /**
+   * Transform one class and compile it with this thread's writer.
+   *
+   * @return the new class file, or null if the class was not changed
+   */
+  private byte[] rewrite(ClassInstrumenter ci, ClassTransformer t) throws InvalidClassFileException {
+    t.transform(ci);
+    if (!ci.isChanged()) {
+      return null;
+    }
+    ClassWriter w = writers.get();
+    try {
+      return ci.emitClass(w).makeBytes();
+    } finally {
+      w.reset();
+    }
+  }
+
+  private static byte[] getResult(Future<byte[]> f) throws IOException {
+    try {
+      return f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while rewriting classes");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof InvalidClassFileException) {
+        throw new IOException("Class is invalid: " + cause.getMessage());
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new IOException(cause);
+      }
+    }
+  }
+}
@@ -284,16 +284,27 @@ final public class ClassInstrumenter {
     w.setSuperNameIndex(cr.getSuperNameIndex());
     w.setInterfaceNameIndices(cr.getInterfaceNameIndices());
 
+    // Members and attributes we don't touch are copied straight from the original class file, each run of consecutive ones as a
+    // single chunk. Their constant pool references stay valid because the original pool is kept as a prefix of the new one.
     int fieldCount = cr.getFieldCount();
-    for (int i = 0; i < fieldCount; i++) {
-      w.addRawField(new ClassWriter.RawElement(cr.getBytes(), cr.getFieldRawOffset(i), cr.getFieldRawSize(i)));
+    if (fieldCount > 0) {
+      int start = cr.getFieldRawOffset(0);
+      int end = cr.getFieldRawOffset(fieldCount - 1) + cr.getFieldRawSize(fieldCount - 1);
+      w.addRawFields(new ClassWriter.RawElement(cr.getBytes(), start, end - start), fieldCount);
     }
 
     for (int i = 0; i < methods.length; i++) {
       MethodData md = methods[i];
       if (!deletedMethods[i]) {
         if (md == null || !md.getHasChanged()) {
-          w.addRawMethod(new ClassWriter.RawElement(cr.getBytes(), cr.getMethodRawOffset(i), cr.getMethodRawSize(i)));
+          int run = i + 1;
+          while (run < methods.length && !deletedMethods[run] && (methods[run] == null || !methods[run].getHasChanged())) {
+            run++;
+          }
+          int start = cr.getMethodRawOffset(i);
+          int end = cr.getMethodRawOffset(run - 1) + cr.getMethodRawSize(run - 1);
+          w.addRawMethods(new ClassWriter.RawElement(cr.getBytes(), start, end - start), run - i);
+          i = run - 1;
         } else {
           CTCompiler comp = CTCompiler.make(w, md);
           comp.setPresetConstants(cpr);
@@ -326,8 +337,14 @@ final public class ClassInstrumenter {
 
     ClassReader.AttrIterator iter = new ClassReader.AttrIterator();
     cr.initClassAttributeIterator(iter);
-    for (; iter.isValid(); iter.advance()) {
-      w.addClassAttribute(new ClassWriter.RawElement(cr.getBytes(), iter.getRawOffset(), iter.getRawSize()));
+    int attrCount = iter.getRemainingAttributesCount();
+    if (attrCount > 0) {
+      int start = iter.getRawOffset();
+      int end = start;
+      for (; iter.isValid(); iter.advance()) {
+        end = iter.getRawOffset() + iter.getRawSize();
+      }
+      w.addClassAttributes(new ClassWriter.RawElement(cr.getBytes(), start, end - start), attrCount);
     }
   }
 
@@ -424,7 +441,9 @@ final public class ClassInstrumenter {
       }
       if (oldCode.getClassReader().getMajorVersion() > 50) {
         try { 
-          List<StackMapFrame> sm = StackMapTableReader.readStackMap(oldCode);
+          // the original frames say nothing about locals that patches added
+          boolean reuse = reuseStackMaps && output.getMaxLocals() <= oldCode.getMaxLocals();
+          List<StackMapFrame> sm = reuse ? StackMapTableReader.readStackMap(oldCode) : null;
 
           String[][] varTypes = null;
           int[] newToOld = output.getNewBytecodesToOldBytecodes();
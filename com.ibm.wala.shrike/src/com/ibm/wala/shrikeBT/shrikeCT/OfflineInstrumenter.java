@@ -56,11 +56,12 @@ final public class OfflineInstrumenter extends OfflineInstrumenterBase {
   @Override
   protected void writeClassTo(Object cl, Object mods, OutputStream s) throws IOException {
     ClassInstrumenter ci = (ClassInstrumenter) cl;
-    ClassWriter cw = (ClassWriter) mods;
-    if (cw == null) {
+    if (mods == null) {
       s.write(ci.getReader().getBytes());
+    } else if (mods instanceof byte[]) {
+      s.write((byte[]) mods);
     } else {
-      s.write(cw.makeBytes());
+      s.write(((ClassWriter) mods).makeBytes());
     }
   }
 
@@ -79,6 +80,20 @@ final public class OfflineInstrumenter extends OfflineInstrumenterBase {
     internalOutputModifiedClass(out, out.getInputName(), code);
   }
 
+  /**
+   * Update the original class with some method changes. 'bytes' should be the complete new class file, e.g. the result of
+   * makeBytes() on the ClassWriter returned by out.emitClass().
+   */
+  public void outputModifiedClass(ClassInstrumenter out, byte[] bytes) throws IllegalArgumentException, IOException {
+    if (out == null) {
+      throw new IllegalArgumentException("out is null");
+    }
+    if (bytes == null) {
+      throw new IllegalArgumentException("bytes is null");
+    }
+    internalOutputModifiedClass(out, out.getInputName(), bytes);
+  }
+
   /**
    * Update the original class with some method changes. This method calls out.emitClass() for you.
    */
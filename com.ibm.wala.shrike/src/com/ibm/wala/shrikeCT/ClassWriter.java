@@ -26,7 +26,7 @@ public class ClassWriter implements ClassConstants {
 
   private ConstantPoolParser rawCP;
 
-  private HashMap<Object, Integer> cachedCPEntries = new HashMap<Object, Integer>(1);
+  final private HashMap<Object, Integer> cachedCPEntries = new HashMap<Object, Integer>(1);
 
   final private ArrayList<Object> newCPEntries = new ArrayList<Object>(1);
 
@@ -38,6 +38,13 @@ public class ClassWriter implements ClassConstants {
 
   final private ArrayList<Element> classAttributes = new ArrayList<Element>(1);
 
+  // the number of members and attributes; an element added by addRawFields() etc. stands for several
+  private int fieldCount;
+
+  private int methodCount;
+
+  private int classAttributeCount;
+
   private int thisClass;
 
   private int superClass;
@@ -49,6 +56,8 @@ public class ClassWriter implements ClassConstants {
   private boolean forceAddCPEntries = false;
 
   // output
+  private boolean madeBytes = false;
+
   private byte[] buf;
 
   private int bufLen;
@@ -60,6 +69,34 @@ public class ClassWriter implements ClassConstants {
   public ClassWriter() {
   }
 
+  /**
+   * Discard everything added to this ClassWriter, returning it to the state of a newly created one, so that it can be used to build
+   * another class. The constant pool table and the member lists keep their capacity; a writer reused for a whole batch of classes
+   * therefore stops growing them after the first few classes. Arrays returned by earlier calls to makeBytes() are not affected.
+   */
+  public void reset() {
+    majorVersion = 46;
+    minorVersion = 0;
+    rawCP = null;
+    cachedCPEntries.clear();
+    newCPEntries.clear();
+    nextCPIndex = 1;
+    fields.clear();
+    methods.clear();
+    classAttributes.clear();
+    fieldCount = 0;
+    methodCount = 0;
+    classAttributeCount = 0;
+    thisClass = 0;
+    superClass = 0;
+    superInterfaces = null;
+    accessFlags = 0;
+    forceAddCPEntries = false;
+    madeBytes = false;
+    buf = null;
+    bufLen = 0;
+  }
+
   /**
    * Set the class file format major version. You probably don't want to use this unless you really know what you are doing.
    */
@@ -274,7 +311,7 @@ public class ClassWriter implements ClassConstants {
   }
 
   protected int addCPEntry(Object o, int size) {
-    if (cachedCPEntries == null) {
+    if (madeBytes) {
       throw new IllegalArgumentException("Cannot add a new constant pool entry during makeBytes() processing!");
     }
 
@@ -563,14 +600,42 @@ public class ClassWriter implements ClassConstants {
    * Add a method to the class, the method data given as "raw" bytes (probably obtained from a ClassReader).
    */
   public void addRawMethod(Element e) {
+    addRawMethods(e, 1);
+  }
+
+  /**
+   * Add a run of consecutive methods to the class, the data for all of them given as one chunk of "raw" bytes (probably obtained
+   * from a ClassReader). The chunk is copied into the class file with a single copy.
+   * 
+   * @param count the number of methods in the chunk
+   */
+  public void addRawMethods(Element e, int count) {
     methods.add(e);
+    methodCount += count;
+    if (methodCount > 0xFFFF) {
+      throw new IllegalArgumentException("Too many methods");
+    }
   }
 
   /**
    * Add a field to the class, the field data given as "raw" bytes (probably obtained from a ClassReader).
    */
   public void addRawField(Element e) {
+    addRawFields(e, 1);
+  }
+
+  /**
+   * Add a run of consecutive fields to the class, the data for all of them given as one chunk of "raw" bytes (probably obtained
+   * from a ClassReader).
+   * 
+   * @param count the number of fields in the chunk
+   */
+  public void addRawFields(Element e, int count) {
     fields.add(e);
+    fieldCount += count;
+    if (fieldCount > 0xFFFF) {
+      throw new IllegalArgumentException("Too many fields");
+    }
   }
 
   /**
@@ -672,7 +737,8 @@ public class ClassWriter implements ClassConstants {
     // if (idx<0) idx=0;
     // methods.add(0,new MemberElement(access, name, type, attributes));
     methods.add(new MemberElement(access, name, type, attributes));
-    if (methods.size() > 0xFFFF) {
+    methodCount++;
+    if (methodCount > 0xFFFF) {
       throw new IllegalArgumentException("Too many methods");
     }
   }
@@ -687,7 +753,8 @@ public class ClassWriter implements ClassConstants {
    */
   public void addField(int access, int name, int type, Element[] attributes) {
     fields.add(new MemberElement(access, name, type, attributes));
-    if (fields.size() > 0xFFFF) {
+    fieldCount++;
+    if (fieldCount > 0xFFFF) {
       throw new IllegalArgumentException("Too many fields");
     }
   }
@@ -698,9 +765,19 @@ public class ClassWriter implements ClassConstants {
    * @param attribute the attribute in raw form
    */
   public void addClassAttribute(Element attribute) {
-    classAttributes.add(attribute);
-    if (classAttributes.size() > 0xFFFF) {
-      throw new IllegalArgumentException("Too many class attributes: " + classAttributes.size());
+    addClassAttributes(attribute, 1);
+  }
+
+  /**
+   * Add a run of consecutive attributes to the class, all given as one chunk of raw bytes.
+   * 
+   * @param count the number of attributes in the chunk
+   */
+  public void addClassAttributes(Element attributes, int count) {
+    classAttributes.add(attributes);
+    classAttributeCount += count;
+    if (classAttributeCount > 0xFFFF) {
+      throw new IllegalArgumentException("Too many class attributes: " + classAttributeCount);
     }
   }
 
@@ -717,6 +794,125 @@ public class ClassWriter implements ClassConstants {
     return offset;
   }
 
+  /**
+   * Compute the size of the class file. Unless new entries are forced, the constant pool is closed first: the Utf8, Class and
+   * NameAndType entries that emitConstantPool() would add for the new entries are added now, in the same order, so that the size
+   * is exact and the output buffer never has to grow or be trimmed.
+   * 
+   * This is called once, by makeBytes(), to size its buffer.
+   */
+  protected int computeSize() {
+    int size = 10 + 8 + 6;
+    if (rawCP != null) {
+      size += rawCP.getRawSize();
+    }
+    if (forceAddCPEntries) {
+      // emitConstantPool() will add fresh entries for every reference; guess
+      size += newCPEntries.size() * 16;
+    } else {
+      size += closeConstantPool();
+    }
+    if (superInterfaces != null) {
+      size += superInterfaces.length * 2;
+    }
+    for (int i = 0; i < fields.size(); i++) {
+      size += fields.get(i).getSize();
+    }
+    for (int i = 0; i < methods.size(); i++) {
+      size += methods.get(i).getSize();
+    }
+    for (int i = 0; i < classAttributes.size(); i++) {
+      size += classAttributes.get(i).getSize();
+    }
+    return size;
+  }
+
+  /**
+   * Add every entry referenced by a new constant pool entry, mirroring the order of emitConstantPool().
+   * 
+   * @return the size in bytes of all the new entries
+   */
+  private int closeConstantPool() {
+    int size = 0;
+    // BE CAREFUL: the newCPEntries array grows during this loop.
+    for (int i = 0; i < newCPEntries.size(); i++) {
+      Object o = newCPEntries.get(i);
+      if (o instanceof CWItem) {
+        switch (((CWItem) o).getType()) {
+        case CONSTANT_Class:
+        case CONSTANT_String:
+        case CONSTANT_MethodType:
+          addCPUtf8(((CWStringItem) o).s);
+          size += 3;
+          break;
+        case CONSTANT_NameAndType: {
+          CWNAT nat = (CWNAT) o;
+          addCPUtf8(nat.n);
+          addCPUtf8(nat.t);
+          size += 5;
+          break;
+        }
+        case CONSTANT_MethodHandle: {
+          CWHandle handle = (CWHandle) o;
+          switch (handle.getKind()) {
+          case REF_getStatic:
+          case REF_getField:
+          case REF_putField:
+          case REF_putStatic:
+            addCPFieldRef(handle.c, handle.n, handle.t);
+            break;
+          case REF_invokeVirtual:
+          case REF_newInvokeSpecial:
+          case REF_invokeSpecial:
+          case REF_invokeStatic:
+            addCPMethodRef(handle.c, handle.n, handle.t);
+            break;
+          case REF_invokeInterface:
+            addCPInterfaceMethodRef(handle.c, handle.n, handle.t);
+            break;
+          }
+          size += 4;
+          break;
+        }
+        default: {
+          CWRef ref = (CWRef) o;
+          addCPClass(ref.c);
+          addCPNAT(ref.n, ref.t);
+          size += 5;
+        }
+        }
+      } else if (o instanceof String) {
+        size += 3 + utf8Length((String) o);
+      } else if (o instanceof Long || o instanceof Double) {
+        size += 9;
+      } else {
+        size += 5;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of bytes in the JVM's modified UTF-8 encoding of s
+   */
+  private static int utf8Length(String s) {
+    int slen = s.length();
+    int bytes = 0;
+    for (int j = 0; j < slen; j++) {
+      char ch = s.charAt(j);
+      if (ch == 0) {
+        bytes += 2;
+      } else if (ch < 0x80) {
+        bytes += 1;
+      } else if (ch < 0x800) {
+        bytes += 2;
+      } else {
+        bytes += 3;
+      }
+    }
+    return bytes;
+  }
+
   private void emitElement(Element e) {
     int size = e.getSize();
     int offset = reserveBuf(size);
@@ -814,11 +1010,15 @@ public class ClassWriter implements ClassConstants {
           }
           s.getChars(0, slen, chars, 0);
 
-          int offset = reserveBuf(3);
+          int bytes = utf8Length(s);
+          if (bytes > 0xFFFF) {
+            throw new IllegalArgumentException("String too long: " + bytes + " bytes");
+          }
+          int offset = reserveBuf(3 + bytes);
           buf[offset] = CONSTANT_Utf8;
+          setUShort(buf, offset + 1, bytes);
 
-          int maxBytes = slen * 3;
-          int p = reserveBuf(maxBytes); // worst case reservation
+          int p = offset + 3;
 
           for (int j = 0; j < slen; j++) {
             char ch = chars[j];
@@ -839,13 +1039,6 @@ public class ClassWriter implements ClassConstants {
               p += 3;
             }
           }
-          int bytes = p - (offset + 3);
-          reserveBuf(bytes - maxBytes); // negative reservation to push back buf
-          // size
-          if (bytes > 0xFFFF) {
-            throw new IllegalArgumentException("String too long: " + bytes + " bytes");
-          }
-          setUShort(buf, offset + 1, bytes);
         } else if (o instanceof Integer) {
           int offset = reserveBuf(5);
           buf[offset] = CONSTANT_Integer;
@@ -857,11 +1050,11 @@ public class ClassWriter implements ClassConstants {
         } else if (o instanceof Float) {
           int offset = reserveBuf(5);
           buf[offset] = CONSTANT_Float;
-          setFloat(buf, offset + 1, ((Float) o).intValue());
+          setFloat(buf, offset + 1, ((Float) o).floatValue());
         } else if (o instanceof Double) {
           int offset = reserveBuf(9);
           buf[offset] = CONSTANT_Double;
-          setDouble(buf, offset + 1, ((Double) o).intValue());
+          setDouble(buf, offset + 1, ((Double) o).doubleValue());
         }
       }
     }
@@ -872,7 +1065,7 @@ public class ClassWriter implements ClassConstants {
    * called once.
    */
   public byte[] makeBytes() throws IllegalArgumentException {
-    if (buf != null) {
+    if (madeBytes) {
       throw new IllegalArgumentException("Can't call makeBytes() twice");
     }
 
@@ -880,6 +1073,9 @@ public class ClassWriter implements ClassConstants {
       throw new IllegalArgumentException("No class name set");
     }
 
+    buf = new byte[computeSize()];
+    bufLen = 0;
+
     reserveBuf(10);
     setInt(buf, 0, MAGIC);
     setUShort(buf, 4, minorVersion);
@@ -890,7 +1086,7 @@ public class ClassWriter implements ClassConstants {
     setUShort(buf, 8, nextCPIndex);
     // No new constant pool entries can be allocated; make sure we
     // catch any such error by client code
-    cachedCPEntries = null;
+    madeBytes = true;
 
     int offset = reserveBuf(8);
     setUShort(buf, offset, accessFlags);
@@ -907,25 +1103,22 @@ public class ClassWriter implements ClassConstants {
     }
 
     offset = reserveBuf(2);
-    int numFields = fields.size();
-    setUShort(buf, offset, numFields);
-    for (int i = 0; i < numFields; i++) {
+    setUShort(buf, offset, fieldCount);
+    for (int i = 0; i < fields.size(); i++) {
       emitElement(fields.get(i));
     }
 
     offset = reserveBuf(2);
-    int numMethods = methods.size();
     // Xiangyu, debug
     // System.out.println("numMethods="+numMethods);
-    setUShort(buf, offset, numMethods);
-    for (int i = 0; i < numMethods; i++) {
+    setUShort(buf, offset, methodCount);
+    for (int i = 0; i < methods.size(); i++) {
       emitElement(methods.get(i));
     }
 
     offset = reserveBuf(2);
-    int numAttrs = classAttributes.size();
-    setUShort(buf, offset, numAttrs);
-    for (int i = 0; i < numAttrs; i++) {
+    setUShort(buf, offset, classAttributeCount);
+    for (int i = 0; i < classAttributes.size(); i++) {
       emitElement(classAttributes.get(i));
     }
 
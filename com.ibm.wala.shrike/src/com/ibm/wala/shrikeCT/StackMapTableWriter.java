@@ -6,6 +6,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
@@ -15,6 +16,7 @@ import com.ibm.wala.shrikeBT.Compiler.Output;
 import com.ibm.wala.shrikeBT.GotoInstruction;
 import com.ibm.wala.shrikeBT.IInstruction;
 import com.ibm.wala.shrikeBT.MethodData;
+import com.ibm.wala.shrikeBT.Util;
 import com.ibm.wala.shrikeBT.analysis.Analyzer;
 import com.ibm.wala.shrikeBT.analysis.Analyzer.FailureException;
 import com.ibm.wala.shrikeBT.analysis.ClassHierarchyProvider;
@@ -193,9 +195,139 @@ public class StackMapTableWriter extends Element {
     return false;
   }
   
+  private static final StackMapType[] noTypes = new StackMapType[0];
+
+  private static boolean hasUninitialized(StackMapType[] types) {
+    for (StackMapType t : types) {
+      if (t instanceof UninitializedType) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static StackMapType[] reverse(StackMapType[] types) {
+    StackMapType[] r = new StackMapType[types.length];
+    for (int i = 0; i < types.length; i++) {
+      r[i] = types[types.length - 1 - i];
+    }
+    return r;
+  }
+
+  /**
+   * Expand the frames of the original code of a method into full frames, keyed by the index of the new instruction at which they
+   * still hold.
+   * 
+   * A frame of the original code at bytecode offset o still holds at the first new instruction generated for o: patches inserted
+   * before o start there, and branches to o are redirected there, so the state on entry is the original one. Frames at any other
+   * new instruction, e.g. branch targets inside patch code or new exception handlers, have no counterpart and are left out, as are
+   * frames mentioning uninitialized objects, whose offsets refer to the original code.
+   * 
+   * This assumes that patches do not change the types of the locals and stack slots used by the original code, which is the
+   * usual contract of MethodEditor patches. Patches which need locals of their own should allocate new ones; ClassInstrumenter
+   * does not reuse frames for a method whose new code has more locals than the original, and frames are not reused if the types
+   * are inferred anyway and show more live locals than a frame declares.
+   * 
+   * @return the reusable frames, or null if the original frames could not be understood
+   */
+  private static Map<Integer, StackMapFrame> reusableFrames(MethodData method, List<StackMapFrame> oldFrames) {
+    int[] instructionsToBytecodes = method.getInstructionsToBytecodes();
+    Map<Integer, Integer> oldToNew = HashMapFactory.make();
+    for (int i = instructionsToBytecodes.length - 1; i >= 0; i--) {
+      if (instructionsToBytecodes[i] >= 0) {
+        oldToNew.put(instructionsToBytecodes[i], i);
+      }
+    }
+
+    // the implicit initial frame
+    String thisType = null;
+    if (!method.getIsStatic()) {
+      thisType = method.getName().equals("<init>") && !method.getClassType().equals(TYPE_Object) ? Analyzer.thisType : method
+          .getClassType();
+    }
+    StackMapType[] locals = types(Util.getParamsTypesInLocals(thisType, method.getSignature()), true);
+
+    Map<Integer, StackMapFrame> result = HashMapFactory.make();
+    int position = -1;
+    for (StackMapFrame frame : oldFrames) {
+      position = position < 0 ? frame.getOffset() : position + frame.getOffset() + 1;
+
+      int frameType = frame.getFrameType();
+      StackMapType[] stack;
+      if (frameType < 64 || frameType == 251) {
+        // same frame
+        stack = noTypes;
+      } else if (frameType < 128 || frameType == 247) {
+        // same locals, one stack item
+        stack = frame.getStackTypes();
+      } else if (frameType >= 248 && frameType <= 250) {
+        // chop frame
+        int chop = 251 - frameType;
+        if (chop > locals.length) {
+          return null;
+        }
+        locals = Arrays.copyOf(locals, locals.length - chop);
+        stack = noTypes;
+      } else if (frameType >= 252 && frameType <= 254) {
+        // append frame
+        StackMapType[] append = frame.getLocalTypes();
+        StackMapType[] newLocals = Arrays.copyOf(locals, locals.length + append.length);
+        System.arraycopy(append, 0, newLocals, locals.length, append.length);
+        locals = newLocals;
+        stack = noTypes;
+      } else if (frameType == 255) {
+        // full frame; the stack is read bottom first, but written top first
+        locals = frame.getLocalTypes();
+        stack = reverse(frame.getStackTypes());
+      } else {
+        return null;
+      }
+
+      Integer newIndex = oldToNew.get(position);
+      if (newIndex != null && !hasUninitialized(locals) && !hasUninitialized(stack)) {
+        result.put(newIndex, new StackMapFrame(255, 0, locals, stack));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * @return true iff there is a reusable frame for every basic block that needs a frame
+   */
+  private static boolean allReusable(IInstruction[] insts, BitSet bbs, Map<Integer, StackMapFrame> reusable) {
+    for (int i = 1; i < insts.length; i++) {
+      if (bbs.get(i) && !isUselessGoto(insts[i], i) && !reusable.containsKey(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return true iff no reusable frame has fewer locals than the inferred types at the same instruction
+   */
+  private static boolean localsCovered(Verifier typeChecker, Map<Integer, StackMapFrame> reusable) {
+    String[][] localTypes = typeChecker.getLocalTypes();
+    for (Map.Entry<Integer, StackMapFrame> e : reusable.entrySet()) {
+      String[] inferred = localTypes[e.getKey()];
+      if (inferred != null && types(inferred, true).length > e.getValue().getLocalTypes().length) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compute the frames of the new code of a method.
+   * 
+   * If the frames of the original code are given, frames that still hold in the new code are reused, and the types of the new code
+   * are only inferred if some frame, e.g. one inside patch code, cannot be reused. Otherwise, or if the original frames cannot be
+   * understood, all frames are computed from the types inferred by a Verifier.
+   * 
+   * @param reuseFrames the frames of the original code, or null to compute all frames
+   */
   public static List<StackMapFrame> stackMapTable(ClassWriter writer, MethodData method, Output output, ClassHierarchyProvider cha, String[][] vars, List<StackMapFrame> reuseFrames) throws FailureException, IOException {
-    int idx = 0;
-    
     List<StackMapFrame> frames = new ArrayList<StackMapFrame>();
     
     int[] instructionToBytecode = output.getInstructionOffsets();
@@ -205,8 +337,21 @@ public class StackMapTableWriter extends Element {
     if (cha != null) {
       typeChecker.setClassHierarchy(cha);
     }
-    typeChecker.computeTypes();
     BitSet bbs = typeChecker.getBasicBlockStarts();
+    boolean typesComputed = false;
+
+    Map<Integer, StackMapFrame> reusable = null;
+    if (reuseFrames != null && !reuseFrames.isEmpty()) {
+      reusable = reusableFrames(method, reuseFrames);
+    }
+    if (reusable != null && !allReusable(insts, bbs, reusable)) {
+      // the types are needed anyway; if patch code keeps more locals live than a reused frame declares, do not trust any of them
+      typeChecker.computeTypes();
+      typesComputed = true;
+      if (!localsCovered(typeChecker, reusable)) {
+        reusable = null;
+      }
+    }
     
     int offset = 0;
     for(int i = 1; i < insts.length; i++) {
@@ -223,15 +368,19 @@ public class StackMapTableWriter extends Element {
         int frameOffset =  offset==0? position: position - offset - 1;
         offset = position;
         
-        if (reuseFrames != null) {
-          if (reuseFrames.get(idx).getOffset() == frameOffset) {
-            frames.add(reuseFrames.get(idx++));
+        if (reusable != null) {
+          StackMapFrame old = reusable.get(i);
+          if (old != null) {
+            frames.add(new StackMapFrame(old, frameOffset));
             continue;
-          } else {
-            reuseFrames = null;
-          } 
-        } 
+          }
+        }
         
+        if (!typesComputed) {
+          typeChecker.computeTypes();
+          typesComputed = true;
+        }
+
         // full frame
         byte frameType = (byte)255;
 
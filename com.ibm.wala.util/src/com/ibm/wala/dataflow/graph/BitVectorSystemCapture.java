@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.dataflow.graph;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.ibm.wala.fixedpoint.impl.CapturedSystem;
+import com.ibm.wala.fixedpoint.impl.FixedPointSystemCapture;
+import com.ibm.wala.fixpoint.AbstractOperator;
+import com.ibm.wala.fixpoint.BitVectorVariable;
+import com.ibm.wala.fixpoint.IFixedPointSystem;
+import com.ibm.wala.fixpoint.UnaryOperator;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetUtil;
+
+/**
+ * Captures the system of a {@link BitVectorSolver}, built from the standard bit vector operators.
+ * 
+ * Variables are assumed to start empty, unless {@link #recordInitialValues(IFixedPointSystem)} is called before solving.
+ */
+public class BitVectorSystemCapture extends FixedPointSystemCapture<BitVectorVariable> {
+
+  private final int universeSize;
+
+  private final Map<BitVectorVariable, IntSet> initialValues = HashMapFactory.make();
+
+  /**
+   * @param universeSize an upper bound on the bits which may be set in a variable, e.g. the size of the lattice
+   */
+  public BitVectorSystemCapture(int universeSize) {
+    if (universeSize < 0) {
+      throw new IllegalArgumentException("bad universe size " + universeSize);
+    }
+    this.universeSize = universeSize;
+  }
+
+  /**
+   * Solve a system, and capture it along with its solution.
+   * 
+   * @param solver a solver which has not yet solved its system
+   * @param universeSize an upper bound on the bits which may be set in a variable
+   */
+  public static CapturedSystem solveAndCapture(BitVectorSolver<?> solver, int universeSize) throws CancelException {
+    if (solver == null) {
+      throw new IllegalArgumentException("null solver");
+    }
+    BitVectorSystemCapture capture = new BitVectorSystemCapture(universeSize);
+    solver.initForFirstSolve();
+    capture.recordInitialValues(solver.getFixedPointSystem());
+    solver.solve(null);
+    return capture.capture(solver.getFixedPointSystem(), true);
+  }
+
+  /**
+   * remember the current value of each variable as its initial value
+   */
+  @SuppressWarnings("unchecked")
+  public void recordInitialValues(IFixedPointSystem<BitVectorVariable> system) {
+    if (system == null) {
+      throw new IllegalArgumentException("null system");
+    }
+    initialValues.clear();
+    for (Iterator<BitVectorVariable> it = system.getVariables(); it.hasNext();) {
+      BitVectorVariable v = it.next();
+      if (v.getValue() != null && !v.getValue().isEmpty()) {
+        initialValues.put(v, IntSetUtil.makeMutableCopy(v.getValue()));
+      }
+    }
+  }
+
+  @Override
+  protected IntSet getValue(BitVectorVariable v) {
+    return v.getValue();
+  }
+
+  @Override
+  protected IntSet getInitialValue(BitVectorVariable v) {
+    return initialValues.get(v);
+  }
+
+  @Override
+  protected BitVectorVariable makeScratchVariable(BitVectorVariable v) {
+    return new BitVectorVariable();
+  }
+
+  @Override
+  protected void addAll(BitVectorVariable v, IntSet s) {
+    for (IntIterator it = s.intIterator(); it.hasNext();) {
+      v.set(it.next());
+    }
+  }
+
+  @Override
+  protected int getUniverseSize() {
+    return universeSize;
+  }
+
+  @Override
+  protected boolean isUnion(AbstractOperator<BitVectorVariable> op) {
+    return op instanceof BitVectorUnion || op instanceof UnaryBitVectorUnion || op instanceof BitVectorIdentity;
+  }
+
+  @Override
+  protected boolean isElementwise(UnaryOperator<BitVectorVariable> op) {
+    return op instanceof BitVectorKillGen || op instanceof BitVectorFilter || op instanceof BitVectorMinusVector
+        || op instanceof BitVectorOr || op instanceof BitVectorUnionConstant || op instanceof BitVectorUnionVector
+        || op instanceof BitVectorKillAll;
+  }
+
+  /**
+   * the effect of the standard operators does not depend on the left-hand side
+   */
+  @Override
+  protected Object getTransferKey(BitVectorVariable lhs) {
+    return null;
+  }
+}
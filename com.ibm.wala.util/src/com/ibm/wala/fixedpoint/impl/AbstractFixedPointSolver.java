@@ -25,6 +25,7 @@ import com.ibm.wala.util.CancelException;
 import com.ibm.wala.util.MonitorUtil;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
 import com.ibm.wala.util.debug.VerboseAction;
+import com.ibm.wala.util.perf.Metrics;
 
 /**
  * Represents a set of {@link IFixedPointStatement}s to be solved by a {@link IFixedPointSolver}
@@ -50,6 +51,11 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
 
   static public final int DEFAULT_PERIODIC_MAINTENANCE_INTERVAL = 100000;
 
+  /**
+   * When metrics are enabled, how many evaluations between samples of the work list size
+   */
+  static final int METRICS_SAMPLE_INTERVAL = 1000;
+
   /**
    * A tuning parameter; how may new IStatementDefinitionss must be added before doing a new topological sort? TODO: Tune this
    * empirically.
@@ -86,15 +92,25 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
    */
   private int nEvaluated = 0;
 
+  /**
+   * The number of statements evaluated by this solver, whether verbose or not
+   */
+  private long evaluationCount = 0;
+
   /**
    * During verbose evaluation, holds the number of dataflow equations created
    */
   private int nCreated = 0;
 
+  /**
+   * the order in which statements on the work list are evaluated
+   */
+  private WorklistStrategy worklistStrategy = WorklistStrategy.TOPOLOGICAL;
+
   /**
    * worklist for the iterative solver
    */
-  protected Worklist workList = new Worklist();
+  protected IFixedPointWorklist workList = worklistStrategy.make();
 
   /**
    * A boolean which is initially true, but set to false after the first call to solve();
@@ -137,6 +153,10 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
       initForFirstSolve();
     }
 
+    final boolean metrics = Metrics.isEnabled();
+    long start = Metrics.start();
+    long evaluations = 0;
+
     while (!workList.isEmpty()) {
       MonitorUtil.throwExceptionIfCanceled(monitor);
       orderStatements();
@@ -148,6 +168,13 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
         System.err.println(("Before evaluation " + s));
       }
       byte code = s.evaluate();
+      evaluationCount++;
+      if (metrics) {
+        evaluations++;
+        if (evaluations % METRICS_SAMPLE_INTERVAL == 0) {
+          Metrics.sample("solver.worklist.size", workList.size());
+        }
+      }
       if (verbose) {
         nEvaluated++;
         if (nEvaluated % getVerboseInterval() == 0) {
@@ -169,6 +196,10 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
         removeStatement(s);
       }
     }
+    if (metrics) {
+      Metrics.count("solver.evaluations", evaluations);
+      Metrics.stop("solver.solve", start);
+    }
     return globalChange;
   }
 
@@ -179,12 +210,11 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
     System.err.println("Worklist  " + workList.size());
     if (MORE_VERBOSE) {
       if (!workList.isEmpty()) {
-        AbstractStatement s = workList.takeStatement();
+        AbstractStatement s = workList.peekStatement();
         System.err.println("Peek      " + lineBreak(s.toString(), 132));
         if (s instanceof VerboseAction) {
           ((VerboseAction) s).performVerboseAction();
         }
-        workList.insertStatement(s);
       }
     }
   }
@@ -210,6 +240,7 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
 
   public void removeStatement(AbstractStatement<T, ?> s) {
     getFixedPointSystem().removeStatement(s);
+    workList.forgetStatement(s);
   }
 
   @Override
@@ -288,6 +319,7 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
   private void incorporateNewStatement(boolean toWorkList, boolean eager, AbstractStatement s) {
     if (eager) {
       byte code = s.evaluate();
+      evaluationCount++;
       if (verbose) {
         nEvaluated++;
         if (nEvaluated % getVerboseInterval() == 0) {
@@ -504,21 +536,37 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
    * Re-order the step definitions.
    */
   private void reorder() {
-    // drain the worklist
-    LinkedList<AbstractStatement> temp = new LinkedList<AbstractStatement>();
-    while (!workList.isEmpty()) {
-      AbstractStatement eq = workList.takeStatement();
-      temp.add(eq);
-    }
-    workList = new Worklist();
-
     // compute new ordering
     getFixedPointSystem().reorder();
 
-    // re-populate worklist
-    for (Iterator<AbstractStatement> it = temp.iterator(); it.hasNext();) {
-      AbstractStatement s = it.next();
-      workList.insertStatement(s);
+    // the worklist may be ordered by the old numbers
+    workList.reorder();
+  }
+
+  public WorklistStrategy getWorklistStrategy() {
+    return worklistStrategy;
+  }
+
+  /**
+   * Choose the order in which statements on the work list are evaluated. Any statements already on the work list are kept.
+   * 
+   * @throws IllegalArgumentException if strategy is null
+   */
+  public void setWorklistStrategy(WorklistStrategy strategy) {
+    if (strategy == null) {
+      throw new IllegalArgumentException("null strategy");
+    }
+    if (strategy == worklistStrategy) {
+      return;
+    }
+    worklistStrategy = strategy;
+    LinkedList<AbstractStatement> temp = new LinkedList<AbstractStatement>();
+    while (!workList.isEmpty()) {
+      temp.add(workList.takeStatement());
+    }
+    workList = strategy.make();
+    for (AbstractStatement st : temp) {
+      workList.insertStatement(st);
     }
   }
 
@@ -575,6 +623,14 @@ public abstract class AbstractFixedPointSolver<T extends IVariable<?>> implement
     nEvaluated++;
   }
 
+  /**
+   * @return the number of statements this solver has evaluated so far; unlike {@link #getNumberOfEvaluations()}, this is counted
+   *         also when the solver is not verbose
+   */
+  public long getEvaluationCount() {
+    return evaluationCount;
+  }
+
   /**
    * a method that will be called every N evaluations. subclasses should override as desired.
    */
@@ -0,0 +1,475 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.fixedpoint.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.util.collections.Factory;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetUtil;
+
+/**
+ * A compact, self-contained copy of a fixed-point system over sets of integers, which can be saved to a file and later re-solved,
+ * with any solver configuration, by a {@link CapturedSystemSolver}. This lets solver tuning run on a realistic system without
+ * re-running the analysis which generated it.
+ * 
+ * Variables are numbered densely from 0, and each has an initial value. Each statement has the form
+ * 
+ * <pre>
+ * lhs &gt;= ((rhs_1 U ... U rhs_n) &amp; keep) U gen
+ * </pre>
+ * 
+ * where keep and gen are constant sets; keep may be {@link #ALL}, and gen may be {@link #NONE}. Optionally, the system also records
+ * the value of each variable in the original solution, against which a replay can be checked.
+ * 
+ * Use a {@link FixedPointSystemCapture} to create one of these from a live system.
+ */
+public class CapturedSystem implements Factory<CapturedSystemSolver> {
+
+  /**
+   * "WFPS"
+   */
+  private final static int MAGIC = 0x57465053;
+
+  private final static int VERSION = 1;
+
+  /**
+   * the keep set of a statement which keeps every element of its right-hand side
+   */
+  public final static int ALL = -1;
+
+  /**
+   * the gen set of a statement which generates no elements, and the initial value of a variable which starts empty
+   */
+  public final static int NONE = -1;
+
+  /**
+   * the distinct constant sets used in the system, each sorted
+   */
+  private final int[][] sets;
+
+  /**
+   * initial value of each variable, as an index into sets, or NONE
+   */
+  private final int[] initial;
+
+  /**
+   * value of each variable in the original solution, as an index into sets, or NONE; null if not captured
+   */
+  private final int[] solution;
+
+  private final int[] lhs;
+
+  private final int[][] rhs;
+
+  private final int[] keep;
+
+  private final int[] gen;
+
+  private CapturedSystem(int[][] sets, int[] initial, int[] solution, int[] lhs, int[][] rhs, int[] keep, int[] gen) {
+    this.sets = sets;
+    this.initial = initial;
+    this.solution = solution;
+    this.lhs = lhs;
+    this.rhs = rhs;
+    this.keep = keep;
+    this.gen = gen;
+  }
+
+  public int getNumberOfVariables() {
+    return initial.length;
+  }
+
+  public int getNumberOfStatements() {
+    return lhs.length;
+  }
+
+  /**
+   * @return the number of distinct constant sets in the system
+   */
+  public int getNumberOfSets() {
+    return sets.length;
+  }
+
+  /**
+   * @return the set with the given index, or null if i is {@link #ALL} or {@link #NONE}
+   */
+  public IntSet getSet(int i) {
+    return i < 0 ? null : IntSetUtil.make(sets[i]);
+  }
+
+  /**
+   * @return index of the initial value of variable v, or {@link #NONE}
+   */
+  public int getInitialValue(int v) {
+    return initial[v];
+  }
+
+  /**
+   * @return true iff this system records the original solution
+   */
+  public boolean hasSolution() {
+    return solution != null;
+  }
+
+  /**
+   * @return index of the value of variable v in the original solution, or {@link #NONE}
+   * @throws IllegalStateException if !hasSolution()
+   */
+  public int getSolution(int v) {
+    if (solution == null) {
+      throw new IllegalStateException("no solution was captured");
+    }
+    return solution[v];
+  }
+
+  public int getLHS(int s) {
+    return lhs[s];
+  }
+
+  public int[] getRHS(int s) {
+    return rhs[s];
+  }
+
+  /**
+   * @return index of the keep set of statement s, or {@link #ALL}
+   */
+  public int getKeep(int s) {
+    return keep[s];
+  }
+
+  /**
+   * @return index of the gen set of statement s, or {@link #NONE}
+   */
+  public int getGen(int s) {
+    return gen[s];
+  }
+
+  /**
+   * @return a fresh, unsolved solver for this system
+   */
+  @Override
+  public CapturedSystemSolver make() {
+    return new CapturedSystemSolver(this);
+  }
+
+  /**
+   * Write this system to a stream, in a compact binary form: all integers are variable-length, and sets are delta-encoded.
+   */
+  public void write(OutputStream s) throws IOException {
+    if (s == null) {
+      throw new IllegalArgumentException("null s");
+    }
+    DataOutputStream out = new DataOutputStream(s);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    writeInt(out, sets.length);
+    for (int[] set : sets) {
+      writeInt(out, set.length);
+      int last = -1;
+      for (int x : set) {
+        writeInt(out, x - last);
+        last = x;
+      }
+    }
+    writeIndices(out, initial);
+    out.writeBoolean(solution != null);
+    if (solution != null) {
+      writeIndices(out, solution);
+    }
+    writeInt(out, lhs.length);
+    for (int i = 0; i < lhs.length; i++) {
+      writeInt(out, lhs[i]);
+      writeInt(out, rhs[i].length);
+      for (int r : rhs[i]) {
+        writeInt(out, r);
+      }
+      writeInt(out, keep[i] + 1);
+      writeInt(out, gen[i] + 1);
+    }
+    out.flush();
+  }
+
+  public void write(String fileName) throws IOException {
+    OutputStream s = new BufferedOutputStream(new FileOutputStream(fileName));
+    try {
+      write(s);
+    } finally {
+      s.close();
+    }
+  }
+
+  /**
+   * Read a system written by {@link #write(OutputStream)}.
+   * 
+   * @throws IOException if the stream does not hold a system in a format we understand
+   */
+  public static CapturedSystem read(InputStream s) throws IOException {
+    if (s == null) {
+      throw new IllegalArgumentException("null s");
+    }
+    DataInputStream in = new DataInputStream(s);
+    if (in.readInt() != MAGIC) {
+      throw new IOException("not a captured fixed-point system");
+    }
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("unsupported version " + version);
+    }
+    int[][] sets = new int[readInt(in)][];
+    for (int i = 0; i < sets.length; i++) {
+      sets[i] = new int[readInt(in)];
+      int last = -1;
+      for (int j = 0; j < sets[i].length; j++) {
+        last += readInt(in);
+        sets[i][j] = last;
+      }
+    }
+    int[] initial = readIndices(in, sets.length);
+    int[] solution = in.readBoolean() ? readIndices(in, sets.length) : null;
+    if (solution != null && solution.length != initial.length) {
+      throw new IOException("bad solution size " + solution.length);
+    }
+    int n = readInt(in);
+    int[] lhs = new int[n];
+    int[][] rhs = new int[n][];
+    int[] keep = new int[n];
+    int[] gen = new int[n];
+    for (int i = 0; i < n; i++) {
+      lhs[i] = readVariable(in, initial.length);
+      rhs[i] = new int[readInt(in)];
+      for (int j = 0; j < rhs[i].length; j++) {
+        rhs[i][j] = readVariable(in, initial.length);
+      }
+      keep[i] = readIndex(in, sets.length);
+      gen[i] = readIndex(in, sets.length);
+    }
+    return new CapturedSystem(sets, initial, solution, lhs, rhs, keep, gen);
+  }
+
+  public static CapturedSystem read(String fileName) throws IOException {
+    InputStream s = new BufferedInputStream(new FileInputStream(fileName));
+    try {
+      return read(s);
+    } finally {
+      s.close();
+    }
+  }
+
+  private static void writeIndices(DataOutputStream out, int[] indices) throws IOException {
+    writeInt(out, indices.length);
+    for (int x : indices) {
+      writeInt(out, x + 1);
+    }
+  }
+
+  private static int[] readIndices(DataInputStream in, int numberOfSets) throws IOException {
+    int[] result = new int[readInt(in)];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = readIndex(in, numberOfSets);
+    }
+    return result;
+  }
+
+  private static int readIndex(DataInputStream in, int numberOfSets) throws IOException {
+    int result = readInt(in) - 1;
+    if (result >= numberOfSets) {
+      throw new IOException("bad set index " + result);
+    }
+    return result;
+  }
+
+  private static int readVariable(DataInputStream in, int numberOfVariables) throws IOException {
+    int result = readInt(in);
+    if (result >= numberOfVariables) {
+      throw new IOException("bad variable " + result);
+    }
+    return result;
+  }
+
+  /**
+   * write a non-negative int in 7-bit groups, low-order first
+   */
+  private static void writeInt(DataOutputStream out, int x) throws IOException {
+    while ((x & ~0x7f) != 0) {
+      out.writeByte((x & 0x7f) | 0x80);
+      x >>>= 7;
+    }
+    out.writeByte(x);
+  }
+
+  private static int readInt(DataInputStream in) throws IOException {
+    int result = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readUnsignedByte();
+      result |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        if (result < 0) {
+          throw new IOException("bad int " + result);
+        }
+        return result;
+      }
+    }
+    throw new IOException("bad int encoding");
+  }
+
+  /**
+   * Incrementally builds a {@link CapturedSystem}, sharing one copy of each distinct constant set.
+   */
+  public static class Builder {
+
+    private final List<int[]> sets = new ArrayList<int[]>();
+
+    private final Map<SetKey, Integer> setIndex = HashMapFactory.make();
+
+    private int[] initial = new int[16];
+
+    private int[] solution = new int[16];
+
+    private boolean hasSolution = false;
+
+    private int numberOfVariables = 0;
+
+    private final List<int[]> statements = new ArrayList<int[]>();
+
+    /**
+     * @return the number of a new variable, which starts empty
+     */
+    public int newVariable() {
+      if (numberOfVariables == initial.length) {
+        initial = Arrays.copyOf(initial, 2 * numberOfVariables);
+        solution = Arrays.copyOf(solution, 2 * numberOfVariables);
+      }
+      initial[numberOfVariables] = NONE;
+      solution[numberOfVariables] = NONE;
+      return numberOfVariables++;
+    }
+
+    /**
+     * @param value the initial value of v, or null if empty
+     */
+    public void setInitialValue(int v, IntSet value) {
+      checkVariable(v);
+      initial[v] = findOrCreateSet(value, NONE);
+    }
+
+    /**
+     * @param value the value of v in the original solution, or null if empty
+     */
+    public void setSolution(int v, IntSet value) {
+      checkVariable(v);
+      hasSolution = true;
+      solution[v] = findOrCreateSet(value, NONE);
+    }
+
+    /**
+     * Add a statement lhs &gt;= ((rhs_1 U ... U rhs_n) &amp; keep) U gen
+     * 
+     * @param keep null to keep every element of the right-hand side
+     * @param gen null if no elements are generated
+     */
+    public void addStatement(int lhs, int[] rhs, IntSet keep, IntSet gen) {
+      if (rhs == null) {
+        throw new IllegalArgumentException("null rhs");
+      }
+      checkVariable(lhs);
+      int[] s = new int[rhs.length + 3];
+      s[0] = lhs;
+      s[1] = keep == null ? ALL : findOrCreateSet(keep, ALL);
+      s[2] = findOrCreateSet(gen, NONE);
+      for (int i = 0; i < rhs.length; i++) {
+        checkVariable(rhs[i]);
+        s[i + 3] = rhs[i];
+      }
+      statements.add(s);
+    }
+
+    public CapturedSystem build() {
+      int n = statements.size();
+      int[] lhs = new int[n];
+      int[][] rhs = new int[n][];
+      int[] keep = new int[n];
+      int[] gen = new int[n];
+      for (int i = 0; i < n; i++) {
+        int[] s = statements.get(i);
+        lhs[i] = s[0];
+        keep[i] = s[1];
+        gen[i] = s[2];
+        rhs[i] = Arrays.copyOfRange(s, 3, s.length);
+      }
+      return new CapturedSystem(sets.toArray(new int[sets.size()][]), Arrays.copyOf(initial, numberOfVariables),
+          hasSolution ? Arrays.copyOf(solution, numberOfVariables) : null, lhs, rhs, keep, gen);
+    }
+
+    private void checkVariable(int v) {
+      if (v < 0 || v >= numberOfVariables) {
+        throw new IllegalArgumentException("bad variable " + v);
+      }
+    }
+
+    /**
+     * @return the index of a set equal to s, or ifEmpty if s is null or empty
+     */
+    private int findOrCreateSet(IntSet s, int ifEmpty) {
+      if (s == null || s.isEmpty()) {
+        return ifEmpty == ALL ? findOrCreateSet(new int[0]) : ifEmpty;
+      }
+      int[] elements = IntSetUtil.toArray(s);
+      Arrays.sort(elements);
+      return findOrCreateSet(elements);
+    }
+
+    private int findOrCreateSet(int[] elements) {
+      SetKey key = new SetKey(elements);
+      Integer result = setIndex.get(key);
+      if (result == null) {
+        result = sets.size();
+        sets.add(elements);
+        setIndex.put(key, result);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * a sorted int array, compared by contents
+   */
+  private static final class SetKey {
+    private final int[] elements;
+
+    SetKey(int[] elements) {
+      this.elements = elements;
+    }
+
+    @Override
+    public int hashCode() {
+      return Arrays.hashCode(elements);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof SetKey && Arrays.equals(elements, ((SetKey) obj).elements);
+    }
+  }
+}
@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.fixedpoint.impl;
+
+import com.ibm.wala.fixpoint.AbstractOperator;
+import com.ibm.wala.fixpoint.IntSetVariable;
+import com.ibm.wala.fixpoint.UnaryOperator;
+import com.ibm.wala.util.intset.IntSet;
+
+/**
+ * A solver which re-solves a {@link CapturedSystem}, starting from its initial values.
+ * 
+ * Every statement is re-evaluated against the whole of its right-hand side, so a replay measures plain worklist solving of the
+ * captured constraints only. Techniques which change the system while it is solved, such as difference propagation or the
+ * unification of points-to sets in a PropagationSystem, are not replayed: a capture of a unified system simply holds one variable
+ * for each set of unified variables.
+ */
+public class CapturedSystemSolver extends DefaultFixedPointSolver<CapturedSystemSolver.Variable> {
+
+  /**
+   * A variable of a captured system.
+   */
+  public static final class Variable extends IntSetVariable<Variable> {
+    private final int number;
+
+    Variable(int number) {
+      this.number = number;
+    }
+
+    /**
+     * @return the number of this variable in the captured system
+     */
+    public int getNumber() {
+      return number;
+    }
+
+    @Override
+    public String toString() {
+      return "v" + number + ":" + super.toString();
+    }
+  }
+
+  private final CapturedSystem system;
+
+  private final Variable[] variables;
+
+  /**
+   * the constant sets of the system, shared by all statements
+   */
+  private final IntSet[] sets;
+
+  public CapturedSystemSolver(CapturedSystem system) {
+    if (system == null) {
+      throw new IllegalArgumentException("null system");
+    }
+    this.system = system;
+    this.variables = new Variable[system.getNumberOfVariables()];
+    this.sets = new IntSet[system.getNumberOfSets()];
+    for (int i = 0; i < sets.length; i++) {
+      sets[i] = system.getSet(i);
+    }
+  }
+
+  public CapturedSystem getSystem() {
+    return system;
+  }
+
+  /**
+   * @return the variable numbered v in the captured system
+   */
+  public Variable getVariable(int v) {
+    return variables[v];
+  }
+
+  @Override
+  protected void initializeVariables() {
+    for (int i = 0; i < variables.length; i++) {
+      variables[i] = new Variable(i);
+      int init = system.getInitialValue(i);
+      if (init != CapturedSystem.NONE) {
+        variables[i].addAll(sets[init]);
+      }
+    }
+  }
+
+  @Override
+  protected void initializeWorkList() {
+    for (int i = 0; i < system.getNumberOfStatements(); i++) {
+      Variable lhs = variables[system.getLHS(i)];
+      int[] rhs = system.getRHS(i);
+      int keep = system.getKeep(i);
+      int gen = system.getGen(i);
+      if (rhs.length == 1) {
+        UnaryOperator<Variable> op = (keep == CapturedSystem.ALL && gen == CapturedSystem.NONE) ? UnaryUnion.INSTANCE : new Transfer(
+            sets, keep, gen);
+        newStatement(lhs, op, variables[rhs[0]], true, false);
+      } else {
+        Variable[] r = makeStmtRHS(rhs.length);
+        for (int j = 0; j < rhs.length; j++) {
+          r[j] = variables[rhs[j]];
+        }
+        AbstractOperator<Variable> op = (keep == CapturedSystem.ALL && gen == CapturedSystem.NONE) ? Union.INSTANCE : new Transfer(
+            sets, keep, gen);
+        newStatement(lhs, op, r, true, false);
+      }
+    }
+  }
+
+  @Override
+  protected Variable[] makeStmtRHS(int size) {
+    return new Variable[size];
+  }
+
+  /**
+   * @return true iff the current value of every variable equals its value in the captured solution
+   * @throws IllegalStateException if the system has no captured solution
+   */
+  public boolean matchesSolution() {
+    if (!system.hasSolution()) {
+      throw new IllegalStateException("no solution was captured");
+    }
+    for (int i = 0; i < variables.length; i++) {
+      int expected = system.getSolution(i);
+      IntSet actual = variables[i] == null ? null : variables[i].getValue();
+      if (expected == CapturedSystem.NONE) {
+        if (actual != null && !actual.isEmpty()) {
+          return false;
+        }
+      } else if (actual == null || !actual.sameValue(sets[expected])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * lhs &gt;= rhs
+   */
+  private static final class UnaryUnion extends UnaryOperator<Variable> {
+    private static final UnaryUnion INSTANCE = new UnaryUnion();
+
+    @Override
+    public byte evaluate(Variable lhs, Variable rhs) {
+      return lhs.addAll(rhs) ? CHANGED : NOT_CHANGED;
+    }
+
+    @Override
+    public int hashCode() {
+      return 9781;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return this == o;
+    }
+
+    @Override
+    public String toString() {
+      return "UnaryUnion";
+    }
+  }
+
+  /**
+   * lhs &gt;= rhs_1 U ... U rhs_n
+   */
+  private static final class Union extends AbstractOperator<Variable> {
+    private static final Union INSTANCE = new Union();
+
+    @Override
+    public byte evaluate(Variable lhs, Variable[] rhs) {
+      boolean changed = false;
+      for (Variable r : rhs) {
+        changed |= lhs.addAll(r);
+      }
+      return changed ? CHANGED : NOT_CHANGED;
+    }
+
+    @Override
+    public int hashCode() {
+      return 9787;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return this == o;
+    }
+
+    @Override
+    public String toString() {
+      return "Union";
+    }
+  }
+
+  /**
+   * lhs &gt;= ((rhs_1 U ... U rhs_n) &amp; keep) U gen
+   */
+  private static final class Transfer extends UnaryOperator<Variable> {
+    private final int keepIndex;
+
+    private final int genIndex;
+
+    /**
+     * null means keep everything
+     */
+    private final IntSet keep;
+
+    /**
+     * null means generate nothing
+     */
+    private final IntSet gen;
+
+    Transfer(IntSet[] sets, int keep, int gen) {
+      this.keepIndex = keep;
+      this.genIndex = gen;
+      this.keep = keep == CapturedSystem.ALL ? null : sets[keep];
+      this.gen = gen == CapturedSystem.NONE ? null : sets[gen];
+    }
+
+    @Override
+    public byte evaluate(Variable lhs, Variable rhs) {
+      boolean changed = keep == null ? lhs.addAll(rhs) : lhs.addAllInIntersection(rhs, keep);
+      if (gen != null) {
+        changed |= lhs.addAll(gen);
+      }
+      return changed ? CHANGED : NOT_CHANGED;
+    }
+
+    @Override
+    public byte evaluate(Variable lhs, Variable[] rhs) {
+      boolean changed = false;
+      for (Variable r : rhs) {
+        changed |= evaluate(lhs, r) == CHANGED;
+      }
+      return changed ? CHANGED : NOT_CHANGED;
+    }
+
+    @Override
+    public int hashCode() {
+      return 9791 * keepIndex + genIndex;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof Transfer) {
+        Transfer other = (Transfer) o;
+        return keepIndex == other.keepIndex && genIndex == other.genIndex;
+      }
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      return "Transfer(" + keepIndex + "," + genIndex + ")";
+    }
+  }
+}
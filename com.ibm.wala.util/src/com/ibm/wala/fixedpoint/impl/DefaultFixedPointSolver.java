@@ -19,7 +19,12 @@ import com.ibm.wala.fixpoint.IVariable;
  */
 public abstract class DefaultFixedPointSolver<T extends IVariable<?>> extends AbstractFixedPointSolver<T> {
 
-  private final DefaultFixedPointSystem<T> graph;
+  /**
+   * the system of statements; created on first use, since some subclasses hold their statements elsewhere
+   */
+  private DefaultFixedPointSystem<T> graph;
+
+  private final int expectedOut;
   
   /**
    * @param expectedOut number of expected out edges in the "usual" case
@@ -27,16 +32,18 @@ public abstract class DefaultFixedPointSolver<T extends IVariable<?>> extends Ab
    */
   public DefaultFixedPointSolver(int expectedOut) {
     super();
-    graph = new DefaultFixedPointSystem<T>(expectedOut);
+    this.expectedOut = expectedOut;
   }
   
   public DefaultFixedPointSolver() {
-    super();
-    graph = new DefaultFixedPointSystem<T>();
+    this(1);
   }
   
   @Override
   public IFixedPointSystem<T> getFixedPointSystem() {
+    if (graph == null) {
+      graph = new DefaultFixedPointSystem<T>(expectedOut);
+    }
     return graph;
   }
 }
\ No newline at end of file
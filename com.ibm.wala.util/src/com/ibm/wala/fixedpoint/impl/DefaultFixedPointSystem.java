@@ -257,8 +257,8 @@ public class DefaultFixedPointSystem<T extends IVariable<?>> implements IFixedPo
 
   @Override
   public Iterator<T> getVariables() {
-    return new FilterIterator<T>(graph.iterator(), new Predicate<T>() {
-      @Override public boolean test(T x) {
+    return new FilterIterator<T>(graph.iterator(), new Predicate<INodeWithNumber>() {
+      @Override public boolean test(INodeWithNumber x) {
         return x instanceof IVariable;
       }
     });
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.fixedpoint.impl;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.ibm.wala.fixpoint.AbstractOperator;
+import com.ibm.wala.fixpoint.AbstractStatement;
+import com.ibm.wala.fixpoint.IFixedPointSystem;
+import com.ibm.wala.fixpoint.IVariable;
+import com.ibm.wala.fixpoint.UnaryOperator;
+import com.ibm.wala.fixpoint.UnaryStatement;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+
+/**
+ * Creates a {@link CapturedSystem} from a live fixed-point system whose variables hold sets of integers.
+ * 
+ * A statement can be captured if its operator computes the union of its right-hand sides, or if it is unary and treats each
+ * element of its right-hand side independently, i.e. it computes (rhs &amp; keep) U gen for some constant sets keep and gen. The
+ * capture finds keep and gen by evaluating such an operator on an empty and a full right-hand side, so it works for filters
+ * without knowing how they are implemented. Other statements, e.g. those with side effects on the system, are skipped; when
+ * capturing a solved system, the statements they created are captured instead.
+ */
+public abstract class FixedPointSystemCapture<T extends IVariable<T>> {
+
+  /**
+   * the set of all integers that may appear in a variable
+   */
+  private MutableIntSet universe;
+
+  /**
+   * cache of (keep, gen) for each (operator, transfer key) pair
+   */
+  private final Map<Pair<Object, Object>, Pair<IntSet, IntSet>> transfers = HashMapFactory.make();
+
+  private int skipped;
+
+  /**
+   * @return the current value of v, or null if empty
+   */
+  protected abstract IntSet getValue(T v);
+
+  /**
+   * @return the value of v before any statement was evaluated, or null if empty
+   */
+  protected abstract IntSet getInitialValue(T v);
+
+  /**
+   * @return a new, empty variable which behaves like v when used as the left-hand side of a statement
+   */
+  protected abstract T makeScratchVariable(T v);
+
+  /**
+   * add the elements of s to v, which was made by {@link #makeScratchVariable(IVariable)}
+   */
+  protected abstract void addAll(T v, IntSet s);
+
+  /**
+   * @return an upper bound on the integers which may appear in a variable
+   */
+  protected abstract int getUniverseSize();
+
+  /**
+   * @return true iff op computes the union of its right-hand sides
+   */
+  protected abstract boolean isUnion(AbstractOperator<T> op);
+
+  /**
+   * @return true iff op treats each element of its right-hand side independently, and has no side effects
+   */
+  protected abstract boolean isElementwise(UnaryOperator<T> op);
+
+  /**
+   * The result of an elementwise operator may depend on its left-hand side as well as on the operator itself; e.g. a filter may
+   * take its type from the left-hand side. Statements whose operator and transfer key are equal share one evaluation.
+   * 
+   * @return an object which determines the effect of an elementwise operator with left-hand side lhs
+   */
+  protected Object getTransferKey(T lhs) {
+    return lhs;
+  }
+
+  /**
+   * @return the number of statements skipped by the last capture
+   */
+  public int getNumberOfSkippedStatements() {
+    return skipped;
+  }
+
+  /**
+   * Capture a system
+   * 
+   * @param withSolution should the capture record the current value of each variable, against which a replay can be checked?
+   */
+  @SuppressWarnings("unchecked")
+  public CapturedSystem capture(IFixedPointSystem<T> system, boolean withSolution) {
+    if (system == null) {
+      throw new IllegalArgumentException("null system");
+    }
+    skipped = 0;
+    CapturedSystem.Builder builder = new CapturedSystem.Builder();
+    Map<T, Integer> numbers = HashMapFactory.make();
+    for (Iterator<T> it = system.getVariables(); it.hasNext();) {
+      findOrCreateNumber(builder, numbers, it.next(), withSolution);
+    }
+    for (Iterator<AbstractStatement<T, ?>> it = system.getStatements(); it.hasNext();) {
+      AbstractStatement<T, ?> s = it.next();
+      T lhs = s.getLHS();
+      AbstractOperator<T> op = s.getOperator();
+      if (lhs == null || op == null) {
+        skipped++;
+        continue;
+      }
+      IntSet keep = null;
+      IntSet gen = null;
+      int[] r;
+      if (s instanceof UnaryStatement) {
+        T rhs = ((UnaryStatement<T>) s).getRightHandSide();
+        if (isUnion(op)) {
+          // keep everything, generate nothing
+        } else if (op instanceof UnaryOperator && isElementwise((UnaryOperator<T>) op)) {
+          Pair<IntSet, IntSet> transfer = findOrCreateTransfer((UnaryOperator<T>) op, lhs, rhs);
+          keep = transfer.fst;
+          gen = transfer.snd;
+        } else {
+          skipped++;
+          continue;
+        }
+        r = new int[] { findOrCreateNumber(builder, numbers, rhs, withSolution) };
+      } else if (isUnion(op)) {
+        T[] rhs = s.getRHS();
+        r = new int[rhs.length];
+        for (int i = 0; i < rhs.length; i++) {
+          r[i] = findOrCreateNumber(builder, numbers, rhs[i], withSolution);
+        }
+      } else {
+        skipped++;
+        continue;
+      }
+      builder.addStatement(findOrCreateNumber(builder, numbers, lhs, withSolution), r, keep, gen);
+    }
+    return builder.build();
+  }
+
+  private int findOrCreateNumber(CapturedSystem.Builder builder, Map<T, Integer> numbers, T v, boolean withSolution) {
+    Integer result = numbers.get(v);
+    if (result == null) {
+      result = builder.newVariable();
+      numbers.put(v, result);
+      builder.setInitialValue(result, getInitialValue(v));
+      if (withSolution) {
+        builder.setSolution(result, getValue(v));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return (keep, gen) for a statement lhs = op(rhs), where keep is null if every element is kept
+   */
+  private Pair<IntSet, IntSet> findOrCreateTransfer(UnaryOperator<T> op, T lhs, T rhs) {
+    Pair<Object, Object> key = Pair.make((Object) op, getTransferKey(lhs));
+    Pair<IntSet, IntSet> result = transfers.get(key);
+    if (result == null) {
+      // gen is what the operator produces from nothing
+      T l = makeScratchVariable(lhs);
+      op.evaluate(l, makeScratchVariable(rhs));
+      IntSet gen = getValue(l);
+
+      // keep is what the operator lets through from everything
+      l = makeScratchVariable(lhs);
+      T r = makeScratchVariable(rhs);
+      addAll(r, getUniverse());
+      op.evaluate(l, r);
+      IntSet keep = getValue(l);
+      if (keep != null && keep.size() == getUniverse().size()) {
+        keep = null;
+      } else if (keep == null) {
+        keep = MutableSparseIntSet.makeEmpty();
+      }
+      result = Pair.make(keep, gen);
+      transfers.put(key, result);
+    }
+    return result;
+  }
+
+  private IntSet getUniverse() {
+    if (universe == null) {
+      universe = MutableSparseIntSet.createMutableSparseIntSet(getUniverseSize());
+      for (int i = 0; i < getUniverseSize(); i++) {
+        universe.add(i);
+      }
+    }
+    return universe;
+  }
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.fixedpoint.impl;
+
+import java.util.NoSuchElementException;
+
+import com.ibm.wala.fixpoint.AbstractStatement;
+
+/**
+ * The set of statements awaiting evaluation in an iterative solver. The order in which statements are taken is up to the
+ * implementation; see {@link WorklistStrategy}.
+ */
+@SuppressWarnings("rawtypes")
+public interface IFixedPointWorklist {
+
+  /**
+   * @return the next statement to evaluate, which is removed from this work list
+   */
+  AbstractStatement takeStatement() throws NoSuchElementException;
+
+  /**
+   * @return the statement {@link #takeStatement()} would return next; this work list is not changed
+   */
+  AbstractStatement peekStatement() throws NoSuchElementException;
+
+  /**
+   * Add a statement, unless it is already present.
+   */
+  void insertStatement(AbstractStatement eq);
+
+  /**
+   * The statement has been removed from the system; drop anything kept about it besides its place in this work list. A pending
+   * statement is still taken in turn.
+   */
+  void forgetStatement(AbstractStatement eq);
+
+  boolean isEmpty();
+
+  int size();
+
+  /**
+   * The order numbers of statements may have changed; re-establish any ordering which depends on them.
+   */
+  void reorder();
+}
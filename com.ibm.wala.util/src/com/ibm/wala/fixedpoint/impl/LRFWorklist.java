@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.fixedpoint.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.ibm.wala.fixpoint.AbstractStatement;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.Heap;
+
+/**
+ * A work list which takes the least recently fired statement first. Statements which have never been taken come first, in
+ * order of their order numbers.
+ * 
+ * The idea is that a statement which has not been evaluated for a while has probably accumulated many changes to its inputs, so
+ * one evaluation of it does the work of many.
+ * 
+ * The time each statement was last taken is kept in a table of this work list. A statement cannot be taken while it is in the
+ * heap, so its time is copied into its heap entry when it is inserted, and heap comparisons need no lookups. The table forgets a
+ * statement once the system removes it; see {@link #forgetStatement(AbstractStatement)}.
+ */
+@SuppressWarnings("rawtypes")
+public class LRFWorklist implements IFixedPointWorklist {
+
+  /**
+   * the state of a statement that has been inserted at least once
+   */
+  private static final class Entry {
+    final AbstractStatement statement;
+
+    /**
+     * the value of {@link LRFWorklist#clock} when the statement was last taken, or 0 if never
+     */
+    long lastFired = 0;
+
+    /**
+     * is the statement in the heap?
+     */
+    boolean queued = false;
+
+    /**
+     * was the statement removed from the system while it was in the heap? If so, its entry is dropped when it is taken.
+     */
+    boolean forgotten = false;
+
+    Entry(AbstractStatement statement) {
+      this.statement = statement;
+    }
+  }
+
+  private final HashMap<AbstractStatement, Entry> entries = HashMapFactory.make();
+
+  private final Heap<Entry> heap = new Heap<Entry>(100) {
+    @Override
+    protected boolean compareElements(Entry e1, Entry e2) {
+      return e1.lastFired < e2.lastFired
+          || (e1.lastFired == e2.lastFired && e1.statement.getOrderNumber() < e2.statement.getOrderNumber());
+    }
+  };
+
+  /**
+   * counts statements taken
+   */
+  private long clock = 0;
+
+  @Override
+  public AbstractStatement takeStatement() throws NoSuchElementException {
+    Entry e = heap.take();
+    e.queued = false;
+    e.lastFired = ++clock;
+    if (e.forgotten) {
+      entries.remove(e.statement);
+    }
+    return e.statement;
+  }
+
+  @Override
+  public AbstractStatement peekStatement() throws NoSuchElementException {
+    return heap.peek().statement;
+  }
+
+  @Override
+  public void insertStatement(AbstractStatement eq) {
+    Entry e = entries.get(eq);
+    if (e == null) {
+      e = new Entry(eq);
+      entries.put(eq, e);
+    }
+    e.forgotten = false;
+    if (!e.queued) {
+      e.queued = true;
+      heap.insert(e);
+    }
+  }
+
+  @Override
+  public void forgetStatement(AbstractStatement eq) {
+    Entry e = entries.get(eq);
+    if (e != null) {
+      if (e.queued) {
+        e.forgotten = true;
+      } else {
+        entries.remove(eq);
+      }
+    }
+  }
+
+  /**
+   * @return the number of statements whose last fire time is kept
+   */
+  public int getNumberOfRememberedStatements() {
+    return entries.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return heap.isEmpty();
+  }
+
+  @Override
+  public int size() {
+    return heap.size();
+  }
+
+  @Override
+  public void reorder() {
+    // order numbers only break ties
+    List<Entry> temp = new ArrayList<Entry>(heap.size());
+    while (!heap.isEmpty()) {
+      temp.add(heap.take());
+    }
+    for (Entry e : temp) {
+      heap.insert(e);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.fixedpoint.impl;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+import com.ibm.wala.fixpoint.AbstractStatement;
+import com.ibm.wala.util.collections.HashSetFactory;
+
+/**
+ * A work list which works in phases: statements inserted during one phase are only taken in the next one. Within a phase,
+ * statements are taken in insertion order (FIFO) or in reverse (LIFO).
+ * 
+ * Deferring new work to the next phase gives statements inserted repeatedly during a phase the chance to be evaluated once,
+ * with all of their inputs' changes.
+ */
+@SuppressWarnings("rawtypes")
+public class TwoPhaseWorklist implements IFixedPointWorklist {
+
+  private final boolean lifo;
+
+  private final HashSet<AbstractStatement> contents = HashSetFactory.make();
+
+  /**
+   * statements to take in the current phase
+   */
+  private LinkedList<AbstractStatement> current = new LinkedList<AbstractStatement>();
+
+  /**
+   * statements inserted during the current phase
+   */
+  private LinkedList<AbstractStatement> next = new LinkedList<AbstractStatement>();
+
+  /**
+   * @param lifo take the statements of a phase in reverse insertion order?
+   */
+  public TwoPhaseWorklist(boolean lifo) {
+    this.lifo = lifo;
+  }
+
+  @Override
+  public AbstractStatement takeStatement() throws NoSuchElementException {
+    if (current.isEmpty()) {
+      LinkedList<AbstractStatement> temp = current;
+      current = next;
+      next = temp;
+    }
+    AbstractStatement result = lifo ? current.removeLast() : current.removeFirst();
+    contents.remove(result);
+    return result;
+  }
+
+  @Override
+  public AbstractStatement peekStatement() throws NoSuchElementException {
+    LinkedList<AbstractStatement> l = current.isEmpty() ? next : current;
+    return lifo ? l.getLast() : l.getFirst();
+  }
+
+  @Override
+  public void insertStatement(AbstractStatement eq) {
+    if (!contents.contains(eq)) {
+      contents.add(eq);
+      next.add(eq);
+    }
+  }
+
+  @Override
+  public void forgetStatement(AbstractStatement eq) {
+    // only pending statements are kept
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return contents.isEmpty();
+  }
+
+  @Override
+  public int size() {
+    return contents.size();
+  }
+
+  @Override
+  public void reorder() {
+    // order numbers are not used
+  }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.fixedpoint.impl;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.NoSuchElementException;
+
+import com.ibm.wala.fixpoint.AbstractStatement;
+import com.ibm.wala.util.collections.HashSetFactory;
+
+/**
+ * A work list which works in waves: statements inserted during one wave are only taken in the next one, and each wave is taken
+ * in order of order numbers, i.e. in topological order of the strongly connected components of the system once it has been
+ * ordered. So each wave sweeps the system once, from sources to sinks.
+ */
+@SuppressWarnings("rawtypes")
+public class WaveWorklist implements IFixedPointWorklist {
+
+  private final HashSet<AbstractStatement> contents = HashSetFactory.make();
+
+  /**
+   * statements to take in the current wave
+   */
+  private final Worklist current = new Worklist();
+
+  /**
+   * statements inserted during the current wave
+   */
+  private final LinkedList<AbstractStatement> next = new LinkedList<AbstractStatement>();
+
+  @Override
+  public AbstractStatement takeStatement() throws NoSuchElementException {
+    if (current.isEmpty()) {
+      while (!next.isEmpty()) {
+        current.insertStatement(next.removeFirst());
+      }
+    }
+    AbstractStatement result = current.takeStatement();
+    contents.remove(result);
+    return result;
+  }
+
+  @Override
+  public AbstractStatement peekStatement() throws NoSuchElementException {
+    if (!current.isEmpty()) {
+      return current.peekStatement();
+    }
+    // the next wave starts with its least order number
+    AbstractStatement result = next.getFirst();
+    for (AbstractStatement s : next) {
+      if (s.getOrderNumber() < result.getOrderNumber()) {
+        result = s;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void insertStatement(AbstractStatement eq) {
+    if (!contents.contains(eq)) {
+      contents.add(eq);
+      next.add(eq);
+    }
+  }
+
+  @Override
+  public void forgetStatement(AbstractStatement eq) {
+    // only pending statements are kept
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return contents.isEmpty();
+  }
+
+  @Override
+  public int size() {
+    return contents.size();
+  }
+
+  @Override
+  public void reorder() {
+    current.reorder();
+  }
+}
@@ -10,7 +10,9 @@
  *******************************************************************************/
 package com.ibm.wala.fixedpoint.impl;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import com.ibm.wala.fixpoint.AbstractStatement;
@@ -18,10 +20,11 @@ import com.ibm.wala.util.collections.HashSetFactory;
 import com.ibm.wala.util.collections.Heap;
 
 /**
- * Worklist for fixed-point solver implementation
+ * Worklist for fixed-point solver implementation, which takes statements in order of their order numbers, i.e. in topological
+ * order of the strongly connected components of the system once it has been ordered.
  */
 @SuppressWarnings("rawtypes")
-public class Worklist extends Heap<AbstractStatement> {
+public class Worklist extends Heap<AbstractStatement> implements IFixedPointWorklist {
 
   private final HashSet<AbstractStatement> contents = HashSetFactory.make();
 
@@ -34,12 +37,19 @@ public class Worklist extends Heap<AbstractStatement> {
     return (eq1.getOrderNumber() < eq2.getOrderNumber());
   }
 
+  @Override
   public AbstractStatement takeStatement() throws NoSuchElementException {
     AbstractStatement result = super.take();
     contents.remove(result);
     return result;
   }
   
+  @Override
+  public AbstractStatement peekStatement() throws NoSuchElementException {
+    return super.peek();
+  }
+
+  @Override
   public void insertStatement(AbstractStatement eq) {
     if (!contents.contains(eq)) {
       contents.add(eq);
@@ -47,4 +57,20 @@ public class Worklist extends Heap<AbstractStatement> {
     }
   }
 
+  @Override
+  public void forgetStatement(AbstractStatement eq) {
+    // only pending statements are kept
+  }
+
+  @Override
+  public void reorder() {
+    List<AbstractStatement> temp = new ArrayList<AbstractStatement>(size());
+    while (!isEmpty()) {
+      temp.add(super.take());
+    }
+    for (AbstractStatement s : temp) {
+      super.insert(s);
+    }
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.fixedpoint.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.Factory;
+
+/**
+ * A harness which solves the same fixed-point system with each of several {@link WorklistStrategy}s, to find the fastest one
+ * for a given kind of system.
+ * 
+ * The system is supplied by a factory, which must return a fresh, unsolved solver on each call; e.g. one which re-creates a
+ * captured system, or re-generates the constraints of a small analysis.
+ */
+public class WorklistBenchmark {
+
+  /**
+   * the outcome of solving with one strategy
+   */
+  public static final class Result {
+    private final WorklistStrategy strategy;
+
+    private final long millis;
+
+    private final long evaluations;
+
+    Result(WorklistStrategy strategy, long millis, long evaluations) {
+      this.strategy = strategy;
+      this.millis = millis;
+      this.evaluations = evaluations;
+    }
+
+    public WorklistStrategy getStrategy() {
+      return strategy;
+    }
+
+    /**
+     * @return the fastest time taken to solve, over the measured runs
+     */
+    public long getMillis() {
+      return millis;
+    }
+
+    /**
+     * @return the number of statements evaluated while solving
+     */
+    public long getEvaluations() {
+      return evaluations;
+    }
+
+    @Override
+    public String toString() {
+      return strategy + ": " + millis + " ms, " + evaluations + " evaluations";
+    }
+  }
+
+  private final Factory<? extends AbstractFixedPointSolver<?>> solvers;
+
+  private final int warmupRuns;
+
+  private final int measuredRuns;
+
+  /**
+   * @param solvers creates a fresh, unsolved solver on each call
+   * @param warmupRuns number of runs per strategy whose times are discarded
+   * @param measuredRuns number of runs per strategy whose times are measured
+   */
+  public WorklistBenchmark(Factory<? extends AbstractFixedPointSolver<?>> solvers, int warmupRuns, int measuredRuns) {
+    if (solvers == null) {
+      throw new IllegalArgumentException("null solvers");
+    }
+    if (warmupRuns < 0 || measuredRuns < 1) {
+      throw new IllegalArgumentException("bad number of runs: " + warmupRuns + ", " + measuredRuns);
+    }
+    this.solvers = solvers;
+    this.warmupRuns = warmupRuns;
+    this.measuredRuns = measuredRuns;
+  }
+
+  /**
+   * Solve with each strategy in turn.
+   * 
+   * @return one result per strategy, in the same order
+   */
+  public List<Result> run(Collection<WorklistStrategy> strategies) throws CancelException {
+    List<Result> result = new ArrayList<Result>();
+    for (WorklistStrategy strategy : strategies) {
+      result.add(run(strategy));
+    }
+    return result;
+  }
+
+  public Result run(WorklistStrategy strategy) throws CancelException {
+    for (int i = 0; i < warmupRuns; i++) {
+      solve(strategy);
+    }
+    long best = Long.MAX_VALUE;
+    long evaluations = 0;
+    for (int i = 0; i < measuredRuns; i++) {
+      long start = System.nanoTime();
+      AbstractFixedPointSolver<?> solver = solve(strategy);
+      best = Math.min(best, System.nanoTime() - start);
+      // counted on the solver itself, so that other solvers running meanwhile do not add to it
+      evaluations += solver.getEvaluationCount();
+    }
+    return new Result(strategy, best / 1000000, evaluations / measuredRuns);
+  }
+
+  private AbstractFixedPointSolver<?> solve(WorklistStrategy strategy) throws CancelException {
+    AbstractFixedPointSolver<?> solver = solvers.make();
+    solver.setWorklistStrategy(strategy);
+    solver.solve(null);
+    return solver;
+  }
+}
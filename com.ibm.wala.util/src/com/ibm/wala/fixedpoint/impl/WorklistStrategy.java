@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.fixedpoint.impl;
+
+/**
+ * The order in which an {@link AbstractFixedPointSolver} evaluates the statements on its work list.
+ */
+public enum WorklistStrategy {
+
+  /**
+   * by order number, i.e. in topological order of the strongly connected components of the system; this is the default.
+   * 
+   * There is no separate divide-and-conquer topological strategy, which would solve each component to a fixed point before moving
+   * to the next one: this one takes the earliest component with pending work first, so it already finishes a component before it
+   * takes statements of later ones, unless their evaluation adds work to an earlier component.
+   */
+  TOPOLOGICAL {
+    @Override
+    public IFixedPointWorklist make() {
+      return new Worklist();
+    }
+  },
+
+  /**
+   * least recently fired statement first
+   */
+  LRF {
+    @Override
+    public IFixedPointWorklist make() {
+      return new LRFWorklist();
+    }
+  },
+
+  /**
+   * in phases, each taken in insertion order
+   */
+  TWO_PHASE_FIFO {
+    @Override
+    public IFixedPointWorklist make() {
+      return new TwoPhaseWorklist(false);
+    }
+  },
+
+  /**
+   * in phases, each taken in reverse insertion order
+   */
+  TWO_PHASE_LIFO {
+    @Override
+    public IFixedPointWorklist make() {
+      return new TwoPhaseWorklist(true);
+    }
+  },
+
+  /**
+   * in waves, each taken in topological order
+   */
+  WAVE {
+    @Override
+    public IFixedPointWorklist make() {
+      return new WaveWorklist();
+    }
+  };
+
+  /**
+   * @return a new, empty work list which implements this strategy
+   */
+  public abstract IFixedPointWorklist make();
+}
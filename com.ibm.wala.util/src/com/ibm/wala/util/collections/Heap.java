@@ -53,6 +53,16 @@ public abstract class Heap<T> {
     numberOfElements++;
   }
 
+  /**
+   * @return the first object in the priority queue, without removing it
+   */
+  public T peek() throws NoSuchElementException {
+    if (numberOfElements == 0) {
+      throw new NoSuchElementException();
+    }
+    return backingStore[0];
+  }
+
   /**
    * @return the first object in the priority queue
    */
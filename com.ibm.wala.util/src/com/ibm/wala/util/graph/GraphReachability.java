@@ -10,49 +10,95 @@
  *******************************************************************************/
 package com.ibm.wala.util.graph;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
 
-import com.ibm.wala.dataflow.graph.AbstractMeetOperator;
-import com.ibm.wala.dataflow.graph.BitVectorFramework;
-import com.ibm.wala.dataflow.graph.BitVectorIdentity;
-import com.ibm.wala.dataflow.graph.BitVectorSolver;
-import com.ibm.wala.dataflow.graph.BitVectorUnion;
-import com.ibm.wala.dataflow.graph.BitVectorUnionConstant;
-import com.ibm.wala.dataflow.graph.DataflowSolver;
-import com.ibm.wala.dataflow.graph.ITransferFunctionProvider;
-import com.ibm.wala.fixpoint.BitVectorVariable;
-import com.ibm.wala.fixpoint.UnaryOperator;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.MonitorUtil;
 import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
 import com.ibm.wala.util.Predicate;
 import com.ibm.wala.util.collections.FilterIterator;
+import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.collections.IntStack;
 import com.ibm.wala.util.collections.Iterator2Collection;
-import com.ibm.wala.util.debug.Assertions;
-import com.ibm.wala.util.graph.impl.GraphInverter;
+import com.ibm.wala.util.graph.traverse.SCCIterator;
+import com.ibm.wala.util.intset.BitVector;
+import com.ibm.wala.util.intset.BitVectorIntSet;
+import com.ibm.wala.util.intset.IntSetUtil;
+import com.ibm.wala.util.intset.MutableIntSet;
 import com.ibm.wala.util.intset.MutableMapping;
 import com.ibm.wala.util.intset.OrdinalSet;
 import com.ibm.wala.util.intset.OrdinalSetMapping;
 
 /**
- * A dataflow system that computes, for each graph node, the set of "interesting" nodes that are reachable
+ * Computes, for each graph node, the set of "interesting" nodes that are reachable
+ * 
+ * The graph is first condensed into its DAG of strongly connected components, all of whose nodes reach the same set. The DAG is
+ * then processed from the leaves up, each component or-ing together the bit vectors of its successors. A component with no
+ * interesting nodes and at most one non-empty successor shares that successor's bit vector rather than copying it.
+ * 
+ * Given an {@link Executor}, components at the same height in the DAG are processed in parallel. For very large graphs, where a
+ * bit vector per component would not fit in memory, see {@link #setMaxCachedSets(int)}.
  */
 public class GraphReachability<T, S> {
 
   /**
-   * Governing graph
+   * value of {@link #setMaxCachedSets(int)} meaning that every reachable set is computed up front, and kept
    */
-  private final Graph<T> g;
+  public final static int UNBOUNDED = -1;
+
+  /**
+   * components at one height are only split across tasks if there are at least this many
+   */
+  private final static int PARALLEL_CHUNK = 256;
 
   /**
-   * Killdall-style dataflow solver
+   * Governing graph
    */
-  private DataflowSolver<T, BitVectorVariable> solver;
+  private final Graph<T> g;
 
   /**
    * set of "interesting" CGNodes
    */
   final OrdinalSetMapping<S> domain;
 
+  private int maxCachedSets = UNBOUNDED;
+
+  /**
+   * component of each node, once solved
+   */
+  private Map<T, Integer> node2SCC;
+
+  /**
+   * components of the condensed graph which are successors of each component, in topological order
+   */
+  private int[][] sccSuccs;
+
+  /**
+   * indices in the domain of the interesting nodes of each component
+   */
+  private int[][] sccMembers;
+
+  /**
+   * the interesting nodes reachable from each component, or null if none. null if the number of sets is bounded.
+   */
+  private BitVectorIntSet[] reach;
+
+  /**
+   * if the number of sets is bounded, the most recently used sets
+   */
+  private Map<Integer, BitVectorIntSet> cache;
+
   /**
    * @param g call graph to analyze
    * @param filter "interesting" node definition
@@ -68,79 +114,252 @@ public class GraphReachability<T, S> {
   }
 
   /**
-   * @param n
+   * Bound the memory used for reachable sets. Rather than computing the set for every node in {@link #solve(IProgressMonitor)},
+   * compute each on demand with a traversal of the condensed graph, and keep only the n most recently used.
+   * 
+   * Must be called before solving.
+   * 
+   * @param n the maximum number of sets to keep, or {@link #UNBOUNDED}
+   */
+  public void setMaxCachedSets(int n) {
+    if (n < 0 && n != UNBOUNDED) {
+      throw new IllegalArgumentException("bad number of sets: " + n);
+    }
+    maxCachedSets = n;
+  }
+
+  /**
+   * @param n a node of the graph
    * @return the set of interesting nodes reachable from n
+   * @throws IllegalStateException if {@link #solve(IProgressMonitor)} has not been called
+   * @throws IllegalArgumentException if n is not a node of the graph
    */
-  public OrdinalSet<S> getReachableSet(Object n) throws IllegalStateException {
-    if (solver == null) {
+  public OrdinalSet<S> getReachableSet(Object n) throws IllegalStateException, IllegalArgumentException {
+    if (node2SCC == null) {
       throw new IllegalStateException("must call solve() before calling getReachableSet()");
     }
-    BitVectorVariable v = solver.getOut(n);
-    assert v != null : "null variable for node " + n;
-    if (v.getValue() == null) {
+    Integer scc = node2SCC.get(n);
+    if (scc == null) {
+      throw new IllegalArgumentException("not a node of the graph: " + n);
+    }
+    BitVectorIntSet result = reach == null ? findOrCreateCachedSet(scc) : reach[scc];
+    if (result == null) {
       return OrdinalSet.empty();
     } else {
-      return new OrdinalSet<S>(v.getValue(), domain);
+      return new OrdinalSet<S>(result, domain);
     }
   }
 
   /**
-   * @return true iff the evaluation of some equation caused a change in the value of some variable.
+   * @return true iff solving changed the set of some node, as with the dataflow solver this class used to delegate to: every
+   *         interesting node reaches itself, so this is true iff there is an interesting node
    */
   public boolean solve(IProgressMonitor monitor) throws CancelException {
+    return solve(monitor, null);
+  }
 
-    ITransferFunctionProvider<T, BitVectorVariable> functions = new ITransferFunctionProvider<T, BitVectorVariable>() {
+  /**
+   * @param executor runs the components at each height of the condensed graph in parallel; if null, all work is done in the
+   *          calling thread
+   * @return true iff there is an interesting node; see {@link #solve(IProgressMonitor)}
+   * @throws CancelException if the monitor is canceled or the calling thread is interrupted
+   */
+  public boolean solve(IProgressMonitor monitor, Executor executor) throws CancelException {
+    condense(monitor);
+    if (maxCachedSets == UNBOUNDED) {
+      reach = new BitVectorIntSet[sccSuccs.length];
+      if (executor == null) {
+        // successors come later in topological order
+        for (int c = sccSuccs.length - 1; c >= 0; c--) {
+          reach[c] = computeReachableSet(c);
+        }
+      } else {
+        solveInParallel(monitor, executor);
+      }
+    } else {
+      final int max = maxCachedSets;
+      cache = new LinkedHashMap<Integer, BitVectorIntSet>(16, 0.75f, true) {
+        private static final long serialVersionUID = 7435466391652937469L;
 
-      /*
-       * @see com.ibm.wala.dataflow.graph.ITransferFunctionProvider#getNodeTransferFunction(java.lang.Object)
-       */
-      @Override
-      public UnaryOperator<BitVectorVariable> getNodeTransferFunction(T n) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BitVectorIntSet> eldest) {
+          return size() > max;
+        }
+      };
+    }
+    return domain.getSize() > 0;
+  }
+
+  /**
+   * number the strongly connected components of g in topological order, and record the edges between them
+   */
+  private void condense(IProgressMonitor monitor) throws CancelException {
+    node2SCC = HashMapFactory.make();
+    List<Set<T>> sccs = new ArrayList<Set<T>>();
+    for (SCCIterator<T> it = new SCCIterator<T>(g); it.hasNext();) {
+      MonitorUtil.throwExceptionIfCanceled(monitor);
+      Set<T> scc = it.next();
+      for (T n : scc) {
+        node2SCC.put(n, sccs.size());
+      }
+      sccs.add(scc);
+    }
+    sccSuccs = new int[sccs.size()][];
+    sccMembers = new int[sccs.size()][];
+    for (int c = 0; c < sccs.size(); c++) {
+      MutableIntSet succs = IntSetUtil.make();
+      MutableIntSet members = IntSetUtil.make();
+      for (T n : sccs.get(c)) {
         int index = domain.getMappedIndex(n);
         if (index > -1) {
-          return new BitVectorUnionConstant(index);
-        } else {
-          return BitVectorIdentity.instance();
+          members.add(index);
+        }
+        for (Iterator<? extends T> ss = g.getSuccNodes(n); ss.hasNext();) {
+          int s = node2SCC.get(ss.next());
+          if (s != c) {
+            succs.add(s);
+          }
         }
       }
+      sccSuccs[c] = IntSetUtil.toArray(succs);
+      sccMembers[c] = IntSetUtil.toArray(members);
+    }
+  }
 
-      /*
-       * @see com.ibm.wala.dataflow.graph.ITransferFunctionProvider#hasNodeTransferFunctions()
-       */
-      @Override
-      public boolean hasNodeTransferFunctions() {
-        return true;
+  /**
+   * PRECONDITION: the sets of all successors of c are computed
+   */
+  private BitVectorIntSet computeReachableSet(int c) {
+    BitVectorIntSet only = null;
+    int nonEmpty = 0;
+    for (int s : sccSuccs[c]) {
+      if (reach[s] != null) {
+        only = reach[s];
+        nonEmpty++;
       }
-
-      /*
-       * @see com.ibm.wala.dataflow.graph.ITransferFunctionProvider#getEdgeTransferFunction(java.lang.Object, java.lang.Object)
-       */
-      @Override
-      public UnaryOperator<BitVectorVariable> getEdgeTransferFunction(Object from, Object to) {
-        Assertions.UNREACHABLE();
-        return null;
+    }
+    if (sccMembers[c].length == 0 && nonEmpty <= 1) {
+      // nothing to add; share the successor's set, which is never modified once computed
+      return only;
+    }
+    BitVectorIntSet result = new BitVectorIntSet();
+    for (int m : sccMembers[c]) {
+      result.add(m);
+    }
+    for (int s : sccSuccs[c]) {
+      if (reach[s] != null) {
+        result.addAllOblivious(reach[s]);
       }
+    }
+    return result;
+  }
 
-      /*
-       * @see com.ibm.wala.dataflow.graph.ITransferFunctionProvider#hasEdgeTransferFunctions()
-       */
-      @Override
-      public boolean hasEdgeTransferFunctions() {
-        return false;
+  /**
+   * compute the sets of each height of the condensed graph in turn, splitting each height into chunks for the executor
+   */
+  private void solveInParallel(IProgressMonitor monitor, Executor executor) throws CancelException {
+    // height of each component above the leaves of the condensed graph
+    int[] height = new int[sccSuccs.length];
+    int maxHeight = 0;
+    for (int c = sccSuccs.length - 1; c >= 0; c--) {
+      for (int s : sccSuccs[c]) {
+        height[c] = Math.max(height[c], height[s] + 1);
       }
+      maxHeight = Math.max(maxHeight, height[c]);
+    }
+    List<List<Integer>> levels = new ArrayList<List<Integer>>(maxHeight + 1);
+    for (int h = 0; h <= maxHeight; h++) {
+      levels.add(new ArrayList<Integer>());
+    }
+    for (int c = 0; c < height.length; c++) {
+      levels.get(height[c]).add(c);
+    }
 
-      /*
-       * @see com.ibm.wala.dataflow.graph.ITransferFunctionProvider#getMeetOperator()
-       */
-      @Override
-      public AbstractMeetOperator<BitVectorVariable> getMeetOperator() {
-        return BitVectorUnion.instance();
+    CompletionService<Object> finished = new ExecutorCompletionService<Object>(executor);
+    for (List<Integer> level : levels) {
+      MonitorUtil.throwExceptionIfCanceled(monitor);
+      if (level.size() < 2 * PARALLEL_CHUNK) {
+        for (int c : level) {
+          reach[c] = computeReachableSet(c);
+        }
+        continue;
       }
-    };
-
-    BitVectorFramework<T, S> f = new BitVectorFramework<T, S>(GraphInverter.invert(g), functions, domain);
-    solver = new BitVectorSolver<T>(f);
-    return solver.solve(monitor);
+      List<Future<Object>> tasks = new ArrayList<Future<Object>>();
+      boolean done = false;
+      try {
+        for (int start = 0; start < level.size(); start += PARALLEL_CHUNK) {
+          final List<Integer> chunk = level.subList(start, Math.min(level.size(), start + PARALLEL_CHUNK));
+          tasks.add(finished.submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+              for (int c : chunk) {
+                reach[c] = computeReachableSet(c);
+              }
+              return null;
+            }
+          }));
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+          finished.take().get();
+        }
+        done = true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CancelException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        } else if (e.getCause() instanceof Error) {
+          throw (Error) e.getCause();
+        } else {
+          throw new CancelException(e);
+        }
+      } finally {
+        if (!done) {
+          for (Future<Object> task : tasks) {
+            task.cancel(true);
+          }
+        }
+      }
+    }
   }
 
-}
\ No newline at end of file
+  /**
+   * In bounded mode, compute the set for component c by a traversal of the condensed graph, stopping at components whose sets are
+   * cached.
+   */
+  private synchronized BitVectorIntSet findOrCreateCachedSet(int c) {
+    if (cache.containsKey(c)) {
+      return cache.get(c);
+    }
+    BitVectorIntSet result = new BitVectorIntSet();
+    BitVector visited = new BitVector(sccSuccs.length);
+    IntStack pending = new IntStack();
+    pending.push(c);
+    visited.set(c);
+    while (!pending.isEmpty()) {
+      int x = pending.pop();
+      BitVectorIntSet cached = (x == c) ? null : cache.get(x);
+      if (cached != null) {
+        result.addAllOblivious(cached);
+        continue;
+      }
+      for (int m : sccMembers[x]) {
+        result.add(m);
+      }
+      for (int s : sccSuccs[x]) {
+        if (!visited.get(s)) {
+          visited.set(s);
+          pending.push(s);
+        }
+      }
+    }
+    if (result.isEmpty()) {
+      result = null;
+    }
+    if (maxCachedSets > 0) {
+      cache.put(c, result);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.graph;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+
+import com.ibm.wala.util.collections.IntStack;
+import com.ibm.wala.util.graph.traverse.SCCIterator;
+import com.ibm.wala.util.intset.IntIterator;
+import com.ibm.wala.util.intset.IntSet;
+import com.ibm.wala.util.intset.IntSetUtil;
+import com.ibm.wala.util.intset.MutableIntSet;
+
+/**
+ * An index which answers repeated "can x reach y" queries on a fixed {@link NumberedGraph}, without a fresh traversal for each.
+ * 
+ * The graph is condensed into its DAG of strongly connected components, numbered in topological order. Each component gets k
+ * interval labels, one per randomized depth-first traversal of the DAG, such that if a reaches b then each label of b is contained
+ * in the corresponding label of a (Yildirim et al., "GRAIL: Scalable Reachability Index for Large Graphs", VLDB 2010). Most
+ * negative queries are answered by the labels or the topological numbering alone; many positive ones by the spanning tree of the
+ * first traversal. The rest fall back to a traversal which the labels prune.
+ * 
+ * Construction takes O(k(V+E)) time, and the index O(kV) space. The index does not notice later changes to the graph.
+ */
+public class ReachabilityIndex<T> {
+
+  /**
+   * default number of interval labels per component
+   */
+  public final static int DEFAULT_LABELS = 3;
+
+  private final NumberedGraph<T> g;
+
+  /**
+   * component of each node, by node number; -1 if no such node
+   */
+  private final int[] scc;
+
+  /**
+   * successor components of each component
+   */
+  private final int[][] succs;
+
+  /**
+   * low[i][c] and high[i][c] are the interval of component c in the i'th labeling
+   */
+  private final int[][] low;
+
+  private final int[][] high;
+
+  /**
+   * pre-order number of each component in the spanning forest of the first labeling; with high[0], identifies tree descendants
+   */
+  private final int[] pre;
+
+  /**
+   * marks components visited by the current fallback traversal; guarded by this
+   */
+  private final int[] visited;
+
+  private int traversal = 0;
+
+  public ReachabilityIndex(NumberedGraph<T> g) {
+    this(g, DEFAULT_LABELS);
+  }
+
+  /**
+   * @param k number of interval labels per component; more labels answer more negative queries without a traversal, but take more
+   *          space
+   */
+  public ReachabilityIndex(NumberedGraph<T> g, int k) {
+    if (g == null) {
+      throw new IllegalArgumentException("null g");
+    }
+    if (k < 1) {
+      throw new IllegalArgumentException("need at least one label, got " + k);
+    }
+    this.g = g;
+    this.scc = new int[g.getMaxNumber() + 1];
+    Arrays.fill(scc, -1);
+
+    // SCCIterator enumerates components in topological order
+    int n = 0;
+    for (SCCIterator<T> it = new SCCIterator<T>(g); it.hasNext();) {
+      Set<T> c = it.next();
+      for (T x : c) {
+        scc[g.getNumber(x)] = n;
+      }
+      n++;
+    }
+    this.succs = new int[n][];
+    MutableIntSet[] s = new MutableIntSet[n];
+    for (T x : g) {
+      int c = scc[g.getNumber(x)];
+      if (s[c] == null) {
+        s[c] = IntSetUtil.make();
+      }
+      IntSet ys = g.getSuccNodeNumbers(x);
+      if (ys != null) {
+        for (IntIterator it = ys.intIterator(); it.hasNext();) {
+          int d = scc[it.next()];
+          if (d != c) {
+            s[c].add(d);
+          }
+        }
+      }
+    }
+    for (int c = 0; c < n; c++) {
+      succs[c] = IntSetUtil.toArray(s[c]);
+    }
+
+    this.low = new int[k][];
+    this.high = new int[k][];
+    this.pre = new int[n];
+    Random random = new Random(n);
+    for (int i = 0; i < k; i++) {
+      low[i] = new int[n];
+      high[i] = new int[n];
+      label(random, low[i], high[i], i == 0 ? pre : null);
+    }
+    this.visited = new int[n];
+  }
+
+  /**
+   * Compute one interval labeling: high is the post-order number of each component in a depth-first traversal which takes
+   * successors in a random rotation, and low is the least post-order number of any component it reaches.
+   * 
+   * @param preOrder if non-null, receives the pre-order number of each component
+   */
+  private void label(Random random, int[] low, int[] high, int[] preOrder) {
+    int n = succs.length;
+    boolean[] seen = new boolean[n];
+    // next successor to visit, as an offset from a random start
+    int[] next = new int[n];
+    int[] start = new int[n];
+    int preNumber = 0;
+    int postNumber = 0;
+    IntStack stack = new IntStack();
+    int first = n == 0 ? 0 : random.nextInt(n);
+    for (int r = 0; r < n; r++) {
+      int root = (first + r) % n;
+      if (seen[root]) {
+        continue;
+      }
+      seen[root] = true;
+      start[root] = succs[root].length == 0 ? 0 : random.nextInt(succs[root].length);
+      low[root] = Integer.MAX_VALUE;
+      if (preOrder != null) {
+        preOrder[root] = preNumber++;
+      }
+      stack.push(root);
+      while (!stack.isEmpty()) {
+        int c = stack.peek();
+        if (next[c] < succs[c].length) {
+          int d = succs[c][(start[c] + next[c]++) % succs[c].length];
+          if (!seen[d]) {
+            seen[d] = true;
+            start[d] = succs[d].length == 0 ? 0 : random.nextInt(succs[d].length);
+            low[d] = Integer.MAX_VALUE;
+            if (preOrder != null) {
+              preOrder[d] = preNumber++;
+            }
+            stack.push(d);
+          } else {
+            // the graph is acyclic, so d is finished
+            low[c] = Math.min(low[c], low[d]);
+          }
+        } else {
+          stack.pop();
+          high[c] = postNumber++;
+          low[c] = Math.min(low[c], high[c]);
+          if (!stack.isEmpty()) {
+            int parent = stack.peek();
+            low[parent] = Math.min(low[parent], low[c]);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the number of strongly connected components of the graph
+   */
+  public int getNumberOfComponents() {
+    return succs.length;
+  }
+
+  /**
+   * @return true iff there is a path from src to dst; every node reaches itself
+   * @throws IllegalArgumentException if either is not a node of the graph
+   */
+  public boolean reaches(T src, T dst) {
+    if (src == null) {
+      throw new IllegalArgumentException("null src");
+    }
+    if (dst == null) {
+      throw new IllegalArgumentException("null dst");
+    }
+    return reaches(g.getNumber(src), g.getNumber(dst));
+  }
+
+  /**
+   * @return true iff there is a path from the node numbered src to the node numbered dst; every node reaches itself
+   * @throws IllegalArgumentException if either is not the number of a node of the graph
+   */
+  public boolean reaches(int src, int dst) {
+    int a = component(src);
+    int b = component(dst);
+    if (a == b) {
+      return true;
+    }
+    if (a > b || !mayReach(a, b)) {
+      return false;
+    }
+    if (pre[a] < pre[b] && high[0][b] < high[0][a]) {
+      // b is a descendant of a in the spanning forest
+      return true;
+    }
+    return search(a, b);
+  }
+
+  private int component(int number) {
+    if (number < 0 || number >= scc.length || scc[number] == -1) {
+      throw new IllegalArgumentException("not a node number: " + number);
+    }
+    return scc[number];
+  }
+
+  /**
+   * @return false if the labels show that component a cannot reach component b
+   */
+  private boolean mayReach(int a, int b) {
+    for (int i = 0; i < low.length; i++) {
+      if (low[i][b] < low[i][a] || high[i][b] > high[i][a]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * depth-first search from a for b, pruned by the topological numbering and the labels
+   */
+  private synchronized boolean search(int a, int b) {
+    if (++traversal == 0) {
+      // wrapped around; forget all marks
+      Arrays.fill(visited, 0);
+      traversal = 1;
+    }
+    IntStack stack = new IntStack();
+    stack.push(a);
+    visited[a] = traversal;
+    while (!stack.isEmpty()) {
+      int c = stack.pop();
+      for (int d : succs[c]) {
+        if (d == b) {
+          return true;
+        }
+        if (visited[d] != traversal && d < b && mayReach(d, b)) {
+          visited[d] = traversal;
+          stack.push(d);
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.perf;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A global hub for performance metrics reported by analysis phases: class hierarchy construction, IR construction, constraint
+ * generation, fixed point solving, and so on.
+ * 
+ * Instrumented code reports through the static methods here, which do nothing unless some {@link MetricsListener} is registered.
+ * Instrumented code that must do work to compute a metric should check {@link #isEnabled()} first.
+ * 
+ * A typical use is
+ * 
+ * <pre>
+ * long start = Metrics.start();
+ * ... do the work ...
+ * Metrics.stop(&quot;my.phase&quot;, start);
+ * </pre>
+ * 
+ * @see MetricsSummary
+ */
+public class Metrics {
+
+  private final static CopyOnWriteArrayList<MetricsListener> listeners = new CopyOnWriteArrayList<MetricsListener>();
+
+  /**
+   * cached !listeners.isEmpty(), so the common disabled case is a single volatile read
+   */
+  private static volatile boolean enabled = false;
+
+  public static void addListener(MetricsListener l) {
+    if (l == null) {
+      throw new IllegalArgumentException("null l");
+    }
+    listeners.add(l);
+    enabled = true;
+  }
+
+  public static void removeListener(MetricsListener l) {
+    listeners.remove(l);
+    enabled = !listeners.isEmpty();
+  }
+
+  /**
+   * @return true iff some listener is registered
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return a start time to pass to {@link #stop(String, long)}, or 0 if metrics are disabled
+   */
+  public static long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * report the time elapsed since start, obtained from {@link #start()}
+   */
+  public static void stop(String phase, long start) {
+    if (enabled && start != 0) {
+      time(phase, System.nanoTime() - start);
+    }
+  }
+
+  public static void time(String phase, long nanos) {
+    if (enabled) {
+      for (MetricsListener l : listeners) {
+        l.time(phase, nanos);
+      }
+    }
+  }
+
+  public static void count(String counter, long delta) {
+    if (enabled) {
+      for (MetricsListener l : listeners) {
+        l.count(counter, delta);
+      }
+    }
+  }
+
+  public static void sample(String quantity, long value) {
+    if (enabled) {
+      for (MetricsListener l : listeners) {
+        l.sample(quantity, value);
+      }
+    }
+  }
+}
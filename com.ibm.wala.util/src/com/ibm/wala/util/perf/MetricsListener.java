@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.perf;
+
+/**
+ * Receives the timers, counters and samples reported through {@link Metrics}.
+ * 
+ * Events may be reported from several threads at once, so implementations must be thread-safe.
+ */
+public interface MetricsListener {
+
+  /**
+   * an instance of some phase (e.g. building one IR) took the given time
+   */
+  void time(String phase, long nanos);
+
+  /**
+   * the named counter grew by delta
+   */
+  void count(String counter, long delta);
+
+  /**
+   * the named quantity (e.g. the size of a worklist) was observed to have the given value
+   */
+  void sample(String quantity, long value);
+}
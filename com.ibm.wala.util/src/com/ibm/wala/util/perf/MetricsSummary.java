@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2002 - 2006 IBM Corporation.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package com.ibm.wala.util.perf;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link MetricsListener} that accumulates everything it hears: total and maximum time per phase, totals per counter, and for
+ * each sampled quantity its range, mean and a histogram with power-of-two buckets.
+ * 
+ * The summary can be written as JSON, e.g. to track performance across releases.
+ */
+public class MetricsSummary implements MetricsListener {
+
+  private final static int BUCKETS = 64;
+
+  private static class Timer {
+    long count;
+
+    long total;
+
+    long max;
+  }
+
+  private static class Samples {
+    long count;
+
+    long sum;
+
+    long min = Long.MAX_VALUE;
+
+    long max = Long.MIN_VALUE;
+
+    /**
+     * bucket 0 holds values <= 0, and bucket i > 0 holds values in [2^(i-1), 2^i - 1]
+     */
+    final long[] histogram = new long[BUCKETS];
+  }
+
+  private final Map<String, Timer> timers = new TreeMap<String, Timer>();
+
+  private final Map<String, long[]> counters = new TreeMap<String, long[]>();
+
+  private final Map<String, Samples> samples = new TreeMap<String, Samples>();
+
+  @Override
+  public synchronized void time(String phase, long nanos) {
+    Timer t = timers.get(phase);
+    if (t == null) {
+      t = new Timer();
+      timers.put(phase, t);
+    }
+    t.count++;
+    t.total += nanos;
+    t.max = Math.max(t.max, nanos);
+  }
+
+  @Override
+  public synchronized void count(String counter, long delta) {
+    long[] c = counters.get(counter);
+    if (c == null) {
+      c = new long[1];
+      counters.put(counter, c);
+    }
+    c[0] += delta;
+  }
+
+  @Override
+  public synchronized void sample(String quantity, long value) {
+    Samples s = samples.get(quantity);
+    if (s == null) {
+      s = new Samples();
+      samples.put(quantity, s);
+    }
+    s.count++;
+    s.sum += value;
+    s.min = Math.min(s.min, value);
+    s.max = Math.max(s.max, value);
+    s.histogram[bucket(value)]++;
+  }
+
+  private static int bucket(long value) {
+    return value <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(value);
+  }
+
+  /**
+   * @return total time spent in a phase, in ms
+   */
+  public synchronized long getTotalMillis(String phase) {
+    Timer t = timers.get(phase);
+    return t == null ? 0 : t.total / 1000000;
+  }
+
+  /**
+   * @return the value of a counter
+   */
+  public synchronized long getCount(String counter) {
+    long[] c = counters.get(counter);
+    return c == null ? 0 : c[0];
+  }
+
+  /**
+   * @return the number of samples of a quantity
+   */
+  public synchronized long getSampleCount(String quantity) {
+    Samples s = samples.get(quantity);
+    return s == null ? 0 : s.count;
+  }
+
+  public synchronized void clear() {
+    timers.clear();
+    counters.clear();
+    samples.clear();
+  }
+
+  public synchronized void writeJSON(Writer w) throws IOException {
+    w.write("{\n  \"timers\": {");
+    String sep = "\n";
+    for (Map.Entry<String, Timer> e : timers.entrySet()) {
+      Timer t = e.getValue();
+      w.write(sep + "    " + quote(e.getKey()) + ": { \"count\": " + t.count + ", \"totalMillis\": " + t.total / 1000000
+          + ", \"maxMillis\": " + t.max / 1000000 + " }");
+      sep = ",\n";
+    }
+    w.write("\n  },\n  \"counters\": {");
+    sep = "\n";
+    for (Map.Entry<String, long[]> e : counters.entrySet()) {
+      w.write(sep + "    " + quote(e.getKey()) + ": " + e.getValue()[0]);
+      sep = ",\n";
+    }
+    w.write("\n  },\n  \"samples\": {");
+    sep = "\n";
+    for (Map.Entry<String, Samples> e : samples.entrySet()) {
+      Samples s = e.getValue();
+      w.write(sep + "    " + quote(e.getKey()) + ": { \"count\": " + s.count + ", \"min\": " + s.min + ", \"max\": " + s.max
+          + ", \"mean\": " + ((double) s.sum / s.count) + ", \"histogram\": {");
+      String bsep = " ";
+      for (int i = 0; i < BUCKETS; i++) {
+        if (s.histogram[i] > 0) {
+          w.write(bsep + quote(bucketName(i)) + ": " + s.histogram[i]);
+          bsep = ", ";
+        }
+      }
+      w.write(" } }");
+      sep = ",\n";
+    }
+    w.write("\n  }\n}\n");
+  }
+
+  private static String bucketName(int i) {
+    if (i == 0) {
+      return "0";
+    } else if (i == 1) {
+      return "1";
+    } else if (i == BUCKETS - 1) {
+      return (1L << (i - 1)) + "-";
+    } else {
+      return (1L << (i - 1)) + "-" + ((1L << i) - 1);
+    }
+  }
+
+  private static String quote(String s) {
+    return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+
+  public String toJSON() {
+    StringWriter w = new StringWriter();
+    try {
+      writeJSON(w);
+    } catch (IOException e) {
+      // can't happen for a StringWriter
+      throw new IllegalStateException(e);
+    }
+    return w.toString();
+  }
+
+  @Override
+  public String toString() {
+    return toJSON();
+  }
+}